@@ -0,0 +1,98 @@
+package com.health.companion.data.local
+
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.health.companion.data.local.database.ChatMessageEntity
+import com.health.companion.data.local.database.ConversationEntity
+import com.health.companion.data.local.database.HealthCompanionDatabase
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class ChatTurnTransactionTest {
+
+    private lateinit var database: HealthCompanionDatabase
+
+    @Before
+    fun setup() {
+        database = Room.inMemoryDatabaseBuilder(
+            ApplicationProvider.getApplicationContext(),
+            HealthCompanionDatabase::class.java
+        ).build()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun insertChatTurn_emitsConversationListOncePerTurn() = runBlocking {
+        // Arrange
+        val conversationEmissions = mutableListOf<ConversationEntity?>()
+        val messageEmissions = mutableListOf<List<ChatMessageEntity>>()
+        val conversationJob = launch(Dispatchers.IO) {
+            database.conversationDao().observeMostRecent().collect { conversationEmissions += it }
+        }
+        val messageJob = launch(Dispatchers.IO) {
+            database.chatMessageDao().getMessagesFlow("conv-1").collect { messageEmissions += it }
+        }
+        delay(INVALIDATION_SETTLE_MS)
+
+        // Act
+        database.chatMessageDao().insertChatTurn(
+            conversation = ConversationEntity(id = "conv-1", title = "Turn"),
+            messages = listOf(
+                ChatMessageEntity(id = "m-1", conversationId = "conv-1", content = "Hi", role = "user"),
+                ChatMessageEntity(id = "m-2", conversationId = "conv-1", content = "Hello", role = "assistant")
+            ),
+            timestamp = 1_000L
+        )
+        delay(INVALIDATION_SETTLE_MS)
+        conversationJob.cancelAndJoin()
+        messageJob.cancelAndJoin()
+
+        // Assert: initial empty emission + exactly one emission for the whole turn
+        assertEquals(2, conversationEmissions.size)
+        assertEquals(2, messageEmissions.size)
+        assertEquals(1_000L, conversationEmissions.last()?.lastMessageAt)
+        assertEquals(2, messageEmissions.last().size)
+    }
+
+    @Test
+    fun insertChatTurn_keepsExistingConversationAndItsMessages() = runBlocking {
+        // Arrange
+        val dao = database.chatMessageDao()
+        dao.insertChatTurn(
+            conversation = ConversationEntity(id = "conv-1", title = "Original"),
+            messages = listOf(ChatMessageEntity(id = "m-1", conversationId = "conv-1", content = "Hi", role = "user")),
+            timestamp = 1_000L
+        )
+
+        // Act
+        dao.insertChatTurn(
+            conversation = ConversationEntity(id = "conv-1", title = "Ignored"),
+            messages = listOf(ChatMessageEntity(id = "m-2", conversationId = "conv-1", content = "Again", role = "user")),
+            timestamp = 2_000L
+        )
+
+        // Assert
+        val conversation = database.conversationDao().getConversationById("conv-1")
+        assertEquals("Original", conversation?.title)
+        assertEquals(2_000L, conversation?.updatedAt)
+        assertEquals(2, dao.getMessages("conv-1").size)
+    }
+
+    private companion object {
+        const val INVALIDATION_SETTLE_MS = 500L
+    }
+}
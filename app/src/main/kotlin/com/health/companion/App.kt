@@ -2,23 +2,39 @@ package com.health.companion
 
 import android.app.Application
 import android.util.Log
+import androidx.hilt.work.HiltWorkerFactory
+import androidx.work.Configuration
 import coil.Coil
 import coil.ImageLoader
 import dagger.hilt.android.HiltAndroidApp
+import com.health.companion.data.repositories.OutboxRepository
 import com.health.companion.utils.CrashLogger
+import com.health.companion.utils.PerformanceLog
 import timber.log.Timber
 import javax.inject.Inject
 
 @HiltAndroidApp
-class App : Application() {
+class App : Application(), Configuration.Provider {
     
     @Inject
     lateinit var imageLoader: ImageLoader
     
+    @Inject
+    lateinit var workerFactory: HiltWorkerFactory
+    
+    @Inject
+    lateinit var outboxRepository: OutboxRepository
+    
+    override val workManagerConfiguration: Configuration
+        get() = Configuration.Builder()
+            .setWorkerFactory(workerFactory)
+            .build()
+    
     override fun onCreate() {
         super.onCreate()
         
         CrashLogger.install(this)
+        PerformanceLog.install(this)
 
         // Initialize Timber for logging
         if (BuildConfig.DEBUG_MODE) {
@@ -30,6 +46,9 @@ class App : Application() {
         // Настраиваем Coil как глобальный ImageLoader
         Coil.setImageLoader(imageLoader)
         
+        // Досылаем офлайн-очередь, оставшуюся с прошлого запуска
+        outboxRepository.scheduleFlush(appendToRunning = false)
+        
         Timber.d("AI Health Companion App initialized with optimized image caching")
     }
 }
@@ -18,9 +18,14 @@ import androidx.compose.runtime.*
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.navigation.compose.rememberNavController
+import com.health.companion.presentation.components.LocalAnimationGovernor
+import com.health.companion.presentation.components.LocalAnimationLevel
+import com.health.companion.presentation.components.LocalMediaDownloadManager
 import com.health.companion.presentation.navigation.NavGraph
 import com.health.companion.presentation.navigation.Route
 import com.health.companion.presentation.theme.HealthCompanionTheme
+import com.health.companion.utils.AnimationGovernor
+import com.health.companion.utils.MediaDownloadManager
 import com.health.companion.utils.TokenManager
 import dagger.hilt.android.AndroidEntryPoint
 import kotlinx.coroutines.launch
@@ -32,6 +37,12 @@ class MainActivity : ComponentActivity() {
     @Inject
     lateinit var tokenManager: TokenManager
     
+    @Inject
+    lateinit var animationGovernor: AnimationGovernor
+
+    @Inject
+    lateinit var mediaDownloadManager: MediaDownloadManager
+    
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         
@@ -88,7 +99,12 @@ class MainActivity : ComponentActivity() {
         // This is required for imePadding() to work correctly!
         WindowCompat.setDecorFitsSystemWindows(window, false)
         
+        // Бюджет анимаций: jank / энергосбережение / нагрев
+        animationGovernor.attach(this)
+        
         setContent {
+            val animationLevel by animationGovernor.level.collectAsState()
+            
             HealthCompanionTheme {
                 val navController = rememberNavController()
                 var isLoading by remember { mutableStateOf(true) }
@@ -122,13 +138,34 @@ class MainActivity : ComponentActivity() {
                             )
                         }
                     } else {
-                        NavGraph(
-                            navController = navController,
-                            startDestination = startDestination
-                        )
+                        CompositionLocalProvider(
+                            LocalAnimationLevel provides animationLevel,
+                            LocalAnimationGovernor provides animationGovernor,
+                            LocalMediaDownloadManager provides mediaDownloadManager
+                        ) {
+                            NavGraph(
+                                navController = navController,
+                                startDestination = startDestination
+                            )
+                        }
                     }
                 }
             }
         }
     }
+    
+    override fun onResume() {
+        super.onResume()
+        animationGovernor.onResume()
+    }
+    
+    override fun onPause() {
+        animationGovernor.onPause()
+        super.onPause()
+    }
+    
+    override fun onDestroy() {
+        animationGovernor.detach()
+        super.onDestroy()
+    }
 }
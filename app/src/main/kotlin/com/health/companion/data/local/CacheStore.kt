@@ -0,0 +1,216 @@
+package com.health.companion.data.local
+
+import com.health.companion.data.local.dao.CacheEntryDao
+import com.health.companion.data.local.database.CacheEntryEntity
+import com.health.companion.utils.TokenManager
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.drop
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.launch
+import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationException
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.serializer
+import timber.log.Timber
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Персистентный keyed-кэш ответов API (stale-while-revalidate).
+ *
+ * - payload хранится в Room как JSON и переживает смерть процесса
+ * - TTL задаётся для каждого ключа; устаревшие данные всё равно отдаются сразу
+ * - Одновременные запросы одного ключа склеиваются в один сетевой вызов
+ * - [invalidate] помечает запись устаревшей, [evict] и [clear] — удаляют
+ * - Ключи в базе с префиксом пользователя; при выходе из аккаунта (любым путём,
+ *   в том числе принудительном из TokenAuthenticator) кэш очищается, а ответы
+ *   запросов, начатых до выхода, не записываются
+ */
+@Singleton
+class CacheStore(
+    private val cacheEntryDao: CacheEntryDao,
+    private val userIds: Flow<String?> = flowOf(null)
+) {
+    @Inject
+    constructor(cacheEntryDao: CacheEntryDao, tokenManager: TokenManager) :
+        this(cacheEntryDao, tokenManager.userIdFlow)
+
+    private val json = Json {
+        ignoreUnknownKeys = true
+        encodeDefaults = true
+    }
+
+    // Загрузка живёт в своём scope: отмена одного подписчика не рвёт запрос остальным
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val inFlight = ConcurrentHashMap<String, Deferred<Any?>>()
+
+    // Растёт при смене пользователя: запрос старого поколения результат не пишет
+    private val generation = AtomicLong()
+
+    init {
+        scope.launch {
+            userIds.distinctUntilChanged().drop(1).collect { userId ->
+                if (userId == null) clear() else dropInFlight()
+            }
+        }
+    }
+
+    /**
+     * Сначала кэш (даже устаревший), затем свежее значение — если кэша нет,
+     * он устарел или [forceRefresh]. Ошибка попадает в поток, только когда
+     * показать нечего
+     */
+    fun <T> stream(
+        key: String,
+        serializer: KSerializer<T>,
+        ttlMs: Long,
+        forceRefresh: Boolean = false,
+        fetch: suspend () -> T
+    ): Flow<Result<T>> = flow {
+        val cached = read(scoped(key), serializer)
+        cached?.let { emit(Result.success(it.value)) }
+        if (cached == null || cached.isStale || forceRefresh) {
+            try {
+                emit(Result.success(refresh(key, serializer, ttlMs, fetch)))
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Timber.w(e, "Cache: revalidate failed for $key")
+                if (cached == null) emit(Result.failure(e))
+            }
+        }
+    }
+
+    /**
+     * Однократное чтение: свежий кэш без сети, иначе запрос.
+     * Если запрос упал — устаревший кэш, если он есть
+     */
+    suspend fun <T> get(
+        key: String,
+        serializer: KSerializer<T>,
+        ttlMs: Long,
+        forceRefresh: Boolean = false,
+        fetch: suspend () -> T
+    ): T {
+        val cached = read(scoped(key), serializer)
+        if (cached != null && !cached.isStale && !forceRefresh) return cached.value
+        return try {
+            refresh(key, serializer, ttlMs, fetch)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            if (cached == null) throw e
+            Timber.w(e, "Cache: returning stale $key")
+            cached.value
+        }
+    }
+
+    inline fun <reified T> stream(
+        key: String,
+        ttlMs: Long,
+        forceRefresh: Boolean = false,
+        noinline fetch: suspend () -> T
+    ): Flow<Result<T>> = stream(key, serializer<T>(), ttlMs, forceRefresh, fetch)
+
+    suspend inline fun <reified T> get(
+        key: String,
+        ttlMs: Long,
+        forceRefresh: Boolean = false,
+        noinline fetch: suspend () -> T
+    ): T = get(key, serializer<T>(), ttlMs, forceRefresh, fetch)
+
+    suspend fun <T> peek(key: String, serializer: KSerializer<T>): T? = read(scoped(key), serializer)?.value
+
+    suspend fun <T> put(key: String, serializer: KSerializer<T>, value: T, ttlMs: Long) =
+        write(scoped(key), serializer, value, ttlMs)
+
+    suspend fun invalidate(key: String) = cacheEntryDao.expire(scoped(key))
+
+    suspend fun invalidatePrefix(prefix: String) = cacheEntryDao.expireByPrefix(scoped(prefix))
+
+    suspend fun evict(key: String) = cacheEntryDao.delete(scoped(key))
+
+    /** При выходе из аккаунта — вызывается и сам при смене пользователя на null */
+    suspend fun clear() {
+        dropInFlight()
+        cacheEntryDao.deleteAll()
+    }
+
+    private fun dropInFlight() {
+        generation.incrementAndGet()
+        inFlight.clear()
+    }
+
+    private suspend fun scoped(key: String): String = userIds.first()?.let { "u:$it:$key" } ?: key
+
+    private suspend fun <T> write(key: String, serializer: KSerializer<T>, value: T, ttlMs: Long) {
+        cacheEntryDao.upsert(
+            CacheEntryEntity(
+                key = key,
+                payload = json.encodeToString(serializer, value),
+                ttlMs = ttlMs
+            )
+        )
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private suspend fun <T> refresh(
+        key: String,
+        serializer: KSerializer<T>,
+        ttlMs: Long,
+        fetch: suspend () -> T
+    ): T {
+        val startedIn = generation.get()
+        val storageKey = scoped(key)
+        val deferred = inFlight.computeIfAbsent(storageKey) {
+            scope.async<Any?>(start = CoroutineStart.LAZY) {
+                fetch().also { value ->
+                    if (generation.get() == startedIn) {
+                        write(storageKey, serializer, value, ttlMs)
+                    } else {
+                        Timber.d("Cache: user changed, dropping result for $key")
+                    }
+                }
+            }.also { created ->
+                created.invokeOnCompletion { inFlight.remove(storageKey, created) }
+            }
+        }
+        deferred.start()
+        return deferred.await() as T
+    }
+
+    private suspend fun <T> read(key: String, serializer: KSerializer<T>): Cached<T>? {
+        val entry = cacheEntryDao.get(key) ?: return null
+        return try {
+            Cached(
+                value = json.decodeFromString(serializer, entry.payload),
+                isStale = System.currentTimeMillis() - entry.fetchedAt >= entry.ttlMs
+            )
+        } catch (e: SerializationException) {
+            // Формат ответа поменялся между версиями — старую запись выбрасываем
+            Timber.w(e, "Cache: dropping unreadable $key")
+            cacheEntryDao.delete(key)
+            null
+        }
+    }
+
+    private class Cached<T>(val value: T, val isStale: Boolean)
+
+    companion object {
+        const val TTL_SHORT = 30_000L
+        const val TTL_MEDIUM = 5 * 60_000L
+        const val TTL_LONG = 60 * 60_000L
+    }
+}
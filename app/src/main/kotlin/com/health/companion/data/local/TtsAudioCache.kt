@@ -0,0 +1,215 @@
+package com.health.companion.data.local
+
+import android.content.Context
+import dagger.hilt.android.qualifiers.ApplicationContext
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import java.text.Normalizer
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Счётчики кэша озвучки с момента запуска процесса
+ */
+data class TtsCacheStats(
+    val hits: Long,
+    val misses: Long,
+    /** Записи, не прошедшие проверку целостности и удалённые */
+    val corrupted: Long,
+    val evicted: Long,
+    /** Сколько байт аудио не пришлось качать благодаря попаданиям */
+    val bytesServed: Long,
+    val entries: Int,
+    val sizeBytes: Long
+) {
+    val hitRate: Double get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+}
+
+/**
+ * Дисковый LRU-кэш синтезированной речи, адресуемый содержимым запроса.
+ *
+ * Ключ — SHA-256 от (нормализованный текст, голос, скорость, язык): дайджесты,
+ * напоминания и повторяющиеся фразы ассистента синтезируются один раз,
+ * повтор играет из файла без сети.
+ *
+ * - Запись атомарна: tmp-файл → rename, рядом `.sum` с SHA-256 аудио
+ * - Чтение сверяет контрольную сумму; битая или недописанная запись удаляется
+ * - Порядок LRU — по времени последнего доступа (mtime), сверх [maxBytes]
+ *   вытесняются самые старые
+ * - Файл из [get] отдаётся вне блокировки: записи, тронутые за последние
+ *   [IN_USE_GRACE_MS], не вытесняются, пока плеер их открывает
+ */
+@Singleton
+class TtsAudioCache(
+    private val directory: File,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    @Inject
+    constructor(@ApplicationContext context: Context) : this(File(context.cacheDir, "tts"))
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val corrupted = AtomicLong()
+    private val evicted = AtomicLong()
+    private val bytesServed = AtomicLong()
+
+    /**
+     * Проверенный файл аудио или null. Попадание обновляет позицию в LRU
+     */
+    fun get(key: String): File? = synchronized(this) {
+        val audio = audioFile(key)
+        val sum = sumFile(key)
+        if (!audio.exists()) {
+            misses.incrementAndGet()
+            return null
+        }
+        val valid = try {
+            val expected = sum.readText().trim()
+            expected.isNotEmpty() && expected == sha256(audio)
+        } catch (e: IOException) {
+            false
+        }
+        if (!valid) {
+            Timber.w("TtsCache: integrity check failed for $key, dropping entry")
+            audio.delete()
+            sum.delete()
+            corrupted.incrementAndGet()
+            misses.incrementAndGet()
+            return null
+        }
+        val now = clock()
+        audio.setLastModified(now)
+        sum.setLastModified(now)
+        hits.incrementAndGet()
+        bytesServed.addAndGet(audio.length())
+        audio
+    }
+
+    /**
+     * Сохраняет синтезированное аудио. null — не удалось записать (нет места и т.п.),
+     * кэш при этом остаётся согласованным
+     */
+    fun put(key: String, bytes: ByteArray): File? = synchronized(this) {
+        if (bytes.isEmpty() || bytes.size > maxBytes) return null
+        val audio = audioFile(key)
+        val sum = sumFile(key)
+        val audioTmp = File(directory, "$key.$AUDIO_EXT.tmp")
+        val sumTmp = File(directory, "$key.$SUM_EXT.tmp")
+        try {
+            directory.mkdirs()
+            audioTmp.writeBytes(bytes)
+            sumTmp.writeText(sha256(bytes))
+            // Сначала аудио: .sum без аудио не бывает, аудио без .sum — битая запись
+            if (!audioTmp.renameTo(audio) || !sumTmp.renameTo(sum)) {
+                throw IOException("rename failed")
+            }
+            val now = clock()
+            audio.setLastModified(now)
+            sum.setLastModified(now)
+            trimToSize()
+            if (audio.exists()) audio else null
+        } catch (e: IOException) {
+            Timber.w(e, "TtsCache: failed to store $key")
+            audioTmp.delete()
+            sumTmp.delete()
+            audio.delete()
+            sum.delete()
+            null
+        }
+    }
+
+    fun stats(): TtsCacheStats = synchronized(this) {
+        val files = audioEntries()
+        TtsCacheStats(
+            hits = hits.get(),
+            misses = misses.get(),
+            corrupted = corrupted.get(),
+            evicted = evicted.get(),
+            bytesServed = bytesServed.get(),
+            entries = files.size,
+            sizeBytes = directory.listFiles()?.sumOf { it.length() } ?: 0L
+        )
+    }
+
+    fun clear() = synchronized(this) {
+        directory.listFiles()?.forEach { it.delete() }
+    }
+
+    private fun trimToSize() {
+        val files = directory.listFiles() ?: return
+        // Недописанные tmp от прошлых процессов и сироты без пары тоже в счёт
+        var size = files.sumOf { it.length() }
+        if (size <= maxBytes) return
+        // Свежие записи только что отданы из get/put — их может открывать плеер.
+        // Кэш временно превысит лимит, следующая запись дочистит
+        val inUseSince = clock() - IN_USE_GRACE_MS
+        val byAge = audioEntries()
+            .filter { it.lastModified() < inUseSince }
+            .sortedBy { it.lastModified() }
+        for (audio in byAge) {
+            if (size <= maxBytes) break
+            val key = audio.name.removeSuffix(".$AUDIO_EXT")
+            val sum = sumFile(key)
+            size -= audio.length() + sum.length()
+            audio.delete()
+            sum.delete()
+            evicted.incrementAndGet()
+        }
+        Timber.d("TtsCache: trimmed to $size bytes")
+    }
+
+    private fun audioEntries(): List<File> =
+        directory.listFiles { file -> file.name.endsWith(".$AUDIO_EXT") }?.toList().orEmpty()
+
+    private fun audioFile(key: String) = File(directory, "$key.$AUDIO_EXT")
+
+    private fun sumFile(key: String) = File(directory, "$key.$SUM_EXT")
+
+    companion object {
+        /** ~30 минут речи в MP3 на 64 кбит/с */
+        const val DEFAULT_MAX_BYTES = 16L * 1024 * 1024
+
+        /** Сколько после обращения запись считается открываемой и не вытесняется */
+        const val IN_USE_GRACE_MS = 5_000L
+
+        private const val AUDIO_EXT = "mp3"
+        private const val SUM_EXT = "sum"
+        private const val KEY_VERSION = "v1"
+        private val WHITESPACE = Regex("\\s+")
+
+        /**
+         * Ключ кэша. Текст нормализуется (Unicode NFC, пробелы), чтобы одна и та же
+         * фраза из разных мест давала один ключ; регистр не трогаем — он влияет на интонацию
+         */
+        fun key(text: String, voice: String, speed: Float, language: String): String {
+            val normalized = Normalizer.normalize(text, Normalizer.Form.NFC)
+                .replace(WHITESPACE, " ")
+                .trim()
+            val speedKey = String.format(Locale.US, "%.2f", speed)
+            return sha256("$KEY_VERSION\n$voice\n$speedKey\n$language\n$normalized".toByteArray())
+        }
+
+        private fun sha256(bytes: ByteArray): String =
+            MessageDigest.getInstance("SHA-256").digest(bytes).toHex()
+
+        private fun sha256(file: File): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            file.inputStream().use { input ->
+                val buffer = ByteArray(8 * 1024)
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    digest.update(buffer, 0, read)
+                }
+            }
+            return digest.digest().toHex()
+        }
+
+        private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
+    }
+}
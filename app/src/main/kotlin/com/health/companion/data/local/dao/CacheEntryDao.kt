@@ -0,0 +1,30 @@
+package com.health.companion.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.health.companion.data.local.database.CacheEntryEntity
+
+@Dao
+interface CacheEntryDao {
+    
+    @Query("SELECT * FROM cache_entries WHERE `key` = :key")
+    suspend fun get(key: String): CacheEntryEntity?
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsert(entry: CacheEntryEntity)
+    
+    /** Помечает запись устаревшей, но оставляет payload для мгновенной отрисовки */
+    @Query("UPDATE cache_entries SET fetchedAt = 0 WHERE `key` = :key")
+    suspend fun expire(key: String)
+    
+    @Query("UPDATE cache_entries SET fetchedAt = 0 WHERE `key` LIKE :prefix || '%'")
+    suspend fun expireByPrefix(prefix: String)
+    
+    @Query("DELETE FROM cache_entries WHERE `key` = :key")
+    suspend fun delete(key: String)
+    
+    @Query("DELETE FROM cache_entries")
+    suspend fun deleteAll()
+}
@@ -4,7 +4,9 @@ import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
+import androidx.room.Transaction
 import com.health.companion.data.local.database.ChatMessageEntity
+import com.health.companion.data.local.database.ConversationEntity
 import kotlinx.coroutines.flow.Flow
 
 @Dao
@@ -16,18 +18,97 @@ interface ChatMessageDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insertAll(messages: List<ChatMessageEntity>)
     
+    /**
+     * IGNORE, не REPLACE: REPLACE удаляет строку и каскадно сносит все сообщения диалога
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertConversationIfAbsent(conversation: ConversationEntity)
+    
+    @Query("UPDATE conversations SET updatedAt = :timestamp, lastMessageAt = :timestamp WHERE id = :conversationId")
+    suspend fun touchConversation(conversationId: String, timestamp: Long)
+    
+    /**
+     * Один ход чата (диалог + сообщения + время диалога) одной транзакцией.
+     * Room шлёт invalidation после commit, поэтому Flow списка чатов и сообщений
+     * эмитят один раз на ход, а не на каждый insert.
+     */
+    @Transaction
+    suspend fun insertChatTurn(
+        conversation: ConversationEntity,
+        messages: List<ChatMessageEntity>,
+        timestamp: Long
+    ) {
+        insertConversationIfAbsent(conversation)
+        insertAll(messages)
+        touchConversation(conversation.id, timestamp)
+    }
+    
+    /**
+     * Синхронизация с сервером: строки с локальными client id заменяются серверными
+     * в той же транзакции, без дублей
+     */
+    @Transaction
+    suspend fun insertAllAndTouch(
+        conversationId: String,
+        messages: List<ChatMessageEntity>,
+        timestamp: Long,
+        replacedIds: List<String> = emptyList()
+    ) {
+        if (replacedIds.isNotEmpty()) deleteByIds(replacedIds)
+        insertAll(messages)
+        touchConversation(conversationId, timestamp)
+    }
+    
+    @Query("UPDATE chat_messages SET conversationId = :newConversationId WHERE conversationId = :oldConversationId")
+    suspend fun moveMessages(oldConversationId: String, newConversationId: String)
+    
+    @Query("DELETE FROM conversations WHERE id = :conversationId")
+    suspend fun deleteConversationById(conversationId: String)
+    
+    /**
+     * Доставка офлайн-сообщения из outbox: заглушка «Режим офлайн» заменяется
+     * настоящим ответом, а локальный диалог (если сервер выдал свой id) переезжает
+     * под серверный id — всё одной транзакцией
+     */
+    @Transaction
+    suspend fun replaceOfflinePlaceholder(
+        localConversationId: String,
+        conversation: ConversationEntity,
+        placeholderId: String,
+        assistantMessage: ChatMessageEntity,
+        timestamp: Long
+    ) {
+        if (localConversationId != conversation.id) {
+            insertConversationIfAbsent(conversation)
+            moveMessages(localConversationId, conversation.id)
+            deleteConversationById(localConversationId)
+        }
+        deleteById(placeholderId)
+        insert(assistantMessage)
+        touchConversation(conversation.id, timestamp)
+    }
+    
     @Query("SELECT * FROM chat_messages WHERE conversationId = :conversationId ORDER BY createdAt ASC")
     fun getMessagesFlow(conversationId: String): Flow<List<ChatMessageEntity>>
     
     @Query("SELECT * FROM chat_messages WHERE conversationId = :conversationId ORDER BY createdAt ASC")
     suspend fun getMessages(conversationId: String): List<ChatMessageEntity>
     
+    @Query("SELECT MAX(createdAt) FROM chat_messages WHERE conversationId = :conversationId")
+    suspend fun getLatestMessageTime(conversationId: String): Long?
+    
     @Query("DELETE FROM chat_messages WHERE conversationId = :conversationId")
     suspend fun deleteByConversation(conversationId: String)
     
+    @Query("UPDATE chat_messages SET imageBlurHash = :blurHash WHERE id = :messageId")
+    suspend fun updateImageBlurHash(messageId: String, blurHash: String)
+
     @Query("DELETE FROM chat_messages WHERE id = :messageId")
     suspend fun deleteById(messageId: String)
     
+    @Query("DELETE FROM chat_messages WHERE id IN (:messageIds)")
+    suspend fun deleteByIds(messageIds: List<String>)
+    
     @Query("DELETE FROM chat_messages")
     suspend fun deleteAll()
 }
@@ -1,10 +1,12 @@
 package com.health.companion.data.local.dao
 
+import androidx.paging.PagingSource
 import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
 import androidx.room.Update
+import androidx.room.Upsert
 import com.health.companion.data.local.database.ConversationEntity
 import kotlinx.coroutines.flow.Flow
 
@@ -14,14 +16,63 @@ interface ConversationDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     suspend fun insert(conversation: ConversationEntity)
     
+    /**
+     * Upsert без DELETE+INSERT: rowid не меняется (FTS-индекс не перестраивается),
+     * каскад на сообщения не срабатывает
+     */
+    @Upsert
+    suspend fun upsertAll(conversations: List<ConversationEntity>)
+    
     @Update
     suspend fun update(conversation: ConversationEntity)
     
-    @Query("SELECT * FROM conversations ORDER BY COALESCE(lastMessageAt, updatedAt) DESC")
-    fun getAllConversationsFlow(): Flow<List<ConversationEntity>>
+    @Query("SELECT id FROM conversations")
+    suspend fun getAllIds(): List<String>
+    
+    @Query("SELECT * FROM conversations WHERE isArchived = 0 ORDER BY lastMessageAt DESC LIMIT :limit")
+    suspend fun getRecentConversations(limit: Int): List<ConversationEntity>
+    
+    // ═══════════════════════════════════════════════════════════
+    // Шторка сессий: секции идут по индексу (isArchived, isPinned, lastMessageAt)
+    // ═══════════════════════════════════════════════════════════
+    
+    @Query("SELECT * FROM conversations WHERE isArchived = 0 AND isPinned = 0 ORDER BY lastMessageAt DESC")
+    fun pagingActive(): PagingSource<Int, ConversationEntity>
+    
+    @Query("SELECT * FROM conversations WHERE isArchived = 1 ORDER BY lastMessageAt DESC")
+    fun pagingArchived(): PagingSource<Int, ConversationEntity>
+    
+    @Query("SELECT * FROM conversations WHERE isArchived = 0 AND isPinned = 1 ORDER BY lastMessageAt DESC")
+    fun observePinned(): Flow<List<ConversationEntity>>
     
-    @Query("SELECT * FROM conversations ORDER BY COALESCE(lastMessageAt, updatedAt) DESC")
-    suspend fun getAllConversations(): List<ConversationEntity>
+    /**
+     * Поиск по названию и саммари. [match] — готовое FTS-выражение (см. ChatRepositoryImpl.toFtsQuery)
+     */
+    @Query(
+        """
+        SELECT conversations.* FROM conversations
+        JOIN conversations_fts ON conversations.rowid = conversations_fts.rowid
+        WHERE conversations_fts MATCH :match
+        ORDER BY conversations.isArchived ASC, conversations.isPinned DESC, conversations.lastMessageAt DESC
+        """
+    )
+    fun pagingSearch(match: String): PagingSource<Int, ConversationEntity>
+    
+    @Query("SELECT COUNT(*) FROM conversations WHERE isArchived = 0")
+    fun observeActiveCount(): Flow<Int>
+    
+    @Query("SELECT COUNT(*) FROM conversations WHERE isArchived = 1")
+    fun observeArchivedCount(): Flow<Int>
+    
+    @Query("SELECT * FROM conversations WHERE isArchived = 0 ORDER BY lastMessageAt DESC LIMIT 1")
+    fun observeMostRecent(): Flow<ConversationEntity?>
+    
+    @Query("UPDATE conversations SET isPinned = :pinned WHERE id = :conversationId")
+    suspend fun setPinned(conversationId: String, pinned: Boolean)
+    
+    /** Архивный диалог не может быть закреплён */
+    @Query("UPDATE conversations SET isArchived = :archived, isPinned = CASE WHEN :archived THEN 0 ELSE isPinned END WHERE id = :conversationId")
+    suspend fun setArchived(conversationId: String, archived: Boolean)
     
     @Query("SELECT * FROM conversations WHERE id = :conversationId")
     suspend fun getConversationById(conversationId: String): ConversationEntity?
@@ -29,6 +80,9 @@ interface ConversationDao {
     @Query("DELETE FROM conversations WHERE id = :conversationId")
     suspend fun deleteById(conversationId: String)
 
+    @Query("DELETE FROM conversations WHERE id IN (:ids)")
+    suspend fun deleteByIds(ids: List<String>)
+    
     @Query("UPDATE conversations SET updatedAt = :updatedAt, lastMessageAt = :updatedAt WHERE id = :conversationId")
     suspend fun updateUpdatedAt(conversationId: String, updatedAt: Long)
     
@@ -0,0 +1,45 @@
+package com.health.companion.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.health.companion.data.local.database.OutboxOperationEntity
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+interface OutboxDao {
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insert(operation: OutboxOperationEntity)
+    
+    @Query("SELECT * FROM outbox ORDER BY createdAt ASC LIMIT :limit")
+    suspend fun getBatch(limit: Int): List<OutboxOperationEntity>
+    
+    @Query("SELECT COUNT(*) FROM outbox")
+    fun getCountFlow(): Flow<Int>
+    
+    @Query("SELECT payload FROM outbox WHERE type = :type")
+    suspend fun getPayloads(type: String): List<String>
+    
+    @Query("SELECT DISTINCT targetId FROM outbox WHERE targetId IS NOT NULL")
+    suspend fun getTargetIds(): List<String>
+    
+    @Query("SELECT DISTINCT targetId FROM outbox WHERE type = :type AND targetId IS NOT NULL")
+    suspend fun getTargetIdsByType(type: String): List<String>
+    
+    @Query("SELECT COUNT(*) FROM outbox")
+    suspend fun getCount(): Int
+    
+    @Query("UPDATE outbox SET attempts = attempts + 1, lastError = :error WHERE id = :operationId")
+    suspend fun markAttemptFailed(operationId: String, error: String?)
+    
+    @Query("UPDATE outbox SET targetId = :newTargetId WHERE targetId = :oldTargetId")
+    suspend fun remapTarget(oldTargetId: String, newTargetId: String)
+    
+    @Query("DELETE FROM outbox WHERE id = :operationId")
+    suspend fun deleteById(operationId: String)
+    
+    @Query("DELETE FROM outbox")
+    suspend fun deleteAll()
+}
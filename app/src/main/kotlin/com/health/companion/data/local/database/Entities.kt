@@ -2,23 +2,46 @@ package com.health.companion.data.local.database
 
 import androidx.room.Entity
 import androidx.room.ForeignKey
+import androidx.room.Fts4
+import androidx.room.FtsOptions
 import androidx.room.Index
 import androidx.room.PrimaryKey
 import java.util.UUID
 
-@Entity(tableName = "conversations")
+/**
+ * Индекс (isArchived, isPinned, lastMessageAt) отдаёт секции шторки сразу в порядке сортировки —
+ * поэтому lastMessageAt всегда заполнен (для пустого диалога = updatedAt), без COALESCE в ORDER BY
+ */
+@Entity(
+    tableName = "conversations",
+    indices = [
+        Index(value = ["isArchived", "isPinned", "lastMessageAt"]),
+        Index("lastMessageAt")
+    ]
+)
 data class ConversationEntity(
     @PrimaryKey
     val id: String = UUID.randomUUID().toString(),
     val title: String,
     val createdAt: Long = System.currentTimeMillis(),
     val updatedAt: Long = System.currentTimeMillis(),
-    val lastMessageAt: Long? = null,  // Время последнего сообщения
+    val lastMessageAt: Long = updatedAt,  // Время последнего сообщения
     val isArchived: Boolean = false,
     val isPinned: Boolean = false,
     val summary: String? = null
 )
 
+/**
+ * Полнотекстовый индекс по названию и саммари диалогов.
+ * External content: строки живут в conversations, Room сам держит триггеры синхронизации
+ */
+@Fts4(contentEntity = ConversationEntity::class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "conversations_fts")
+data class ConversationFtsEntity(
+    val title: String,
+    val summary: String?
+)
+
 @Entity(
     tableName = "chat_messages",
     foreignKeys = [
@@ -47,6 +70,7 @@ data class ChatMessageEntity(
     val processingTime: Int? = null,
     val createdAt: Long = System.currentTimeMillis(),
     val imageUrl: String? = null,  // URL сгенерированного AI изображения
+    val imageBlurHash: String? = null,  // BlurHash-заглушка для imageUrl
     val images: String? = null  // JSON array URLs прикреплённых пользователем изображений
 )
 
@@ -83,3 +107,35 @@ data class DocumentEntity(
     val filePath: String,
     val uploadedAt: Long = System.currentTimeMillis()
 )
+
+/**
+ * Офлайн-очередь исходящих операций (сообщения чата, настроение, привычки, метрики).
+ * Отправляется по порядку createdAt через OutboxWorker
+ */
+@Entity(
+    tableName = "outbox",
+    indices = [Index("createdAt"), Index("targetId")]
+)
+data class OutboxOperationEntity(
+    @PrimaryKey
+    val id: String = UUID.randomUUID().toString(),
+    val type: String, // OutboxOperationType.name
+    val payload: String, // JSON тела запроса
+    val targetId: String? = null, // conversationId / habitId — для перепривязки после синка
+    val attempts: Int = 0,
+    val lastError: String? = null,
+    val createdAt: Long = System.currentTimeMillis()
+)
+
+/**
+ * Персистентный кэш ответов API для stale-while-revalidate (см. CacheStore).
+ * payload — JSON ответа; запись устаревает через ttlMs после fetchedAt
+ */
+@Entity(tableName = "cache_entries")
+data class CacheEntryEntity(
+    @PrimaryKey
+    val key: String,
+    val payload: String,
+    val fetchedAt: Long = System.currentTimeMillis(),
+    val ttlMs: Long
+)
@@ -3,21 +3,26 @@ package com.health.companion.data.local.database
 import androidx.room.Database
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import com.health.companion.data.local.dao.CacheEntryDao
 import com.health.companion.data.local.dao.ChatMessageDao
 import com.health.companion.data.local.dao.ConversationDao
 import com.health.companion.data.local.dao.DocumentDao
 import com.health.companion.data.local.dao.HealthMetricDao
 import com.health.companion.data.local.dao.MoodEntryDao
+import com.health.companion.data.local.dao.OutboxDao
 
 @Database(
     entities = [
         ConversationEntity::class,
+        ConversationFtsEntity::class,
         ChatMessageEntity::class,
         HealthMetricEntity::class,
         MoodEntryEntity::class,
-        DocumentEntity::class
+        DocumentEntity::class,
+        OutboxOperationEntity::class,
+        CacheEntryEntity::class
     ],
-    version = 6,
+    version = 10,
     exportSchema = false
 )
 @TypeConverters(Converters::class)
@@ -27,4 +32,6 @@ abstract class HealthCompanionDatabase : RoomDatabase() {
     abstract fun healthMetricDao(): HealthMetricDao
     abstract fun moodEntryDao(): MoodEntryDao
     abstract fun documentDao(): DocumentDao
+    abstract fun outboxDao(): OutboxDao
+    abstract fun cacheEntryDao(): CacheEntryDao
 }
@@ -0,0 +1,242 @@
+package com.health.companion.data.remote
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.Network
+import android.net.NetworkCapabilities
+import com.health.companion.BuildConfig
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.security.MessageDigest
+import java.util.Base64
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Сервер отклонил загрузку окончательно (4xx) — повтор не поможет
+ */
+class UploadRejectedException(val code: Int, message: String) : Exception(message)
+
+/**
+ * Докачиваемая загрузка аудио частями через /voice/uploads (протокол в духе tus).
+ *
+ * Протокол:
+ * - `POST /voice/uploads` `{file_name, mime_type, size, sha256}` → `{upload_id, offset, chunk_size}`
+ * - `HEAD /voice/uploads/{id}` → заголовок `Upload-Offset`: сколько байт сервер уже принял
+ * - `PATCH /voice/uploads/{id}` c `Upload-Offset` и `Upload-Checksum: sha256 <base64>` — одна часть;
+ *   409 — смещение разошлось, 460 — часть пришла битой
+ *
+ * Обрыв не начинает загрузку заново: ждём сеть, спрашиваем у сервера смещение
+ * и продолжаем с него. Сессии помнятся по SHA-256 файла — повторная загрузка
+ * тех же байт продолжит незавершённую
+ */
+@Singleton
+class ResumableAudioUploader(
+    private val okHttpClient: OkHttpClient,
+    private val endpoint: String,
+    private val awaitNetwork: suspend () -> Boolean,
+    private val retryDelayMs: Long = RETRY_DELAY_MS
+) {
+    @Inject
+    constructor(okHttpClient: OkHttpClient, @ApplicationContext context: Context) :
+        this(okHttpClient, "${BuildConfig.API_BASE_URL}/voice/uploads", { awaitValidatedNetwork(context) })
+
+    private val json = Json { ignoreUnknownKeys = true }
+    private val sessions = ConcurrentHashMap<String, UploadSession>()
+
+    /**
+     * Загружает [file] частями и возвращает id загрузки для `/voice/uploads/{id}/…`.
+     * null — сервер не умеет докачку, файл нужно слать обычным multipart.
+     *
+     * IOException — сеть так и не появилась или сервер [MAX_FAILURES] раз подряд
+     * не принял часть; принятые байты при следующем вызове повторно не уйдут.
+     *
+     * [waitForNetwork] = false — интерактивный путь: первая же сетевая ошибка
+     * уходит наружу без backoff и ожидания сети, докачку продолжит фоновый повтор
+     */
+    suspend fun upload(
+        file: File,
+        mimeType: String,
+        waitForNetwork: Boolean = true
+    ): String? = withContext(Dispatchers.IO) {
+        val size = file.length()
+        val checksum = sha256Hex(file)
+        var session = sessions[checksum]
+        // null — спросить у сервера (HEAD), сессия могла продвинуться или истечь
+        var offset: Long? = null
+        var failures = 0
+
+        RandomAccessFile(file, "r").use { raf ->
+            while (true) {
+                ensureActive()
+                try {
+                    val current = session
+                        ?: createSession(file.name, mimeType, size, checksum)
+                            ?.also { sessions[checksum] = it; offset = it.offset }
+                        ?: return@withContext null
+                    session = current
+
+                    val from = offset ?: queryOffset(current.id)
+                    if (from == null) {
+                        Timber.d("ResumableUpload: session ${current.id} expired, starting over")
+                        sessions.remove(checksum)
+                        session = null
+                        continue
+                    }
+                    if (from >= size) break
+
+                    val chunkSize = (current.chunkSize ?: DEFAULT_CHUNK_SIZE).coerceIn(MIN_CHUNK_SIZE, MAX_CHUNK_SIZE)
+                    val chunk = ByteArray(minOf(chunkSize.toLong(), size - from).toInt())
+                    raf.seek(from)
+                    raf.readFully(chunk)
+                    offset = sendChunk(current.id, from, chunk)
+                    failures = 0
+                } catch (e: IOException) {
+                    failures++
+                    if (!waitForNetwork || failures > MAX_FAILURES) throw e
+                    Timber.w("ResumableUpload: attempt $failures failed (${e.message}), waiting for network")
+                    delay(retryDelayMs * failures)
+                    if (!awaitNetwork()) throw e
+                    offset = null
+                }
+            }
+        }
+        Timber.d("ResumableUpload: ${file.name} uploaded ($size bytes)")
+        session?.id
+    }
+
+    private fun createSession(fileName: String, mimeType: String, size: Long, checksum: String): UploadSession? {
+        val payload = json.encodeToString(CreateUploadRequest.serializer(), CreateUploadRequest(fileName, mimeType, size, checksum))
+        val request = Request.Builder()
+            .url(endpoint)
+            .post(payload.toRequestBody(JSON_MEDIA_TYPE))
+            .build()
+        okHttpClient.newCall(request).execute().use { response ->
+            if (response.code in UNSUPPORTED_CODES) return null
+            checkResponse(response.code, "create")
+            val body = response.body?.string() ?: throw IOException("Пустой ответ")
+            return json.decodeFromString(UploadSession.serializer(), body)
+        }
+    }
+
+    /** Сколько байт сервер уже принял; null — сессии больше нет */
+    private fun queryOffset(uploadId: String): Long? {
+        val request = Request.Builder().url("$endpoint/$uploadId").head().build()
+        okHttpClient.newCall(request).execute().use { response ->
+            if (response.code == 404 || response.code == 410) return null
+            checkResponse(response.code, "offset")
+            return response.header(HEADER_OFFSET)?.toLongOrNull()
+                ?: throw IOException("No $HEADER_OFFSET in response")
+        }
+    }
+
+    /** Новое смещение по ответу сервера */
+    private fun sendChunk(uploadId: String, offset: Long, chunk: ByteArray): Long {
+        val digest = MessageDigest.getInstance("SHA-256").digest(chunk)
+        val request = Request.Builder()
+            .url("$endpoint/$uploadId")
+            .header(HEADER_OFFSET, offset.toString())
+            .header(HEADER_CHECKSUM, "sha256 ${Base64.getEncoder().encodeToString(digest)}")
+            .patch(chunk.toRequestBody(CHUNK_MEDIA_TYPE))
+            .build()
+        okHttpClient.newCall(request).execute().use { response ->
+            checkResponse(response.code, "chunk at $offset")
+            return response.header(HEADER_OFFSET)?.toLongOrNull() ?: (offset + chunk.size)
+        }
+    }
+
+    /**
+     * Временные ошибки (сеть, 5xx, 408/429, 409/460/404 по части) — IOException, их
+     * переживает цикл в [upload]; прочие 4xx — [UploadRejectedException]
+     */
+    private fun checkResponse(code: Int, step: String) {
+        if (code in 200..299) return
+        if (code in 400..499 && code !in RETRYABLE_CLIENT_CODES) {
+            throw UploadRejectedException(code, "Upload $step rejected: $code")
+        }
+        throw IOException("Upload $step failed: $code")
+    }
+
+    @Serializable
+    private data class CreateUploadRequest(
+        @SerialName("file_name") val fileName: String,
+        @SerialName("mime_type") val mimeType: String,
+        val size: Long,
+        val sha256: String
+    )
+
+    @Serializable
+    private data class UploadSession(
+        @SerialName("upload_id") val id: String,
+        val offset: Long = 0,
+        @SerialName("chunk_size") val chunkSize: Int? = null
+    )
+
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 256 * 1024
+        private const val MIN_CHUNK_SIZE = 64 * 1024
+        private const val MAX_CHUNK_SIZE = 8 * 1024 * 1024
+        private const val MAX_FAILURES = 6
+        private const val RETRY_DELAY_MS = 1_000L
+
+        /** Сколько ждём появления сети после обрыва */
+        private const val NETWORK_WAIT_MS = 2 * 60_000L
+
+        private const val HEADER_OFFSET = "Upload-Offset"
+        private const val HEADER_CHECKSUM = "Upload-Checksum"
+        private val JSON_MEDIA_TYPE = "application/json".toMediaType()
+        private val CHUNK_MEDIA_TYPE = "application/offset+octet-stream".toMediaType()
+        private val UNSUPPORTED_CODES = setOf(404, 405, 501)
+        private val RETRYABLE_CLIENT_CODES = setOf(404, 408, 409, 410, 429, 460)
+
+        private fun sha256Hex(file: File): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            file.inputStream().use { input ->
+                val buffer = ByteArray(64 * 1024)
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    digest.update(buffer, 0, read)
+                }
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+
+        /** Ждёт сеть с подтверждённым доступом в интернет; false — не дождались */
+        private suspend fun awaitValidatedNetwork(context: Context): Boolean {
+            val manager = context.getSystemService(ConnectivityManager::class.java) ?: return true
+            val available = CompletableDeferred<Unit>()
+            val callback = object : ConnectivityManager.NetworkCallback() {
+                override fun onCapabilitiesChanged(network: Network, capabilities: NetworkCapabilities) {
+                    if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+                        available.complete(Unit)
+                    }
+                }
+            }
+            // Текущая сеть, если она есть, приходит в колбэк сразу после регистрации
+            manager.registerDefaultNetworkCallback(callback)
+            return try {
+                withTimeoutOrNull(NETWORK_WAIT_MS) { available.await() } != null
+            } finally {
+                manager.unregisterNetworkCallback(callback)
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.health.companion.data.remote
+
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import okio.source
+import java.io.InputStream
+
+/**
+ * Тело запроса, которое читается из потока частями по [CHUNK_SIZE] прямо в сокет:
+ * память на загрузку не зависит от размера файла.
+ *
+ * Поток открывается заново на каждый [writeTo] — OkHttp может повторить запрос.
+ * [onProgress] получает (отправлено, всего) не чаще чем на каждый процент;
+ * при неизвестной длине (-1) — после каждой части.
+ *
+ * Отправлять через @StreamingHttp-клиент: HttpLoggingInterceptor уровня BODY
+ * вычитал бы всё тело в буфер до отправки
+ */
+class StreamingRequestBody(
+    private val contentType: MediaType?,
+    private val contentLength: Long,
+    private val openStream: () -> InputStream,
+    private val onProgress: (sent: Long, total: Long) -> Unit = { _, _ -> }
+) : RequestBody() {
+
+    override fun contentType(): MediaType? = contentType
+
+    override fun contentLength(): Long = contentLength
+
+    override fun writeTo(sink: BufferedSink) {
+        openStream().source().use { source ->
+            var sent = 0L
+            var reportedPercent = 0L
+            onProgress(0, contentLength)
+            while (true) {
+                val read = source.read(sink.buffer, CHUNK_SIZE)
+                if (read == -1L) break
+                sink.emitCompleteSegments()
+                sent += read
+                if (contentLength > 0) {
+                    val percent = sent * 100 / contentLength
+                    if (percent != reportedPercent) {
+                        reportedPercent = percent
+                        onProgress(sent, contentLength)
+                    }
+                } else {
+                    onProgress(sent, contentLength)
+                }
+            }
+        }
+    }
+
+    companion object {
+        const val CHUNK_SIZE = 8 * 1024L
+    }
+}
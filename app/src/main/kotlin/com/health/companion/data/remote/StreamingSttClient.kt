@@ -0,0 +1,138 @@
+package com.health.companion.data.remote
+
+import com.health.companion.BuildConfig
+import com.health.companion.ml.voice.PcmAudio
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.launch
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okio.ByteString.Companion.toByteString
+import timber.log.Timber
+import java.io.IOException
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Событие стримингового распознавания
+ */
+sealed interface TranscriptEvent {
+    /** Промежуточный текст — может меняться, пока пользователь говорит */
+    data class Partial(val text: String) : TranscriptEvent
+
+    /** Итоговый текст после конца речи */
+    data class Final(val text: String) : TranscriptEvent
+}
+
+@Serializable
+private data class SttServerMessage(
+    val type: String,
+    val text: String = "",
+    val message: String? = null
+)
+
+/**
+ * Стриминговый STT через WebSocket /voice/transcribe/stream.
+ *
+ * Протокол:
+ * - клиент: `{"type":"start",...}` → бинарные кадры PCM16 LE → `{"type":"end"}`
+ * - сервер: `{"type":"partial","text":...}`* → `{"type":"final","text":...}`
+ *
+ * Сервер распознаёт по ходу записи, поэтому после `end` остаётся дораспознать
+ * только хвост — финал приходит за сотни миллисекунд, а не за upload + весь Whisper
+ */
+@Singleton
+class StreamingSttClient(
+    private val okHttpClient: OkHttpClient,
+    private val endpoint: String
+) {
+    @Inject
+    constructor(okHttpClient: OkHttpClient) : this(okHttpClient, "${BuildConfig.API_BASE_URL}/voice/transcribe/stream")
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    /**
+     * Отправляет кадры [frames] по мере записи. Поток событий завершается после [TranscriptEvent.Final];
+     * обрыв или `{"type":"error"}` от сервера — исключение
+     */
+    fun transcribe(frames: Flow<ShortArray>, language: String, sampleRate: Int): Flow<TranscriptEvent> = callbackFlow {
+        val opened = CompletableDeferred<Unit>()
+        val listener = object : WebSocketListener() {
+            override fun onOpen(webSocket: WebSocket, response: Response) {
+                opened.complete(Unit)
+            }
+
+            override fun onMessage(webSocket: WebSocket, text: String) {
+                val message = try {
+                    json.decodeFromString(SttServerMessage.serializer(), text)
+                } catch (e: Exception) {
+                    Timber.w(e, "StreamingStt: bad message $text")
+                    return
+                }
+                when (message.type) {
+                    "partial" -> trySend(TranscriptEvent.Partial(message.text))
+                    "final" -> {
+                        trySend(TranscriptEvent.Final(message.text))
+                        close()
+                    }
+                    "error" -> close(IOException(message.message ?: "Streaming STT error"))
+                }
+            }
+
+            override fun onFailure(webSocket: WebSocket, t: Throwable, response: Response?) {
+                Timber.w(t, "StreamingStt: failure ${response?.code}")
+                opened.completeExceptionally(t)
+                close(t)
+            }
+
+            override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+                // Сервер закрыл первым: отвечаем сразу, иначе onClosed ждёт нашего close,
+                // а запасная загрузка файла — STREAM_FINAL_TIMEOUT_MS
+                webSocket.close(code, null)
+                close(IOException("Closed before final transcript: $code $reason"))
+            }
+
+            override fun onClosed(webSocket: WebSocket, code: Int, reason: String) {
+                close(IOException("Closed before final transcript: $code $reason"))
+            }
+        }
+
+        val webSocket = okHttpClient.newWebSocket(Request.Builder().url(endpoint).build(), listener)
+
+        val sender = launch {
+            opened.await()
+            val start = buildJsonObject {
+                put("type", "start")
+                put("language", language)
+                put("sample_rate", sampleRate)
+                put("encoding", "pcm_s16le")
+            }
+            webSocket.send(start.toString())
+            frames.collect { frame ->
+                if (!webSocket.send(PcmAudio.toLittleEndianBytes(frame).toByteString())) {
+                    throw IOException("WebSocket send queue closed")
+                }
+            }
+            webSocket.send(END_MESSAGE)
+        }
+
+        awaitClose {
+            sender.cancel()
+            webSocket.close(NORMAL_CLOSURE, null)
+        }
+    }
+
+    companion object {
+        private const val NORMAL_CLOSURE = 1000
+        private const val END_MESSAGE = """{"type":"end"}"""
+    }
+}
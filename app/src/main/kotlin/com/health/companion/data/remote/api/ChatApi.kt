@@ -5,6 +5,7 @@ import kotlinx.serialization.Serializable
 import retrofit2.http.Body
 import retrofit2.http.DELETE
 import retrofit2.http.GET
+import retrofit2.http.PATCH
 import retrofit2.http.POST
 import retrofit2.http.Path
 import retrofit2.http.Query
@@ -20,9 +21,19 @@ interface ChatApi {
     @GET("chat/conversations")
     suspend fun getConversations(
         @Query("size") size: Int = 100,  // Загружаем больше за раз
-        @Query("page") page: Int = 1
+        @Query("page") page: Int = 1,
+        @Query("search") search: String? = null  // Поиск по названию и саммари на сервере
     ): ConversationsResponse
     
+    /**
+     * Закрепление / архивация сессии
+     */
+    @PATCH("chat/conversations/{conversationId}")
+    suspend fun updateConversation(
+        @Path("conversationId") conversationId: String,
+        @Body request: UpdateConversationRequest
+    ): ConversationDTO
+    
     @GET("chat/conversations/{conversationId}/messages")
     suspend fun getMessages(@Path("conversationId") conversationId: String): List<MessageDTO>
     
@@ -69,6 +80,7 @@ data class ConversationsResponse(
 data class ChatMessageRequest(
     val message: String,
     val conversation_id: String? = null,
+    val client_message_id: String? = null,  // Idempotency key, сервер возвращает его в MessageDTO.clientMessageId
     val images: List<String>? = null,
     val document_ids: List<String>? = null,
     val force_agent: String? = null,
@@ -80,6 +92,12 @@ data class CreateConversationRequest(
     val title: String? = null
 )
 
+@Serializable
+data class UpdateConversationRequest(
+    val is_pinned: Boolean? = null,
+    val is_archived: Boolean? = null
+)
+
 @Serializable
 data class ChatMessageResponse(
     val message: ChatMessageData? = null,
@@ -163,7 +181,9 @@ data class MessageDTO(
     val processingTime: Int? = null,
     val createdAt: String? = null,  // camelCase от бэка
     val imageUrl: String? = null,
-    val images: List<String>? = null
+    val imageBlurHash: String? = null,  // BlurHash-заглушка для imageUrl, если бэк её прислал
+    val images: List<String>? = null,
+    val clientMessageId: String? = null  // Эхо client_message_id из запроса
 )
 
 @Serializable
@@ -54,6 +54,25 @@ interface VoiceApi {
         @Part("voice") voice: RequestBody? = null,
         @Part("language") language: RequestBody? = null
     ): Response<ResponseBody>
+    
+    /**
+     * STT for a file uploaded in parts via /voice/uploads (see ResumableAudioUploader)
+     */
+    @POST("voice/uploads/{upload_id}/transcribe")
+    suspend fun transcribeUpload(
+        @Path("upload_id") uploadId: String,
+        @Body request: UploadTranscribeRequest
+    ): TranscribeResponse
+    
+    /**
+     * Voice chat for a file uploaded in parts; response is the same as [voiceChat]
+     */
+    @POST("voice/uploads/{upload_id}/chat")
+    @Streaming
+    suspend fun voiceChatUpload(
+        @Path("upload_id") uploadId: String,
+        @Body request: UploadVoiceChatRequest
+    ): Response<ResponseBody>
 }
 
 @Serializable
@@ -86,3 +105,15 @@ data class SynthesizeRequest(
     val speed: Float = 1.0f,
     val format: String = "mp3"
 )
+
+@Serializable
+data class UploadTranscribeRequest(
+    val language: String = "ru"
+)
+
+@Serializable
+data class UploadVoiceChatRequest(
+    val conversation_id: String? = null,
+    val voice: String = "nova",
+    val language: String = "ru"
+)
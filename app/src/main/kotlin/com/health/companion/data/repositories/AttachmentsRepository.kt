@@ -16,6 +16,7 @@ import okhttp3.RequestBody.Companion.toRequestBody
 import timber.log.Timber
 import java.io.File
 import java.io.FileOutputStream
+import java.util.concurrent.ConcurrentHashMap
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -24,6 +25,11 @@ interface AttachmentsRepository {
     val isLoading: StateFlow<Boolean>
     
     suspend fun loadAttachments(conversationId: String): Result<List<AttachmentDTO>>
+    
+    /**
+     * Загрузить вложения в кэш без изменения текущего списка (для префетча)
+     */
+    suspend fun prefetchAttachments(conversationId: String): Result<List<AttachmentDTO>>
     suspend fun uploadAttachment(conversationId: String, uri: Uri, mode: AttachmentMode): Result<AttachmentDTO>
     suspend fun deleteAttachment(conversationId: String, attachmentId: String): Result<Unit>
     fun clearAttachments()
@@ -41,10 +47,15 @@ class AttachmentsRepositoryImpl @Inject constructor(
     private val _isLoading = MutableStateFlow(false)
     override val isLoading: StateFlow<Boolean> = _isLoading.asStateFlow()
     
+    // Вложения по сессиям — переключение на сессию сразу показывает кэш
+    private val cache = ConcurrentHashMap<String, List<AttachmentDTO>>()
+    
     override suspend fun loadAttachments(conversationId: String): Result<List<AttachmentDTO>> {
+        cache[conversationId]?.let { _attachments.value = it }
         return try {
-            _isLoading.value = true
+            _isLoading.value = cache[conversationId] == null
             val result = api.getAttachments(conversationId)
+            cache[conversationId] = result
             _attachments.value = result
             Timber.d("Loaded ${result.size} attachments for conversation $conversationId")
             Result.success(result)
@@ -56,6 +67,17 @@ class AttachmentsRepositoryImpl @Inject constructor(
         }
     }
     
+    override suspend fun prefetchAttachments(conversationId: String): Result<List<AttachmentDTO>> {
+        return try {
+            val result = api.getAttachments(conversationId)
+            cache[conversationId] = result
+            Result.success(result)
+        } catch (e: Exception) {
+            Timber.w(e, "Failed to prefetch attachments for $conversationId")
+            Result.failure(e)
+        }
+    }
+    
     override suspend fun uploadAttachment(
         conversationId: String,
         uri: Uri,
@@ -76,6 +98,7 @@ class AttachmentsRepositoryImpl @Inject constructor(
             
             // Update local list
             _attachments.value = _attachments.value + result
+            cache[conversationId] = (cache[conversationId] ?: emptyList()) + result
             
             Timber.d("Uploaded attachment: ${result.filename} (${result.id})")
             Result.success(result)
@@ -91,6 +114,7 @@ class AttachmentsRepositoryImpl @Inject constructor(
         return try {
             api.deleteAttachment(conversationId, attachmentId)
             _attachments.value = _attachments.value.filter { it.id != attachmentId }
+            cache[conversationId]?.let { list -> cache[conversationId] = list.filter { it.id != attachmentId } }
             Timber.d("Deleted attachment: $attachmentId")
             Result.success(Unit)
         } catch (e: Exception) {
@@ -1,5 +1,8 @@
 package com.health.companion.data.repositories
 
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
 import com.health.companion.BuildConfig
 import com.health.companion.data.local.dao.ChatMessageDao
 import com.health.companion.data.local.dao.ConversationDao
@@ -12,6 +15,7 @@ import com.health.companion.data.remote.api.ChatMessageResponse
 import com.health.companion.data.remote.api.ConversationDTO
 import com.health.companion.data.remote.api.CreateConversationRequest
 import com.health.companion.data.remote.api.MessageDTO
+import com.health.companion.data.remote.api.UpdateConversationRequest
 import com.health.companion.services.WebSocketManager
 import com.health.companion.services.WebSocketMessage
 import com.health.companion.utils.TokenManager
@@ -44,25 +48,59 @@ import javax.inject.Inject
 import kotlin.coroutines.resume
 
 interface ChatRepository {
-    suspend fun sendMessage(message: String, conversationId: String?): Result<ChatMessageResponse>
+    /**
+     * @param clientMessageId id пользовательского сообщения, сгенерированный клиентом.
+     * Уходит на сервер как idempotency key и используется как локальный id в Room
+     */
+    suspend fun sendMessage(
+        message: String,
+        conversationId: String?,
+        clientMessageId: String = UUID.randomUUID().toString()
+    ): Result<ChatMessageResponse>
     
     /**
      * SSE Streaming - посылает сообщение и получает ответ потоком
      * @param images List of base64 encoded images for image-to-image editing
+     * @param clientMessageId idempotency key пользовательского сообщения
+     * @param onQueued если задан, при отсутствии сети сообщение сохраняется с заглушкой
+     * «Режим офлайн» и ставится в outbox вместо onError
      */
     suspend fun sendMessageStream(
         message: String,
         conversationId: String?,
         images: List<String>? = null,
+        clientMessageId: String? = null,
         onStatus: (String) -> Unit,
         onToken: (String) -> Unit,
-        onImage: (url: String, prompt: String) -> Unit,
+        onImage: (url: String, prompt: String, blurHash: String?) -> Unit,
         onDone: (messageId: String, fullContent: String, newConversationId: String?) -> Unit,
-        onError: (String) -> Unit
+        onError: (String) -> Unit,
+        onQueued: ((ChatMessageResponse) -> Unit)? = null
     )
     
+    /**
+     * Доставка сообщения из outbox: стримит ответ и заменяет им офлайн-заглушку.
+     * @return id диалога на сервере
+     */
+    suspend fun deliverQueuedMessage(message: QueuedChatMessage, conversationId: String): Result<String>
+    
     fun getConversationMessages(conversationId: String): Flow<List<MessageDTO>>
-    fun getLocalConversationsFlow(): Flow<List<ConversationEntity>>
+    
+    /** Шторка сессий: страницы из Room, закреплённые — отдельной короткой секцией */
+    fun pagedConversations(archived: Boolean = false): Flow<PagingData<ConversationEntity>>
+    fun pagedConversationSearch(query: String): Flow<PagingData<ConversationEntity>>
+    fun observePinnedConversations(): Flow<List<ConversationEntity>>
+    fun observeConversationCount(archived: Boolean = false): Flow<Int>
+    fun observeMostRecentConversation(): Flow<ConversationEntity?>
+    
+    /**
+     * Серверный поиск: найденные сессии (в т.ч. не попавшие в синк) кладутся в Room,
+     * и локальный FTS-поиск подхватывает их сам. Возвращает число найденных
+     */
+    suspend fun searchRemoteConversations(query: String): Result<Int>
+    suspend fun setConversationPinned(conversationId: String, pinned: Boolean): Result<Unit>
+    suspend fun setConversationArchived(conversationId: String, archived: Boolean): Result<Unit>
+    
     suspend fun getConversations(): Result<List<ConversationDTO>>
     suspend fun createConversation(title: String? = null): Result<ConversationDTO>
     suspend fun createLocalConversation(title: String? = null): Result<String>
@@ -83,8 +121,15 @@ interface ChatRepository {
         userMessage: String,
         assistantMessageId: String,
         assistantContent: String,
-        imageUrl: String? = null
+        imageUrl: String? = null,
+        userMessageId: String? = null,
+        imageBlurHash: String? = null
     )
+
+    /**
+     * Сохраняет BlurHash картинки, посчитанный на клиенте при первой загрузке
+     */
+    suspend fun saveImagePlaceholder(messageId: String, blurHash: String): Result<Unit>
 }
 
 class ChatRepositoryImpl @Inject constructor(
@@ -93,7 +138,8 @@ class ChatRepositoryImpl @Inject constructor(
     private val conversationDao: ConversationDao,
     private val webSocketManager: WebSocketManager,
     private val tokenManager: TokenManager,
-    private val okHttpClient: OkHttpClient // Injected client with TokenAuthenticator
+    private val okHttpClient: OkHttpClient, // Injected client with TokenAuthenticator
+    private val outboxRepository: OutboxRepository
 ) : ChatRepository {
     
     // SSE streaming client with reasonable timeouts
@@ -105,88 +151,75 @@ class ChatRepositoryImpl @Inject constructor(
     
     override suspend fun sendMessage(
         message: String,
-        conversationId: String?
+        conversationId: String?,
+        clientMessageId: String
     ): Result<ChatMessageResponse> {
         return try {
             val response = chatApi.sendMessage(
                 ChatMessageRequest(
                     message = message,
-                    conversation_id = conversationId
+                    conversation_id = conversationId,
+                    client_message_id = clientMessageId
                 )
             )
             
-            // Ensure conversation exists in local DB
+            // Save conversation + user message + assistant response in one transaction
             val convId = response.getConversationId().ifEmpty { conversationId ?: UUID.randomUUID().toString() }
-            ensureConversationExists(convId, suggestTitleFromMessage(message))
-            
-            // Save user message to local database
-            chatMessageDao.insert(
-                ChatMessageEntity(
-                    id = UUID.randomUUID().toString(),
-                    conversationId = convId,
-                    content = message,
-                    role = "user"
-                )
-            )
-            
-            // Save assistant response to local database
-            chatMessageDao.insert(
-                ChatMessageEntity(
-                    id = response.getMessageId().ifEmpty { UUID.randomUUID().toString() },
-                    conversationId = convId,
-                    content = response.getMessageContent(),
-                    role = response.message?.role ?: "assistant",
-                    agentName = response.getAgentName(),
-                    confidence = response.confidence?.toFloat(),
-                    provider = response.getProviderResolved(),
-                    providerColor = response.getProviderColorResolved(),
-                    modelUsed = response.getModelUsedResolved()
+            saveChatTurn(
+                conversationId = convId,
+                title = suggestTitleFromMessage(message),
+                messages = listOf(
+                    ChatMessageEntity(
+                        id = clientMessageId,
+                        conversationId = convId,
+                        content = message,
+                        role = "user"
+                    ),
+                    ChatMessageEntity(
+                        id = response.getMessageId().ifEmpty { UUID.randomUUID().toString() },
+                        conversationId = convId,
+                        content = response.getMessageContent(),
+                        role = response.message?.role ?: "assistant",
+                        agentName = response.getAgentName(),
+                        confidence = response.confidence?.toFloat(),
+                        provider = response.getProviderResolved(),
+                        providerColor = response.getProviderColorResolved(),
+                        modelUsed = response.getModelUsedResolved()
+                    )
                 )
             )
-            conversationDao.updateUpdatedAt(convId, System.currentTimeMillis())
             
             Timber.d("Message sent successfully, conversation: ${response.conversation_id}")
             Result.success(response)
         } catch (e: HttpException) {
             Timber.e(e, "HTTP error: ${e.code()}")
             if (e.code() == 404) {
-                return generateOfflineResponse(message, conversationId, "Backend не найден (404). Убедитесь что сервер запущен.")
+                return generateOfflineResponse(message, conversationId, clientMessageId, "Backend не найден (404). Убедитесь что сервер запущен.")
             }
             Result.failure(Exception("Ошибка сервера: ${e.code()}"))
         } catch (e: ConnectException) {
             Timber.e(e, "Connection error")
-            generateOfflineResponse(message, conversationId, "Не удалось подключиться к серверу.")
+            generateOfflineResponse(message, conversationId, clientMessageId, "Не удалось подключиться к серверу.")
         } catch (e: SocketTimeoutException) {
             Timber.e(e, "Timeout error")
-            generateOfflineResponse(message, conversationId, "Превышено время ожидания ответа.")
+            generateOfflineResponse(message, conversationId, clientMessageId, "Превышено время ожидания ответа.")
         } catch (e: UnknownHostException) {
             Timber.e(e, "Unknown host")
-            generateOfflineResponse(message, conversationId, "Сервер недоступен.")
+            generateOfflineResponse(message, conversationId, clientMessageId, "Сервер недоступен.")
         } catch (e: Exception) {
             Timber.e(e, "Failed to send message")
-            generateOfflineResponse(message, conversationId, "Ошибка: ${e.localizedMessage}")
+            generateOfflineResponse(message, conversationId, clientMessageId, "Ошибка: ${e.localizedMessage}")
         }
     }
     
     private suspend fun generateOfflineResponse(
         message: String,
         conversationId: String?,
+        clientMessageId: String,
         errorMessage: String
     ): Result<ChatMessageResponse> {
         val newConversationId = conversationId ?: UUID.randomUUID().toString()
         
-        ensureConversationExists(newConversationId, suggestTitleFromMessage(message))
-        
-        // Save user message locally
-        chatMessageDao.insert(
-            ChatMessageEntity(
-                id = UUID.randomUUID().toString(),
-                conversationId = newConversationId,
-                content = message,
-                role = "user"
-            )
-        )
-        
         val offlineContent = """
             ⚠️ **Режим офлайн**
             
@@ -198,18 +231,43 @@ class ChatRepositoryImpl @Inject constructor(
         val messageId = UUID.randomUUID().toString()
         val timestamp = System.currentTimeMillis().toString()
         
-        chatMessageDao.insert(
-            ChatMessageEntity(
-                id = messageId,
-                conversationId = newConversationId,
-                content = offlineContent,
-                role = "assistant",
-                agentName = "offline",
-                confidence = null,
-                provider = "offline"
+        // Save user message + offline reply locally in one transaction
+        saveChatTurn(
+            conversationId = newConversationId,
+            title = suggestTitleFromMessage(message),
+            messages = listOf(
+                ChatMessageEntity(
+                    id = clientMessageId,
+                    conversationId = newConversationId,
+                    content = message,
+                    role = "user"
+                ),
+                ChatMessageEntity(
+                    id = messageId,
+                    conversationId = newConversationId,
+                    content = offlineContent,
+                    role = "assistant",
+                    agentName = "offline",
+                    confidence = null,
+                    provider = "offline"
+                )
             )
         )
-        conversationDao.updateUpdatedAt(newConversationId, System.currentTimeMillis())
+        
+        // Отправим автоматически, когда появится сеть; заглушка заменится настоящим ответом
+        outboxRepository.enqueue(
+            type = OutboxOperationType.CHAT_MESSAGE,
+            payload = Json.encodeToString(
+                QueuedChatMessage(
+                    clientMessageId = clientMessageId,
+                    text = message,
+                    placeholderId = messageId,
+                    localConversationId = newConversationId,
+                    isNewConversation = conversationId == null
+                )
+            ),
+            targetId = newConversationId
+        )
         
         return Result.success(
             ChatMessageResponse(
@@ -233,11 +291,13 @@ class ChatRepositoryImpl @Inject constructor(
         message: String,
         conversationId: String?,
         images: List<String>?,
+        clientMessageId: String?,
         onStatus: (String) -> Unit,
         onToken: (String) -> Unit,
-        onImage: (url: String, prompt: String) -> Unit,
+        onImage: (url: String, prompt: String, blurHash: String?) -> Unit,
         onDone: (messageId: String, fullContent: String, newConversationId: String?) -> Unit,
-        onError: (String) -> Unit
+        onError: (String) -> Unit,
+        onQueued: ((ChatMessageResponse) -> Unit)?
     ) {
         android.util.Log.d("SSE_DEBUG", "sendMessageStream called with message: $message, images: ${images?.size ?: 0}")
         
@@ -253,6 +313,7 @@ class ChatRepositoryImpl @Inject constructor(
         val body = JSONObject().apply {
             put("message", message)
             conversationId?.let { put("conversation_id", it) }
+            clientMessageId?.let { put("client_message_id", it) }
             // Add images for image-to-image editing
             if (!images.isNullOrEmpty()) {
                 val imagesArray = org.json.JSONArray()
@@ -283,7 +344,9 @@ class ChatRepositoryImpl @Inject constructor(
         
         android.util.Log.d("SSE_DEBUG", "Creating EventSource...")
         
-        suspendCancellableCoroutine { continuation ->
+        // Не-null — сети нет и ни одного события не пришло: сообщение уходит в outbox
+        val offlineCause = suspendCancellableCoroutine<Throwable?> { continuation ->
+            var receivedEvents = false
             val listener = object : EventSourceListener() {
                 override fun onOpen(eventSource: EventSource, response: Response) {
                     android.util.Log.d("SSE_DEBUG", "SSE OPENED! Response: ${response.code}")
@@ -296,6 +359,7 @@ class ChatRepositoryImpl @Inject constructor(
                     data: String
                 ) {
                     android.util.Log.d("SSE_DEBUG", "SSE EVENT: type=$type, data=$data")
+                    receivedEvents = true
                     try {
                         val json = JSONObject(data)
                         
@@ -325,7 +389,7 @@ class ChatRepositoryImpl @Inject constructor(
                                             }
                                     onError("❌ $cleanError")
                                     eventSource.cancel()
-                                    if (continuation.isActive) continuation.resume(Unit)
+                                    if (continuation.isActive) continuation.resume(null)
                                 } else {
                                     onToken(content)
                                 }
@@ -333,10 +397,12 @@ class ChatRepositoryImpl @Inject constructor(
                             "image" -> {
                                 val url = json.optString("url")
                                 val prompt = json.optString("prompt")
-                                Timber.d("SSE image event received: url=$url, prompt=$prompt")
+                                // Необязательная заглушка: без неё клиент посчитает BlurHash сам
+                                val blurHash = json.optString("blurhash").takeIf { it.isNotBlank() }
+                                Timber.d("SSE image event received: url=$url, prompt=$prompt, blurhash=$blurHash")
                                 android.util.Log.d("SSE_IMAGE", "IMAGE EVENT: url=$url, prompt=$prompt")
                                 if (url.isNotBlank()) {
-                                    onImage(url, prompt)
+                                    onImage(url, prompt, blurHash)
                                 } else {
                                     Timber.w("SSE image: URL is empty!")
                                 }
@@ -351,7 +417,7 @@ class ChatRepositoryImpl @Inject constructor(
                                 // If there's an image URL in done, call onImage
                                 if (imageUrl != null) {
                                     Timber.d("SSE done contains image URL: $imageUrl")
-                                    onImage(imageUrl, "")
+                                    onImage(imageUrl, "", null)
                                 }
                                 
                                 // NOTE: Messages are saved in ViewModel.saveStreamedMessages() 
@@ -360,7 +426,7 @@ class ChatRepositoryImpl @Inject constructor(
                                 Timber.d("SSE done: messageId=$messageId, content len=${fullContent.length}")
                                 onDone(messageId, fullContent, newConvId)
                                 eventSource.cancel()
-                                if (continuation.isActive) continuation.resume(Unit)
+                                if (continuation.isActive) continuation.resume(null)
                             }
                             "error" -> {
                                 // Parse nested error structure: {"error":{"message":"...", "type":"..."}}
@@ -372,7 +438,7 @@ class ChatRepositoryImpl @Inject constructor(
                                 Timber.e("SSE error event: $errorMsg")
                                 onError(errorMsg)
                                 eventSource.cancel()
-                                if (continuation.isActive) continuation.resume(Unit)
+                                if (continuation.isActive) continuation.resume(null)
                             }
                         }
                     } catch (e: Exception) {
@@ -382,15 +448,24 @@ class ChatRepositoryImpl @Inject constructor(
                 
                 override fun onClosed(eventSource: EventSource) {
                     android.util.Log.d("SSE_DEBUG", "SSE CLOSED")
-                    if (continuation.isActive) continuation.resume(Unit)
+                    if (continuation.isActive) continuation.resume(null)
                 }
                 
                 override fun onFailure(eventSource: EventSource, t: Throwable?, response: Response?) {
                     android.util.Log.e("SSE_DEBUG", "SSE FAILURE! code=${response?.code}, error=${t?.message}", t)
                     
+                    // Поток уже завершён (done/error) или отменён вызывающим: eventSource.cancel()
+                    // приходит сюда как IOException("Canceled") — это не ошибка
+                    if (!continuation.isActive) return
+                    
                     // Ignore socket closed after we've received data
                     if (t?.message?.contains("Socket closed") == true) return
                     
+                    if (onQueued != null && !receivedEvents && images.isNullOrEmpty() && isOfflineFailure(t)) {
+                        if (continuation.isActive) continuation.resume(t)
+                        return
+                    }
+                    
                     val errorMsg = when {
                         t is SocketTimeoutException -> {
                             if (images?.isNotEmpty() == true) {
@@ -406,7 +481,7 @@ class ChatRepositoryImpl @Inject constructor(
                         else -> t?.localizedMessage ?: "Ошибка подключения"
                     }
                     onError(errorMsg)
-                    if (continuation.isActive) continuation.resume(Unit)
+                    if (continuation.isActive) continuation.resume(null)
                 }
             }
             
@@ -417,6 +492,104 @@ class ChatRepositoryImpl @Inject constructor(
                 eventSource.cancel()
             }
         }
+        
+        if (offlineCause != null && onQueued != null) {
+            Timber.w(offlineCause, "SSE: offline, queueing message")
+            try {
+                generateOfflineResponse(
+                    message = message,
+                    conversationId = conversationId,
+                    clientMessageId = clientMessageId ?: UUID.randomUUID().toString(),
+                    errorMessage = "Не удалось подключиться к серверу. Отправим автоматически, когда появится сеть."
+                ).onSuccess(onQueued)
+            } catch (e: Exception) {
+                Timber.e(e, "Failed to queue offline message")
+                onError(offlineCause.localizedMessage ?: "Ошибка подключения")
+            }
+        }
+    }
+    
+    override suspend fun deliverQueuedMessage(
+        message: QueuedChatMessage,
+        conversationId: String
+    ): Result<String> {
+        // Диалог, созданный офлайн, сервер ещё не знает — отправляем без conversation_id
+        val sendToConversation = conversationId.takeUnless {
+            message.isNewConversation && it == message.localConversationId
+        }
+        val contentBuilder = StringBuilder()
+        var imageUrl: String? = null
+        var imageBlurHash: String? = null
+        var doneMessageId: String? = null
+        var serverConversationId: String? = null
+        var error: String? = null
+        
+        sendMessageStream(
+            message = message.text,
+            conversationId = sendToConversation,
+            images = null,
+            clientMessageId = message.clientMessageId,
+            onStatus = {},
+            onToken = { contentBuilder.append(it) },
+            onImage = { url, _, blurHash ->
+                imageUrl = url
+                if (blurHash != null) imageBlurHash = blurHash
+            },
+            onDone = { messageId, fullContent, newConversationId ->
+                doneMessageId = messageId
+                if (fullContent.isNotEmpty()) {
+                    contentBuilder.clear()
+                    contentBuilder.append(fullContent)
+                }
+                serverConversationId = newConversationId
+            },
+            onError = { error = it }
+        )
+        
+        val messageId = doneMessageId
+            ?: return Result.failure(java.io.IOException(error ?: "Stream closed before done"))
+        
+        return try {
+            val targetConversationId = serverConversationId ?: conversationId
+            val localConversation = conversationDao.getConversationById(conversationId)
+            val timestamp = System.currentTimeMillis()
+            chatMessageDao.replaceOfflinePlaceholder(
+                localConversationId = conversationId,
+                conversation = ConversationEntity(
+                    id = targetConversationId,
+                    title = localConversation?.title ?: suggestTitleFromMessage(message.text)
+                ),
+                placeholderId = message.placeholderId,
+                assistantMessage = ChatMessageEntity(
+                    id = messageId.ifEmpty { UUID.randomUUID().toString() },
+                    conversationId = targetConversationId,
+                    content = contentBuilder.toString(),
+                    role = "assistant",
+                    imageUrl = imageUrl?.let { resolveImageUrl(it) },
+                    imageBlurHash = imageBlurHash,
+                    createdAt = timestamp
+                ),
+                timestamp = timestamp
+            )
+            Timber.d("Delivered queued message ${message.clientMessageId} to $targetConversationId")
+            Result.success(targetConversationId)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to store delivered queued message")
+            Result.failure(e)
+        }
+    }
+    
+    private fun isOfflineFailure(t: Throwable?): Boolean {
+        return t is ConnectException || t is UnknownHostException || t is java.net.NoRouteToHostException
+    }
+    
+    private fun resolveImageUrl(url: String): String {
+        val host = BuildConfig.API_BASE_URL.substringBefore("/api/")
+        return when {
+            url.startsWith("http") -> url
+            url.startsWith("/") -> "$host$url"
+            else -> "$host/$url"
+        }
     }
     
     override fun getConversationMessages(conversationId: String): Flow<List<MessageDTO>> {
@@ -436,6 +609,7 @@ class ChatRepositoryImpl @Inject constructor(
                     modelUsed = entity.modelUsed,
                     createdAt = entity.createdAt.toString(),
                     imageUrl = entity.imageUrl,  // Читаем URL изображения из БД
+                    imageBlurHash = entity.imageBlurHash,
                     images = entity.images?.let { 
                         try { Json.decodeFromString<List<String>>(it) } catch (e: Exception) { null }
                     }
@@ -444,8 +618,110 @@ class ChatRepositoryImpl @Inject constructor(
         }
     }
 
-    override fun getLocalConversationsFlow(): Flow<List<ConversationEntity>> {
-        return conversationDao.getAllConversationsFlow()
+    override fun pagedConversations(archived: Boolean): Flow<PagingData<ConversationEntity>> {
+        return Pager(conversationPagingConfig) {
+            if (archived) conversationDao.pagingArchived() else conversationDao.pagingActive()
+        }.flow
+    }
+
+    override fun pagedConversationSearch(query: String): Flow<PagingData<ConversationEntity>> {
+        val match = toFtsQuery(query) ?: return pagedConversations()
+        return Pager(conversationPagingConfig) { conversationDao.pagingSearch(match) }.flow
+    }
+
+    override fun observePinnedConversations(): Flow<List<ConversationEntity>> {
+        return conversationDao.observePinned()
+    }
+
+    override fun observeConversationCount(archived: Boolean): Flow<Int> {
+        return if (archived) conversationDao.observeArchivedCount() else conversationDao.observeActiveCount()
+    }
+
+    override fun observeMostRecentConversation(): Flow<ConversationEntity?> {
+        return conversationDao.observeMostRecent()
+    }
+
+    override suspend fun searchRemoteConversations(query: String): Result<Int> {
+        return try {
+            val response = chatApi.getConversations(size = 50, page = 1, search = query)
+            val now = System.currentTimeMillis()
+            conversationDao.upsertAll(toEntities(response.items, now))
+            Timber.d("Remote search '$query': ${response.items.size} of ${response.total}")
+            Result.success(response.items.size)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to search conversations on server")
+            Result.failure(e)
+        }
+    }
+
+    override suspend fun setConversationPinned(conversationId: String, pinned: Boolean): Result<Unit> {
+        return try {
+            conversationDao.setPinned(conversationId, pinned)
+            pushConversationFlags(conversationId)
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to pin conversation")
+            Result.failure(e)
+        }
+    }
+
+    override suspend fun setConversationArchived(conversationId: String, archived: Boolean): Result<Unit> {
+        return try {
+            conversationDao.setArchived(conversationId, archived)
+            pushConversationFlags(conversationId)
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to archive conversation")
+            Result.failure(e)
+        }
+    }
+
+    /**
+     * Локальное состояние уже применено — сервер догоняет через outbox,
+     * PATCH повторяется, пока не пройдёт, и не теряется без сети
+     */
+    private suspend fun pushConversationFlags(conversationId: String) {
+        val conversation = conversationDao.getConversationById(conversationId) ?: return
+        outboxRepository.enqueue(
+            type = OutboxOperationType.CONVERSATION_FLAGS,
+            payload = Json.encodeToString(
+                UpdateConversationRequest(
+                    is_pinned = conversation.isPinned,
+                    is_archived = conversation.isArchived
+                )
+            ),
+            targetId = conversationId
+        )
+    }
+
+    /**
+     * Пока PATCH флагов в очереди, серверная копия устарела:
+     * закрепление/архив берём локальные, иначе синк откатит выбор пользователя
+     */
+    private suspend fun toEntities(items: List<ConversationDTO>, now: Long): List<ConversationEntity> {
+        val pendingFlags = outboxRepository.pendingTargetIds(OutboxOperationType.CONVERSATION_FLAGS)
+        return items.map { dto ->
+            val entity = dto.toEntity(now)
+            val local = if (dto.id in pendingFlags) conversationDao.getConversationById(dto.id) else null
+            local?.let { entity.copy(isPinned = it.isPinned, isArchived = it.isArchived) } ?: entity
+        }
+    }
+
+    private fun ConversationDTO.toEntity(now: Long): ConversationEntity {
+        // Parse ISO datetime from backend (camelCase)
+        val createdMs = createdAt?.let { parseIsoDateTime(it) } ?: now
+        val updatedMs = updatedAt?.let { parseIsoDateTime(it) } ?: createdMs
+        val lastMsgMs = lastMessageAt?.let { parseIsoDateTime(it) }
+        return ConversationEntity(
+            id = id,
+            title = title.ifBlank { "Новый чат" },
+            createdAt = createdMs,
+            updatedAt = updatedMs,
+            lastMessageAt = lastMsgMs ?: updatedMs,  // fallback к updatedAt
+            isArchived = isArchived,
+            isPinned = isPinned,
+            summary = summary
+        )
     }
 
     override suspend fun getConversations(): Result<List<ConversationDTO>> {
@@ -456,47 +732,31 @@ class ChatRepositoryImpl @Inject constructor(
             val allItems = mutableListOf<ConversationDTO>()
             var currentPage = 1
             var totalPages = 1
+            val now = System.currentTimeMillis()
             
             do {
                 val response = chatApi.getConversations(size = 50, page = currentPage)
                 android.util.Log.d("CONV_REPO", "📥 Page $currentPage/${response.pages}: ${response.items.size} items, total=${response.total}")
                 allItems.addAll(response.items)
+                // Страница сразу в Room одним батчем — шторка показывает первые сессии, не дожидаясь остальных
+                conversationDao.upsertAll(toEntities(response.items, now))
                 totalPages = response.pages
                 currentPage++
-            } while (currentPage <= totalPages && currentPage <= 10) // Макс 10 страниц для защиты
+            } while (currentPage <= totalPages && currentPage <= MAX_SYNC_PAGES)
             
             android.util.Log.d("CONV_REPO", "✅ Total loaded: ${allItems.size} conversations")
             
-            val now = System.currentTimeMillis()
-            val serverIds = allItems.map { it.id }.toSet()
-            
-            // Get current local IDs
-            val localIds = conversationDao.getAllConversations().map { it.id }.toSet()
-            
-            // Delete local conversations that don't exist on server
-            val toDelete = localIds - serverIds
-            toDelete.forEach { id -> conversationDao.deleteById(id) }
-            
-            // Upsert server conversations
-            allItems.forEach { dto ->
-                // Parse ISO datetime from backend (camelCase)
-                val createdMs = dto.createdAt?.let { parseIsoDateTime(it) } ?: now
-                val updatedMs = dto.updatedAt?.let { parseIsoDateTime(it) } ?: createdMs
-                val lastMsgMs = dto.lastMessageAt?.let { parseIsoDateTime(it) }
-                
-                conversationDao.insert(
-                    ConversationEntity(
-                        id = dto.id,
-                        title = dto.title.ifBlank { "Новый чат" },
-                        createdAt = createdMs,
-                        updatedAt = updatedMs,
-                        lastMessageAt = lastMsgMs ?: updatedMs,  // fallback к updatedAt
-                        isArchived = dto.isArchived,
-                        isPinned = dto.isPinned,
-                        summary = dto.summary
-                    )
-                )
+            // Delete local conversations that don't exist on server.
+            // Только при полном списке: хвост за лимитом страниц не считаем удалённым.
+            // Офлайн-диалоги с сообщениями в outbox сервер ещё не видел — их не трогаем
+            val toDelete = if (currentPage > totalPages) {
+                val serverIds = allItems.map { it.id }.toSet()
+                val pendingIds = outboxRepository.pendingConversationIds()
+                conversationDao.getAllIds().filter { it !in serverIds && it !in pendingIds }
+            } else {
+                emptyList()
             }
+            toDelete.chunked(SQLITE_MAX_ARGS).forEach { conversationDao.deleteByIds(it) }
             Timber.d("Synced ${allItems.size} conversations, removed ${toDelete.size} stale")
             Result.success(allItems)
         } catch (e: Exception) {
@@ -551,6 +811,15 @@ class ChatRepositoryImpl @Inject constructor(
                 android.util.Log.d("SYNC_MESSAGES", "  [$index] role=${msg.role}, imageUrl=${msg.imageUrl}, images=${msg.images}, content=${msg.content.take(50)}...")
             }
             
+            val local = chatMessageDao.getMessages(conversationId)
+            val replacedIds = findReplacedLocalIds(
+                local = local,
+                server = response,
+                pendingIds = outboxRepository.pendingChatMessageIds()
+            )
+            // Бэк может не хранить BlurHash — не теряем посчитанные на клиенте
+            val localBlurHashes = local.mapNotNull { msg -> msg.imageBlurHash?.let { msg.id to it } }.toMap()
+            
             val entities = response.map { msg ->
                 val createdMs = msg.createdAt?.let { 
                     it.toLongOrNull() ?: parseIsoDateTime(it) 
@@ -567,13 +836,16 @@ class ChatRepositoryImpl @Inject constructor(
                     modelUsed = msg.modelUsed,
                     createdAt = createdMs,
                     imageUrl = msg.imageUrl,  // URL от бэкенда
+                    imageBlurHash = msg.imageBlurHash ?: localBlurHashes[msg.id],
                     images = msg.images?.let { Json.encodeToString(it) }  // URLs от бэкенда
                 )
             }
-            chatMessageDao.insertAll(entities)
             // Устанавливаем updatedAt как время последнего сообщения (не текущее системное!)
             val lastMessageTime = entities.maxOfOrNull { it.createdAt } ?: System.currentTimeMillis()
-            conversationDao.updateUpdatedAt(conversationId, lastMessageTime)
+            chatMessageDao.insertAllAndTouch(conversationId, entities, lastMessageTime, replacedIds)
+            if (replacedIds.isNotEmpty()) {
+                Timber.d("Reconciled ${replacedIds.size} local message ids with server ids in $conversationId")
+            }
             android.util.Log.d("TIME_SYNC", "📅 Updated conversation $conversationId time to ${java.util.Date(lastMessageTime)}")
             Result.success(response)
         } catch (e: Exception) {
@@ -622,7 +894,17 @@ class ChatRepositoryImpl @Inject constructor(
             Result.failure(e)
         }
     }
-    
+
+    override suspend fun saveImagePlaceholder(messageId: String, blurHash: String): Result<Unit> {
+        return try {
+            chatMessageDao.updateImageBlurHash(messageId, blurHash)
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to save image placeholder")
+            Result.failure(e)
+        }
+    }
+
     /**
      * Регенерация названия сессии через LLM на бэкенде
      * Автоматически анализирует сообщения и создаёт осмысленное название
@@ -654,6 +936,7 @@ class ChatRepositoryImpl @Inject constructor(
     override suspend fun clearAllLocalData() {
         chatMessageDao.deleteAll()
         conversationDao.deleteAll()
+        outboxRepository.clear()
         Timber.d("All local chat data cleared")
     }
     
@@ -665,36 +948,38 @@ class ChatRepositoryImpl @Inject constructor(
         userMessage: String,
         assistantMessageId: String,
         assistantContent: String,
-        imageUrl: String?
+        imageUrl: String?,
+        userMessageId: String?,
+        imageBlurHash: String?
     ) {
         try {
-            ensureConversationExists(conversationId, suggestTitleFromMessage(userMessage))
-            
-            // Save user message
-            chatMessageDao.insert(
-                ChatMessageEntity(
-                    id = UUID.randomUUID().toString(),
-                    conversationId = conversationId,
-                    content = userMessage,
-                    role = "user"
-                )
-            )
-            
-            // Save assistant message with accumulated content and image URL
+            // Save user message + assistant message with accumulated content and image URL.
+            // Время диалога = время последнего сообщения
             val msgTimestamp = System.currentTimeMillis()
-            chatMessageDao.insert(
-                ChatMessageEntity(
-                    id = assistantMessageId.ifEmpty { UUID.randomUUID().toString() },
-                    conversationId = conversationId,
-                    content = assistantContent,
-                    role = "assistant",
-                    imageUrl = imageUrl,
-                    createdAt = msgTimestamp
-                )
+            saveChatTurn(
+                conversationId = conversationId,
+                title = suggestTitleFromMessage(userMessage),
+                messages = listOf(
+                    ChatMessageEntity(
+                        id = userMessageId ?: UUID.randomUUID().toString(),
+                        conversationId = conversationId,
+                        content = userMessage,
+                        role = "user",
+                        // Вопрос всегда раньше ответа, иначе при сортировке по времени он уйдёт ниже
+                        createdAt = msgTimestamp - 1
+                    ),
+                    ChatMessageEntity(
+                        id = assistantMessageId.ifEmpty { UUID.randomUUID().toString() },
+                        conversationId = conversationId,
+                        content = assistantContent,
+                        role = "assistant",
+                        imageUrl = imageUrl,
+                        imageBlurHash = imageBlurHash,
+                        createdAt = msgTimestamp
+                    )
+                ),
+                timestamp = msgTimestamp
             )
-            
-            // Обновляем время диалога временем последнего сообщения
-            conversationDao.updateUpdatedAt(conversationId, msgTimestamp)
             android.util.Log.d("SAVE_MSG", "✅ Saved: user='${userMessage.take(30)}', assistant len=${assistantContent.length}, imageUrl=$imageUrl")
         } catch (e: Exception) {
             Timber.e(e, "Failed to save streamed messages")
@@ -702,17 +987,62 @@ class ChatRepositoryImpl @Inject constructor(
         }
     }
     
-    private suspend fun ensureConversationExists(conversationId: String, title: String? = null) {
-        val existing = conversationDao.getConversationById(conversationId)
-        if (existing == null) {
-            conversationDao.insert(
-                ConversationEntity(
-                    id = conversationId,
-                    title = title?.ifBlank { "Новый чат" } ?: "Новый чат"
-                )
-            )
-            Timber.d("Created local conversation: $conversationId")
-        }
+    /**
+     * Сохраняет ход чата атомарно: создаёт диалог если его нет, пишет сообщения
+     * и обновляет время диалога. Одна транзакция = одна эмиссия Flow.
+     */
+    private suspend fun saveChatTurn(
+        conversationId: String,
+        title: String?,
+        messages: List<ChatMessageEntity>,
+        timestamp: Long = System.currentTimeMillis()
+    ) {
+        chatMessageDao.insertChatTurn(
+            conversation = ConversationEntity(
+                id = conversationId,
+                title = title?.ifBlank { "Новый чат" } ?: "Новый чат"
+            ),
+            messages = messages,
+            timestamp = timestamp
+        )
+    }
+
+    /**
+     * Локальные строки, которые сервер вернул под своим id.
+     * Основной путь — эхо client_message_id; для старых строк без эха
+     * сопоставляем по (role, content) один-к-одному среди id, которых нет на сервере.
+     * По тексту не трогаем строки из outbox ([pendingIds]) — повторное «да» ещё не
+     * отправлено — и серверные сообщения, которые уже лежат локально под своим id
+     */
+    private fun findReplacedLocalIds(
+        local: List<ChatMessageEntity>,
+        server: List<MessageDTO>,
+        pendingIds: Set<String>
+    ): List<String> {
+        val serverIds = server.map { it.id }.toSet()
+        val localOnly = local.filter { it.id !in serverIds }
+        if (localOnly.isEmpty()) return emptyList()
+        
+        val localIds = local.map { it.id }.toSet()
+        val localOnlyIds = localOnly.map { it.id }.toSet()
+        val replaced = server
+            .mapNotNull { it.clientMessageId }
+            .filter { it in localOnlyIds }
+            .toMutableSet()
+        
+        val unmatchedLocal = localOnly
+            .filter { it.id !in replaced && it.id !in pendingIds && it.agentName != "offline" }
+            .toMutableList()
+        server
+            .filter { it.clientMessageId == null && it.id !in localIds }
+            .forEach { msg ->
+                val match = unmatchedLocal.firstOrNull { it.role == msg.role && it.content == msg.content }
+                if (match != null) {
+                    replaced += match.id
+                    unmatchedLocal.remove(match)
+                }
+            }
+        return replaced.toList()
     }
 
     private fun parseIsoDateTime(isoString: String): Long {
@@ -755,4 +1085,31 @@ class ChatRepositoryImpl @Inject constructor(
         val trimmed = message.trim().replace("\n", " ")
         return if (trimmed.length <= 40) trimmed else trimmed.take(40) + "..."
     }
+
+    companion object {
+        private const val MAX_SYNC_PAGES = 40
+        private const val CONVERSATION_PAGE_SIZE = 30
+        private const val SQLITE_MAX_ARGS = 500
+
+        private val conversationPagingConfig = PagingConfig(
+            pageSize = CONVERSATION_PAGE_SIZE,
+            prefetchDistance = CONVERSATION_PAGE_SIZE / 2,
+            enablePlaceholders = false
+        )
+
+        /**
+         * Пользовательский ввод → FTS-запрос: каждое слово как префикс, все слова обязательны.
+         * Оставляем только буквы и цифры, чтобы спецсимволы FTS не ломали MATCH,
+         * и переводим в нижний регистр — иначе OR / NOT / NEAR станут операторами
+         */
+        internal fun toFtsQuery(query: String): String? {
+            val terms = query
+                .lowercase()
+                .split(Regex("[^\\p{L}\\p{N}]+"))
+                .filter { it.isNotBlank() }
+                .take(8)
+            if (terms.isEmpty()) return null
+            return terms.joinToString(" ") { "$it*" }
+        }
+    }
 }
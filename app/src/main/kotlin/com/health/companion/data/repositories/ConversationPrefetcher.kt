@@ -0,0 +1,112 @@
+package com.health.companion.data.repositories
+
+import com.health.companion.data.local.dao.ChatMessageDao
+import com.health.companion.data.local.dao.ConversationDao
+import com.health.companion.data.local.database.ConversationEntity
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import timber.log.Timber
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Фоновый префетч последних диалогов: сообщения в Room и вложения сессий в кэш,
+ * чтобы переключение между недавними чатами рисовалось из Room без ожидания сети.
+ *
+ * - Не больше [MAX_CONCURRENT] запросов одновременно
+ * - Приоритет префетча: ждёт, пока не закончится стриминг ([setPaused])
+ * - Дельта: сообщения тянем, только если lastMessageAt диалога новее локальных
+ * - Бюджет: не больше [SESSION_BUDGET] сетевых запросов за запуск приложения
+ */
+@Singleton
+class ConversationPrefetcher @Inject constructor(
+    private val chatRepository: ChatRepository,
+    private val attachmentsRepository: AttachmentsRepository,
+    private val conversationDao: ConversationDao,
+    private val chatMessageDao: ChatMessageDao
+) {
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val semaphore = Semaphore(MAX_CONCURRENT)
+    private val paused = MutableStateFlow(false)
+    private val prefetchedAt = ConcurrentHashMap<String, Long>()
+    private val requestsUsed = AtomicInteger(0)
+    private var prefetchJob: Job? = null
+
+    /**
+     * Префетч [TOP_N] самых свежих диалогов (кроме открытого).
+     * Повторный вызов отменяет предыдущий проход
+     */
+    fun prefetchRecent(excludeConversationId: String?) {
+        if (requestsUsed.get() >= SESSION_BUDGET) return
+        prefetchJob?.cancel()
+        prefetchJob = scope.launch {
+            val candidates = conversationDao.getRecentConversations(TOP_N + 1)
+                .filter { it.id != excludeConversationId }
+                .take(TOP_N)
+            candidates.forEach { conversation ->
+                launch { semaphore.withPermit { prefetch(conversation) } }
+            }
+        }
+    }
+
+    /**
+     * Пауза на время стриминга, чтобы префетч не конкурировал с ответом за сеть
+     */
+    fun setPaused(isPaused: Boolean) {
+        paused.value = isPaused
+    }
+
+    /**
+     * Диалог был синхронизирован префетчем недавно — повторный sync при открытии не нужен
+     */
+    fun isFresh(conversationId: String): Boolean {
+        val at = prefetchedAt[conversationId] ?: return false
+        return System.currentTimeMillis() - at < FRESHNESS_MS
+    }
+
+    private suspend fun prefetch(conversation: ConversationEntity) {
+        paused.first { !it }
+        if (isFresh(conversation.id)) return
+
+        val localLatest = chatMessageDao.getLatestMessageTime(conversation.id)
+        val serverLatest = conversation.lastMessageAt
+        val needsMessages = localLatest == null || localLatest < serverLatest
+
+        if (needsMessages) {
+            if (!takeBudget()) return
+            chatRepository.syncConversationMessages(conversation.id)
+                .onFailure { e ->
+                    Timber.w(e, "Prefetch: failed to sync ${conversation.id}")
+                    return
+                }
+        }
+        if (!takeBudget()) return
+        attachmentsRepository.prefetchAttachments(conversation.id)
+            .onFailure { e ->
+                // Свежим считаем только полностью загруженный диалог: иначе открытие пропустит sync
+                Timber.w(e, "Prefetch: failed to load attachments for ${conversation.id}")
+                return
+            }
+
+        prefetchedAt[conversation.id] = System.currentTimeMillis()
+        Timber.d("Prefetch: ${conversation.id} ready (messages synced=$needsMessages)")
+    }
+
+    private fun takeBudget(): Boolean = requestsUsed.incrementAndGet() <= SESSION_BUDGET
+
+    companion object {
+        private const val TOP_N = 5
+        private const val MAX_CONCURRENT = 2
+        private const val SESSION_BUDGET = 60
+        private const val FRESHNESS_MS = 60_000L
+    }
+}
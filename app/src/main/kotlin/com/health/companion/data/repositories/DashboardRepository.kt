@@ -1,87 +1,76 @@
 package com.health.companion.data.repositories
 
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.remote.api.*
+import kotlinx.coroutines.flow.Flow
 import timber.log.Timber
 import javax.inject.Inject
 import javax.inject.Singleton
 
 interface DashboardRepository {
-    fun getCachedDashboard(): DashboardResponse?
-    suspend fun getDashboard(): Result<DashboardResponse>
+    /** Сначала дашборд из кэша на диске, потом свежий с сервера */
+    fun observeDashboard(forceRefresh: Boolean = false): Flow<Result<DashboardResponse>>
+    suspend fun getDashboard(forceRefresh: Boolean = false): Result<DashboardResponse>
     suspend fun getEmotionalState(): Result<EmotionalStateResponse>
     suspend fun getMemorySummary(): Result<MemorySummaryResponse>
+    suspend fun invalidate()
 }
 
 @Singleton
 class DashboardRepositoryImpl @Inject constructor(
-    private val dashboardApi: DashboardApi
+    private val dashboardApi: DashboardApi,
+    private val cacheStore: CacheStore
 ) : DashboardRepository {
     
-    // Кэш на уровне Singleton - сохраняется между переходами
-    @Volatile
-    private var cachedDashboard: DashboardResponse? = null
-    
-    @Volatile
-    private var cachedEmotionalState: EmotionalStateResponse? = null
-    
-    @Volatile
-    private var cachedMemorySummary: MemorySummaryResponse? = null
-    
-    @Volatile
-    private var lastFetchTime: Long = 0L
-    
-    private val CACHE_TTL = 30_000L // 30 секунд TTL
-    
-    override fun getCachedDashboard(): DashboardResponse? = cachedDashboard
-    
-    override suspend fun getDashboard(): Result<DashboardResponse> {
-        // Если кэш свежий - вернём его без запроса
-        val now = System.currentTimeMillis()
-        cachedDashboard?.let { cached ->
-            if (now - lastFetchTime < CACHE_TTL) {
-                Timber.d("Dashboard from cache (age: ${now - lastFetchTime}ms)")
-                return Result.success(cached)
-            }
+    override fun observeDashboard(forceRefresh: Boolean): Flow<Result<DashboardResponse>> =
+        cacheStore.stream(KEY_DASHBOARD, CacheStore.TTL_SHORT, forceRefresh) {
+            dashboardApi.getDashboard().also { Timber.d("Dashboard fetched: streak=${it.streak.days}") }
         }
-        
+    
+    override suspend fun getDashboard(forceRefresh: Boolean): Result<DashboardResponse> {
         return try {
-            val response = dashboardApi.getDashboard()
-            cachedDashboard = response
-            lastFetchTime = now
-            Timber.d("Dashboard fetched: streak=${response.streak.days}")
+            val response = cacheStore.get(KEY_DASHBOARD, CacheStore.TTL_SHORT, forceRefresh) {
+                dashboardApi.getDashboard()
+            }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to load dashboard")
-            // При ошибке вернём кэш если есть
-            cachedDashboard?.let { 
-                Timber.d("Returning stale cache due to error")
-                return Result.success(it) 
-            }
             Result.failure(e)
         }
     }
 
     override suspend fun getEmotionalState(): Result<EmotionalStateResponse> {
         return try {
-            val response = dashboardApi.getEmotionalState()
-            cachedEmotionalState = response
+            val response = cacheStore.get(KEY_EMOTIONAL_STATE, CacheStore.TTL_SHORT) {
+                dashboardApi.getEmotionalState()
+            }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to load emotional state")
-            cachedEmotionalState?.let { return Result.success(it) }
             Result.failure(e)
         }
     }
 
     override suspend fun getMemorySummary(): Result<MemorySummaryResponse> {
         return try {
-            val response = dashboardApi.getMemorySummary()
-            cachedMemorySummary = response
+            val response = cacheStore.get(KEY_MEMORY_SUMMARY, CacheStore.TTL_MEDIUM) {
+                dashboardApi.getMemorySummary()
+            }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to load memory summary")
-            cachedMemorySummary?.let { return Result.success(it) }
             Result.failure(e)
         }
     }
+
+    override suspend fun invalidate() {
+        cacheStore.invalidatePrefix(KEY_PREFIX)
+    }
+    
+    companion object {
+        private const val KEY_PREFIX = "dashboard:"
+        private const val KEY_DASHBOARD = "${KEY_PREFIX}main"
+        private const val KEY_EMOTIONAL_STATE = "${KEY_PREFIX}emotional_state"
+        private const val KEY_MEMORY_SUMMARY = "${KEY_PREFIX}memory_summary"
+    }
 }
@@ -5,11 +5,18 @@ import android.net.Uri
 import android.provider.OpenableColumns
 import com.health.companion.data.local.dao.DocumentDao
 import com.health.companion.data.local.database.DocumentEntity
+import com.health.companion.data.remote.StreamingRequestBody
 import com.health.companion.data.remote.api.DocumentApi
 import com.health.companion.data.remote.api.DocumentResponse
+import com.health.companion.di.StreamingHttp
+import com.health.companion.utils.ImageCompressor
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.withContext
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
@@ -18,11 +25,15 @@ import okhttp3.RequestBody.Companion.asRequestBody
 import okhttp3.RequestBody.Companion.toRequestBody
 import timber.log.Timber
 import java.io.File
+import java.io.IOException
 import java.util.UUID
 import javax.inject.Inject
 import javax.inject.Singleton
 
 interface DocumentRepository {
+    /** Прогресс идущих загрузок из [uploadDocumentFromUri]: Uri → доля 0..1 */
+    val uploadProgress: StateFlow<Map<Uri, Float>>
+
     suspend fun uploadDocument(file: File): Result<DocumentResponse>
     suspend fun uploadDocumentFromUri(uri: Uri): Result<DocumentResponse>
     suspend fun getDocuments(): Result<List<DocumentResponse>>
@@ -34,10 +45,15 @@ interface DocumentRepository {
 @Singleton
 class DocumentRepositoryImpl @Inject constructor(
     private val documentApi: DocumentApi,
+    // Загрузка из Uri — без BODY-логгера, иначе файл целиком уходит в буфер до отправки
+    @StreamingHttp private val uploadApi: DocumentApi,
     private val documentDao: DocumentDao,
     @ApplicationContext private val context: Context
 ) : DocumentRepository {
     
+    private val _uploadProgress = MutableStateFlow<Map<Uri, Float>>(emptyMap())
+    override val uploadProgress: StateFlow<Map<Uri, Float>> = _uploadProgress.asStateFlow()
+    
     override suspend fun uploadDocument(file: File): Result<DocumentResponse> {
         val localId = UUID.randomUUID().toString()
         
@@ -89,7 +105,10 @@ class DocumentRepositoryImpl @Inject constructor(
         try {
             val contentResolver = context.contentResolver
             val mimeType = contentResolver.getType(uri) ?: "application/octet-stream"
-            val fileName = getFileName(uri) ?: "file_${System.currentTimeMillis()}"
+            val (displayName, reportedSize) = queryOpenable(uri)
+            // Без размера лимит и сжатие не сработали бы — считаем по самому потоку
+            val size = reportedSize ?: measureSize(uri)
+            val fileName = displayName ?: "file_${System.currentTimeMillis()}"
             
             // Save locally
             documentDao.insert(
@@ -102,37 +121,43 @@ class DocumentRepositoryImpl @Inject constructor(
                 )
             )
             
-            // Read bytes
-            val inputStream = contentResolver.openInputStream(uri)
-                ?: return@withContext Result.failure(Exception("Cannot open file"))
-            var bytes = inputStream.readBytes()
-            inputStream.close()
-            
-            val originalSize = bytes.size
-            Timber.d("Original file: $fileName, size: ${originalSize / 1024} KB, type: $mimeType")
+            Timber.d("Original file: $fileName, size: ${size / 1024} KB, type: $mimeType")
             
-            // Compress images if too large
             val isImage = mimeType.startsWith("image/")
-            var actualMimeType = mimeType
-            var actualFileName = fileName
-            
-            if (isImage && bytes.size > maxSize) {
-                Timber.d("Image is too large (${bytes.size / 1024 / 1024} MB), compressing...")
-                bytes = compressImage(bytes, maxSize)
-                actualMimeType = "image/jpeg"
-                actualFileName = fileName.substringBeforeLast('.') + ".jpg"
-                Timber.d("Compressed to ${bytes.size / 1024} KB")
-            } else if (!isImage && bytes.size > maxSize) {
-                return@withContext Result.failure(Exception("Файл слишком большой (${bytes.size / 1024 / 1024} MB). Максимум: 10 MB"))
+            val tooLarge = size > maxSize
+            if (!isImage && tooLarge) {
+                return@withContext Result.failure(Exception("Файл слишком большой (${size / 1024 / 1024} MB). Максимум: 10 MB"))
             }
             
-            Timber.d("Uploading: $actualFileName, size: ${bytes.size / 1024} KB, type: $actualMimeType")
-            
-            // Create multipart
-            val fileBody = bytes.toRequestBody(actualMimeType.toMediaType())
-            val multipartBody = MultipartBody.Part.createFormData("file", actualFileName, fileBody)
+            val multipartBody = if (isImage && tooLarge) {
+                // Compress images if too large
+                Timber.d("Image is too large, compressing...")
+                val compressed = ImageCompressor.compress(
+                    openStream = { contentResolver.openInputStream(uri) ?: throw IOException("Cannot open file") },
+                    maxBytes = maxSize
+                ) ?: return@withContext Result.failure(Exception("Не удалось сжать изображение"))
+                Timber.d("Compressed to ${compressed.bytes.size / 1024} KB (${compressed.width}x${compressed.height})")
+                val fileBody = compressed.bytes.toRequestBody("image/jpeg".toMediaType())
+                MultipartBody.Part.createFormData("file", fileName.substringBeforeLast('.') + ".jpg", fileBody)
+            } else {
+                // Файл идёт из ContentResolver в сокет частями, целиком в память не читается
+                Timber.d("Uploading: $fileName, type: $mimeType")
+                val fileBody = StreamingRequestBody(
+                    contentType = mimeType.toMediaType(),
+                    contentLength = size,
+                    openStream = {
+                        contentResolver.openInputStream(uri) ?: throw IOException("Cannot open file")
+                    },
+                    onProgress = { sent, total ->
+                        if (total > 0) {
+                            _uploadProgress.update { it + (uri to sent.toFloat() / total) }
+                        }
+                    }
+                )
+                MultipartBody.Part.createFormData("file", fileName, fileBody)
+            }
             
-            val response = documentApi.uploadDocument(multipartBody)
+            val response = uploadApi.uploadDocument(multipartBody)
             
             // Update local
             documentDao.update(
@@ -167,19 +192,48 @@ class DocumentRepositoryImpl @Inject constructor(
             documentDao.updateStatus(localId, "error")
             Timber.e(e, "Failed to upload document from Uri")
             Result.failure(e)
+        } finally {
+            _uploadProgress.update { it - uri }
         }
     }
     
-    private fun getFileName(uri: Uri): String? {
+    /** Имя и размер из OpenableColumns; провайдер может не знать ни того, ни другого */
+    private fun queryOpenable(uri: Uri): Pair<String?, Long?> {
         var name: String? = null
-        val cursor = context.contentResolver.query(uri, null, null, null, null)
+        var size: Long? = null
+        val projection = arrayOf(OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE)
+        val cursor = context.contentResolver.query(uri, projection, null, null, null)
         cursor?.use {
             if (it.moveToFirst()) {
-                val index = it.getColumnIndex(OpenableColumns.DISPLAY_NAME)
-                if (index >= 0) name = it.getString(index)
+                val nameIndex = it.getColumnIndex(OpenableColumns.DISPLAY_NAME)
+                if (nameIndex >= 0) name = it.getString(nameIndex)
+                val sizeIndex = it.getColumnIndex(OpenableColumns.SIZE)
+                if (sizeIndex >= 0 && !it.isNull(sizeIndex)) size = it.getLong(sizeIndex)
             }
         }
-        return name
+        return name to size
+    }
+    
+    /** Провайдер не сообщил SIZE: длина дескриптора или, если и её нет, подсчёт байт без буфера в памяти */
+    private fun measureSize(uri: Uri): Long {
+        val contentResolver = context.contentResolver
+        val declared = try {
+            contentResolver.openAssetFileDescriptor(uri, "r")?.use { it.length } ?: -1L
+        } catch (e: Exception) {
+            -1L
+        }
+        if (declared >= 0) return declared
+        val stream = contentResolver.openInputStream(uri) ?: throw IOException("Cannot open file")
+        return stream.use { input ->
+            val buffer = ByteArray(8 * 1024)
+            var total = 0L
+            while (true) {
+                val read = input.read(buffer)
+                if (read == -1) break
+                total += read
+            }
+            total
+        }
     }
     
     private fun getMimeType(fileName: String): String = when {
@@ -194,51 +248,6 @@ class DocumentRepositoryImpl @Inject constructor(
         else -> "application/octet-stream"
     }
     
-    /**
-     * Compress image to fit within maxSize bytes
-     * Uses progressive quality reduction and optional resizing
-     * Keeps quality high enough for AI recognition (min 60% quality, min 0.5x scale)
-     */
-    private fun compressImage(imageBytes: ByteArray, maxSize: Int): ByteArray {
-        var bitmap = android.graphics.BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.size)
-            ?: return imageBytes
-        
-        // First, try just reducing quality (but not below 60% for AI recognition)
-        var quality = 85
-        var outputStream = java.io.ByteArrayOutputStream()
-        bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, quality, outputStream)
-        
-        while (outputStream.size() > maxSize && quality > 60) {
-            quality -= 5
-            outputStream = java.io.ByteArrayOutputStream()
-            bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, quality, outputStream)
-            Timber.d("Compress attempt: quality=$quality, size=${outputStream.size() / 1024} KB")
-        }
-        
-        // If still too large, resize the image (but keep at least 50% for AI to read text/details)
-        if (outputStream.size() > maxSize) {
-            var scale = 0.85f
-            while (outputStream.size() > maxSize && scale > 0.5f) {
-                val newWidth = (bitmap.width * scale).toInt()
-                val newHeight = (bitmap.height * scale).toInt()
-                val scaledBitmap = android.graphics.Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true)
-                
-                outputStream = java.io.ByteArrayOutputStream()
-                scaledBitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, quality, outputStream)
-                Timber.d("Resize attempt: scale=$scale (${newWidth}x${newHeight}), size=${outputStream.size() / 1024} KB")
-                
-                if (scaledBitmap != bitmap) {
-                    scaledBitmap.recycle()
-                }
-                scale -= 0.05f
-            }
-        }
-        
-        Timber.d("Final compression: quality=$quality, size=${outputStream.size() / 1024} KB")
-        bitmap.recycle()
-        return outputStream.toByteArray()
-    }
-    
     override suspend fun getDocuments(): Result<List<DocumentResponse>> {
         return try {
             Timber.d("Fetching documents from API...")
@@ -15,6 +15,7 @@ import kotlinx.coroutines.flow.map
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
 import timber.log.Timber
+import java.io.IOException
 import java.util.UUID
 import javax.inject.Inject
 
@@ -35,7 +36,8 @@ interface HealthRepository {
 class HealthRepositoryImpl @Inject constructor(
     private val healthApi: HealthApi,
     private val healthMetricDao: HealthMetricDao,
-    private val moodEntryDao: MoodEntryDao
+    private val moodEntryDao: MoodEntryDao,
+    private val outboxRepository: OutboxRepository
 ) : HealthRepository {
     
     private val json = Json { ignoreUnknownKeys = true }
@@ -71,14 +73,13 @@ class HealthRepositoryImpl @Inject constructor(
         value: Float,
         unit: String
     ): Result<HealthMetricDTO> {
+        val request = ManualMetricRequest(
+            metric_type = metricType,
+            value = value,
+            unit = unit
+        )
         return try {
-            val response = healthApi.addManualMetric(
-                ManualMetricRequest(
-                    metric_type = metricType,
-                    value = value,
-                    unit = unit
-                )
-            )
+            val response = healthApi.addManualMetric(request)
             
             // Save locally
             healthMetricDao.insert(
@@ -93,6 +94,19 @@ class HealthRepositoryImpl @Inject constructor(
             
             Timber.d("Added manual metric: $metricType = $value $unit")
             Result.success(response)
+        } catch (e: IOException) {
+            // Offline: save locally and deliver via outbox
+            healthMetricDao.insert(
+                HealthMetricEntity(
+                    metricType = metricType,
+                    value = value,
+                    unit = unit,
+                    source = "manual"
+                )
+            )
+            outboxRepository.enqueue(OutboxOperationType.HEALTH_METRIC, json.encodeToString(request))
+            Timber.w(e, "Offline, manual metric queued")
+            Result.failure(e)
         } catch (e: Exception) {
             Timber.e(e, "Failed to add manual metric")
             Result.failure(e)
@@ -116,15 +130,14 @@ class HealthRepositoryImpl @Inject constructor(
         symptoms: List<String>,
         journalText: String
     ): Result<MoodEntryDTO> {
+        val request = MoodEntryRequest(
+            mood_level = moodLevel,
+            stress_level = stressLevel,
+            symptoms = symptoms,
+            journal_text = journalText
+        )
         return try {
-            val response = healthApi.submitMoodEntry(
-                MoodEntryRequest(
-                    mood_level = moodLevel,
-                    stress_level = stressLevel,
-                    symptoms = symptoms,
-                    journal_text = journalText
-                )
-            )
+            val response = healthApi.submitMoodEntry(request)
             
             // Save locally
             moodEntryDao.insert(
@@ -150,6 +163,9 @@ class HealthRepositoryImpl @Inject constructor(
                     journalText = journalText
                 )
             )
+            if (e is IOException) {
+                outboxRepository.enqueue(OutboxOperationType.HEALTH_MOOD, json.encodeToString(request))
+            }
             Timber.e(e, "Failed to submit mood entry to server, saved locally")
             Result.failure(e)
         }
@@ -1,5 +1,6 @@
 package com.health.companion.data.repositories
 
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.remote.api.*
 import timber.log.Timber
 import javax.inject.Inject
@@ -31,7 +32,8 @@ interface IntelligenceRepository {
 
 @Singleton
 class IntelligenceRepositoryImpl @Inject constructor(
-    private val intelligenceApi: IntelligenceApi
+    private val intelligenceApi: IntelligenceApi,
+    private val cacheStore: CacheStore
 ) : IntelligenceRepository {
 
     // ========== EMOTIONS ==========
@@ -50,7 +52,9 @@ class IntelligenceRepositoryImpl @Inject constructor(
 
     override suspend fun getEmotionsSummary(days: Int): Result<EmotionsSummaryResponse> {
         return try {
-            val response = intelligenceApi.getEmotionsSummary(days)
+            val response = cacheStore.get("${KEY_EMOTIONS_SUMMARY}$days", CacheStore.TTL_MEDIUM) {
+                intelligenceApi.getEmotionsSummary(days)
+            }
             Timber.d("Emotions summary: status=${response.status}, dominant=${response.dominant_emotion}")
             Result.success(response)
         } catch (e: Exception) {
@@ -61,7 +65,9 @@ class IntelligenceRepositoryImpl @Inject constructor(
 
     override suspend fun getTherapeuticTechniques(): Result<TherapeuticTechniquesResponse> {
         return try {
-            val response = intelligenceApi.getTherapeuticTechniques()
+            val response = cacheStore.get(KEY_TECHNIQUES, CacheStore.TTL_LONG) {
+                intelligenceApi.getTherapeuticTechniques()
+            }
             Timber.d("Got ${response.techniques.size} therapeutic techniques")
             Result.success(response)
         } catch (e: Exception) {
@@ -87,7 +93,9 @@ class IntelligenceRepositoryImpl @Inject constructor(
 
     override suspend fun getNotifications(skip: Int, limit: Int): Result<NotificationsResponse> {
         return try {
-            val response = intelligenceApi.getNotifications(skip, limit)
+            val response = cacheStore.get("${KEY_NOTIFICATIONS}$skip:$limit", CacheStore.TTL_SHORT) {
+                intelligenceApi.getNotifications(skip, limit)
+            }
             Timber.d("Got ${response.items.size} notifications, unread=${response.unread}")
             Result.success(response)
         } catch (e: Exception) {
@@ -98,7 +106,9 @@ class IntelligenceRepositoryImpl @Inject constructor(
 
     override suspend fun getUnreadCount(): Result<UnreadCountResponse> {
         return try {
-            val response = intelligenceApi.getUnreadCount()
+            val response = cacheStore.get(KEY_UNREAD_COUNT, CacheStore.TTL_SHORT) {
+                intelligenceApi.getUnreadCount()
+            }
             Timber.d("Unread notifications: ${response.count}")
             Result.success(response)
         } catch (e: Exception) {
@@ -109,7 +119,9 @@ class IntelligenceRepositoryImpl @Inject constructor(
 
     override suspend fun getNotificationPreferences(): Result<NotificationPreferencesResponse> {
         return try {
-            val response = intelligenceApi.getNotificationPreferences()
+            val response = cacheStore.get(KEY_NOTIFICATION_PREFS, CacheStore.TTL_LONG) {
+                intelligenceApi.getNotificationPreferences()
+            }
             Timber.d("Got notification preferences")
             Result.success(response)
         } catch (e: Exception) {
@@ -123,6 +135,12 @@ class IntelligenceRepositoryImpl @Inject constructor(
     ): Result<NotificationPreferencesResponse> {
         return try {
             val response = intelligenceApi.updateNotificationPreferences(preferences)
+            cacheStore.put(
+                KEY_NOTIFICATION_PREFS,
+                NotificationPreferencesResponse.serializer(),
+                response,
+                CacheStore.TTL_LONG
+            )
             Timber.d("Updated notification preferences")
             Result.success(response)
         } catch (e: Exception) {
@@ -134,6 +152,7 @@ class IntelligenceRepositoryImpl @Inject constructor(
     override suspend fun markNotificationRead(notificationId: String): Result<NotificationItem> {
         return try {
             val response = intelligenceApi.markNotificationRead(notificationId)
+            invalidateNotifications()
             Timber.d("Marked notification $notificationId as read")
             Result.success(response)
         } catch (e: Exception) {
@@ -145,6 +164,7 @@ class IntelligenceRepositoryImpl @Inject constructor(
     override suspend fun dismissNotification(notificationId: String): Result<DismissResponse> {
         return try {
             val response = intelligenceApi.dismissNotification(notificationId)
+            invalidateNotifications()
             Timber.d("Dismissed notification $notificationId")
             Result.success(response)
         } catch (e: Exception) {
@@ -171,6 +191,7 @@ class IntelligenceRepositoryImpl @Inject constructor(
         return try {
             val request = RememberFactRequest(key = key, value = value, category = category)
             val response = intelligenceApi.rememberFact(request)
+            cacheStore.invalidate(KEY_MEMORY_STATS)
             Timber.d("Remembered fact: $key = $value")
             Result.success(response)
         } catch (e: Exception) {
@@ -183,6 +204,7 @@ class IntelligenceRepositoryImpl @Inject constructor(
         return try {
             val request = ForgetFactRequest(key = key)
             val response = intelligenceApi.forgetFact(request)
+            cacheStore.invalidate(KEY_MEMORY_STATS)
             Timber.d("Forgot fact: $key")
             Result.success(response)
         } catch (e: Exception) {
@@ -193,7 +215,9 @@ class IntelligenceRepositoryImpl @Inject constructor(
 
     override suspend fun getMemoryStats(): Result<MemoryStatsResponse> {
         return try {
-            val response = intelligenceApi.getMemoryStats()
+            val response = cacheStore.get(KEY_MEMORY_STATS, CacheStore.TTL_MEDIUM) {
+                intelligenceApi.getMemoryStats()
+            }
             Timber.d("Memory stats: ${response.factsCount} facts, ${response.episodesCount} episodes")
             Result.success(response)
         } catch (e: Exception) {
@@ -201,4 +225,18 @@ class IntelligenceRepositoryImpl @Inject constructor(
             Result.failure(e)
         }
     }
+
+    private suspend fun invalidateNotifications() {
+        cacheStore.invalidatePrefix(KEY_NOTIFICATIONS)
+        cacheStore.invalidate(KEY_UNREAD_COUNT)
+    }
+
+    companion object {
+        private const val KEY_EMOTIONS_SUMMARY = "intelligence:emotions_summary:"
+        private const val KEY_TECHNIQUES = "intelligence:techniques"
+        private const val KEY_NOTIFICATIONS = "intelligence:notifications:"
+        private const val KEY_UNREAD_COUNT = "intelligence:unread_count"
+        private const val KEY_NOTIFICATION_PREFS = "intelligence:notification_prefs"
+        private const val KEY_MEMORY_STATS = "intelligence:memory_stats"
+    }
 }
@@ -1,6 +1,8 @@
 package com.health.companion.data.repositories
 
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.remote.api.*
+import kotlinx.coroutines.flow.Flow
 import timber.log.Timber
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -10,33 +12,41 @@ interface LifeContextRepository {
     suspend fun getQuestionnaire(section: String? = null): Result<QuestionnaireResponse>
     suspend fun saveAnswers(answers: Map<String, Any>): Result<SaveAnswersResponse>
     suspend fun getProfile(): Result<UserProfile>
+    fun observeQuestionnaire(section: String? = null): Flow<Result<QuestionnaireResponse>>
+    fun observeProfile(forceRefresh: Boolean = false): Flow<Result<UserProfile>>
     
     // Important Dates
     suspend fun getImportantDates(): Result<List<ImportantDate>>
+    fun observeImportantDates(): Flow<Result<List<ImportantDate>>>
     suspend fun addImportantDate(date: ImportantDateCreate): Result<AddDateResponse>
     suspend fun updateImportantDate(id: String, update: ImportantDateUpdate): Result<ImportantDate>
     suspend fun deleteImportantDate(id: String): Result<Unit>
     
     // Important People
     suspend fun getImportantPeople(): Result<List<ImportantPerson>>
+    fun observeImportantPeople(): Flow<Result<List<ImportantPerson>>>
     suspend fun addImportantPerson(person: ImportantPersonCreate): Result<AddPersonResponse>
     suspend fun updateImportantPerson(id: String, update: ImportantPersonUpdate): Result<ImportantPerson>
     suspend fun deleteImportantPerson(id: String): Result<Unit>
     
     // Patterns
     suspend fun getLifePatterns(): Result<LifePatternsResponse>
+    fun observeLifePatterns(): Flow<Result<LifePatternsResponse>>
 }
 
 @Singleton
 class LifeContextRepositoryImpl @Inject constructor(
-    private val api: LifeContextApi
+    private val api: LifeContextApi,
+    private val cacheStore: CacheStore
 ) : LifeContextRepository {
     
     // ==================== QUESTIONNAIRE ====================
     
     override suspend fun getQuestionnaire(section: String?): Result<QuestionnaireResponse> {
         return try {
-            val response = api.getQuestionnaire(section)
+            val response = cacheStore.get(questionnaireKey(section), CacheStore.TTL_LONG) {
+                api.getQuestionnaire(section)
+            }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get questionnaire")
@@ -48,6 +58,8 @@ class LifeContextRepositoryImpl @Inject constructor(
         return try {
             val request = QuestionnaireRequest(answers)
             val response = api.saveAnswers(request)
+            cacheStore.invalidate(KEY_PROFILE)
+            cacheStore.invalidate(KEY_PATTERNS)
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to save answers")
@@ -57,7 +69,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     
     override suspend fun getProfile(): Result<UserProfile> {
         return try {
-            val response = api.getProfile()
+            val response = cacheStore.get(KEY_PROFILE, CacheStore.TTL_MEDIUM) { api.getProfile() }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get profile")
@@ -69,7 +81,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     
     override suspend fun getImportantDates(): Result<List<ImportantDate>> {
         return try {
-            val response = api.getImportantDates()
+            val response = cacheStore.get(KEY_DATES, CacheStore.TTL_MEDIUM) { api.getImportantDates() }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get important dates")
@@ -80,6 +92,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     override suspend fun addImportantDate(date: ImportantDateCreate): Result<AddDateResponse> {
         return try {
             val response = api.addImportantDate(date)
+            cacheStore.invalidate(KEY_DATES)
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to add important date")
@@ -90,6 +103,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     override suspend fun updateImportantDate(id: String, update: ImportantDateUpdate): Result<ImportantDate> {
         return try {
             val response = api.updateImportantDate(id, update)
+            cacheStore.invalidate(KEY_DATES)
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to update important date")
@@ -100,6 +114,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     override suspend fun deleteImportantDate(id: String): Result<Unit> {
         return try {
             api.deleteImportantDate(id)
+            cacheStore.invalidate(KEY_DATES)
             Result.success(Unit)
         } catch (e: Exception) {
             Timber.e(e, "Failed to delete important date")
@@ -111,7 +126,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     
     override suspend fun getImportantPeople(): Result<List<ImportantPerson>> {
         return try {
-            val response = api.getImportantPeople()
+            val response = cacheStore.get(KEY_PEOPLE, CacheStore.TTL_MEDIUM) { api.getImportantPeople() }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get important people")
@@ -122,6 +137,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     override suspend fun addImportantPerson(person: ImportantPersonCreate): Result<AddPersonResponse> {
         return try {
             val response = api.addImportantPerson(person)
+            cacheStore.invalidate(KEY_PEOPLE)
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to add important person")
@@ -132,6 +148,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     override suspend fun updateImportantPerson(id: String, update: ImportantPersonUpdate): Result<ImportantPerson> {
         return try {
             val response = api.updateImportantPerson(id, update)
+            cacheStore.invalidate(KEY_PEOPLE)
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to update important person")
@@ -142,6 +159,7 @@ class LifeContextRepositoryImpl @Inject constructor(
     override suspend fun deleteImportantPerson(id: String): Result<Unit> {
         return try {
             api.deleteImportantPerson(id)
+            cacheStore.invalidate(KEY_PEOPLE)
             Result.success(Unit)
         } catch (e: Exception) {
             Timber.e(e, "Failed to delete important person")
@@ -153,11 +171,37 @@ class LifeContextRepositoryImpl @Inject constructor(
     
     override suspend fun getLifePatterns(): Result<LifePatternsResponse> {
         return try {
-            val response = api.getLifePatterns()
+            val response = cacheStore.get(KEY_PATTERNS, CacheStore.TTL_LONG) { api.getLifePatterns() }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get life patterns")
             Result.failure(e)
         }
     }
+    
+    // ==================== CACHED STREAMS ====================
+    
+    override fun observeQuestionnaire(section: String?): Flow<Result<QuestionnaireResponse>> =
+        cacheStore.stream(questionnaireKey(section), CacheStore.TTL_LONG) { api.getQuestionnaire(section) }
+    
+    override fun observeProfile(forceRefresh: Boolean): Flow<Result<UserProfile>> =
+        cacheStore.stream(KEY_PROFILE, CacheStore.TTL_MEDIUM, forceRefresh) { api.getProfile() }
+    
+    override fun observeImportantDates(): Flow<Result<List<ImportantDate>>> =
+        cacheStore.stream(KEY_DATES, CacheStore.TTL_MEDIUM) { api.getImportantDates() }
+    
+    override fun observeImportantPeople(): Flow<Result<List<ImportantPerson>>> =
+        cacheStore.stream(KEY_PEOPLE, CacheStore.TTL_MEDIUM) { api.getImportantPeople() }
+    
+    override fun observeLifePatterns(): Flow<Result<LifePatternsResponse>> =
+        cacheStore.stream(KEY_PATTERNS, CacheStore.TTL_LONG) { api.getLifePatterns() }
+    
+    private fun questionnaireKey(section: String?) = "life:questionnaire:${section ?: "all"}"
+    
+    companion object {
+        private const val KEY_PROFILE = "life:profile"
+        private const val KEY_DATES = "life:important_dates"
+        private const val KEY_PEOPLE = "life:important_people"
+        private const val KEY_PATTERNS = "life:patterns"
+    }
 }
@@ -1,6 +1,8 @@
 package com.health.companion.data.repositories
 
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.remote.api.*
+import kotlinx.coroutines.flow.Flow
 import timber.log.Timber
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -12,11 +14,14 @@ interface MedicalRepository {
     suspend fun searchMedical(query: String): Result<MedicalSearchResponse>
     suspend fun getRecommendations(focusArea: String? = null): Result<HealthRecommendationsResponse>
     suspend fun getEmergencyInfo(): Result<EmergencyInfoResponse>
+    fun observeRecommendations(focusArea: String? = null): Flow<Result<HealthRecommendationsResponse>>
+    fun observeEmergencyInfo(): Flow<Result<EmergencyInfoResponse>>
 }
 
 @Singleton
 class MedicalRepositoryImpl @Inject constructor(
-    private val api: MedicalApi
+    private val api: MedicalApi,
+    private val cacheStore: CacheStore
 ) : MedicalRepository {
     
     override suspend fun checkSymptoms(symptoms: String, duration: String?): Result<SymptomCheckResponse> {
@@ -65,7 +70,9 @@ class MedicalRepositoryImpl @Inject constructor(
     
     override suspend fun getRecommendations(focusArea: String?): Result<HealthRecommendationsResponse> {
         return try {
-            val response = api.getRecommendations(focusArea)
+            val response = cacheStore.get(recommendationsKey(focusArea), CacheStore.TTL_LONG) {
+                api.getRecommendations(focusArea)
+            }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get recommendations")
@@ -75,11 +82,25 @@ class MedicalRepositoryImpl @Inject constructor(
     
     override suspend fun getEmergencyInfo(): Result<EmergencyInfoResponse> {
         return try {
-            val response = api.getEmergencyInfo()
+            val response = cacheStore.get(KEY_EMERGENCY_INFO, CacheStore.TTL_LONG) { api.getEmergencyInfo() }
             Result.success(response)
         } catch (e: Exception) {
             Timber.e(e, "Failed to get emergency info")
             Result.failure(e)
         }
     }
+    
+    // Рекомендации и экстренная информация меняются редко — показываем с диска.
+    // Анализы (симптомы, взаимодействия, лабораторные) не кэшируем: это POST с уникальным вводом
+    override fun observeRecommendations(focusArea: String?): Flow<Result<HealthRecommendationsResponse>> =
+        cacheStore.stream(recommendationsKey(focusArea), CacheStore.TTL_LONG) { api.getRecommendations(focusArea) }
+    
+    override fun observeEmergencyInfo(): Flow<Result<EmergencyInfoResponse>> =
+        cacheStore.stream(KEY_EMERGENCY_INFO, CacheStore.TTL_LONG) { api.getEmergencyInfo() }
+    
+    private fun recommendationsKey(focusArea: String?) = "medical:recommendations:${focusArea ?: "all"}"
+    
+    companion object {
+        private const val KEY_EMERGENCY_INFO = "medical:emergency_info"
+    }
 }
@@ -0,0 +1,214 @@
+package com.health.companion.data.repositories
+
+import android.content.Context
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import com.health.companion.data.local.dao.OutboxDao
+import com.health.companion.data.local.database.OutboxOperationEntity
+import com.health.companion.services.OutboxWorker
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+enum class OutboxOperationType {
+    CHAT_MESSAGE,
+    WELLNESS_MOOD,
+    HEALTH_MOOD,
+    HABIT_COMPLETE,
+    HEALTH_METRIC,
+    CONVERSATION_FLAGS
+}
+
+/**
+ * Сообщение чата, сохранённое офлайн с заглушкой ответа «Режим офлайн»
+ */
+@Serializable
+data class QueuedChatMessage(
+    val clientMessageId: String,
+    val text: String,
+    val placeholderId: String,
+    val localConversationId: String,
+    val isNewConversation: Boolean
+)
+
+@Serializable
+data class QueuedHabitCompletion(
+    val habitId: String,
+    val note: String? = null
+)
+
+/**
+ * Итог сообщения чата из outbox: доставлено или выброшено (4xx / исчерпаны попытки)
+ */
+data class ChatDeliveryResult(
+    val clientMessageId: String,
+    val delivered: Boolean
+)
+
+/**
+ * Метрики очереди для диагностики
+ */
+data class OutboxStats(
+    val delivered: Int = 0,
+    val retried: Int = 0,
+    val dropped: Int = 0,
+    val lastFlushAt: Long? = null
+)
+
+interface OutboxRepository {
+    val queueDepth: Flow<Int>
+    val stats: StateFlow<OutboxStats>
+
+    /** oldId → newId, когда офлайн-диалог получил серверный id */
+    val conversationRemaps: SharedFlow<Pair<String, String>>
+
+    /** Подтверждённая доставка или отказ по каждому сообщению чата */
+    val chatDeliveries: SharedFlow<ChatDeliveryResult>
+
+    suspend fun enqueue(type: OutboxOperationType, payload: String, targetId: String? = null)
+
+    /** clientMessageId сообщений чата, которые ещё ждут отправки */
+    suspend fun pendingChatMessageIds(): Set<String>
+
+    /** Диалоги, на которые ссылаются операции в очереди: их нельзя удалять при синхронизации */
+    suspend fun pendingConversationIds(): Set<String>
+
+    /** targetId операций данного типа, которые ещё ждут отправки */
+    suspend fun pendingTargetIds(type: OutboxOperationType): Set<String>
+    suspend fun nextBatch(limit: Int): List<OutboxOperationEntity>
+    suspend fun markDelivered(operation: OutboxOperationEntity)
+    suspend fun markFailed(operation: OutboxOperationEntity, error: Throwable?)
+    suspend fun markDropped(operation: OutboxOperationEntity, error: Throwable?)
+    suspend fun remapConversation(oldId: String, newId: String)
+    suspend fun clear()
+
+    /**
+     * Планирует OutboxWorker с ограничением по сети.
+     * @param appendToRunning APPEND_OR_REPLACE — операция, добавленная во время
+     * работающего флаша, не потеряется; false (KEEP) — для старта приложения
+     */
+    fun scheduleFlush(appendToRunning: Boolean = true)
+    fun onFlushFinished()
+}
+
+@Singleton
+class OutboxRepositoryImpl @Inject constructor(
+    private val outboxDao: OutboxDao,
+    private val context: Context
+) : OutboxRepository {
+
+    private val _stats = MutableStateFlow(OutboxStats())
+    override val stats: StateFlow<OutboxStats> = _stats.asStateFlow()
+
+    private val _conversationRemaps = MutableSharedFlow<Pair<String, String>>(extraBufferCapacity = 8)
+    override val conversationRemaps: SharedFlow<Pair<String, String>> = _conversationRemaps.asSharedFlow()
+
+    private val _chatDeliveries = MutableSharedFlow<ChatDeliveryResult>(extraBufferCapacity = 32)
+    override val chatDeliveries: SharedFlow<ChatDeliveryResult> = _chatDeliveries.asSharedFlow()
+
+    override val queueDepth: Flow<Int> = outboxDao.getCountFlow()
+
+    override suspend fun enqueue(type: OutboxOperationType, payload: String, targetId: String?) {
+        outboxDao.insert(
+            OutboxOperationEntity(
+                type = type.name,
+                payload = payload,
+                targetId = targetId
+            )
+        )
+        Timber.d("Outbox: queued $type (target=$targetId)")
+        scheduleFlush()
+    }
+
+    override suspend fun pendingChatMessageIds(): Set<String> =
+        outboxDao.getPayloads(OutboxOperationType.CHAT_MESSAGE.name)
+            .mapNotNull { payload ->
+                runCatching { Json.decodeFromString<QueuedChatMessage>(payload).clientMessageId }.getOrNull()
+            }
+            .toSet()
+
+    override suspend fun pendingConversationIds(): Set<String> {
+        val localIds = outboxDao.getPayloads(OutboxOperationType.CHAT_MESSAGE.name)
+            .mapNotNull { payload ->
+                runCatching { Json.decodeFromString<QueuedChatMessage>(payload).localConversationId }.getOrNull()
+            }
+        return outboxDao.getTargetIds().toSet() + localIds
+    }
+
+    override suspend fun pendingTargetIds(type: OutboxOperationType): Set<String> =
+        outboxDao.getTargetIdsByType(type.name).toSet()
+
+    override suspend fun nextBatch(limit: Int): List<OutboxOperationEntity> = outboxDao.getBatch(limit)
+
+    override suspend fun markDelivered(operation: OutboxOperationEntity) {
+        outboxDao.deleteById(operation.id)
+        _stats.update { it.copy(delivered = it.delivered + 1) }
+        reportChatDelivery(operation, delivered = true)
+    }
+
+    override suspend fun markFailed(operation: OutboxOperationEntity, error: Throwable?) {
+        outboxDao.markAttemptFailed(operation.id, error?.message)
+        _stats.update { it.copy(retried = it.retried + 1) }
+    }
+
+    override suspend fun markDropped(operation: OutboxOperationEntity, error: Throwable?) {
+        outboxDao.deleteById(operation.id)
+        _stats.update { it.copy(dropped = it.dropped + 1) }
+        reportChatDelivery(operation, delivered = false)
+        Timber.w(error, "Outbox: dropped ${operation.type} after ${operation.attempts + 1} attempts")
+    }
+
+    private fun reportChatDelivery(operation: OutboxOperationEntity, delivered: Boolean) {
+        if (operation.type != OutboxOperationType.CHAT_MESSAGE.name) return
+        val clientMessageId = runCatching {
+            Json.decodeFromString<QueuedChatMessage>(operation.payload).clientMessageId
+        }.getOrNull() ?: return
+        _chatDeliveries.tryEmit(ChatDeliveryResult(clientMessageId, delivered))
+    }
+
+    override suspend fun remapConversation(oldId: String, newId: String) {
+        outboxDao.remapTarget(oldId, newId)
+        _conversationRemaps.tryEmit(oldId to newId)
+    }
+
+    override suspend fun clear() {
+        outboxDao.deleteAll()
+    }
+
+    override fun scheduleFlush(appendToRunning: Boolean) {
+        val request = OneTimeWorkRequestBuilder<OutboxWorker>()
+            .setConstraints(
+                Constraints.Builder()
+                    .setRequiredNetworkType(NetworkType.CONNECTED)
+                    .build()
+            )
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+            .build()
+        val policy = if (appendToRunning) ExistingWorkPolicy.APPEND_OR_REPLACE else ExistingWorkPolicy.KEEP
+        WorkManager.getInstance(context)
+            .enqueueUniqueWork(OutboxWorker.WORK_NAME, policy, request)
+    }
+
+    override fun onFlushFinished() {
+        _stats.update { it.copy(lastFlushAt = System.currentTimeMillis()) }
+    }
+
+    companion object {
+        private const val BACKOFF_SECONDS = 30L
+    }
+}
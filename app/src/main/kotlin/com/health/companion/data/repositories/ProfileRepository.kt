@@ -1,13 +1,16 @@
 package com.health.companion.data.repositories
 
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.remote.api.*
+import kotlinx.coroutines.flow.Flow
 import timber.log.Timber
 import javax.inject.Inject
 import javax.inject.Singleton
 
 interface ProfileRepository {
-    fun getCachedProfile(): ProfileResponse?
-    suspend fun getProfile(): Result<ProfileResponse>
+    /** Сначала профиль из кэша на диске, потом свежий с сервера */
+    fun observeProfile(forceRefresh: Boolean = false): Flow<Result<ProfileResponse>>
+    suspend fun getProfile(forceRefresh: Boolean = false): Result<ProfileResponse>
     suspend fun getKnowledgeGraph(entityType: String? = null, limit: Int? = null): Result<KnowledgeGraphResponse>
     suspend fun deleteFact(id: String): Result<DeleteResponse>
     suspend fun clearAllFacts(): Result<DeleteResponse>
@@ -15,45 +18,34 @@ interface ProfileRepository {
 
 @Singleton
 class ProfileRepositoryImpl @Inject constructor(
-    private val profileApi: ProfileApi
+    private val profileApi: ProfileApi,
+    private val cacheStore: CacheStore
 ) : ProfileRepository {
 
-    // Кэш на уровне Singleton
-    @Volatile
-    private var cachedProfile: ProfileResponse? = null
-    
-    @Volatile
-    private var lastFetchTime: Long = 0L
-    
-    private val CACHE_TTL = 30_000L // 30 секунд
-    
-    override fun getCachedProfile(): ProfileResponse? = cachedProfile
+    override fun observeProfile(forceRefresh: Boolean): Flow<Result<ProfileResponse>> =
+        cacheStore.stream(KEY_PROFILE, CacheStore.TTL_SHORT, forceRefresh) { fetchProfile() }
 
-    override suspend fun getProfile(): Result<ProfileResponse> {
-        val now = System.currentTimeMillis()
-        cachedProfile?.let { cached ->
-            if (now - lastFetchTime < CACHE_TTL) {
-                Timber.d("Profile from cache")
-                return Result.success(cached)
-            }
-        }
-        
+    override suspend fun getProfile(forceRefresh: Boolean): Result<ProfileResponse> {
         return try {
-            val response = profileApi.getProfile()
-            cachedProfile = response
-            lastFetchTime = now
-            Timber.d("Profile fetched: ${response.facts.size} facts")
-            Result.success(response)
+            Result.success(cacheStore.get(KEY_PROFILE, CacheStore.TTL_SHORT, forceRefresh) { fetchProfile() })
         } catch (e: Exception) {
             Timber.e(e, "Failed to load profile")
-            cachedProfile?.let { return Result.success(it) }
             Result.failure(e)
         }
     }
 
+    private suspend fun fetchProfile(): ProfileResponse {
+        val response = profileApi.getProfile()
+        Timber.d("Profile fetched: ${response.facts.size} facts")
+        return response
+    }
+
     override suspend fun getKnowledgeGraph(entityType: String?, limit: Int?): Result<KnowledgeGraphResponse> {
         return try {
-            Result.success(profileApi.getKnowledgeGraph(entityType, limit))
+            val key = "${KEY_KNOWLEDGE_GRAPH}${entityType.orEmpty()}:${limit ?: ""}"
+            Result.success(
+                cacheStore.get(key, CacheStore.TTL_MEDIUM) { profileApi.getKnowledgeGraph(entityType, limit) }
+            )
         } catch (e: Exception) {
             Timber.e(e, "Failed to load knowledge graph")
             Result.failure(e)
@@ -64,9 +56,15 @@ class ProfileRepositoryImpl @Inject constructor(
         return try {
             val result = profileApi.deleteFact(id)
             // Обновим кэш
-            cachedProfile = cachedProfile?.copy(
-                facts = cachedProfile?.facts?.filterNot { it.id == id } ?: emptyList()
-            )
+            cacheStore.peek(KEY_PROFILE, ProfileResponse.serializer())?.let { cached ->
+                cacheStore.put(
+                    KEY_PROFILE,
+                    ProfileResponse.serializer(),
+                    cached.copy(facts = cached.facts.filterNot { it.id == id }),
+                    CacheStore.TTL_SHORT
+                )
+            }
+            cacheStore.invalidatePrefix(KEY_KNOWLEDGE_GRAPH)
             Result.success(result)
         } catch (e: Exception) {
             Timber.e(e, "Failed to delete fact: $id")
@@ -78,11 +76,19 @@ class ProfileRepositoryImpl @Inject constructor(
         return try {
             val result = profileApi.clearAllFacts()
             // Обновим кэш
-            cachedProfile = cachedProfile?.copy(facts = emptyList())
+            cacheStore.peek(KEY_PROFILE, ProfileResponse.serializer())?.let { cached ->
+                cacheStore.put(KEY_PROFILE, ProfileResponse.serializer(), cached.copy(facts = emptyList()), CacheStore.TTL_SHORT)
+            }
+            cacheStore.invalidatePrefix(KEY_KNOWLEDGE_GRAPH)
             Result.success(result)
         } catch (e: Exception) {
             Timber.e(e, "Failed to clear all facts")
             Result.failure(e)
         }
     }
+
+    companion object {
+        private const val KEY_PROFILE = "profile:main"
+        private const val KEY_KNOWLEDGE_GRAPH = "profile:knowledge_graph:"
+    }
 }
@@ -6,23 +6,62 @@ import android.media.AudioRecord
 import android.media.MediaPlayer
 import android.media.MediaRecorder
 import android.os.Build
+import android.os.SystemClock
+import com.health.companion.data.local.TtsAudioCache
+import com.health.companion.data.remote.ResumableAudioUploader
+import com.health.companion.data.remote.StreamingSttClient
+import com.health.companion.data.remote.TranscriptEvent
 import com.health.companion.data.remote.api.SynthesizeRequest
 import com.health.companion.data.remote.api.TranscribeResponse
+import com.health.companion.data.remote.api.UploadTranscribeRequest
+import com.health.companion.data.remote.api.UploadVoiceChatRequest
 import com.health.companion.data.remote.api.VoiceApi
 import com.health.companion.data.remote.api.VoiceInfo
+import com.health.companion.di.StreamingHttp
+import com.health.companion.ml.voice.AacFileWriter
+import com.health.companion.ml.voice.PcmFileWriter
+import com.health.companion.ml.voice.PcmPipe
+import com.health.companion.ml.voice.PcmRecorder
+import com.health.companion.ml.voice.ProgressiveAudioPlayer
+import com.health.companion.ml.voice.SentenceSpeechQueue
+import com.health.companion.ml.voice.SpeechGate
+import com.health.companion.ml.voice.VadConfig
+import com.health.companion.ml.voice.VoiceCaptureProfile
+import com.health.companion.ml.voice.WavFileWriter
+import com.health.companion.services.TranscriptionWorker
+import com.health.companion.utils.PerformanceLog
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.consumeAsFlow
+import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.asSharedFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.MultipartBody
 import okhttp3.RequestBody.Companion.asRequestBody
 import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.ResponseBody
+import retrofit2.HttpException
 import timber.log.Timber
+import java.io.Closeable
 import java.io.File
 import java.io.FileOutputStream
+import java.io.IOException
 import java.net.URLDecoder
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -32,14 +71,29 @@ import javax.inject.Singleton
  * - Record audio → Send to /voice/transcribe (STT)
  * - Send text → Get audio from /voice/synthesize (TTS)
  * - Full voice chat: audio → /voice/chat → audio response
+ * - Streaming STT: PCM frames → /voice/transcribe/stream while the user speaks
+ * - Progressive TTS: playback starts on the first bytes of /voice/synthesize
+ * - Voice mode: sentence-by-sentence TTS of a streamed answer, barge-in detection
+ * - TTS cache: repeated phrases play from disk ([TtsAudioCache]) without a request
+ * - Long recordings upload in resumable parts ([ResumableAudioUploader])
+ * - No network at the end of a recording: the file is transcribed in the background ([TranscriptionWorker])
  */
 @Singleton
 class VoiceRepository @Inject constructor(
     private val voiceApi: VoiceApi,
+    // synthesize через клиент без BODY-логгера: иначе debug-сборка ждёт весь MP3
+    @StreamingHttp private val streamingVoiceApi: VoiceApi,
+    private val streamingSttClient: StreamingSttClient,
+    private val audioUploader: ResumableAudioUploader,
+    private val ttsCache: TtsAudioCache,
     @ApplicationContext private val context: Context
 ) {
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
     private var mediaRecorder: MediaRecorder? = null
+    private var streamingSession: StreamingSession? = null
     private var mediaPlayer: MediaPlayer? = null
+    private val progressivePlayer = ProgressiveAudioPlayer()
+    private var playbackJob: Job? = null
     private var audioFile: File? = null
     
     private val _isRecording = MutableStateFlow(false)
@@ -51,6 +105,17 @@ class VoiceRepository @Inject constructor(
     private val _recordingAmplitude = MutableStateFlow(0)
     val recordingAmplitude: StateFlow<Int> = _recordingAmplitude.asStateFlow()
     
+    private val _partialTranscript = MutableStateFlow("")
+    val partialTranscript: StateFlow<String> = _partialTranscript.asStateFlow()
+    
+    // VAD решил, что фраза закончилась — запись остановлена, ждёт stopStreamingTranscription
+    private val _autoStopEvents = MutableSharedFlow<Unit>(extraBufferCapacity = 1)
+    val autoStopEvents: SharedFlow<Unit> = _autoStopEvents.asSharedFlow()
+    
+    // Текст записи, распознанной в фоне после обрыва сети; ждёт, пока его заберёт экран
+    private val _deferredTranscript = MutableStateFlow<String?>(null)
+    val deferredTranscript: StateFlow<String?> = _deferredTranscript.asStateFlow()
+    
     // Available voices from backend
     private var cachedVoices: List<VoiceInfo>? = null
     private var defaultVoice: String = "nova"
@@ -84,7 +149,9 @@ class VoiceRepository @Inject constructor(
     /**
      * Start recording audio
      */
-    suspend fun startRecording(): Result<Unit> = withContext(Dispatchers.IO) {
+    suspend fun startRecording(
+        profile: VoiceCaptureProfile = VoiceCaptureProfile.SPEECH
+    ): Result<Unit> = withContext(Dispatchers.IO) {
         try {
             // Create temp file for recording
             audioFile = File.createTempFile("voice_", ".m4a", context.cacheDir)
@@ -99,8 +166,8 @@ class VoiceRepository @Inject constructor(
                 setOutputFormat(MediaRecorder.OutputFormat.MPEG_4)
                 setAudioEncoder(MediaRecorder.AudioEncoder.AAC)
                 setAudioChannels(1)
-                setAudioSamplingRate(44100)
-                setAudioEncodingBitRate(128000)
+                setAudioSamplingRate(profile.sampleRate)
+                setAudioEncodingBitRate(profile.bitRate)
                 setOutputFile(audioFile?.absolutePath)
                 prepare()
                 start()
@@ -165,17 +232,25 @@ class VoiceRepository @Inject constructor(
     /**
      * Transcribe audio file to text using backend STT (Whisper)
      */
-    suspend fun transcribe(audioFile: File, language: String = "ru"): Result<TranscribeResponse> {
+    suspend fun transcribe(
+        audioFile: File,
+        language: String = "ru",
+        mimeType: String = "audio/mp4",
+        waitForNetwork: Boolean = true
+    ): Result<TranscribeResponse> {
         return try {
-            val filePart = MultipartBody.Part.createFormData(
-                "file",
-                audioFile.name,
-                audioFile.asRequestBody("audio/mp4".toMediaType())
-            )
-            
-            val languagePart = language.toRequestBody("text/plain".toMediaType())
-            
-            val response = voiceApi.transcribe(filePart, languagePart)
+            val uploadId = uploadResumable(audioFile, mimeType, waitForNetwork)
+            val response = if (uploadId != null) {
+                voiceApi.transcribeUpload(uploadId, UploadTranscribeRequest(language))
+            } else {
+                val filePart = MultipartBody.Part.createFormData(
+                    "file",
+                    audioFile.name,
+                    audioFile.asRequestBody(mimeType.toMediaType())
+                )
+                val languagePart = language.toRequestBody("text/plain".toMediaType())
+                voiceApi.transcribe(filePart, languagePart)
+            }
             Timber.d("Transcribed: ${response.text}")
             Result.success(response)
         } catch (e: Exception) {
@@ -184,28 +259,358 @@ class VoiceRepository @Inject constructor(
         }
     }
     
+    /**
+     * Длинная запись уходит частями с докачкой после обрыва; короткая — одним
+     * multipart, как раньше. null — слать multipart (короткая или сервер без /voice/uploads)
+     */
+    private suspend fun uploadResumable(audioFile: File, mimeType: String, waitForNetwork: Boolean): String? {
+        if (audioFile.length() <= ResumableAudioUploader.DEFAULT_CHUNK_SIZE) return null
+        return audioUploader.upload(audioFile, mimeType, waitForNetwork)
+    }
+    
+    /**
+     * Фоновое распознавание записи, отложенной [stopStreamingTranscription].
+     * Успех — текст в [deferredTranscript], файл удаляется
+     */
+    suspend fun transcribeDeferred(audioFile: File, language: String, mimeType: String): Result<String> =
+        transcribe(audioFile, language, mimeType).map { it.text }
+            .onSuccess { text ->
+                audioFile.delete()
+                if (text.isNotBlank()) _deferredTranscript.value = text
+            }
+    
+    /** Экран подставил отложенный текст в поле ввода */
+    fun consumeDeferredTranscript() {
+        _deferredTranscript.value = null
+    }
+    
+    /**
+     * Переносит запись из cacheDir (система может её стереть) и ставит
+     * фоновое распознавание с ожиданием сети
+     */
+    private fun deferTranscription(file: File, language: String, mimeType: String) {
+        val dir = File(context.filesDir, PENDING_TRANSCRIPTIONS_DIR).apply { mkdirs() }
+        val pending = File(dir, file.name).takeIf { file.renameTo(it) } ?: file
+        TranscriptionWorker.enqueue(context, pending, language, mimeType)
+        Timber.d("Transcription deferred until online: ${pending.name}")
+    }
+    
+    /**
+     * Стриминговое распознавание: PCM с микрофона уходит на сервер кадрами, пока
+     * пользователь говорит, промежуточный текст — в [partialTranscript].
+     *
+     * Параллельно кадры кодируются в файл: если стриминговый эндпоинт недоступен или
+     * оборвался, [stopStreamingTranscription] распознает файл через /voice/transcribe.
+     *
+     * Кадры проходят через VAD ([SpeechGate]): тишина до и после речи не уходит
+     * ни в сокет, ни в файл, а после [VadConfig.trailingSilenceMs] тишины запись
+     * останавливается сама и приходит событие в [autoStopEvents].
+     *
+     * [preroll] — уже записанное начало фразы (см. [awaitBargeIn]), идёт первым.
+     * [tap] получает все кадры до VAD — для распознавателя на устройстве
+     */
+    suspend fun startStreamingTranscription(
+        language: String = "ru",
+        vadConfig: VadConfig = VadConfig(),
+        profile: VoiceCaptureProfile = VoiceCaptureProfile.SPEECH,
+        preroll: List<ShortArray> = emptyList(),
+        tap: PcmPipe? = null
+    ): Result<Unit> = withContext(Dispatchers.IO) {
+        try {
+            if (streamingSession != null || _isRecording.value) {
+                return@withContext Result.failure(IllegalStateException("Recording already in progress"))
+            }
+            val recorder = PcmRecorder.create(sampleRate = profile.sampleRate)
+            val gate = SpeechGate(vadConfig, recorder.frameMs)
+            val writer = createFileWriter(profile)
+            val frames = Channel<ShortArray>(Channel.UNLIMITED)
+            val finalText = CompletableDeferred<String?>()
+            _partialTranscript.value = ""
+
+            val recordJob = scope.launch {
+                fun forward(frame: ShortArray) {
+                    writer.write(frame)
+                    frames.trySend(frame)
+                }
+                fun process(frame: ShortArray) {
+                    tap?.offer(frame)
+                    val result = gate.offer(frame)
+                    _recordingAmplitude.value = result.rms.toInt().coerceAtMost(Short.MAX_VALUE.toInt())
+                    result.frames.forEach(::forward)
+                    if (result.stop) {
+                        Timber.d("VAD auto-stop, speech=${gate.hasSpeech}")
+                        recorder.stop()
+                        _autoStopEvents.tryEmit(Unit)
+                    }
+                }
+                try {
+                    preroll.forEach(::process)
+                    recorder.frames().collect { process(it) }
+                    gate.flush().forEach(::forward)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Timber.e(e, "PCM capture failed")
+                } finally {
+                    writer.close()
+                    frames.close()
+                    _recordingAmplitude.value = 0
+                }
+            }
+            val streamJob = scope.launch {
+                var streamed: String? = null
+                try {
+                    streamingSttClient.transcribe(frames.consumeAsFlow(), language, recorder.sampleRate)
+                        .collect { event ->
+                            when (event) {
+                                is TranscriptEvent.Partial -> _partialTranscript.value = event.text
+                                is TranscriptEvent.Final -> streamed = event.text
+                            }
+                        }
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    // Запись продолжается в WAV — распознаем файлом после остановки
+                    Timber.w(e, "Streaming STT unavailable, falling back to file upload")
+                } finally {
+                    finalText.complete(streamed)
+                }
+            }
+
+            streamingSession = StreamingSession(recorder, gate, writer, language, finalText, recordJob, streamJob)
+            _isRecording.value = true
+            Timber.d("Streaming recording started")
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to start streaming recording")
+            _isRecording.value = false
+            Result.failure(e)
+        }
+    }
+
+    /**
+     * Останавливает запись и возвращает итоговый текст: из стрима, а если финал
+     * не пришёл за [STREAM_FINAL_TIMEOUT_MS] — распознаванием записанного файла.
+     * Речи не было — пустая строка без запроса к серверу.
+     *
+     * Файл распознаётся без ожидания сети: при сетевой ошибке запись остаётся
+     * на диске, уходит в фон и приходит [TranscriptionDeferredException];
+     * текст появится в [deferredTranscript]
+     */
+    suspend fun stopStreamingTranscription(): Result<String> = withContext(Dispatchers.IO) {
+        val session = streamingSession
+            ?: return@withContext Result.failure(IllegalStateException("No streaming recording"))
+        streamingSession = null
+        var deferred = false
+        try {
+            val stoppedAt = SystemClock.elapsedRealtime()
+            session.recorder.stop()
+            session.recordJob.join()
+            _isRecording.value = false
+
+            if (!session.gate.hasSpeech) {
+                session.streamJob.cancel()
+                Timber.d("No speech detected, skipping transcription")
+                return@withContext Result.success("")
+            }
+
+            val streamed = withTimeoutOrNull(STREAM_FINAL_TIMEOUT_MS) { session.finalText.await() }
+            if (streamed != null) {
+                Timber.d("Streaming STT final: $streamed")
+                PerformanceLog.record("stt_final", SystemClock.elapsedRealtime() - stoppedAt)
+                Result.success(streamed)
+            } else {
+                session.streamJob.cancel()
+                val file = session.writer.file
+                val result = transcribe(file, session.language, session.writer.mimeType, waitForNetwork = false)
+                    .map { it.text }
+                    .onSuccess { PerformanceLog.record("stt_final_fallback", SystemClock.elapsedRealtime() - stoppedAt) }
+                val error = result.exceptionOrNull()
+                if (error != null && isRetryable(error)) {
+                    deferTranscription(file, session.language, session.writer.mimeType)
+                    deferred = true
+                    Result.failure(TranscriptionDeferredException(error))
+                } else {
+                    result
+                }
+            }
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to stop streaming recording")
+            Result.failure(e)
+        } finally {
+            _isRecording.value = false
+            _partialTranscript.value = ""
+            if (!deferred) session.writer.file.delete()
+        }
+    }
+
+    /** Обрывает стриминговую запись без распознавания */
+    fun cancelStreamingTranscription() {
+        val session = streamingSession ?: return
+        streamingSession = null
+        session.recorder.stop()
+        session.recordJob.cancel()
+        session.streamJob.cancel()
+        session.writer.file.delete()
+        _partialTranscript.value = ""
+        _isRecording.value = false
+    }
+    
+    /** AAC по профилю; если аппаратного энкодера нет — WAV (больше, но работает везде) */
+    private fun createFileWriter(profile: VoiceCaptureProfile): PcmFileWriter {
+        val m4a = File.createTempFile("voice_", ".m4a", context.cacheDir)
+        return try {
+            AacFileWriter(m4a, profile.sampleRate, profile.bitRate)
+        } catch (e: Exception) {
+            Timber.w(e, "AAC encoder unavailable, recording WAV")
+            m4a.delete()
+            WavFileWriter(File.createTempFile("voice_", ".wav", context.cacheDir), profile.sampleRate)
+        }
+    }
+    
     /**
      * Synthesize text to speech using backend TTS
-     * Returns audio bytes (MP3)
+     * Returns audio bytes (MP3); repeated phrases come from [TtsAudioCache]
      */
     suspend fun synthesize(
         text: String, 
         voice: String = defaultVoice,
-        speed: Float = 1.0f
-    ): Result<ByteArray> {
-        return try {
-            val response = voiceApi.synthesize(
-                SynthesizeRequest(text, voice, speed)
-            )
-            val bytes = response.bytes()
-            Timber.d("Synthesized audio: ${bytes.size} bytes")
-            Result.success(bytes)
+        speed: Float = 1.0f,
+        language: String = "ru"
+    ): Result<ByteArray> = withContext(Dispatchers.IO) {
+        // Байты нужны сразу — без промежуточного временного файла
+        try {
+            when (val audio = loadSpeech(text, voice, speed, language)) {
+                is SpeechAudio.Cached -> Result.success(audio.file.readBytes())
+                is SpeechAudio.Remote -> {
+                    val bytes = audio.body.use { it.bytes() }
+                    Timber.d("Synthesized audio: ${bytes.size} bytes")
+                    ttsCache.put(audio.cacheKey, bytes)
+                    Result.success(bytes)
+                }
+            }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Timber.e(e, "Failed to synthesize speech")
             Result.failure(e)
         }
     }
     
+    /** Файл из кэша или открытый ответ /voice/synthesize, который надо дописать в кэш */
+    private suspend fun loadSpeech(text: String, voice: String, speed: Float, language: String): SpeechAudio {
+        val key = TtsAudioCache.key(text, voice, speed, language)
+        val cached = withContext(Dispatchers.IO) { ttsCache.get(key) }
+        if (cached != null) {
+            Timber.d("TTS cache hit, hit rate ${"%.2f".format(ttsCache.stats().hitRate)}")
+            return SpeechAudio.Cached(cached)
+        }
+        return SpeechAudio.Remote(streamingVoiceApi.synthesize(SynthesizeRequest(text, voice, speed)), key)
+    }
+    
+    private suspend fun playSpeech(audio: SpeechAudio) {
+        val onStarted = { _isPlaying.value = true }
+        when (audio) {
+            is SpeechAudio.Cached -> progressivePlayer.playFile(audio.file, onStarted)
+            is SpeechAudio.Remote -> progressivePlayer.play(audio.body, onStarted) { bytes ->
+                ttsCache.put(audio.cacheKey, bytes)
+            }
+        }
+    }
+    
+    /**
+     * Озвучить текст: /voice/synthesize стримится прямо в плеер, звук идёт через
+     * сотни миллисекунд после запроса, а не после скачивания всего MP3.
+     * Повтор той же фразы играет из кэша без сети.
+     * Возвращается по окончании воспроизведения; [stopPlaying] — успех, не ошибка
+     */
+    suspend fun speak(
+        text: String,
+        voice: String = defaultVoice,
+        speed: Float = 1.0f,
+        language: String = "ru"
+    ): Result<Unit> {
+        stopPlaying()
+        val job = scope.async {
+            loadSpeech(text, voice, speed, language).use { playSpeech(it) }
+        }
+        playbackJob = job
+        return try {
+            job.await()
+            Result.success(Unit)
+        } catch (e: CancellationException) {
+            // Остановлено через stopPlaying — штатно; отменили вызывающего — гасим звук
+            if (!job.isCancelled) {
+                job.cancel()
+                throw e
+            }
+            Result.success(Unit)
+        } catch (e: Exception) {
+            Timber.e(e, "Failed to speak")
+            Result.failure(e)
+        } finally {
+            if (playbackJob === job) {
+                playbackJob = null
+                _isPlaying.value = false
+            }
+        }
+    }
+    
+    /**
+     * Очередь озвучки для голосового режима: предложения ответа синтезируются
+     * по одному наперёд и играют прогрессивно, пока LLM ещё генерирует следующие
+     */
+    fun createSpeechQueue(
+        scope: CoroutineScope,
+        voice: String = defaultVoice,
+        speed: Float = 1.0f,
+        language: String = "ru"
+    ): SentenceSpeechQueue<*> {
+        stopPlaying()
+        return SentenceSpeechQueue(
+            scope = scope,
+            synthesize = { sentence -> loadSpeech(sentence, voice, speed, language) },
+            play = { audio ->
+                try {
+                    playSpeech(audio)
+                } finally {
+                    _isPlaying.value = false
+                }
+            }
+        )
+    }
+    
+    /**
+     * Перебивание: слушает микрофон, пока звучит ответ, и возвращается, как только
+     * пользователь заговорил. Источник VOICE_COMMUNICATION (эхоподавление) и строгий
+     * VAD ([BARGE_IN_VAD]) — чтобы голос ассистента из динамика не считался речью.
+     *
+     * Результат — уже записанное начало фразы: его нужно передать в
+     * [startStreamingTranscription] как preroll, иначе первые слова потеряются
+     */
+    suspend fun awaitBargeIn(vadConfig: VadConfig = BARGE_IN_VAD): Result<List<ShortArray>> {
+        return try {
+            val recorder = withContext(Dispatchers.IO) {
+                PcmRecorder.create(audioSource = MediaRecorder.AudioSource.VOICE_COMMUNICATION)
+            }
+            val gate = SpeechGate(vadConfig, recorder.frameMs)
+            try {
+                val speech = recorder.frames()
+                    .map { gate.offer(it).frames }
+                    .first { it.isNotEmpty() }
+                Timber.d("Barge-in detected")
+                Result.success(speech)
+            } finally {
+                recorder.stop()
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Timber.e(e, "Barge-in monitor failed")
+            Result.failure(e)
+        }
+    }
+    
     /**
      * Full voice chat: Record → STT → AI → TTS → Play
      * Returns both the text responses and audio
@@ -217,22 +622,27 @@ class VoiceRepository @Inject constructor(
         language: String = "ru"
     ): Result<VoiceChatResponse> {
         return try {
-            val filePart = MultipartBody.Part.createFormData(
-                "file",
-                audioFile.name,
-                audioFile.asRequestBody("audio/mp4".toMediaType())
-            )
-            
-            val conversationIdPart = conversationId?.toRequestBody("text/plain".toMediaType())
-            val voicePart = voice.toRequestBody("text/plain".toMediaType())
-            val languagePart = language.toRequestBody("text/plain".toMediaType())
-            
-            val response = voiceApi.voiceChat(
-                file = filePart,
-                conversationId = conversationIdPart,
-                voice = voicePart,
-                language = languagePart
-            )
+            val uploadId = uploadResumable(audioFile, "audio/mp4")
+            val response = if (uploadId != null) {
+                voiceApi.voiceChatUpload(uploadId, UploadVoiceChatRequest(conversationId, voice, language))
+            } else {
+                val filePart = MultipartBody.Part.createFormData(
+                    "file",
+                    audioFile.name,
+                    audioFile.asRequestBody("audio/mp4".toMediaType())
+                )
+                
+                val conversationIdPart = conversationId?.toRequestBody("text/plain".toMediaType())
+                val voicePart = voice.toRequestBody("text/plain".toMediaType())
+                val languagePart = language.toRequestBody("text/plain".toMediaType())
+                
+                voiceApi.voiceChat(
+                    file = filePart,
+                    conversationId = conversationIdPart,
+                    voice = voicePart,
+                    language = languagePart
+                )
+            }
             
             if (!response.isSuccessful) {
                 return Result.failure(Exception("Voice chat failed: ${response.code()}"))
@@ -311,6 +721,8 @@ class VoiceRepository @Inject constructor(
      * Stop playing audio
      */
     fun stopPlaying() {
+        playbackJob?.cancel()
+        playbackJob = null
         mediaPlayer?.stop()
         mediaPlayer?.release()
         mediaPlayer = null
@@ -321,12 +733,60 @@ class VoiceRepository @Inject constructor(
      * Cleanup resources
      */
     fun release() {
+        cancelStreamingTranscription()
         cancelRecording()
         stopPlaying()
         audioFile?.delete()
     }
+    
+    companion object {
+        /** Сколько ждём финал стрима после конца записи, прежде чем слать файл */
+        private const val STREAM_FINAL_TIMEOUT_MS = 3_000L
+        
+        private const val PENDING_TRANSCRIPTIONS_DIR = "pending_transcriptions"
+        
+        /** Сеть, 5xx, 408/429 — есть смысл повторить позже; прочие 4xx — нет */
+        fun isRetryable(error: Throwable): Boolean = when (error) {
+            is IOException -> true
+            is HttpException -> error.code() >= 500 || error.code() == 408 || error.code() == 429
+            else -> false
+        }
+        
+        /**
+         * VAD для перебивания строже обычного: громче порог, дольше речь.
+         * Остаток эха и кашель не должны обрывать ответ
+         */
+        val BARGE_IN_VAD = VadConfig(
+            noSpeechTimeoutMs = 10 * 60_000,
+            minSpeechMs = 240,
+            leadingPaddingMs = 400,
+            minSpeechRms = 900.0,
+            speechToNoiseRatio = 4.0
+        )
+    }
 }
 
+/** Озвучка одной фразы: готовый файл из кэша или ответ сервера, который допишется в кэш */
+private sealed interface SpeechAudio : Closeable {
+    class Cached(val file: File) : SpeechAudio {
+        override fun close() = Unit
+    }
+
+    class Remote(val body: ResponseBody, val cacheKey: String) : SpeechAudio {
+        override fun close() = body.close()
+    }
+}
+
+private class StreamingSession(
+    val recorder: PcmRecorder,
+    val gate: SpeechGate,
+    val writer: PcmFileWriter,
+    val language: String,
+    val finalText: CompletableDeferred<String?>,
+    val recordJob: Job,
+    val streamJob: Job
+)
+
 /**
  * Response from full voice chat
  */
@@ -353,3 +813,10 @@ data class VoiceChatResponse(
         return result
     }
 }
+
+/**
+ * Распознать сейчас не удалось из-за сети: запись сохранена и распознается
+ * в фоне, результат придёт в [VoiceRepository.deferredTranscript]
+ */
+class TranscriptionDeferredException(cause: Throwable) :
+    Exception("Transcription deferred until online", cause)
@@ -1,6 +1,10 @@
 package com.health.companion.data.repositories
 
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.remote.api.*
+import kotlinx.coroutines.flow.Flow
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
 import retrofit2.HttpException
 import timber.log.Timber
 import java.io.IOException
@@ -28,11 +32,21 @@ interface WellnessRepository {
     suspend fun getDigestPreferences(): Result<DigestPreferences>
     suspend fun updateDigestPreferences(preferences: DigestPreferences): Result<DigestPreferences>
     suspend fun getDigestPreview(): Result<DailyDigest>
+    
+    // Кэш на диске + фоновая ревалидация (stale-while-revalidate)
+    fun observeMoodToday(): Flow<Result<MoodTodayResponse>>
+    fun observeMoodHistory(days: Int = 30): Flow<Result<List<MoodEntry>>>
+    fun observeMoodStats(days: Int = 30): Flow<Result<MoodStats>>
+    fun observeHabits(): Flow<Result<List<Habit>>>
+    fun observeHabitsStats(): Flow<Result<HabitsStats>>
+    fun observeDigestPreview(): Flow<Result<DailyDigest>>
 }
 
 @Singleton
 class WellnessRepositoryImpl @Inject constructor(
-    private val wellnessApi: WellnessApi
+    private val wellnessApi: WellnessApi,
+    private val outboxRepository: OutboxRepository,
+    private val cacheStore: CacheStore
 ) : WellnessRepository {
     
     // ==================== MOOD ====================
@@ -40,14 +54,16 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun recordMood(request: MoodRequest): Result<MoodEntry> {
         return try {
             val response = wellnessApi.recordMood(request)
+            cacheStore.invalidatePrefix(KEY_MOOD)
             Timber.d("Mood recorded: ${response.moodLevel}")
             Result.success(response)
         } catch (e: HttpException) {
             Timber.e(e, "HTTP error recording mood: ${e.code()}")
             Result.failure(Exception("Ошибка сервера: ${e.code()}"))
         } catch (e: IOException) {
-            Timber.e(e, "Network error recording mood")
-            Result.failure(Exception("Нет подключения к интернету"))
+            Timber.e(e, "Network error recording mood, queued")
+            outboxRepository.enqueue(OutboxOperationType.WELLNESS_MOOD, Json.encodeToString(request))
+            Result.failure(Exception(QUEUED_OFFLINE_MESSAGE))
         } catch (e: Exception) {
             Timber.e(e, "Error recording mood")
             Result.failure(e)
@@ -56,7 +72,9 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getMoodHistory(days: Int): Result<List<MoodEntry>> {
         return try {
-            val response = wellnessApi.getMoodHistory(days)
+            val response = cacheStore.get("${KEY_MOOD_HISTORY}$days", CacheStore.TTL_MEDIUM) {
+                wellnessApi.getMoodHistory(days)
+            }
             Timber.d("Got ${response.size} mood entries")
             Result.success(response)
         } catch (e: HttpException) {
@@ -73,7 +91,7 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getMoodToday(): Result<MoodTodayResponse> {
         return try {
-            val response = wellnessApi.getMoodToday()
+            val response = cacheStore.get(KEY_MOOD_TODAY, CacheStore.TTL_SHORT) { wellnessApi.getMoodToday() }
             Timber.d("Mood today: recorded=${response.recorded}")
             Result.success(response)
         } catch (e: HttpException) {
@@ -90,7 +108,9 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getMoodStats(days: Int): Result<MoodStats> {
         return try {
-            val response = wellnessApi.getMoodStats(days)
+            val response = cacheStore.get("${KEY_MOOD_STATS}$days", CacheStore.TTL_MEDIUM) {
+                wellnessApi.getMoodStats(days)
+            }
             Timber.d("Got mood stats: avg=${response.averageMood}, trend=${response.trend}")
             Result.success(response)
         } catch (e: HttpException) {
@@ -110,6 +130,7 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun createHabit(request: CreateHabitRequest): Result<Habit> {
         return try {
             val response = wellnessApi.createHabit(request)
+            cacheStore.invalidatePrefix(KEY_HABITS)
             Timber.d("Created habit: ${response.name}")
             Result.success(response)
         } catch (e: HttpException) {
@@ -126,7 +147,7 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getHabits(): Result<List<Habit>> {
         return try {
-            val response = wellnessApi.getHabits()
+            val response = cacheStore.get(KEY_HABITS_LIST, CacheStore.TTL_MEDIUM) { wellnessApi.getHabits() }
             Timber.d("Got ${response.size} habits")
             Result.success(response)
         } catch (e: HttpException) {
@@ -160,6 +181,7 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun updateHabit(id: String, request: UpdateHabitRequest): Result<Habit> {
         return try {
             val response = wellnessApi.updateHabit(id, request)
+            cacheStore.invalidatePrefix(KEY_HABITS)
             Timber.d("Updated habit: ${response.name}")
             Result.success(response)
         } catch (e: HttpException) {
@@ -177,6 +199,7 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun deleteHabit(id: String): Result<Unit> {
         return try {
             wellnessApi.deleteHabit(id)
+            cacheStore.invalidatePrefix(KEY_HABITS)
             Timber.d("Deleted habit: $id")
             Result.success(Unit)
         } catch (e: HttpException) {
@@ -194,14 +217,20 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun completeHabit(id: String, note: String?): Result<HabitCompletionResponse> {
         return try {
             val response = wellnessApi.completeHabit(id, CompleteHabitRequest(note = note))
+            cacheStore.invalidatePrefix(KEY_HABITS)
             Timber.d("Completed habit: $id, streak=${response.currentStreak}")
             Result.success(response)
         } catch (e: HttpException) {
             Timber.e(e, "HTTP error completing habit: ${e.code()}")
             Result.failure(Exception("Ошибка отметки привычки"))
         } catch (e: IOException) {
-            Timber.e(e, "Network error completing habit")
-            Result.failure(Exception("Нет подключения к интернету"))
+            Timber.e(e, "Network error completing habit, queued")
+            outboxRepository.enqueue(
+                type = OutboxOperationType.HABIT_COMPLETE,
+                payload = Json.encodeToString(QueuedHabitCompletion(habitId = id, note = note)),
+                targetId = id
+            )
+            Result.failure(Exception(QUEUED_OFFLINE_MESSAGE))
         } catch (e: Exception) {
             Timber.e(e, "Error completing habit")
             Result.failure(e)
@@ -211,6 +240,7 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun uncompleteHabit(id: String): Result<HabitCompletionResponse> {
         return try {
             val response = wellnessApi.uncompleteHabit(id)
+            cacheStore.invalidatePrefix(KEY_HABITS)
             Timber.d("Uncompleted habit: $id")
             Result.success(response)
         } catch (e: HttpException) {
@@ -227,7 +257,7 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getHabitsStats(): Result<HabitsStats> {
         return try {
-            val response = wellnessApi.getHabitsStats()
+            val response = cacheStore.get(KEY_HABITS_STATS, CacheStore.TTL_MEDIUM) { wellnessApi.getHabitsStats() }
             Timber.d("Got habits stats: total=${response.totalHabits}")
             Result.success(response)
         } catch (e: HttpException) {
@@ -246,7 +276,9 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getDigestPreferences(): Result<DigestPreferences> {
         return try {
-            val response = wellnessApi.getDigestPreferences()
+            val response = cacheStore.get(KEY_DIGEST_PREFS, CacheStore.TTL_LONG) {
+                wellnessApi.getDigestPreferences()
+            }
             Timber.d("Got digest preferences: enabled=${response.isEnabled}")
             Result.success(response)
         } catch (e: HttpException) {
@@ -264,6 +296,8 @@ class WellnessRepositoryImpl @Inject constructor(
     override suspend fun updateDigestPreferences(preferences: DigestPreferences): Result<DigestPreferences> {
         return try {
             val response = wellnessApi.updateDigestPreferences(preferences)
+            cacheStore.put(KEY_DIGEST_PREFS, DigestPreferences.serializer(), response, CacheStore.TTL_LONG)
+            cacheStore.invalidate(KEY_DIGEST_PREVIEW)
             Timber.d("Updated digest preferences")
             Result.success(response)
         } catch (e: HttpException) {
@@ -280,7 +314,9 @@ class WellnessRepositoryImpl @Inject constructor(
     
     override suspend fun getDigestPreview(): Result<DailyDigest> {
         return try {
-            val response = wellnessApi.getDigestPreview()
+            val response = cacheStore.get(KEY_DIGEST_PREVIEW, CacheStore.TTL_MEDIUM) {
+                wellnessApi.getDigestPreview()
+            }
             Timber.d("Got digest preview")
             Result.success(response)
         } catch (e: HttpException) {
@@ -294,4 +330,38 @@ class WellnessRepositoryImpl @Inject constructor(
             Result.failure(e)
         }
     }
+    
+    // ==================== CACHED STREAMS ====================
+    
+    override fun observeMoodToday(): Flow<Result<MoodTodayResponse>> =
+        cacheStore.stream(KEY_MOOD_TODAY, CacheStore.TTL_SHORT) { wellnessApi.getMoodToday() }
+    
+    override fun observeMoodHistory(days: Int): Flow<Result<List<MoodEntry>>> =
+        cacheStore.stream("${KEY_MOOD_HISTORY}$days", CacheStore.TTL_MEDIUM) { wellnessApi.getMoodHistory(days) }
+    
+    override fun observeMoodStats(days: Int): Flow<Result<MoodStats>> =
+        cacheStore.stream("${KEY_MOOD_STATS}$days", CacheStore.TTL_MEDIUM) { wellnessApi.getMoodStats(days) }
+    
+    override fun observeHabits(): Flow<Result<List<Habit>>> =
+        cacheStore.stream(KEY_HABITS_LIST, CacheStore.TTL_MEDIUM) { wellnessApi.getHabits() }
+    
+    override fun observeHabitsStats(): Flow<Result<HabitsStats>> =
+        cacheStore.stream(KEY_HABITS_STATS, CacheStore.TTL_MEDIUM) { wellnessApi.getHabitsStats() }
+    
+    override fun observeDigestPreview(): Flow<Result<DailyDigest>> =
+        cacheStore.stream(KEY_DIGEST_PREVIEW, CacheStore.TTL_MEDIUM) { wellnessApi.getDigestPreview() }
+    
+    companion object {
+        private const val QUEUED_OFFLINE_MESSAGE = "Нет подключения — отправим автоматически"
+        
+        private const val KEY_MOOD = "wellness:mood:"
+        private const val KEY_MOOD_TODAY = "${KEY_MOOD}today"
+        private const val KEY_MOOD_HISTORY = "${KEY_MOOD}history:"
+        private const val KEY_MOOD_STATS = "${KEY_MOOD}stats:"
+        private const val KEY_HABITS = "wellness:habits:"
+        private const val KEY_HABITS_LIST = "${KEY_HABITS}list"
+        private const val KEY_HABITS_STATS = "${KEY_HABITS}stats"
+        private const val KEY_DIGEST_PREFS = "wellness:digest:prefs"
+        private const val KEY_DIGEST_PREVIEW = "wellness:digest:preview"
+    }
 }
@@ -3,10 +3,11 @@ package com.health.companion.di
 import android.content.Context
 import coil.ImageLoader
 import coil.disk.DiskCache
-import coil.memory.MemoryCache
 import coil.request.CachePolicy
 import coil.util.DebugLogger
 import com.health.companion.BuildConfig
+import com.health.companion.utils.DecodeSizeCapInterceptor
+import com.health.companion.utils.TieredMemoryCache
 import com.health.companion.utils.TokenManager
 import dagger.Module
 import dagger.Provides
@@ -29,14 +30,11 @@ object CoilModule {
         @ApplicationContext context: Context,
         tokenManager: TokenManager
     ): ImageLoader {
+        val isLowRam = TieredMemoryCache.isLowRam(context)
+        val displayMetrics = context.resources.displayMetrics
         return ImageLoader.Builder(context)
-            // Memory cache - 25% of app memory
-            .memoryCache {
-                MemoryCache.Builder(context)
-                    .maxSizePercent(0.25)
-                    .strongReferencesEnabled(true)
-                    .build()
-            }
+            // Memory cache по классам изображений: 25% памяти приложения (15% на слабых устройствах)
+            .memoryCache { TieredMemoryCache(context, TieredMemoryCache.budgetBytes(context)) }
             // Disk cache - 100MB для оффлайн доступа
             .diskCache {
                 DiskCache.Builder()
@@ -50,6 +48,14 @@ object CoilModule {
             .networkCachePolicy(CachePolicy.ENABLED)
             // Crossfade для плавности
             .crossfade(150)
+            // Hardware bitmaps: пиксели из ImageLoader нигде не читаются, только рисуются
+            .allowHardware(true)
+            // RGB_565 вдвое легче ARGB_8888; Coil включает его только для картинок без альфы
+            .allowRgb565(isLowRam)
+            // Не декодируем больше экрана, даже если размер не ограничен layout'ом
+            .components {
+                add(DecodeSizeCapInterceptor(maxOf(displayMetrics.widthPixels, displayMetrics.heightPixels)))
+            }
             // OkHttp с авторизацией для защищённых эндпоинтов
             .okHttpClient {
                 OkHttpClient.Builder()
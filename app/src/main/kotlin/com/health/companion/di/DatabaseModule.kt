@@ -3,11 +3,13 @@ package com.health.companion.di
 import android.content.Context
 import androidx.room.Room
 import com.health.companion.data.local.database.HealthCompanionDatabase
+import com.health.companion.data.local.dao.CacheEntryDao
 import com.health.companion.data.local.dao.ChatMessageDao
 import com.health.companion.data.local.dao.ConversationDao
 import com.health.companion.data.local.dao.DocumentDao
 import com.health.companion.data.local.dao.HealthMetricDao
 import com.health.companion.data.local.dao.MoodEntryDao
+import com.health.companion.data.local.dao.OutboxDao
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -55,4 +57,14 @@ object DatabaseModule {
     @Provides
     fun provideDocumentDao(database: HealthCompanionDatabase): DocumentDao =
         database.documentDao()
+    
+    @Singleton
+    @Provides
+    fun provideOutboxDao(database: HealthCompanionDatabase): OutboxDao =
+        database.outboxDao()
+    
+    @Singleton
+    @Provides
+    fun provideCacheEntryDao(database: HealthCompanionDatabase): CacheEntryDao =
+        database.cacheEntryDao()
 }
@@ -26,8 +26,17 @@ import okhttp3.logging.HttpLoggingInterceptor
 import retrofit2.Retrofit
 import timber.log.Timber
 import java.util.concurrent.TimeUnit
+import javax.inject.Qualifier
 import javax.inject.Singleton
 
+/**
+ * Клиент и API для потоковых тел: HttpLoggingInterceptor уровня BODY вычитывает
+ * тело целиком в память, прежде чем его увидит вызывающий. Здесь логгер — HEADERS
+ */
+@Qualifier
+@Retention(AnnotationRetention.BINARY)
+annotation class StreamingHttp
+
 @Module
 @InstallIn(SingletonComponent::class)
 object NetworkModule {
@@ -109,6 +118,29 @@ object NetworkModule {
         .authenticator(tokenAuthenticator)
         .build()
     
+    @Singleton
+    @Provides
+    @StreamingHttp
+    fun provideStreamingOkHttpClient(okHttpClient: OkHttpClient): OkHttpClient {
+        val headersLogger = HttpLoggingInterceptor { message ->
+            Timber.tag("OkHttp").d(message)
+        }.apply {
+            level = if (BuildConfig.DEBUG_MODE) {
+                HttpLoggingInterceptor.Level.HEADERS
+            } else {
+                HttpLoggingInterceptor.Level.NONE
+            }
+        }
+        return okHttpClient.newBuilder()
+            .apply {
+                val interceptors = interceptors()
+                for (i in interceptors.indices) {
+                    if (interceptors[i] is HttpLoggingInterceptor) interceptors[i] = headersLogger
+                }
+            }
+            .build()
+    }
+    
     @Singleton
     @Provides
     fun provideRetrofit(
@@ -120,6 +152,16 @@ object NetworkModule {
         .addConverterFactory(json.asConverterFactory("application/json".toMediaType()))
         .build()
     
+    @Singleton
+    @Provides
+    @StreamingHttp
+    fun provideStreamingRetrofit(
+        retrofit: Retrofit,
+        @StreamingHttp okHttpClient: OkHttpClient
+    ): Retrofit = retrofit.newBuilder()
+        .client(okHttpClient)
+        .build()
+    
     @Singleton
     @Provides
     fun provideAuthApi(retrofit: Retrofit): AuthApi = retrofit.create(AuthApi::class.java)
@@ -132,6 +174,13 @@ object NetworkModule {
     @Provides
     fun provideDocumentApi(retrofit: Retrofit): DocumentApi = retrofit.create(DocumentApi::class.java)
 
+    /** Загрузка файлов потоком из ContentResolver: тело не должно буферизоваться логгером */
+    @Singleton
+    @Provides
+    @StreamingHttp
+    fun provideStreamingDocumentApi(@StreamingHttp retrofit: Retrofit): DocumentApi =
+        retrofit.create(DocumentApi::class.java)
+
     @Singleton
     @Provides
     fun provideDashboardApi(retrofit: Retrofit): DashboardApi = retrofit.create(DashboardApi::class.java)
@@ -148,6 +197,12 @@ object NetworkModule {
     @Provides
     fun provideVoiceApi(retrofit: Retrofit): VoiceApi = retrofit.create(VoiceApi::class.java)
 
+    /** Только для @Streaming-ответов (TTS): MP3 играет по мере прихода байт */
+    @Singleton
+    @Provides
+    @StreamingHttp
+    fun provideStreamingVoiceApi(@StreamingHttp retrofit: Retrofit): VoiceApi = retrofit.create(VoiceApi::class.java)
+
     @Singleton
     @Provides
     fun provideIntelligenceApi(retrofit: Retrofit): IntelligenceApi = retrofit.create(IntelligenceApi::class.java)
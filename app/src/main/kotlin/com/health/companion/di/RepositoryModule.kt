@@ -1,11 +1,13 @@
 package com.health.companion.di
 
 import android.content.Context
+import com.health.companion.data.local.CacheStore
 import com.health.companion.data.local.dao.ChatMessageDao
 import com.health.companion.data.local.dao.ConversationDao
 import com.health.companion.data.local.dao.DocumentDao
 import com.health.companion.data.local.dao.HealthMetricDao
 import com.health.companion.data.local.dao.MoodEntryDao
+import com.health.companion.data.local.dao.OutboxDao
 import com.health.companion.data.remote.api.AuthApi
 import com.health.companion.data.remote.api.ChatApi
 import com.health.companion.data.remote.api.DashboardApi
@@ -42,6 +44,8 @@ import com.health.companion.data.repositories.LifeContextRepository
 import com.health.companion.data.repositories.LifeContextRepositoryImpl
 import com.health.companion.data.repositories.MedicalRepository
 import com.health.companion.data.repositories.MedicalRepositoryImpl
+import com.health.companion.data.repositories.OutboxRepository
+import com.health.companion.data.repositories.OutboxRepositoryImpl
 import com.health.companion.services.WebSocketManager
 import com.health.companion.utils.TokenManager
 import okhttp3.OkHttpClient
@@ -71,42 +75,55 @@ object RepositoryModule {
         conversationDao: ConversationDao,
         webSocketManager: WebSocketManager,
         tokenManager: TokenManager,
-        okHttpClient: OkHttpClient
-    ): ChatRepository = ChatRepositoryImpl(chatApi, chatMessageDao, conversationDao, webSocketManager, tokenManager, okHttpClient)
+        okHttpClient: OkHttpClient,
+        outboxRepository: OutboxRepository
+    ): ChatRepository = ChatRepositoryImpl(chatApi, chatMessageDao, conversationDao, webSocketManager, tokenManager, okHttpClient, outboxRepository)
+    
+    @Singleton
+    @Provides
+    fun provideOutboxRepository(
+        outboxDao: OutboxDao,
+        @ApplicationContext context: Context
+    ): OutboxRepository = OutboxRepositoryImpl(outboxDao, context)
     
     @Singleton
     @Provides
     fun provideHealthRepository(
         healthApi: HealthApi,
         healthMetricDao: HealthMetricDao,
-        moodEntryDao: MoodEntryDao
-    ): HealthRepository = HealthRepositoryImpl(healthApi, healthMetricDao, moodEntryDao)
+        moodEntryDao: MoodEntryDao,
+        outboxRepository: OutboxRepository
+    ): HealthRepository = HealthRepositoryImpl(healthApi, healthMetricDao, moodEntryDao, outboxRepository)
     
     @Singleton
     @Provides
     fun provideDocumentRepository(
         documentApi: DocumentApi,
+        @StreamingHttp uploadApi: DocumentApi,
         documentDao: DocumentDao,
         @ApplicationContext context: Context
-    ): DocumentRepository = DocumentRepositoryImpl(documentApi, documentDao, context)
+    ): DocumentRepository = DocumentRepositoryImpl(documentApi, uploadApi, documentDao, context)
 
     @Singleton
     @Provides
     fun provideProfileRepository(
-        profileApi: ProfileApi
-    ): ProfileRepository = ProfileRepositoryImpl(profileApi)
+        profileApi: ProfileApi,
+        cacheStore: CacheStore
+    ): ProfileRepository = ProfileRepositoryImpl(profileApi, cacheStore)
 
     @Singleton
     @Provides
     fun provideDashboardRepository(
-        dashboardApi: DashboardApi
-    ): DashboardRepository = DashboardRepositoryImpl(dashboardApi)
+        dashboardApi: DashboardApi,
+        cacheStore: CacheStore
+    ): DashboardRepository = DashboardRepositoryImpl(dashboardApi, cacheStore)
 
     @Singleton
     @Provides
     fun provideIntelligenceRepository(
-        intelligenceApi: IntelligenceApi
-    ): IntelligenceRepository = IntelligenceRepositoryImpl(intelligenceApi)
+        intelligenceApi: IntelligenceApi,
+        cacheStore: CacheStore
+    ): IntelligenceRepository = IntelligenceRepositoryImpl(intelligenceApi, cacheStore)
 
     @Singleton
     @Provides
@@ -124,18 +141,22 @@ object RepositoryModule {
     @Singleton
     @Provides
     fun provideWellnessRepository(
-        wellnessApi: WellnessApi
-    ): WellnessRepository = WellnessRepositoryImpl(wellnessApi)
+        wellnessApi: WellnessApi,
+        outboxRepository: OutboxRepository,
+        cacheStore: CacheStore
+    ): WellnessRepository = WellnessRepositoryImpl(wellnessApi, outboxRepository, cacheStore)
     
     @Singleton
     @Provides
     fun provideLifeContextRepository(
-        lifeContextApi: LifeContextApi
-    ): LifeContextRepository = LifeContextRepositoryImpl(lifeContextApi)
+        lifeContextApi: LifeContextApi,
+        cacheStore: CacheStore
+    ): LifeContextRepository = LifeContextRepositoryImpl(lifeContextApi, cacheStore)
     
     @Singleton
     @Provides
     fun provideMedicalRepository(
-        medicalApi: MedicalApi
-    ): MedicalRepository = MedicalRepositoryImpl(medicalApi)
+        medicalApi: MedicalApi,
+        cacheStore: CacheStore
+    ): MedicalRepository = MedicalRepositoryImpl(medicalApi, cacheStore)
 }
@@ -0,0 +1,156 @@
+package com.health.companion.ml.voice
+
+import android.media.MediaCodec
+import android.media.MediaCodecInfo
+import android.media.MediaFormat
+import android.media.MediaMuxer
+import timber.log.Timber
+import java.io.Closeable
+import java.io.File
+
+/**
+ * Куда пишется PCM записи для загрузки файлом
+ */
+interface PcmFileWriter : Closeable {
+    val file: File
+    val mimeType: String
+    fun write(samples: ShortArray, count: Int = samples.size)
+}
+
+/**
+ * Кодирует PCM16 моно в AAC-LC (.m4a) по ходу записи через MediaCodec.
+ * На 16 кГц / 24 кбит/с это в ~10 раз меньше WAV того же звука
+ */
+class AacFileWriter(
+    override val file: File,
+    private val sampleRate: Int,
+    bitRate: Int
+) : PcmFileWriter {
+
+    override val mimeType: String = "audio/mp4"
+
+    private val codec: MediaCodec
+    private val muxer: MediaMuxer
+    private val info = MediaCodec.BufferInfo()
+    private var track = -1
+    private var samplesQueued = 0L
+    private var closed = false
+
+    init {
+        val (encoder, output) = open(file, sampleRate, bitRate)
+        codec = encoder
+        muxer = output
+    }
+
+    override fun write(samples: ShortArray, count: Int) {
+        if (closed) return
+        val bytes = PcmAudio.toLittleEndianBytes(samples, count)
+        var offset = 0
+        while (offset < bytes.size) {
+            val index = codec.dequeueInputBuffer(TIMEOUT_US)
+            if (index < 0) {
+                drain(endOfStream = false)
+                continue
+            }
+            val buffer = codec.getInputBuffer(index) ?: continue
+            buffer.clear()
+            val length = minOf(buffer.remaining(), bytes.size - offset)
+            buffer.put(bytes, offset, length)
+            codec.queueInputBuffer(index, 0, length, presentationTimeUs(), 0)
+            samplesQueued += length / 2
+            offset += length
+        }
+        drain(endOfStream = false)
+    }
+
+    override fun close() {
+        if (closed) return
+        closed = true
+        try {
+            // Как в write(): пока входные буферы заняты, разгружаем выход, иначе EOS не встанет
+            var rounds = 0
+            var eosQueued = false
+            while (!eosQueued && rounds++ < MAX_EOS_WAIT_ROUNDS) {
+                val index = codec.dequeueInputBuffer(TIMEOUT_US)
+                if (index >= 0) {
+                    codec.queueInputBuffer(index, 0, 0, presentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+                    eosQueued = true
+                } else {
+                    drain(endOfStream = false)
+                }
+            }
+            if (eosQueued) {
+                drain(endOfStream = true)
+            } else {
+                Timber.w("AacFileWriter: no input buffer for EOS, ${file.name} may lose its tail")
+            }
+            if (track >= 0) muxer.stop()
+        } catch (e: Exception) {
+            Timber.e(e, "AacFileWriter: failed to finish ${file.name}")
+        } finally {
+            codec.stop()
+            codec.release()
+            muxer.release()
+        }
+    }
+
+    private fun presentationTimeUs(): Long = samplesQueued * 1_000_000L / sampleRate
+
+    private fun drain(endOfStream: Boolean) {
+        var idleRounds = 0
+        while (true) {
+            val index = codec.dequeueOutputBuffer(info, if (endOfStream) TIMEOUT_US else 0)
+            when {
+                index == MediaCodec.INFO_TRY_AGAIN_LATER -> {
+                    if (!endOfStream || ++idleRounds > MAX_EOS_WAIT_ROUNDS) return
+                }
+                index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED -> {
+                    track = muxer.addTrack(codec.outputFormat)
+                    muxer.start()
+                }
+                index >= 0 -> {
+                    val buffer = codec.getOutputBuffer(index)
+                    val isConfig = info.flags and MediaCodec.BUFFER_FLAG_CODEC_CONFIG != 0
+                    if (buffer != null && !isConfig && info.size > 0 && track >= 0) {
+                        muxer.writeSampleData(track, buffer, info)
+                    }
+                    codec.releaseOutputBuffer(index, false)
+                    if (info.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM != 0) return
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val TIMEOUT_US = 10_000L
+        private const val MAX_INPUT_SIZE = 16 * 1024
+        private const val MAX_EOS_WAIT_ROUNDS = 50
+
+        /**
+         * Энкодер и muxer создаются под одним try: если второй (или configure)
+         * бросит, уже созданный первый не утечёт
+         */
+        private fun open(file: File, sampleRate: Int, bitRate: Int): Pair<MediaCodec, MediaMuxer> {
+            var encoder: MediaCodec? = null
+            var output: MediaMuxer? = null
+            try {
+                val createdEncoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC)
+                encoder = createdEncoder
+                val createdMuxer = MediaMuxer(file.absolutePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4)
+                output = createdMuxer
+                val format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, 1).apply {
+                    setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC)
+                    setInteger(MediaFormat.KEY_BIT_RATE, bitRate)
+                    setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, MAX_INPUT_SIZE)
+                }
+                createdEncoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE)
+                createdEncoder.start()
+                return createdEncoder to createdMuxer
+            } catch (e: Exception) {
+                encoder?.release()
+                output?.release()
+                throw e
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.health.companion.ml.voice
+
+/**
+ * Текст гибридного распознавания: пока пользователь говорит, показываем
+ * мгновенные частичные результаты распознавателя на устройстве или серверные —
+ * какие длиннее, а итоговый текст сервера заменяет их целиком.
+ *
+ * Распознаватель на устройстве отдаёт результат после каждой паузы и
+ * перезапускается: законченные фразы копятся, текущая дописывается к ним.
+ *
+ * Серверный финал точнее (Whisper, медицинская лексика), поэтому после него
+ * поздние результаты с устройства уже ничего не меняют
+ */
+class HybridTranscript {
+    private val onDevicePhrases = mutableListOf<String>()
+    private var onDevicePartial = ""
+    private var serverPartial = ""
+
+    /** Итог сервера; null — ещё не пришёл */
+    var serverFinal: String? = null
+        private set
+
+    /** Что показать в поле ввода прямо сейчас */
+    val display: String
+        get() = serverFinal ?: bestPartial()
+
+    /** Распознавание на устройстве: законченные фразы и текущая */
+    private val onDevice: String
+        get() = (onDevicePhrases + onDevicePartial).filter { it.isNotBlank() }.joinToString(" ")
+
+    fun onDevicePartial(text: String) {
+        // Распознаватель сбрасывает partial в "" при остановке — последний текст не теряем;
+        // запоздавший partial уже законченной фразы второй раз не дописываем
+        if (serverFinal == null && text.isNotBlank() && text != onDevicePhrases.lastOrNull()) {
+            onDevicePartial = text
+        }
+    }
+
+    /** Законченная фраза: распознаватель перезапускается, следующая допишется после неё */
+    fun onDeviceResult(text: String) {
+        if (serverFinal != null) return
+        if (text.isNotBlank()) onDevicePhrases += text
+        onDevicePartial = ""
+    }
+
+    fun onServerPartial(text: String) {
+        if (serverFinal == null) serverPartial = text
+    }
+
+    fun onServerFinal(text: String) {
+        serverFinal = text
+    }
+
+    /**
+     * Сервер не ответил — лучшее, что успели распознать. Это черновик:
+     * его можно показать в поле ввода, но не отправлять автоматически
+     */
+    fun fallback(): String = bestPartial()
+
+    fun reset() {
+        onDevicePhrases.clear()
+        onDevicePartial = ""
+        serverPartial = ""
+        serverFinal = null
+    }
+
+    // Сервер видит всю запись целиком: когда он догнал устройство, его текст полнее
+    private fun bestPartial(): String {
+        val device = onDevice
+        return if (serverPartial.length >= device.length) serverPartial else device
+    }
+}
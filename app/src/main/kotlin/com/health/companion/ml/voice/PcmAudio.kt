@@ -0,0 +1,83 @@
+package com.health.companion.ml.voice
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Утилиты для 16-битного моно PCM (то, что отдаёт [PcmRecorder])
+ */
+object PcmAudio {
+
+    /** PCM16 little-endian — формат кадров в стриминговом STT и в WAV */
+    fun toLittleEndianBytes(samples: ShortArray, count: Int = samples.size): ByteArray {
+        val bytes = ByteArray(count * 2)
+        for (i in 0 until count) {
+            val sample = samples[i].toInt()
+            bytes[i * 2] = (sample and 0xFF).toByte()
+            bytes[i * 2 + 1] = ((sample shr 8) and 0xFF).toByte()
+        }
+        return bytes
+    }
+
+    /** Длительность в мс для числа сэмплов */
+    fun durationMs(sampleCount: Long, sampleRate: Int): Long = sampleCount * 1000 / sampleRate
+}
+
+/**
+ * Запись PCM16 моно в WAV. Размеры в заголовке дописываются в [close],
+ * поэтому файл можно писать потоком, не зная длины заранее
+ */
+class WavFileWriter(
+    override val file: File,
+    private val sampleRate: Int
+) : PcmFileWriter {
+
+    override val mimeType: String = "audio/wav"
+
+    private val output = RandomAccessFile(file, "rw").apply {
+        setLength(0)
+        write(ByteArray(HEADER_SIZE))
+    }
+    private var dataBytes = 0L
+    private var closed = false
+
+    override fun write(samples: ShortArray, count: Int) {
+        if (closed) return
+        output.write(PcmAudio.toLittleEndianBytes(samples, count))
+        dataBytes += count * 2L
+    }
+
+    override fun close() {
+        if (closed) return
+        closed = true
+        output.seek(0)
+        output.write(header(sampleRate, dataBytes))
+        output.close()
+    }
+
+    companion object {
+        const val HEADER_SIZE = 44
+
+        internal fun header(sampleRate: Int, dataBytes: Long): ByteArray {
+            val byteRate = sampleRate * 2
+            return ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .put("RIFF".toByteArray(Charsets.US_ASCII))
+                .putInt((36 + dataBytes).toInt())
+                .put("WAVE".toByteArray(Charsets.US_ASCII))
+                .put("fmt ".toByteArray(Charsets.US_ASCII))
+                .putInt(16)
+                .putShort(1) // PCM
+                .putShort(1) // mono
+                .putInt(sampleRate)
+                .putInt(byteRate)
+                .putShort(2) // block align
+                .putShort(16) // bits per sample
+                .put("data".toByteArray(Charsets.US_ASCII))
+                .putInt(dataBytes.toInt())
+                .array()
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.health.companion.ml.voice
+
+import android.os.ParcelFileDescriptor
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import timber.log.Timber
+import java.io.IOException
+
+/**
+ * Отвод кадров PCM16 в pipe для платформенного SpeechRecognizer
+ * (RecognizerIntent.EXTRA_AUDIO_SOURCE, API 33+).
+ *
+ * Один AudioRecord кормит и серверный стрим, и распознавание на устройстве:
+ * два одновременных захвата микрофона Android не гарантирует — второй
+ * может получать тишину.
+ *
+ * Запись в pipe идёт в своей корутине: если распознаватель перестал читать,
+ * захват не встаёт — старые кадры отбрасываются
+ */
+class PcmPipe private constructor(
+    /** Передаётся распознавателю; закрывается в [close] */
+    val readSide: ParcelFileDescriptor,
+    writeSide: ParcelFileDescriptor,
+    scope: CoroutineScope
+) {
+    private val frames = Channel<ShortArray>(MAX_QUEUED_FRAMES, BufferOverflow.DROP_OLDEST)
+
+    init {
+        scope.launch(Dispatchers.IO) {
+            try {
+                ParcelFileDescriptor.AutoCloseOutputStream(writeSide).use { output ->
+                    for (frame in frames) output.write(PcmAudio.toLittleEndianBytes(frame))
+                }
+            } catch (e: IOException) {
+                // Распознаватель закрыл свой конец — дальше только серверный путь
+                Timber.d("PcmPipe: reader closed (${e.message})")
+            } finally {
+                frames.cancel()
+            }
+        }
+    }
+
+    fun offer(frame: ShortArray) {
+        frames.trySend(frame)
+    }
+
+    /** Конец записи: распознаватель дочитывает очередь и получает EOF */
+    fun close() {
+        frames.close()
+        try {
+            readSide.close()
+        } catch (e: IOException) {
+            Timber.w(e, "PcmPipe: failed to close read side")
+        }
+    }
+
+    companion object {
+        /** ~2 с при кадрах по 40 мс */
+        private const val MAX_QUEUED_FRAMES = 50
+
+        /** Бросает IOException, если pipe не создать */
+        fun create(scope: CoroutineScope): PcmPipe {
+            val (readSide, writeSide) = ParcelFileDescriptor.createPipe()
+            return PcmPipe(readSide, writeSide, scope)
+        }
+    }
+}
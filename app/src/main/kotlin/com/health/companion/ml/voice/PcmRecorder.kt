@@ -0,0 +1,104 @@
+package com.health.companion.ml.voice
+
+import android.annotation.SuppressLint
+import android.media.AudioFormat
+import android.media.AudioRecord
+import android.media.MediaRecorder
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import timber.log.Timber
+import java.io.IOException
+
+/**
+ * Захват микрофона кадрами PCM16 моно через [AudioRecord].
+ *
+ * В отличие от MediaRecorder отдаёт звук сразу, пока пользователь говорит:
+ * кадры можно стримить на сервер и анализировать на лету.
+ * Один экземпляр — одна запись: [frames] собирается один раз и завершается после [stop]
+ */
+class PcmRecorder private constructor(
+    private val record: AudioRecord,
+    val sampleRate: Int,
+    val frameMs: Int
+) {
+    private val frameSize = sampleRate * frameMs / 1000
+
+    @Volatile
+    private var stopped = false
+
+    fun frames(): Flow<ShortArray> = flow {
+        try {
+            record.startRecording()
+            while (!stopped) {
+                currentCoroutineContext().ensureActive()
+                val frame = ShortArray(frameSize)
+                var read = 0
+                while (read < frameSize && !stopped) {
+                    val count = record.read(frame, read, frameSize - read)
+                    if (count < 0) throw IOException("AudioRecord read error: $count")
+                    read += count
+                }
+                if (read > 0) emit(if (read == frameSize) frame else frame.copyOf(read))
+            }
+        } finally {
+            try {
+                record.stop()
+            } catch (e: IllegalStateException) {
+                Timber.w(e, "PcmRecorder: stop failed")
+            }
+            record.release()
+        }
+    }.flowOn(Dispatchers.IO)
+
+    /** Останавливает захват: [frames] дочитывает текущий кадр и завершается */
+    fun stop() {
+        stopped = true
+    }
+
+    companion object {
+        /** Частота, на которой работают серверный Whisper и стриминговый STT */
+        const val SAMPLE_RATE = 16_000
+
+        /** 40 мс — компромисс между задержкой и числом сообщений в сокете */
+        const val FRAME_MS = 40
+
+        /**
+         * Готовит AudioRecord. Бросает исключение, если микрофон недоступен
+         * (нет разрешения, занят другим приложением).
+         *
+         * [audioSource] VOICE_COMMUNICATION включает эхоподавление — нужно,
+         * когда микрофон слушает, пока из динамика звучит ответ
+         */
+        @SuppressLint("MissingPermission")
+        fun create(
+            sampleRate: Int = SAMPLE_RATE,
+            frameMs: Int = FRAME_MS,
+            audioSource: Int = MediaRecorder.AudioSource.VOICE_RECOGNITION
+        ): PcmRecorder {
+            val frameSize = sampleRate * frameMs / 1000
+            val minBuffer = AudioRecord.getMinBufferSize(
+                sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT
+            )
+            if (minBuffer <= 0) throw IOException("Unsupported capture format: $sampleRate Hz")
+
+            val record = AudioRecord(
+                audioSource,
+                sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT,
+                maxOf(minBuffer, frameSize * 2 * 4)
+            )
+            if (record.state != AudioRecord.STATE_INITIALIZED) {
+                record.release()
+                throw IOException("AudioRecord not initialized")
+            }
+            return PcmRecorder(record, sampleRate, frameMs)
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.health.companion.ml.voice
+
+import android.media.AudioAttributes
+import android.media.MediaDataSource
+import android.media.MediaPlayer
+import android.os.SystemClock
+import com.health.companion.utils.PerformanceLog
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withContext
+import okhttp3.ResponseBody
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * [MediaDataSource] поверх [StreamingByteBuffer]: MediaPlayer читает байты,
+ * пока они ещё докачиваются. Размер неизвестен до конца потока — плеер
+ * работает с ним как со стримом
+ */
+private class StreamingAudioSource(private val buffer: StreamingByteBuffer) : MediaDataSource() {
+    override fun readAt(position: Long, buffer: ByteArray, offset: Int, size: Int): Int =
+        this.buffer.readAt(position, buffer, offset, size)
+
+    override fun getSize(): Long = buffer.totalSize
+
+    override fun close() = buffer.close()
+}
+
+/**
+ * Прогрессивное воспроизведение TTS: звук начинается, как только пришли первые
+ * [jitterBufferBytes] ответа, а не после скачивания и prepare() всего файла.
+ *
+ * [play] приостанавливается до конца воспроизведения; отмена корутины
+ * останавливает и плеер, и скачивание (body закрывается, [play] им владеет)
+ */
+class ProgressiveAudioPlayer(
+    private val jitterBufferBytes: Int = DEFAULT_JITTER_BUFFER_BYTES
+) {
+    /**
+     * @param onStarted вызывается на главном потоке в момент старта звука
+     * @param onComplete полные байты ответа, когда поток дочитан целиком (для кэша)
+     */
+    suspend fun play(
+        body: ResponseBody,
+        onStarted: () -> Unit = {},
+        onComplete: (ByteArray) -> Unit = {}
+    ) = coroutineScope {
+        val requestedAt = SystemClock.elapsedRealtime()
+        val buffer = StreamingByteBuffer()
+        val pump = launch(Dispatchers.IO) {
+            try {
+                body.byteStream().use { input ->
+                    val chunk = ByteArray(CHUNK_SIZE)
+                    while (true) {
+                        currentCoroutineContext().ensureActive()
+                        val read = input.read(chunk)
+                        if (read < 0) break
+                        buffer.append(chunk, 0, read)
+                    }
+                }
+                buffer.complete()
+                onComplete(buffer.toByteArray())
+            } catch (e: CancellationException) {
+                buffer.close()
+                throw e
+            } catch (e: IOException) {
+                // После отмены read() прерван закрытием body — это не сбой сети
+                if (isActive) Timber.w(e, "ProgressiveAudio: stream failed after ${buffer.size} bytes")
+                buffer.fail(e)
+            }
+        }
+
+        try {
+            val ready = runInterruptible(Dispatchers.IO) {
+                buffer.awaitBuffered(jitterBufferBytes, FIRST_BYTES_TIMEOUT_MS)
+            }
+            if (!ready) throw IOException("No audio within $FIRST_BYTES_TIMEOUT_MS ms")
+            val source = StreamingAudioSource(buffer)
+            // Сначала будим readAt, иначе release() ждёт заблокированное чтение
+            playWith(setSource = { it.setDataSource(source) }, onCancel = source::close) {
+                val firstAudioMs = SystemClock.elapsedRealtime() - requestedAt
+                Timber.d("ProgressiveAudio: first audio after $firstAudioMs ms")
+                PerformanceLog.record("tts_first_audio", firstAudioMs)
+                onStarted()
+            }
+        } finally {
+            buffer.close()
+            pump.cancel()
+            // Блокирующий read() отмену не видит: закрытие body обрывает его,
+            // иначе coroutineScope ждёт насос до конца ответа
+            body.close()
+        }
+    }
+
+    /**
+     * Воспроизведение локального файла (кэш TTS) с той же семантикой:
+     * возвращается по окончании, отмена глушит звук
+     */
+    suspend fun playFile(file: File, onStarted: () -> Unit = {}) =
+        playWith(setSource = { it.setDataSource(file.absolutePath) }, onStarted = onStarted)
+
+    private suspend fun playWith(
+        setSource: (MediaPlayer) -> Unit,
+        onCancel: () -> Unit = {},
+        onStarted: () -> Unit
+    ) = withContext(Dispatchers.Main) {
+        suspendCancellableCoroutine { continuation ->
+            val player = MediaPlayer()
+            fun finish(error: Throwable?) {
+                player.release()
+                if (!continuation.isActive) return
+                if (error == null) continuation.resume(Unit) else continuation.resumeWithException(error)
+            }
+            try {
+                player.setAudioAttributes(
+                    AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANT)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build()
+                )
+                setSource(player)
+                player.setOnPreparedListener {
+                    it.start()
+                    onStarted()
+                }
+                player.setOnCompletionListener { finish(null) }
+                player.setOnErrorListener { _, what, extra ->
+                    finish(IOException("MediaPlayer error: what=$what, extra=$extra"))
+                    true
+                }
+                continuation.invokeOnCancellation {
+                    onCancel()
+                    player.release()
+                }
+                player.prepareAsync()
+            } catch (e: Exception) {
+                finish(e)
+            }
+        }
+    }
+
+    companion object {
+        /** ~0.5 с MP3 на 128 кбит/с — запас на неравномерную доставку */
+        const val DEFAULT_JITTER_BUFFER_BYTES = 8 * 1024
+        private const val CHUNK_SIZE = 8 * 1024
+        private const val FIRST_BYTES_TIMEOUT_MS = 15_000L
+    }
+}
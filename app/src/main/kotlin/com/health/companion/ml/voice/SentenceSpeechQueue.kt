@@ -0,0 +1,109 @@
+package com.health.companion.ml.voice
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import timber.log.Timber
+import java.io.Closeable
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Конвейер озвучки по предложениям: пока звучит предложение N, запрос TTS
+ * для N+1 уже отправлен, и его первые байты ждут в сокете. Паузы между
+ * предложениями — время старта плеера, а не полный круг до сервера.
+ *
+ * Порядок воспроизведения — порядок [enqueue], даже если синтез следующих
+ * предложений закончился раньше. Ошибка синтеза одного предложения его
+ * пропускает, а не обрывает ответ. [cancel] — перебивание: звук и все
+ * запросы в полёте обрываются сразу
+ *
+ * @param synthesize запрос TTS (или файл из кэша); результат читает [play]
+ * @param play воспроизводит одно предложение и возвращается по его окончании
+ */
+class SentenceSpeechQueue<T : Closeable>(
+    scope: CoroutineScope,
+    private val synthesize: suspend (String) -> T,
+    private val play: suspend (T) -> Unit
+) {
+    private val sentences = Channel<String>(Channel.UNLIMITED)
+
+    // Rendezvous: синтезируется ровно одно предложение наперёд
+    private val ready = Channel<Deferred<T?>>()
+
+    // Ответы, ещё не отданные плееру: при отмене их нужно закрыть, иначе висит соединение
+    private val openBodies = ConcurrentLinkedQueue<T>()
+
+    private val _isSpeaking = MutableStateFlow(false)
+    val isSpeaking: StateFlow<Boolean> = _isSpeaking.asStateFlow()
+
+    private val job: Job = scope.launch {
+        launch {
+            try {
+                for (sentence in sentences) {
+                    ready.send(async { request(sentence) })
+                }
+            } finally {
+                ready.close()
+            }
+        }
+        for (pending in ready) {
+            val body = pending.await() ?: continue
+            try {
+                _isSpeaking.value = true
+                play(body)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Timber.w(e, "SpeechQueue: playback failed, skipping sentence")
+            } finally {
+                openBodies.remove(body)
+                body.close()
+                _isSpeaking.value = false
+            }
+        }
+    }
+
+    init {
+        job.invokeOnCompletion {
+            sentences.cancel()
+            generateSequence { openBodies.poll() }.forEach { it.close() }
+            _isSpeaking.value = false
+        }
+    }
+
+    private suspend fun request(sentence: String): T? = try {
+        synthesize(sentence).also { openBodies += it }
+    } catch (e: CancellationException) {
+        throw e
+    } catch (e: Exception) {
+        Timber.w(e, "SpeechQueue: synthesis failed for \"${sentence.take(40)}\"")
+        null
+    }
+
+    /** Ставит предложение в очередь; после [finish] или [cancel] игнорируется */
+    fun enqueue(sentence: String) {
+        if (sentence.isNotBlank()) sentences.trySend(sentence)
+    }
+
+    /** Новых предложений не будет: очередь доиграет поставленные и завершится */
+    fun finish() {
+        sentences.close()
+    }
+
+    /** Ждёт, пока отзвучит всё поставленное (или очередь отменят) */
+    suspend fun awaitDone() {
+        job.join()
+    }
+
+    /** Перебивание: обрывает текущий звук и запросы в полёте */
+    fun cancel() {
+        job.cancel()
+    }
+}
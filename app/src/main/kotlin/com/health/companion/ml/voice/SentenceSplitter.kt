@@ -0,0 +1,90 @@
+package com.health.companion.ml.voice
+
+/**
+ * Режет поток токенов LLM на предложения для озвучки.
+ *
+ * Предложение отдаётся, как только за знаком конца (. ! ? …) пришёл пробел
+ * или встретился перевод строки, — не дожидаясь конца ответа. Совсем короткие
+ * куски («Да.», «1.») склеиваются со следующими: отдельный запрос TTS на
+ * каждый стоит дороже, чем звучит. Слишком длинное предложение без точек
+ * режется по запятой или пробелу, чтобы первый звук не ждал весь абзац
+ */
+class SentenceSplitter(
+    private val minLength: Int = MIN_SENTENCE_LENGTH,
+    private val maxLength: Int = MAX_SENTENCE_LENGTH
+) {
+    private val pending = StringBuilder()
+
+    /** Добавляет токен и возвращает готовые к озвучке предложения */
+    fun append(token: String): List<String> {
+        pending.append(token)
+        val sentences = mutableListOf<String>()
+        var start = 0
+        var i = 0
+        while (i < pending.length) {
+            val end = boundaryAt(i)
+            if (end > 0 && end - start >= minLength) {
+                addSpoken(sentences, pending.substring(start, end))
+                start = end
+            } else if (i - start >= maxLength) {
+                val cut = softBreak(start, i)
+                addSpoken(sentences, pending.substring(start, cut))
+                start = cut
+            }
+            i++
+        }
+        pending.delete(0, start)
+        return sentences
+    }
+
+    /** Хвост ответа, когда генерация закончилась */
+    fun flush(): String? {
+        val rest = cleanForSpeech(pending.toString())
+        pending.clear()
+        return rest.ifEmpty { null }
+    }
+
+    /**
+     * Позиция сразу за концом предложения, если он на [index]; иначе -1.
+     * Точка в конце буфера ещё не граница: это может быть «3.14» или «т.е.»
+     */
+    private fun boundaryAt(index: Int): Int {
+        val c = pending[index]
+        if (c == '\n') return index + 1
+        if (c !in TERMINATORS) return -1
+        var next = index + 1
+        while (next < pending.length && (pending[next] in TERMINATORS || pending[next] in CLOSING)) next++
+        if (next >= pending.length || !pending[next].isWhitespace()) return -1
+        return next
+    }
+
+    /** Последняя запятая или пробел в окне, чтобы не резать слово */
+    private fun softBreak(start: Int, end: Int): Int {
+        val window = pending.substring(start, end)
+        val comma = window.lastIndexOfAny(charArrayOf(',', ';', ':'))
+        if (comma >= minLength) return start + comma + 1
+        val space = window.lastIndexOf(' ')
+        return if (space >= minLength) start + space + 1 else end
+    }
+
+    private fun addSpoken(target: MutableList<String>, raw: String) {
+        val text = cleanForSpeech(raw)
+        if (text.isNotEmpty()) target += text
+    }
+
+    companion object {
+        const val MIN_SENTENCE_LENGTH = 24
+        const val MAX_SENTENCE_LENGTH = 240
+
+        private val TERMINATORS = charArrayOf('.', '!', '?', '…')
+        private val CLOSING = charArrayOf('"', '»', ')', '\'')
+
+        // Разметка, которую TTS иначе зачитает вслух
+        private val MARKDOWN_SYMBOLS = Regex("[*_`#|>]")
+        private val WHITESPACE = Regex("\\s+")
+
+        /** Убирает markdown и лишние пробелы из текста для TTS */
+        fun cleanForSpeech(text: String): String =
+            text.replace(MARKDOWN_SYMBOLS, "").replace(WHITESPACE, " ").trim()
+    }
+}
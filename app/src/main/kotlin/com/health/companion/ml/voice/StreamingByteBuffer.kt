@@ -0,0 +1,97 @@
+package com.health.companion.ml.voice
+
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Растущий буфер байтов: один поток дописывает (сеть), другой читает
+ * по произвольной позиции (плеер). Чтение за концом данных ждёт, пока
+ * не придут новые байты, не закончится поток или буфер не закроют
+ */
+class StreamingByteBuffer(initialCapacity: Int = 64 * 1024) {
+
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+    private var data = ByteArray(initialCapacity)
+    private var length = 0
+    private var complete = false
+    private var closed = false
+    private var failure: IOException? = null
+
+    val size: Int get() = lock.withLock { length }
+
+    /** Полный размер, когда поток дочитан; до этого -1 («неизвестен») */
+    val totalSize: Long get() = lock.withLock { if (complete) length.toLong() else -1L }
+
+    fun append(bytes: ByteArray, offset: Int = 0, count: Int = bytes.size) {
+        lock.withLock {
+            if (closed) return
+            if (length + count > data.size) {
+                data = data.copyOf(maxOf(data.size * 2, length + count))
+            }
+            System.arraycopy(bytes, offset, data, length, count)
+            length += count
+            changed.signalAll()
+        }
+    }
+
+    fun complete() {
+        lock.withLock {
+            complete = true
+            changed.signalAll()
+        }
+    }
+
+    fun fail(error: IOException) {
+        lock.withLock {
+            failure = error
+            changed.signalAll()
+        }
+    }
+
+    /** Будит ждущих читателей; дальше чтение отдаёт конец потока */
+    fun close() {
+        lock.withLock {
+            closed = true
+            changed.signalAll()
+        }
+    }
+
+    /**
+     * Ждёт, пока наберётся [minBytes] или поток закончится.
+     * false — вышел таймаут или буфер закрыт
+     */
+    fun awaitBuffered(minBytes: Int, timeoutMs: Long): Boolean {
+        var remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+        lock.withLock {
+            while (length < minBytes && !complete && failure == null && !closed) {
+                if (remainingNanos <= 0) return false
+                remainingNanos = changed.awaitNanos(remainingNanos)
+            }
+            failure?.let { throw it }
+            return !closed
+        }
+    }
+
+    /**
+     * Копирует до [count] байт с позиции [position]. -1 — конец потока
+     */
+    fun readAt(position: Long, buffer: ByteArray, offset: Int, count: Int): Int {
+        if (count == 0) return 0
+        lock.withLock {
+            while (position >= length && !complete && failure == null && !closed) {
+                changed.await()
+            }
+            failure?.let { throw it }
+            if (closed || position >= length) return -1
+            val available = minOf(count.toLong(), length - position).toInt()
+            System.arraycopy(data, position.toInt(), buffer, offset, available)
+            return available
+        }
+    }
+
+    /** Снимок уже полученных байтов */
+    fun toByteArray(): ByteArray = lock.withLock { data.copyOf(length) }
+}
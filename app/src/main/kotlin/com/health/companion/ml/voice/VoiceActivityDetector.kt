@@ -0,0 +1,159 @@
+package com.health.companion.ml.voice
+
+import kotlin.math.sqrt
+
+/**
+ * Настройки детектора речи. Время — в мс, пороги — в единицах PCM16
+ */
+data class VadConfig(
+    /** Сколько тишины после речи считаем концом фразы (автостоп) */
+    val trailingSilenceMs: Int = 1_200,
+    /** Автостоп, если речь так и не началась */
+    val noSpeechTimeoutMs: Int = 8_000,
+    /** Короче — щелчок или стук, не речь */
+    val minSpeechMs: Int = 120,
+    /** Сколько звука до начала речи оставляем, чтобы не срезать первый слог */
+    val leadingPaddingMs: Int = 240,
+    /** Сколько тишины после речи оставляем в записи */
+    val trailingPaddingMs: Int = 320,
+    /** Нижняя граница порога: тише — всегда тишина */
+    val minSpeechRms: Double = 300.0,
+    /** Во сколько раз речь громче фонового шума */
+    val speechToNoiseRatio: Double = 3.0
+)
+
+/**
+ * Энергия и zero-crossing rate одного кадра
+ */
+data class FrameStats(val rms: Double, val zeroCrossingRate: Double) {
+    companion object {
+        fun of(samples: ShortArray, count: Int = samples.size): FrameStats {
+            if (count == 0) return FrameStats(0.0, 0.0)
+            var sumSquares = 0.0
+            var crossings = 0
+            for (i in 0 until count) {
+                val sample = samples[i].toDouble()
+                sumSquares += sample * sample
+                if (i > 0 && (samples[i] >= 0) != (samples[i - 1] >= 0)) crossings++
+            }
+            return FrameStats(sqrt(sumSquares / count), crossings.toDouble() / count)
+        }
+    }
+}
+
+/**
+ * Детектор речи по энергии и zero-crossing rate, на чистом Kotlin.
+ *
+ * Порог адаптивный: уровень шума отслеживается как скользящий минимум
+ * (мгновенно падает, медленно растёт), речь — кадры заметно громче шума.
+ * Глухие согласные (с, ш, ф) тихие, но «шумные» — их ловим по высокому ZCR
+ */
+class VoiceActivityDetector(private val config: VadConfig = VadConfig()) {
+
+    private var noiseFloor = config.minSpeechRms / config.speechToNoiseRatio
+
+    fun isSpeech(stats: FrameStats): Boolean {
+        val threshold = maxOf(config.minSpeechRms, noiseFloor * config.speechToNoiseRatio)
+        val speech = stats.rms >= threshold ||
+            (stats.rms >= threshold * UNVOICED_ENERGY_FACTOR && stats.zeroCrossingRate in UNVOICED_ZCR)
+
+        noiseFloor = if (stats.rms < noiseFloor) maxOf(stats.rms, 1.0) else noiseFloor * NOISE_FLOOR_RISE
+        return speech
+    }
+
+    companion object {
+        private const val UNVOICED_ENERGY_FACTOR = 0.5
+        private val UNVOICED_ZCR = 0.15..0.5
+
+        /** ~+13% в секунду при кадрах по 40 мс: шум подстраивается, речь — нет */
+        private const val NOISE_FLOOR_RISE = 1.005
+    }
+}
+
+/**
+ * Результат обработки кадра в [SpeechGate]
+ */
+class GateResult(
+    /** Кадры, которые идут дальше (в сокет и в файл), уже без тишины по краям */
+    val frames: List<ShortArray>,
+    val rms: Double,
+    /** Пора останавливать запись: фраза закончилась или речи нет */
+    val stop: Boolean
+)
+
+/**
+ * Обрезка тишины и автостоп поверх [VoiceActivityDetector].
+ *
+ * - До начала речи кадры копятся в кольцевом пре-ролле, наружу не уходят
+ * - Речь подтверждается после [VadConfig.minSpeechMs] подряд — тогда отдаётся пре-ролл и речь
+ * - Паузы внутри фразы придерживаются и отдаются, если речь продолжилась
+ * - [VadConfig.trailingSilenceMs] тишины — автостоп, в записи остаётся только хвост-паддинг
+ */
+class SpeechGate(
+    private val config: VadConfig,
+    frameMs: Int
+) {
+    private val detector = VoiceActivityDetector(config)
+    private val minSpeechFrames = framesFor(config.minSpeechMs, frameMs)
+    private val leadingFrames = framesFor(config.leadingPaddingMs, frameMs)
+    private val trailingPaddingFrames = framesFor(config.trailingPaddingMs, frameMs)
+    private val trailingSilenceFrames = framesFor(config.trailingSilenceMs, frameMs)
+    private val noSpeechFrames = framesFor(config.noSpeechTimeoutMs, frameMs)
+
+    private val preroll = ArrayDeque<ShortArray>()
+    private val pendingSilence = ArrayList<ShortArray>()
+    private var speechRun = 0
+    private var framesSeen = 0
+    private var stopped = false
+
+    var hasSpeech = false
+        private set
+
+    fun offer(frame: ShortArray): GateResult {
+        val stats = FrameStats.of(frame)
+        if (stopped) return GateResult(emptyList(), stats.rms, stop = true)
+        framesSeen++
+        val speech = detector.isSpeech(stats)
+
+        if (!hasSpeech) {
+            preroll.addLast(frame)
+            while (preroll.size > leadingFrames + minSpeechFrames) preroll.removeFirst()
+            speechRun = if (speech) speechRun + 1 else 0
+            if (speechRun >= minSpeechFrames) {
+                hasSpeech = true
+                val emitted = preroll.toList()
+                preroll.clear()
+                return GateResult(emitted, stats.rms, stop = false)
+            }
+            if (framesSeen >= noSpeechFrames) {
+                stopped = true
+                return GateResult(emptyList(), stats.rms, stop = true)
+            }
+            return GateResult(emptyList(), stats.rms, stop = false)
+        }
+
+        if (speech) {
+            val emitted = pendingSilence + frame
+            pendingSilence.clear()
+            return GateResult(emitted, stats.rms, stop = false)
+        }
+
+        pendingSilence += frame
+        if (pendingSilence.size >= trailingSilenceFrames) {
+            stopped = true
+            return GateResult(flush(), stats.rms, stop = true)
+        }
+        return GateResult(emptyList(), stats.rms, stop = false)
+    }
+
+    /** Запись остановлена вручную: отдаём хвост-паддинг после речи */
+    fun flush(): List<ShortArray> {
+        val tail = if (hasSpeech) pendingSilence.take(trailingPaddingFrames) else emptyList()
+        pendingSilence.clear()
+        preroll.clear()
+        stopped = true
+        return tail
+    }
+
+    private fun framesFor(ms: Int, frameMs: Int): Int = maxOf(1, (ms + frameMs - 1) / frameMs)
+}
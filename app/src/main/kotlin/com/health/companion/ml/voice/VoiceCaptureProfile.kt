@@ -0,0 +1,18 @@
+package com.health.companion.ml.voice
+
+/**
+ * Параметры записи голоса.
+ *
+ * Whisper внутри всё равно работает на 16 кГц моно — писать 44.1 кГц / 128 кбит/с
+ * для распознавания значит гонять на сервер в разы больше байтов без выигрыша в качестве
+ */
+enum class VoiceCaptureProfile(
+    val sampleRate: Int,
+    val bitRate: Int
+) {
+    /** Для распознавания: 16 кГц моно, AAC 24 кбит/с */
+    SPEECH(sampleRate = 16_000, bitRate = 24_000),
+
+    /** Прежний профиль — для записей, которые будут слушать люди */
+    HIGH_QUALITY(sampleRate = 44_100, bitRate = 128_000)
+}
@@ -2,10 +2,13 @@ package com.health.companion.ml.voice
 
 import android.content.Context
 import android.content.Intent
+import android.media.AudioFormat
 import android.media.AudioManager
+import android.os.Build
 import android.os.Bundle
 import android.os.Handler
 import android.os.Looper
+import android.os.ParcelFileDescriptor
 import android.speech.RecognitionListener
 import android.speech.RecognizerIntent
 import android.speech.SpeechRecognizer
@@ -58,6 +61,10 @@ class VoiceInputManager @Inject constructor(
     
     private var currentLanguage: Locale = Locale("ru", "RU")
     
+    // Гибридный режим: звук не с микрофона, а из pipe (см. PcmPipe)
+    private var externalAudio: ParcelFileDescriptor? = null
+    private var externalSampleRate = PcmRecorder.SAMPLE_RATE
+    
     private val recognitionListener = object : RecognitionListener {
         override fun onReadyForSpeech(params: Bundle?) {
             Timber.d("Voice: Ready for speech")
@@ -147,10 +154,16 @@ class VoiceInputManager @Inject constructor(
                 }
             }
             
+            _partialResults.value = ""
+            // Гибридный режим: запись на сервер идёт дальше, распознаём следующую фразу
+            // из того же pipe, пока вызывающий не остановит
+            if (externalAudio != null && wantToListen) {
+                mainHandler.post { restartListening() }
+                return
+            }
             // Stop completely after getting results (message will be sent)
             wantToListen = false
             _isListening.value = false
-            _partialResults.value = ""
         }
 
         override fun onPartialResults(partialResults: Bundle?) {
@@ -221,14 +234,23 @@ class VoiceInputManager @Inject constructor(
         }
     }
 
+    /**
+     * @param audioSource PCM16 моно из pipe вместо микрофона (API 33+): так
+     * распознаватель работает параллельно с нашей записью для сервера.
+     * Владелец pipe — вызывающий; перезапуск после ошибок читает pipe дальше
+     */
     fun startListening(
         language: Locale = Locale("ru", "RU"),
-        promptText: String = "Говорите..."
+        promptText: String = "Говорите...",
+        audioSource: ParcelFileDescriptor? = null,
+        sampleRate: Int = PcmRecorder.SAMPLE_RATE
     ) {
         Timber.d("Voice: startListening called, current wantToListen=$wantToListen")
         if (isDestroyed) return
         currentLanguage = language
         currentPromptText = promptText
+        externalAudio = audioSource
+        externalSampleRate = sampleRate
         wantToListen = true
         _isListening.value = true
         
@@ -280,6 +302,15 @@ class VoiceInputManager @Inject constructor(
             putExtra(RecognizerIntent.EXTRA_SPEECH_INPUT_MINIMUM_LENGTH_MILLIS, 3000L)
             putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, context.packageName)
             putExtra(RecognizerIntent.EXTRA_PROMPT, currentPromptText)
+            val audio = externalAudio
+            if (audio != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE, audio)
+                putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_CHANNEL_COUNT, 1)
+                putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_ENCODING, AudioFormat.ENCODING_PCM_16BIT)
+                putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_SAMPLING_RATE, externalSampleRate)
+                // Частичные результаты нужны мгновенно — без сетевого круга
+                putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, true)
+            }
         }
 
         try {
@@ -349,6 +380,10 @@ class VoiceInputManager @Inject constructor(
     fun isAvailable(): Boolean {
         return SpeechRecognizer.isRecognitionAvailable(context)
     }
+    
+    /** Можно ли кормить распознаватель нашим звуком (гибридный режим) */
+    fun supportsExternalAudio(): Boolean =
+        Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && isAvailable()
 }
 
 data class VoiceResult(
@@ -0,0 +1,80 @@
+package com.health.companion.presentation.components
+
+import androidx.compose.animation.core.InfiniteRepeatableSpec
+import androidx.compose.animation.core.InfiniteTransition
+import androidx.compose.animation.core.animateFloat
+import androidx.compose.animation.core.rememberInfiniteTransition
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.DisposableEffect
+import androidx.compose.runtime.Stable
+import androidx.compose.runtime.State
+import androidx.compose.runtime.compositionLocalOf
+import androidx.compose.runtime.mutableFloatStateOf
+import androidx.compose.runtime.remember
+import androidx.compose.runtime.staticCompositionLocalOf
+import com.health.companion.utils.AnimationGovernor
+import com.health.companion.utils.AnimationLevel
+
+/**
+ * Текущий уровень анимаций от [AnimationGovernor]; провайдится в MainActivity
+ */
+val LocalAnimationLevel = compositionLocalOf { AnimationLevel.FULL }
+
+val LocalAnimationGovernor = staticCompositionLocalOf<AnimationGovernor?> { null }
+
+enum class AnimationPriority {
+    ESSENTIAL,  // Несёт смысл (идёт запись, ждём ответ) — гасится только в STATIC
+    DECORATIVE  // Чистый декор (кольца, свечение, искры) — гасится уже в REDUCED
+}
+
+/**
+ * Бесконечная анимация под управлением [AnimationGovernor].
+ * API совпадает с InfiniteTransition.animateFloat, поэтому замена
+ * rememberInfiniteTransition на [rememberGovernedTransition] не трогает вызовы
+ */
+@Stable
+class GovernedTransition internal constructor(
+    private val transition: InfiniteTransition,
+    val isAnimating: Boolean
+) {
+    /**
+     * Когда анимация выключена — статичная середина диапазона
+     */
+    @Composable
+    fun animateFloat(
+        initialValue: Float,
+        targetValue: Float,
+        animationSpec: InfiniteRepeatableSpec<Float>,
+        label: String = "FloatAnimation"
+    ): State<Float> = if (isAnimating) {
+        transition.animateFloat(initialValue, targetValue, animationSpec, label)
+    } else {
+        remember(initialValue, targetValue) { mutableFloatStateOf((initialValue + targetValue) / 2f) }
+    }
+}
+
+@Composable
+fun rememberGovernedTransition(
+    label: String,
+    priority: AnimationPriority = AnimationPriority.DECORATIVE
+): GovernedTransition {
+    val level = LocalAnimationLevel.current
+    val isAnimating = when (level) {
+        AnimationLevel.FULL -> true
+        AnimationLevel.REDUCED -> priority == AnimationPriority.ESSENTIAL
+        AnimationLevel.STATIC -> false
+    }
+
+    // Регистрируемся, даже если сейчас статичны: губернатор продолжает мерить кадры
+    // и сможет вернуть анимации, когда устройство разгрузится
+    val governor = LocalAnimationGovernor.current
+    if (governor != null) {
+        DisposableEffect(governor, label) {
+            val unregister = governor.register(label)
+            onDispose { unregister() }
+        }
+    }
+
+    val transition = rememberInfiniteTransition(label = label)
+    return remember(transition, isAnimating) { GovernedTransition(transition, isAnimating) }
+}
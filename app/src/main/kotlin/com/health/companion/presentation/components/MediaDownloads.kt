@@ -0,0 +1,9 @@
+package com.health.companion.presentation.components
+
+import androidx.compose.runtime.staticCompositionLocalOf
+import com.health.companion.utils.MediaDownloadManager
+
+/**
+ * Сохранение картинок в галерею из любого экрана; провайдится в MainActivity
+ */
+val LocalMediaDownloadManager = staticCompositionLocalOf<MediaDownloadManager?> { null }
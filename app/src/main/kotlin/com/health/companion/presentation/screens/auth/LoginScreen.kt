@@ -35,7 +35,9 @@ import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.hilt.navigation.compose.hiltViewModel
+import com.health.companion.presentation.components.AnimationPriority
 import com.health.companion.presentation.components.GlassTheme
+import com.health.companion.presentation.components.rememberGovernedTransition
 import kotlin.math.sin
 import androidx.compose.runtime.mutableFloatStateOf
 import androidx.compose.ui.graphics.toArgb
@@ -274,7 +276,7 @@ fun LoginScreen(
  */
 @Composable
 private fun LavaBerryCanvas() {
-    val infiniteTransition = rememberInfiniteTransition(label = "lava")
+    val infiniteTransition = rememberGovernedTransition(label = "lava", priority = AnimationPriority.DECORATIVE)
     
     // Несколько фаз с разными периодами для органичного движения
     // Все используют Reverse чтобы плавно возвращаться
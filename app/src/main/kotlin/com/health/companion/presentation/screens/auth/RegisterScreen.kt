@@ -42,7 +42,9 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.compose.foundation.Canvas
 import androidx.hilt.navigation.compose.hiltViewModel
+import com.health.companion.presentation.components.AnimationPriority
 import com.health.companion.presentation.components.GlassTheme
+import com.health.companion.presentation.components.rememberGovernedTransition
 import kotlinx.coroutines.launch
 
 private object RegisterColors {
@@ -388,7 +390,7 @@ fun RegisterScreen(
 
 @Composable
 private fun SmallBerryAnimation() {
-    val infiniteTransition = rememberInfiniteTransition(label = "berry")
+    val infiniteTransition = rememberGovernedTransition(label = "berry", priority = AnimationPriority.DECORATIVE)
     
     val phase1 by infiniteTransition.animateFloat(
         initialValue = 0f, targetValue = 1f,
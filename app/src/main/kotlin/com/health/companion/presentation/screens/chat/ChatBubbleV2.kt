@@ -10,6 +10,7 @@ import androidx.compose.animation.scaleOut
 import androidx.compose.animation.slideInHorizontally
 import androidx.compose.animation.slideOutHorizontally
 import androidx.compose.foundation.ExperimentalFoundationApi
+import androidx.compose.foundation.Image
 import androidx.compose.foundation.background
 import androidx.compose.foundation.border
 import androidx.compose.foundation.clickable
@@ -26,6 +27,7 @@ import androidx.compose.foundation.rememberScrollState
 import androidx.compose.foundation.shape.CircleShape
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.automirrored.filled.VolumeUp
 import androidx.compose.material.icons.filled.BrokenImage
 import androidx.compose.material.icons.filled.Close
 import androidx.compose.material.icons.filled.Delete
@@ -54,15 +56,13 @@ import androidx.compose.ui.platform.LocalConfiguration
 import androidx.compose.ui.platform.LocalDensity
 import androidx.compose.ui.platform.LocalHapticFeedback
 import androidx.compose.ui.graphics.TransformOrigin
+import androidx.compose.ui.graphics.asImageBitmap
 import androidx.compose.ui.text.AnnotatedString
-import androidx.compose.ui.text.SpanStyle
 import androidx.compose.ui.text.TextStyle
-import androidx.compose.ui.text.buildAnnotatedString
 import androidx.compose.ui.text.font.FontFamily
 import androidx.compose.ui.text.font.FontStyle
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.text.style.TextOverflow
-import androidx.compose.ui.text.withStyle
 import androidx.compose.ui.unit.Dp
 import androidx.compose.ui.unit.IntOffset
 import androidx.compose.ui.unit.dp
@@ -71,11 +71,20 @@ import androidx.compose.ui.layout.ContentScale
 import androidx.compose.ui.platform.LocalContext
 import coil.compose.AsyncImage
 import coil.compose.SubcomposeAsyncImage
+import coil.compose.SubcomposeAsyncImageContent
 import coil.request.ImageRequest
 import com.health.companion.BuildConfig
 import com.health.companion.data.remote.api.MessageDTO
 import com.health.companion.presentation.components.*
+import com.health.companion.utils.BlurHash
+import com.health.companion.utils.DecodeSizeCapInterceptor
+import com.health.companion.utils.ImageClass
+import com.health.companion.utils.MediaDownloadState
+import com.health.companion.utils.imageClass
+import com.health.companion.utils.imageClassKey
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import timber.log.Timber
 import java.text.SimpleDateFormat
 import java.util.*
@@ -84,6 +93,10 @@ import kotlin.math.roundToInt
 // API Host for constructing full URLs
 private val API_HOST = BuildConfig.API_BASE_URL.substringBefore("/api/")
 
+// Превью картинки: с какого zoom перекодируем в большее разрешение и потолок декода
+private const val ZOOM_REDECODE_SCALE = 2f
+private const val MAX_ZOOM_DECODE_PX = 4096
+
 // ============================================================================
 // ChatBubble V2 — по спецификации chat_design_prompt.md
 // Telegram-style с асимметричными углами и timestamp снаружи
@@ -109,8 +122,12 @@ fun ChatBubbleV2(
     modifier: Modifier = Modifier,
     animate: Boolean = false,
     authToken: String? = null,
+    renderModel: MessageRenderModel? = null,
+    textPrecomputer: ChatTextPrecomputer? = null,
     onRetry: () -> Unit = {},
-    onDelete: () -> Unit = {}
+    onDelete: () -> Unit = {},
+    onImagePlaceholder: (String) -> Unit = {},
+    onSpeak: ((String) -> Unit)? = null
 ) {
     val isUser = message.role == "user"
     val screenWidth = LocalConfiguration.current.screenWidthDp.dp
@@ -146,7 +163,10 @@ fun ChatBubbleV2(
         label = "borderAlpha"
     )
     
-    val formattedText = remember(message.content) { formatMessageTextV2(message.content) }
+    // Модель готовится во ViewModel; фолбэк — пока она не пришла для нового контента
+    val readyModel = renderModel?.takeIf { it.matches(message) }
+    val formattedText = readyModel?.plainText
+        ?: remember(message.content) { formatMessageTextV2(message.content) }
     
     val timestamp = remember(message.createdAt) {
         try {
@@ -244,8 +264,10 @@ fun ChatBubbleV2(
                             android.util.Log.d("IMAGE_DEBUG", "🖼️ ChatBubbleV2 showing imageUrl=$imageUrl")
                             GeneratedImageCard(
                                 imageUrl = imageUrl,
+                                blurHash = message.imageBlurHash,
                                 authToken = authToken,
-                                modifier = Modifier
+                                modifier = Modifier,
+                                onPlaceholderComputed = onImagePlaceholder
                             )
                         }
                         if (hasText) Spacer(Modifier.height(6.dp))
@@ -285,7 +307,9 @@ fun ChatBubbleV2(
                                 
                                 MarkdownTextV2(
                                     content = message.content,
-                                    animate = animate
+                                    animate = animate,
+                                    precomputedBlocks = readyModel?.blocks,
+                                    textPrecomputer = textPrecomputer
                                 )
                             }
                         }
@@ -316,8 +340,7 @@ fun ChatBubbleV2(
                                     model = ImageRequest.Builder(context)
                                         .data(Uri.parse(imageUri))
                                         .crossfade(200)
-                                        .memoryCacheKey(imageUri)
-                                        .diskCacheKey(imageUri)
+                                        .imageClass(ImageClass.CHAT_PHOTO, imageUri)
                                         .build(),
                                     contentDescription = "Прикреплённое фото",
                                     modifier = Modifier.fillMaxSize(),
@@ -356,10 +379,10 @@ fun ChatBubbleV2(
                                 .border(1.dp, GlassColors.mint.copy(alpha = 0.3f), bubbleShape)
                                 .padding(horizontal = 10.dp, vertical = 8.dp)
                         ) {
-                            Text(
-                                text = formattedText,
-                                style = GlassTypography.messageText.copy(fontSize = 13.sp, lineHeight = 18.sp),
-                                color = Color.White
+                            BubbleText(
+                                text = remember(formattedText) { AnnotatedString(formattedText) },
+                                slot = BubbleTextSlot.USER,
+                                precomputer = textPrecomputer
                             )
                         }
                     }
@@ -386,6 +409,18 @@ fun ChatBubbleV2(
             }
         }
         
+        // === QUEUED (OFFLINE OUTBOX) ===
+        if (isUser && status == MessageSendStatus.Queued) {
+            Spacer(Modifier.height(2.dp))
+            Row(
+                modifier = Modifier.fillMaxWidth(),
+                horizontalArrangement = Arrangement.End,
+                verticalAlignment = Alignment.CenterVertically
+            ) {
+                Text("Ожидает сети", style = GlassTypography.timestamp)
+            }
+        }
+        
         // === ERROR + RETRY ===
         if (isUser && status == MessageSendStatus.Failed) {
             Spacer(Modifier.height(2.dp))
@@ -468,6 +503,38 @@ fun ChatBubbleV2(
                     }
                 }
                 
+                // Кнопка ОЗВУЧИТЬ — только у ответов ассистента
+                if (!isUser && onSpeak != null && formattedText.isNotBlank()) {
+                    Box(
+                        modifier = Modifier
+                            .clip(RoundedCornerShape(8.dp))
+                            .background(GlassColors.accent.copy(alpha = 0.25f))
+                            .clickable {
+                                isInDeleteMode = false
+                                onSpeak(formattedText)
+                            }
+                            .padding(horizontal = 12.dp, vertical = 8.dp)
+                    ) {
+                        Row(
+                            verticalAlignment = Alignment.CenterVertically,
+                            horizontalArrangement = Arrangement.spacedBy(6.dp)
+                        ) {
+                            Icon(
+                                imageVector = Icons.AutoMirrored.Filled.VolumeUp,
+                                contentDescription = null,
+                                tint = Color.White,
+                                modifier = Modifier.size(16.dp)
+                            )
+                            Text(
+                                text = "Озвучить",
+                                color = Color.White,
+                                fontSize = 13.sp,
+                                fontWeight = FontWeight.Medium
+                            )
+                        }
+                    }
+                }
+                
                 // Кнопка ОТМЕНА
                 Box(
                     modifier = Modifier
@@ -524,7 +591,9 @@ private fun BlueberryAvatarV2(size: Dp = 28.dp) {
 @Composable
 private fun MarkdownTextV2(
     content: String,
-    animate: Boolean = false
+    animate: Boolean = false,
+    precomputedBlocks: List<MarkdownBlock>? = null,
+    textPrecomputer: ChatTextPrecomputer? = null
 ) {
     // visibleChars плавно догоняет content.length
     // При обновлении content — visibleChars НЕ сбрасывается, а продолжает расти
@@ -547,8 +616,12 @@ private fun MarkdownTextV2(
     
     val displayText = content.take(visibleChars)
     
-    // Парсим и рендерим markdown
-    val blocks = remember(displayText) { parseMarkdownBlocks(displayText) }
+    // Готовые блоки из MessageRenderModel; парсим на месте только стримящийся текст
+    val blocks = if (precomputedBlocks != null && visibleChars >= content.length) {
+        precomputedBlocks
+    } else {
+        remember(displayText) { parseMarkdownBlocks(displayText) }
+    }
     
     Column(verticalArrangement = Arrangement.spacedBy(4.dp)) {
         blocks.forEach { block ->
@@ -582,7 +655,7 @@ private fun MarkdownTextV2(
                 is MarkdownBlock.Heading -> {
                     // Заголовок с акцентом
                     Text(
-                        text = parseInlineMarkdown(block.text),
+                        text = block.text,
                         style = TextStyle(
                             fontSize = when (block.level) {
                                 1 -> 18.sp
@@ -616,7 +689,7 @@ private fun MarkdownTextV2(
                             fontWeight = FontWeight.Bold
                         )
                         Text(
-                            text = parseInlineMarkdown(block.text),
+                            text = block.text,
                             style = GlassTypography.messageText.copy(
                                 fontSize = 13.sp,
                                 lineHeight = 18.sp
@@ -644,7 +717,7 @@ private fun MarkdownTextV2(
                             .padding(start = 10.dp, top = 6.dp, bottom = 6.dp, end = 8.dp)
                     ) {
                         Text(
-                            text = parseInlineMarkdown(block.text),
+                            text = block.text,
                             style = GlassTypography.messageText.copy(
                                 fontSize = 13.sp,
                                 lineHeight = 18.sp,
@@ -665,405 +738,8 @@ private fun MarkdownTextV2(
                 }
                 
                 is MarkdownBlock.Text -> {
-                    // Обычный текст с inline форматированием
-                    Text(
-                        text = parseInlineMarkdown(block.text),
-                        style = GlassTypography.messageText.copy(
-                            fontSize = 13.sp,
-                            lineHeight = 18.sp
-                        ),
-                        color = Color.White
-                    )
-                }
-            }
-        }
-    }
-}
-
-// === Markdown Parser ===
-
-private sealed class MarkdownBlock {
-    data class Text(val text: String) : MarkdownBlock()
-    data class CodeBlock(val language: String, val code: String) : MarkdownBlock()
-    data class Table(val rows: List<List<String>>) : MarkdownBlock()
-    data class Heading(val level: Int, val text: String) : MarkdownBlock()  // ## или ###
-    data class ListItem(val text: String) : MarkdownBlock()                  // - item
-    data class Quote(val text: String) : MarkdownBlock()                     // > quote
-    object Divider : MarkdownBlock()                                          // ---
-}
-
-private fun parseMarkdownBlocks(text: String): List<MarkdownBlock> {
-    val blocks = mutableListOf<MarkdownBlock>()
-    val lines = text.lines()
-    var i = 0
-    var textBuffer = StringBuilder()
-    
-    fun flushTextBuffer() {
-        val txt = textBuffer.toString().trim()
-        if (txt.isNotEmpty()) {
-            blocks.add(MarkdownBlock.Text(txt))
-        }
-        textBuffer = StringBuilder()
-    }
-    
-    while (i < lines.size) {
-        val line = lines[i]
-        val trimmedLine = line.trim()
-        
-        // Код блок начало
-        if (trimmedLine.startsWith("```")) {
-            flushTextBuffer()
-            val lang = trimmedLine.removePrefix("```").trim()
-            val codeLines = mutableListOf<String>()
-            i++
-            while (i < lines.size && !lines[i].trim().startsWith("```")) {
-                codeLines.add(lines[i])
-                i++
-            }
-            blocks.add(MarkdownBlock.CodeBlock(lang, codeLines.joinToString("\n")))
-            i++ // пропускаем закрывающий ```
-            continue
-        }
-        
-        // Разделитель ---
-        if (trimmedLine.matches(Regex("^-{3,}$")) || trimmedLine.matches(Regex("^\\*{3,}$"))) {
-            flushTextBuffer()
-            blocks.add(MarkdownBlock.Divider)
-            i++
-            continue
-        }
-        
-        // Заголовок # ## ### #### (проверяем от большего к меньшему!)
-        if (trimmedLine.startsWith("#### ")) {
-            flushTextBuffer()
-            blocks.add(MarkdownBlock.Heading(4, trimmedLine.removePrefix("#### ").trim()))
-            i++
-            continue
-        }
-        if (trimmedLine.startsWith("### ")) {
-            flushTextBuffer()
-            blocks.add(MarkdownBlock.Heading(3, trimmedLine.removePrefix("### ").trim()))
-            i++
-            continue
-        }
-        if (trimmedLine.startsWith("## ")) {
-            flushTextBuffer()
-            blocks.add(MarkdownBlock.Heading(2, trimmedLine.removePrefix("## ").trim()))
-            i++
-            continue
-        }
-        if (trimmedLine.startsWith("# ")) {
-            flushTextBuffer()
-            blocks.add(MarkdownBlock.Heading(1, trimmedLine.removePrefix("# ").trim()))
-            i++
-            continue
-        }
-        
-        // Цитата > text
-        if (trimmedLine.startsWith("> ")) {
-            flushTextBuffer()
-            val quoteText = StringBuilder(trimmedLine.removePrefix("> "))
-            i++
-            // Собираем многострочные цитаты
-            while (i < lines.size && lines[i].trim().startsWith("> ")) {
-                quoteText.append("\n").append(lines[i].trim().removePrefix("> "))
-                i++
-            }
-            blocks.add(MarkdownBlock.Quote(quoteText.toString()))
-            continue
-        }
-        
-        // Список - item или * item
-        if (trimmedLine.matches(Regex("^[-*•]\\s+.+"))) {
-            flushTextBuffer()
-            val itemText = trimmedLine.replaceFirst(Regex("^[-*•]\\s+"), "")
-            blocks.add(MarkdownBlock.ListItem(itemText))
-            i++
-            continue
-        }
-        
-        // Проверка на таблицу: строка содержит | и следующая тоже (или это заголовок с ---)
-        if (line.contains("|") && trimmedLine.let { it.startsWith("|") || it.count { c -> c == '|' } >= 2 }) {
-            flushTextBuffer()
-            val tableLines = mutableListOf<String>()
-            while (i < lines.size && lines[i].contains("|")) {
-                val tableLine = lines[i].trim()
-                // Пропускаем разделители типа |---|---|
-                if (!tableLine.replace("|", "").replace("-", "").replace(":", "").replace(" ", "").isEmpty() ||
-                    tableLine.contains("---").not()) {
-                    if (!tableLine.matches(Regex("^[\\|\\s\\-:]+$"))) {
-                        tableLines.add(tableLine)
-                    }
-                }
-                i++
-            }
-            
-            if (tableLines.isNotEmpty()) {
-                val rows = tableLines.map { row ->
-                    row.split("|")
-                        .map { it.trim() }
-                        .filter { it.isNotEmpty() }
-                }.filter { it.isNotEmpty() }
-                
-                if (rows.isNotEmpty()) {
-                    blocks.add(MarkdownBlock.Table(rows))
-                }
-            }
-            continue
-        }
-        
-        // Обычный текст
-        textBuffer.appendLine(line)
-        i++
-    }
-    
-    flushTextBuffer()
-    return blocks.ifEmpty { listOf(MarkdownBlock.Text(text)) }
-}
-
-private fun parseInlineMarkdown(text: String): AnnotatedString {
-    return buildAnnotatedString {
-        // Используем regex для корректного парсинга **bold** и *italic*
-        var current = text
-            // Фикс прилипших чисел: "26февраля" -> "26 февраля"
-            .replace(Regex("(\\d)([а-яА-ЯёЁ])")) { "${it.groupValues[1]} ${it.groupValues[2]}" }
-            .replace(Regex("([а-яА-ЯёЁ])(\\d)")) { "${it.groupValues[1]} ${it.groupValues[2]}" }
-            // Сначала заменяем ** (жирный) - ВАЖНО: до одинарных *
-            .replace(Regex("\\*\\*(.+?)\\*\\*")) { "⬛BOLD⬛${it.groupValues[1]}⬛BOLD⬛" }
-            .replace(Regex("__(.+?)__")) { "⬛BOLD⬛${it.groupValues[1]}⬛BOLD⬛" }
-            // Затем одинарные * и _ (курсив)
-            .replace(Regex("(?<!\\*)\\*(?!\\*)(.+?)(?<!\\*)\\*(?!\\*)")) { "⬛ITALIC⬛${it.groupValues[1]}⬛ITALIC⬛" }
-            .replace(Regex("(?<!_)_(?!_)(.+?)(?<!_)_(?!_)")) { "⬛ITALIC⬛${it.groupValues[1]}⬛ITALIC⬛" }
-            // Inline код
-            .replace(Regex("`([^`]+)`")) { "⬛CODE⬛${it.groupValues[1]}⬛CODE⬛" }
-            .replace("• ", "  • ")
-            .replace(Regex("^#{1,4}\\s+", RegexOption.MULTILINE), "") // Удаляем оставшиеся заголовки
-        
-        var isBold = false
-        var isItalic = false
-        var isCode = false
-        
-        val parts = current.split("⬛")
-        parts.forEach { part ->
-            when (part) {
-                "BOLD" -> isBold = !isBold
-                "ITALIC" -> isItalic = !isItalic
-                "CODE" -> isCode = !isCode
-                else -> {
-                    val style = SpanStyle(
-                        fontWeight = if (isBold) FontWeight.Bold else FontWeight.Normal,
-                        fontStyle = if (isItalic) FontStyle.Italic else FontStyle.Normal,
-                        fontFamily = if (isCode) FontFamily.Monospace else FontFamily.Default,
-                        background = if (isCode) Color(0xFF2D2D3D) else Color.Transparent,
-                        color = if (isCode) Color(0xFF7AA2F7) else Color.Unspecified
-                    )
-                    withStyle(style) { append(part) }
-                }
-            }
-        }
-    }
-}
-
-/**
- * Красивый рендеринг таблицы — карточки вместо ASCII
- * Горизонтальный скролл для широких таблиц
- */
-@Composable
-private fun TableRenderer(rows: List<List<String>>) {
-    if (rows.isEmpty()) return
-    
-    val headers = rows.firstOrNull() ?: return
-    val dataRows = rows.drop(1)
-    
-    // Если таблица маленькая (1-2 колонки) — вертикальные карточки
-    // Если большая — горизонтальный скролл
-    if (headers.size <= 2 && dataRows.isNotEmpty()) {
-        // Компактный вид: каждая строка как мини-карточка
-        Column(
-            modifier = Modifier.fillMaxWidth(),
-            verticalArrangement = Arrangement.spacedBy(6.dp)
-        ) {
-            dataRows.forEach { row ->
-                TableRowCard(headers, row)
-            }
-        }
-    } else {
-        // Таблица с горизонтальным скроллом и ФИКСИРОВАННЫМИ колонками
-        val scrollState = rememberScrollState()
-        val showScrollHint = scrollState.value == 0 && headers.size > 3
-        
-        // Вычисляем ширину каждой колонки по максимальному контенту
-        val columnWidths = remember(rows) {
-            headers.indices.map { colIndex ->
-                val headerLen = headers.getOrNull(colIndex)?.length ?: 0
-                val maxDataLen = dataRows.maxOfOrNull { row -> 
-                    row.getOrNull(colIndex)?.length ?: 0 
-                } ?: 0
-                val maxLen = maxOf(headerLen, maxDataLen)
-                // Минимум 50dp, ~7dp на символ, максимум 120dp
-                (50 + maxLen * 6).coerceIn(50, 120)
-            }
-        }
-        
-        Box(
-            modifier = Modifier
-                .fillMaxWidth()
-                .clip(RoundedCornerShape(10.dp))
-                .background(
-                    Brush.verticalGradient(
-                        colors = listOf(
-                            Color(0xFF1E2235),
-                            Color(0xFF171B2C)
-                        )
-                    )
-                )
-                .border(1.dp, Color(0xFF3D4A6A).copy(alpha = 0.5f), RoundedCornerShape(10.dp))
-        ) {
-            Column(
-                modifier = Modifier
-                    .horizontalScroll(scrollState)
-                    .padding(4.dp)
-            ) {
-                // Header
-                Row(
-                    modifier = Modifier
-                        .background(
-                            Brush.horizontalGradient(
-                                colors = listOf(
-                                    GlassColors.surfaceAlt,
-                                    Color(0xFF232945)
-                                )
-                            ),
-                            RoundedCornerShape(topStart = 8.dp, topEnd = 8.dp)
-                        )
-                        .padding(vertical = 8.dp)
-                ) {
-                    headers.forEachIndexed { index, header ->
-                        Text(
-                            text = header,
-                            modifier = Modifier
-                                .width(columnWidths.getOrElse(index) { 60 }.dp)
-                                .padding(horizontal = 6.dp),
-                            style = TextStyle(
-                                fontSize = 11.sp,
-                                fontWeight = FontWeight.Bold,
-                                color = GlassColors.accent,
-                                lineHeight = 14.sp
-                            ),
-                            maxLines = 2
-                        )
-                    }
-                }
-                
-                // Data rows
-                dataRows.forEachIndexed { rowIndex, row ->
-                    val isEven = rowIndex % 2 == 0
-                    Row(
-                        modifier = Modifier
-                            .background(
-                                if (isEven) Color.Transparent 
-                                else Color(0xFF1A1F30).copy(alpha = 0.5f)
-                            )
-                            .padding(vertical = 6.dp)
-                    ) {
-                        // Используем те же ширины что и для header!
-                        headers.indices.forEach { colIndex ->
-                            val cell = row.getOrElse(colIndex) { "" }
-                            Text(
-                                text = cell,
-                                modifier = Modifier
-                                    .width(columnWidths.getOrElse(colIndex) { 60 }.dp)
-                                    .padding(horizontal = 6.dp),
-                                style = TextStyle(
-                                    fontSize = 11.sp,
-                                    fontWeight = FontWeight.Normal,
-                                    color = Color.White.copy(alpha = 0.9f),
-                                    lineHeight = 14.sp
-                                ),
-                                maxLines = 2
-                            )
-                        }
-                    }
-                }
-            }
-            
-            // Индикатор скролла справа
-            if (showScrollHint) {
-                Box(
-                    modifier = Modifier
-                        .align(Alignment.CenterEnd)
-                        .fillMaxHeight()
-                        .width(24.dp)
-                        .background(
-                            Brush.horizontalGradient(
-                                colors = listOf(
-                                    Color.Transparent,
-                                    Color(0xFF171B2C).copy(alpha = 0.9f)
-                                )
-                            )
-                        ),
-                    contentAlignment = Alignment.Center
-                ) {
-                    Text(
-                        text = "›",
-                        color = GlassColors.accent.copy(alpha = 0.7f),
-                        fontSize = 18.sp,
-                        fontWeight = FontWeight.Bold
-                    )
-                }
-            }
-        }
-    }
-}
-
-/**
- * Карточка для строки таблицы (компактный вид)
- */
-@Composable
-private fun TableRowCard(headers: List<String>, row: List<String>) {
-    Box(
-        modifier = Modifier
-            .fillMaxWidth()
-            .clip(RoundedCornerShape(8.dp))
-            .background(
-                Brush.horizontalGradient(
-                    colors = listOf(
-                        Color(0xFF1E2540).copy(alpha = 0.8f),
-                        Color(0xFF1A2035).copy(alpha = 0.6f)
-                    )
-                )
-            )
-            .border(1.dp, Color(0xFF3D4A6A).copy(alpha = 0.3f), RoundedCornerShape(8.dp))
-            .padding(10.dp)
-    ) {
-        Column(verticalArrangement = Arrangement.spacedBy(4.dp)) {
-            row.forEachIndexed { index, cell ->
-                if (cell.isNotBlank()) {
-                    Row(
-                        modifier = Modifier.fillMaxWidth(),
-                        horizontalArrangement = Arrangement.SpaceBetween
-                    ) {
-                        // Label
-                        Text(
-                            text = headers.getOrElse(index) { "" },
-                            style = TextStyle(
-                                fontSize = 10.sp,
-                                fontWeight = FontWeight.Medium,
-                                color = GlassColors.accent.copy(alpha = 0.8f)
-                            ),
-                            modifier = Modifier.weight(0.4f)
-                        )
-                        // Value
-                        Text(
-                            text = cell,
-                            style = TextStyle(
-                                fontSize = 12.sp,
-                                fontWeight = FontWeight.Normal,
-                                color = Color.White
-                            ),
-                            modifier = Modifier.weight(0.6f)
-                        )
-                    }
+                    // Обычный текст с inline форматированием — layout предрасчитан около viewport
+                    BubbleText(text = block.text, slot = BubbleTextSlot.ASSISTANT, precomputer = textPrecomputer)
                 }
             }
         }
@@ -1078,7 +754,7 @@ fun TypingIndicatorV2(
     modifier: Modifier = Modifier,
     isUploading: Boolean = false
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "typing")
+    val infiniteTransition = rememberGovernedTransition(label = "typing", priority = AnimationPriority.ESSENTIAL)
     
     val bubbleShape = RoundedCornerShape(topStart = 6.dp, topEnd = 18.dp, bottomStart = 18.dp, bottomEnd = 18.dp)
     
@@ -1140,43 +816,26 @@ fun TypingIndicatorV2(
     }
 }
 
-/**
- * Форматирование текста сообщения
- */
-private fun formatMessageTextV2(raw: String): String {
-    var text = raw.trim()
-    if (text.isEmpty()) return text
-    
-    // Normalize bullets
-    text = text.replace(Regex("(?m)^\\s*[-*•]\\s+"), "• ")
-    
-    // Remove markdown headings
-    text = text.replace(Regex("(?m)^\\s*#{1,6}\\s+"), "")
-    
-    // Fix numbered lists
-    text = text.replace(Regex("(?m)^(\\d+)\\.(\\S)"), "$1. $2")
-    
-    // Collapse multiple blank lines
-    text = text.replace(Regex("(\\n\\s*){3,}"), "\n\n")
-    
-    // Remove markdown emphasis
-    text = text.replace("*", "").replace("_", "")
-    
-    return text.trim()
-}
-
 /**
  * Карточка для сгенерированного изображения в чате
+ * Пока картинка качается — BlurHash-заглушка; без неё хэш считается после первой загрузки.
  * По клику открывается fullscreen preview с zoom/pan
  */
 @Composable
 private fun GeneratedImageCard(
     imageUrl: String,
+    blurHash: String? = null,
     authToken: String? = null,
-    modifier: Modifier = Modifier
+    modifier: Modifier = Modifier,
+    onPlaceholderComputed: (String) -> Unit = {}
 ) {
     val context = LocalContext.current
+    val scope = rememberCoroutineScope()
     var showPreview by remember { mutableStateOf(false) }
+    // 32×32 декодируется за доли миллисекунды — прямо в композиции, без мигания пустым фоном
+    val placeholder = remember(blurHash) { BlurHash.decode(blurHash)?.asImageBitmap() }
+    // Заглушка сразу в итоговых пропорциях, если картинку уже видели — список не прыгает
+    val aspectRatio = remember(imageUrl) { ImageAspectRatios[imageUrl] ?: 1f }
     
     // Construct full URL if relative path
     val fullUrl = remember(imageUrl) {
@@ -1201,8 +860,7 @@ private fun GeneratedImageCard(
             model = ImageRequest.Builder(context)
                 .data(fullUrl)
                 .crossfade(300)
-                .memoryCacheKey(fullUrl)
-                .diskCacheKey(fullUrl)
+                .imageClass(ImageClass.GENERATED, fullUrl)
                 .apply {
                     if (!authToken.isNullOrBlank()) {
                         setHeader("Authorization", "Bearer $authToken")
@@ -1214,14 +872,32 @@ private fun GeneratedImageCard(
                 .fillMaxWidth()
                 .clip(RoundedCornerShape(16.dp)),
             contentScale = ContentScale.FillWidth,
+            onSuccess = { success ->
+                val drawable = success.result.drawable
+                ImageAspectRatios.remember(imageUrl, drawable.intrinsicWidth, drawable.intrinsicHeight)
+                if (blurHash == null) {
+                    scope.launch {
+                        withContext(Dispatchers.Default) { BlurHash.fromDrawable(drawable) }
+                            ?.let(onPlaceholderComputed)
+                    }
+                }
+            },
             loading = {
                 Box(
                     modifier = Modifier
                         .fillMaxWidth()
-                        .aspectRatio(1f)
+                        .aspectRatio(aspectRatio)
                         .clip(RoundedCornerShape(16.dp))
                         .background(Color(0xFF1A1F3A))
                 ) {
+                    placeholder?.let {
+                        Image(
+                            bitmap = it,
+                            contentDescription = null,
+                            modifier = Modifier.fillMaxSize(),
+                            contentScale = ContentScale.Crop
+                        )
+                    }
                     CircularProgressIndicator(
                         modifier = Modifier.align(Alignment.Center).size(32.dp),
                         color = GlassColors.accent,
@@ -1234,7 +910,7 @@ private fun GeneratedImageCard(
                 Box(
                     modifier = Modifier
                         .fillMaxWidth()
-                        .aspectRatio(1f)
+                        .aspectRatio(aspectRatio)
                         .clip(RoundedCornerShape(16.dp))
                         .background(Color(0xFF1A1F3A)),
                     contentAlignment = Alignment.Center
@@ -1288,7 +964,8 @@ private fun GeneratedImageCard(
 
 /**
  * 🔍 Fullscreen просмотр сгенерированного изображения
- * С zoom/pan и кнопкой скачивания
+ * С zoom/pan и кнопкой скачивания. Сразу показывает битмап карточки из memory cache,
+ * затем декод по размеру экрана; при zoom ≥ 2x — повторный декод с большим разрешением
  */
 @Composable
 private fun GeneratedImagePreviewDialog(
@@ -1336,6 +1013,47 @@ private fun GeneratedImagePreviewDialog(
     
     var lastTapTime by remember { mutableLongStateOf(0L) }
 
+    // Сохранение в галерею: поток в MediaStore, при наличии — из disk cache Coil
+    val downloadManager = LocalMediaDownloadManager.current
+    val downloadState = downloadManager?.downloads?.collectAsState()?.value?.get(imageUrl)
+    var saveRequested by remember { mutableStateOf(false) }
+    LaunchedEffect(downloadState) {
+        if (!saveRequested) return@LaunchedEffect
+        val text = when (downloadState) {
+            is MediaDownloadState.Done -> "💾 Сохранено в галерею"
+            is MediaDownloadState.Failed -> "Ошибка сохранения"
+            else -> return@LaunchedEffect
+        }
+        saveRequested = false
+        android.widget.Toast.makeText(context, text, android.widget.Toast.LENGTH_SHORT).show()
+    }
+
+    // Разрешение декода следует за zoom: на 1x хватает экрана, полный размер — только при увеличении
+    val zoomLevel by remember { derivedStateOf { if (scale >= ZOOM_REDECODE_SCALE) 2 else 1 } }
+    val screenPx = remember(context) {
+        context.resources.displayMetrics.let { maxOf(it.widthPixels, it.heightPixels) }
+    }
+    val previewRequest = remember(imageUrl, authToken, zoomLevel) {
+        ImageRequest.Builder(context)
+            .data(imageUrl)
+            .crossfade(150)
+            .apply {
+                if (zoomLevel == 1) {
+                    imageClass(ImageClass.GENERATED, "$imageUrl#screen", diskKey = imageUrl)
+                    placeholderMemoryCacheKey(imageClassKey(ImageClass.GENERATED, imageUrl))
+                } else {
+                    imageClass(ImageClass.GENERATED, "$imageUrl#zoom", diskKey = imageUrl)
+                    placeholderMemoryCacheKey(imageClassKey(ImageClass.GENERATED, "$imageUrl#screen"))
+                    size((screenPx * zoomLevel).coerceAtMost(MAX_ZOOM_DECODE_PX))
+                    setParameter(DecodeSizeCapInterceptor.PARAM_UNCAPPED, true, memoryCacheKey = null)
+                }
+                if (!authToken.isNullOrBlank()) {
+                    setHeader("Authorization", "Bearer $authToken")
+                }
+            }
+            .build()
+    }
+
     Dialog(
         onDismissRequest = onDismiss,
         properties = DialogProperties(
@@ -1360,17 +1078,7 @@ private fun GeneratedImagePreviewDialog(
         ) {
             // Изображение с zoom/pan
             SubcomposeAsyncImage(
-                model = ImageRequest.Builder(context)
-                    .data(imageUrl)
-                    .crossfade(150)
-                    .memoryCacheKey(imageUrl)
-                    .diskCacheKey(imageUrl)
-                    .apply {
-                        if (!authToken.isNullOrBlank()) {
-                            setHeader("Authorization", "Bearer $authToken")
-                        }
-                    }
-                    .build(),
+                model = previewRequest,
                 contentDescription = "Просмотр изображения",
                 modifier = Modifier
                     .graphicsLayer {
@@ -1397,15 +1105,20 @@ private fun GeneratedImagePreviewDialog(
                     },
                 contentScale = ContentScale.Fit,
                 loading = {
-                    Box(
-                        modifier = Modifier.size(80.dp),
-                        contentAlignment = Alignment.Center
-                    ) {
-                        CircularProgressIndicator(
-                            color = Color.White,
-                            modifier = Modifier.size(32.dp),
-                            strokeWidth = 2.dp
-                        )
+                    // Есть битмап меньшего разрешения из кэша — показываем его, а не спиннер
+                    if (painter.state.painter != null) {
+                        SubcomposeAsyncImageContent()
+                    } else {
+                        Box(
+                            modifier = Modifier.size(80.dp),
+                            contentAlignment = Alignment.Center
+                        ) {
+                            CircularProgressIndicator(
+                                color = Color.White,
+                                modifier = Modifier.size(32.dp),
+                                strokeWidth = 2.dp
+                            )
+                        }
                     }
                 },
                 error = {
@@ -1431,21 +1144,47 @@ private fun GeneratedImagePreviewDialog(
                     .graphicsLayer { alpha = animatedAlpha * 0.9f },
                 horizontalArrangement = Arrangement.spacedBy(16.dp)
             ) {
-                // Скачать
+                // Скачать (повторный тап во время сохранения — отмена)
+                val isSaving = downloadState is MediaDownloadState.Running
                 Box(
                     modifier = Modifier
                         .size(48.dp)
                         .clip(CircleShape)
                         .background(Color(0xFF10B981).copy(alpha = 0.9f))
-                        .clickable { downloadImage(context, imageUrl, authToken) },
+                        .clickable {
+                            when {
+                                downloadManager == null -> Unit
+                                isSaving -> downloadManager.cancel(imageUrl)
+                                downloadManager.enqueue(imageUrl) -> saveRequested = true
+                                else -> android.widget.Toast.makeText(context, "Уже в галерее", android.widget.Toast.LENGTH_SHORT).show()
+                            }
+                        },
                     contentAlignment = Alignment.Center
                 ) {
-                    Icon(
-                        Icons.Default.Download,
-                        contentDescription = "Скачать",
-                        tint = Color.White,
-                        modifier = Modifier.size(22.dp)
-                    )
+                    if (downloadState is MediaDownloadState.Running) {
+                        val progress = downloadState.progress
+                        if (progress != null) {
+                            CircularProgressIndicator(
+                                progress = { progress },
+                                color = Color.White,
+                                modifier = Modifier.size(28.dp),
+                                strokeWidth = 2.dp
+                            )
+                        } else {
+                            CircularProgressIndicator(
+                                color = Color.White,
+                                modifier = Modifier.size(28.dp),
+                                strokeWidth = 2.dp
+                            )
+                        }
+                    } else {
+                        Icon(
+                            Icons.Default.Download,
+                            contentDescription = "Скачать",
+                            tint = Color.White,
+                            modifier = Modifier.size(22.dp)
+                        )
+                    }
                 }
                 
                 // Закрыть
@@ -1481,41 +1220,6 @@ private fun GeneratedImagePreviewDialog(
     }
 }
 
-/**
- * Скачивает изображение в галерею
- * Файл сохраняется в Pictures и появляется в галерее Android
- */
-private fun downloadImage(context: android.content.Context, url: String, authToken: String?) {
-    try {
-        val fileName = "AI_Image_${System.currentTimeMillis()}.png"
-        
-        val request = android.app.DownloadManager.Request(android.net.Uri.parse(url))
-            .setTitle("Сгенерированное изображение")
-            .setDescription("Сохранение в галерею...")
-            .setNotificationVisibility(android.app.DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED)
-            .setDestinationInExternalPublicDir(
-                android.os.Environment.DIRECTORY_PICTURES,
-                fileName
-            )
-            .setAllowedOverMetered(true)
-            .setAllowedOverRoaming(true)
-            .setMimeType("image/png")  // Важно для галереи!
-        
-        // Добавляем авторизацию если есть
-        if (!authToken.isNullOrBlank()) {
-            request.addRequestHeader("Authorization", "Bearer $authToken")
-        }
-        
-        val downloadManager = context.getSystemService(android.content.Context.DOWNLOAD_SERVICE) as android.app.DownloadManager
-        downloadManager.enqueue(request)
-        
-        android.widget.Toast.makeText(context, "💾 Сохраняю в галерею...", android.widget.Toast.LENGTH_SHORT).show()
-    } catch (e: Exception) {
-        Timber.e(e, "Failed to download image")
-        android.widget.Toast.makeText(context, "Ошибка сохранения", android.widget.Toast.LENGTH_SHORT).show()
-    }
-}
-
 // ImageLoadingAnimation удалена - используем ImageGeneratingAnimation вместо неё
 
 /**
@@ -1528,7 +1232,7 @@ fun ImageToImageAnimation(
     sourceImageUris: List<String>,
     modifier: Modifier = Modifier
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "i2i")
+    val infiniteTransition = rememberGovernedTransition(label = "i2i", priority = AnimationPriority.ESSENTIAL)
     val context = LocalContext.current
     
     // Волна shimmer - плавная туда-обратно (без скачков)
@@ -1817,7 +1521,7 @@ fun ImageToImageAnimation(
 fun ImageGeneratingAnimation(
     modifier: Modifier = Modifier
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "imageGen")
+    val infiniteTransition = rememberGovernedTransition(label = "imageGen", priority = AnimationPriority.ESSENTIAL)
     
     // Shimmer движение - медленнее
     val shimmerOffset by infiniteTransition.animateFloat(
@@ -22,7 +22,10 @@ import androidx.compose.foundation.background
 import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.layout.WindowInsets
 import androidx.compose.foundation.layout.ime
+import androidx.compose.foundation.combinedClickable
 import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.LazyItemScope
+import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.lazy.itemsIndexed
 import androidx.compose.foundation.lazy.LazyListState
 import androidx.compose.foundation.lazy.rememberLazyListState
@@ -72,11 +75,18 @@ import androidx.core.content.ContextCompat
 import androidx.core.content.FileProvider
 import androidx.core.view.HapticFeedbackConstantsCompat
 import androidx.hilt.navigation.compose.hiltViewModel
+import androidx.paging.LoadState
+import androidx.paging.compose.LazyPagingItems
+import androidx.paging.compose.collectAsLazyPagingItems
+import androidx.paging.compose.itemKey
+import com.health.companion.data.local.database.ConversationEntity
 import com.health.companion.data.remote.api.MessageDTO
 import com.health.companion.presentation.components.*
 import com.health.companion.utils.VoiceEventLogger
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.launch
 import java.io.File
 import java.text.SimpleDateFormat
@@ -93,6 +103,9 @@ import androidx.compose.animation.core.Animatable
 import androidx.compose.ui.unit.IntOffset
 import kotlin.math.roundToInt
 
+/** RMS кадра, при котором пульс кнопки микрофона максимальный (громкая речь у телефона) */
+private const val MIC_LEVEL_FULL_SCALE = 3_000f
+
 @Composable
 fun ChatScreen(
     viewModel: ChatViewModel = hiltViewModel(),
@@ -101,27 +114,47 @@ fun ChatScreen(
     onNavigate: (String) -> Unit = {} // Для навигации без bottom bar
 ) {
     val uiState by viewModel.uiState.collectAsState()
-    val messages by viewModel.messages.collectAsState()
-    
-    // Debug: log when messages change
-    LaunchedEffect(messages.size, messages.lastOrNull()?.content?.length) {
-        android.util.Log.d("UI_DEBUG", "Messages recompose: size=${messages.size}, lastLen=${messages.lastOrNull()?.content?.length}")
+
+    // Секции собираются как State, а поля читаются через делегаты по месту использования:
+    // токен стрима инвалидирует только список сообщений, а не весь экран
+    val messagesState = viewModel.messagesState.collectAsState()
+    val composerState = viewModel.composerState.collectAsState()
+    val streamState = viewModel.streamState.collectAsState()
+    val drawerState = viewModel.drawerState.collectAsState()
+
+    val messages by messagesState.select { it.messages }
+    val reversedMessages by messagesState.select { it.visibleMessages }
+    val renderModels by messagesState.select { it.renderModels }
+    val messageSendStatus by messagesState.select { it.sendStatus }
+    val authToken by messagesState.select { it.authToken }
+    val currentMessage by composerState.select { it.text }
+    val isRecording by composerState.select { it.isRecording }
+    val partialVoiceResult by composerState.select { it.partialVoiceResult }
+    // State без делегата: читается только в graphicsLayer, без рекомпозиции на каждый кадр
+    val recordingAmplitude = viewModel.recordingAmplitude.collectAsState()
+    val voiceModeState by viewModel.voiceModeState.collectAsState()
+    val voiceModeActive = voiceModeState != VoiceModeState.Off
+    val isUploading by composerState.select { it.isUploading }
+    val attachedImageUri by composerState.select { it.attachedImageUri }
+    val isLoading by streamState.select { it.isLoading }
+    val isSyncing by streamState.select { it.isSyncing }
+    val streamStatus by streamState.select { it.status }
+    val pinnedConversations by drawerState.select { it.pinnedConversations }
+    val conversationCount by drawerState.select { it.conversationCount }
+    val archivedCount by drawerState.select { it.archivedCount }
+    val conversationQuery by drawerState.select { it.searchQuery }
+    val showArchivedConversations by drawerState.select { it.showArchived }
+    val currentConversationId by drawerState.select { it.currentConversationId }
+    val sessionAttachments by drawerState.select { it.sessionAttachments }
+    val attachmentsLoading by drawerState.select { it.attachmentsLoading }
+
+    // Debug: log when messages change (snapshotFlow — без рекомпозиции экрана)
+    LaunchedEffect(Unit) {
+        snapshotFlow { messages.size to messages.lastOrNull()?.content?.length }
+            .collect { (size, lastLen) ->
+                android.util.Log.d("UI_DEBUG", "Messages changed: size=$size, lastLen=$lastLen")
+            }
     }
-    val currentMessage by viewModel.currentMessage.collectAsState()
-    val isLoading by viewModel.isLoading.collectAsState()
-    val isSyncing by viewModel.isSyncing.collectAsState()
-    val isRecording by viewModel.isRecording.collectAsState()
-    val partialVoiceResult by viewModel.partialVoiceResult.collectAsState()
-    val isUploading by viewModel.isUploading.collectAsState()
-    val conversations by viewModel.conversations.collectAsState()
-    val streamStatus by viewModel.streamStatus.collectAsState()
-    val isStreaming by viewModel.isStreaming.collectAsState()
-    val currentConversationId by viewModel.currentConversationId.collectAsState()
-    val messageSendStatus by viewModel.messageSendStatus.collectAsState()
-    val authToken by viewModel.authToken.collectAsState()
-    val attachedImageUri by viewModel.attachedImageUri.collectAsState()
-    val sessionAttachments by viewModel.sessionAttachments.collectAsState()
-    val attachmentsLoading by viewModel.attachmentsLoading.collectAsState()
 
     // Telegram-style: reverseLayout = true, scroll to 0 = bottom
     val listState = rememberLazyListState()
@@ -231,24 +264,40 @@ fun ChatScreen(
         return FileProvider.getUriForFile(context, "${context.packageName}.provider", imageFile)
     }
 
-    // Reversed messages for reverseLayout (newest at index 0)
-    // Filter out empty messages (no content, no images, no imageUrl)
-    val reversedMessages = remember(messages) { 
-        messages.filter { msg ->
-            msg.content.isNotBlank() || 
-            !msg.images.isNullOrEmpty() || 
-            msg.imageUrl != null
-        }.reversed() 
-    }
+    // Reversed messages for reverseLayout (newest at index 0) — готовятся во ViewModel,
+    // пустые сообщения (без текста, фото и imageUrl) уже отфильтрованы
 
     // Auto-scroll to bottom (index 0 in reverseLayout) when new message arrives
-    LaunchedEffect(messages.size) {
-        if (messages.isNotEmpty()) {
-            delay(100)
-            listState.animateScrollToItem(0)
+    LaunchedEffect(Unit) {
+        snapshotFlow { messages.size }.collectLatest { size ->
+            if (size > 0) {
+                delay(100)
+                listState.animateScrollToItem(0)
+            }
         }
     }
 
+    // Текст пузырей около viewport меряется заранее на фоне (см. ChatTextPrecomputer)
+    val textPrecomputer = rememberChatTextPrecomputer()
+    LaunchedEffect(textPrecomputer) {
+        snapshotFlow { listState.layoutInfo.visibleItemsInfo.mapNotNull { it.key as? String } }
+            .distinctUntilChanged()
+            .collectLatest { visibleKeys ->
+                val current = reversedMessages
+                val positions = visibleKeys.mapNotNull { key ->
+                    current.indexOfFirst { it.id == key }.takeIf { it >= 0 }
+                }
+                if (positions.isEmpty()) return@collectLatest
+                val from = (positions.min() - ChatTextPrecomputer.WINDOW).coerceAtLeast(0)
+                val to = (positions.max() + ChatTextPrecomputer.WINDOW).coerceAtMost(current.lastIndex)
+                textPrecomputer.precompute(current.subList(from, to + 1), renderModels)
+            }
+    }
+
+    LaunchedEffect(showChatsSheet) {
+        if (showChatsSheet) viewModel.onConversationsDrawerOpened()
+    }
+
     // Chats Dialog - Плавное появление fadeIn (без выезжания)
     if (showChatsSheet) {
         Dialog(
@@ -351,53 +400,42 @@ fun ChatScreen(
                             }
 
                             // Автозакрытие при пустом списке
-                            LaunchedEffect(conversations.isEmpty()) {
-                                if (conversations.isEmpty()) {
+                            val hasSessions = conversationCount + archivedCount > 0
+                            LaunchedEffect(hasSessions) {
+                                if (!hasSessions) {
                                     showChatsSheet = false
                                 }
                             }
                             
-                            if (conversations.isNotEmpty()) {
-                                var currentRevealedSessionId by remember { mutableStateOf<String?>(null) }
+                            if (hasSessions) {
+                                // Страницы из Room: шторка открывается сразу, даже на тысячах сессий
+                                val conversationPages = viewModel.conversationPages.collectAsLazyPagingItems()
+                                val archivedPages = if (showArchivedConversations) {
+                                    viewModel.archivedConversationPages.collectAsLazyPagingItems()
+                                } else null
                                 
-                                LazyColumn(
-                                    modifier = Modifier
-                                        .fillMaxSize()
-                                        .padding(horizontal = 12.dp),
-                                    verticalArrangement = Arrangement.spacedBy(6.dp),
-                                    contentPadding = PaddingValues(bottom = 16.dp)
-                                ) {
-                                    items(conversations.size, key = { conversations[it].id }) { index ->
-                                        val convo = conversations[index]
-                                        Box(modifier = Modifier.animateItemPlacement(
-                                            animationSpec = spring(
-                                                dampingRatio = 0.7f,
-                                                stiffness = 400f
-                                            )
-                                        )) {
-                                            SwipeableSessionItem(
-                                                itemId = convo.id,
-                                                currentRevealedId = currentRevealedSessionId,
-                                                onReveal = { currentRevealedSessionId = it },
-                                                onDelete = { viewModel.deleteConversation(convo.id) }
-                                            ) {
-                                                SimpleSessionCard(
-                                                    convo = convo,
-                                                    isSelected = convo.id == currentConversationId,
-                                                    onClick = {
-                                                        if (currentRevealedSessionId != null) {
-                                                            currentRevealedSessionId = null
-                                                        } else {
-                                                            android.util.Log.d("SESSION_CLICK", "🔄 Selecting: ${convo.id}")
-                                                            showChatsSheet = false
-                                                            viewModel.selectConversation(convo.id)
-                                                        }
-                                                    }
-                                                )
-                                            }
-                                        }
-                                    }
-                                }
+                                SessionSearchField(
+                                    query = conversationQuery,
+                                    onQueryChange = viewModel::onConversationQueryChange
+                                )
+                                
+                                SessionsList(
+                                    pages = conversationPages,
+                                    archivedPages = archivedPages,
+                                    pinned = pinnedConversations,
+                                    archivedCount = archivedCount,
+                                    isSearching = conversationQuery.isNotBlank(),
+                                    currentConversationId = currentConversationId,
+                                    onSelect = { id ->
+                                        android.util.Log.d("SESSION_CLICK", "🔄 Selecting: $id")
+                                        showChatsSheet = false
+                                        viewModel.selectConversation(id)
+                                    },
+                                    onDelete = viewModel::deleteConversation,
+                                    onTogglePin = { convo -> viewModel.setConversationPinned(convo.id, !convo.isPinned) },
+                                    onToggleArchive = { convo -> viewModel.setConversationArchived(convo.id, !convo.isArchived) },
+                                    onToggleArchivedSection = viewModel::toggleArchivedConversations
+                                )
                             }
                         }
                     }
@@ -438,7 +476,7 @@ fun ChatScreen(
             ) {
                 // Панель кнопок — показываем только если есть сессии
                 AnimatedVisibility(
-                    visible = conversations.isNotEmpty(),
+                    visible = conversationCount + archivedCount > 0,
                     enter = fadeIn() + scaleIn(initialScale = 0.8f),
                     exit = fadeOut() + scaleOut(targetScale = 0.8f)
                 ) {
@@ -448,7 +486,7 @@ fun ChatScreen(
                     ) {
                         // Session selector
                         SessionsIconWithBadge(
-                            sessionCount = conversations.size,
+                            sessionCount = conversationCount,
                             onClick = { showChatsSheet = true }
                         )
                         
@@ -569,7 +607,7 @@ fun ChatScreen(
                 
                 // Показываем анимацию генерации
                 if (isGeneratingImage) {
-                    item(key = "image_generation_animation") {
+                    item(key = "image_generation_animation", contentType = "image_generation") {
                         // Запоминаем тип анимации при первом показе чтобы не переключалась
                         val rememberedImages = remember { lastUserMessage?.images }
                         val useImageToImage = remember { !rememberedImages.isNullOrEmpty() }
@@ -621,7 +659,7 @@ fun ChatScreen(
                 // SSE Status Indicator - показывает текущий статус обработки
                 // Показываем только когда НЕ генерируется картинка (у картинок своя анимация)
                 if ((isLoading || isUploading || streamStatus.isNotEmpty()) && !isGeneratingImage) {
-                    item(key = "sse_status_indicator") { 
+                    item(key = "sse_status_indicator", contentType = "sse_status") {
                         Row(
                             modifier = Modifier
                                 .fillMaxWidth()
@@ -641,7 +679,11 @@ fun ChatScreen(
                 }
 
                 // Messages (reversed order for reverseLayout) with proper grouping
-                itemsIndexed(reversedMessages, key = { _, message -> message.id }) { index, message ->
+                itemsIndexed(
+                    reversedMessages,
+                    key = { _, message -> message.id },
+                    contentType = { _, message -> chatItemContentType(message) }
+                ) { index, message ->
                     val prev = reversedMessages.getOrNull(index - 1) // визуально выше (т.к. reversed)
                     val next = reversedMessages.getOrNull(index + 1) // визуально ниже
                     
@@ -668,22 +710,29 @@ fun ChatScreen(
                         modifier = Modifier.padding(top = topPadding),
                         animate = shouldAnimate,
                         authToken = authToken,
-                        onRetry = {
-                            viewModel.retrySendMessage(message.id, message.content)
+                        renderModel = renderModels[message.id],
+                        textPrecomputer = textPrecomputer,
+                        // Стабильные лямбды — иначе неизменившиеся пузыри не пропускаются
+                        onRetry = remember(message.id, message.content) {
+                            { viewModel.retrySendMessage(message.id, message.content) }
                         },
-                        onDelete = {
-                            viewModel.deleteMessage(message.id)
-                        }
+                        onDelete = remember(message.id) {
+                            { viewModel.deleteMessage(message.id) }
+                        },
+                        onImagePlaceholder = remember(message.id) {
+                            { blurHash -> viewModel.onImagePlaceholderComputed(message.id, blurHash) }
+                        },
+                        onSpeak = viewModel::speakMessage
                     )
                 }
 
                 // Empty state or skeleton at "bottom" (top visually)
                 if (reversedMessages.isEmpty() && isSyncing) {
-                    items(4) {
+                    items(4, contentType = { "skeleton" }) {
                         ChatSkeletonBubble()
                     }
                 } else if (reversedMessages.isEmpty()) {
-                    item { ChatEmptyState() }
+                    item(contentType = "empty") { ChatEmptyState() }
                 }
             }
 
@@ -816,7 +865,7 @@ fun ChatScreen(
 
                     // Recording indicator inline
                     if (isRecording) {
-                        val transition = rememberInfiniteTransition(label = "rec")
+                        val transition = rememberGovernedTransition(label = "rec", priority = AnimationPriority.ESSENTIAL)
                         val recAlpha by transition.animateFloat(
                             0.5f, 1f,
                             infiniteRepeatable(tween(500), RepeatMode.Reverse),
@@ -872,7 +921,13 @@ fun ChatScreen(
                             ) {
                                 if (currentMessage.isEmpty()) {
                                     Text(
-                                        text = if (isRecording) "Говорите..." else "Сообщение",
+                                        text = when {
+                                            voiceModeState == VoiceModeState.Thinking -> "Думаю..."
+                                            voiceModeState == VoiceModeState.Speaking -> "Отвечаю — перебейте, чтобы сказать"
+                                            isRecording -> partialVoiceResult.ifBlank { "Говорите..." }
+                                            voiceModeActive -> "Говорите..."
+                                            else -> "Сообщение"
+                                        },
                                         style = GlassTypography.placeholder
                                     )
                                 }
@@ -885,7 +940,7 @@ fun ChatScreen(
                 Spacer(Modifier.width(GlassSpacing.buttonSpacing))
 
                 // Mic/Send button — по спеке
-                val micPulseTransition = rememberInfiniteTransition(label = "mic_pulse")
+                val micPulseTransition = rememberGovernedTransition(label = "mic_pulse", priority = AnimationPriority.ESSENTIAL)
                 val micPulse by micPulseTransition.animateFloat(
                     initialValue = 1f,
                     targetValue = 1.15f,
@@ -905,7 +960,11 @@ fun ChatScreen(
                                     Box(
                                         modifier = Modifier
                                 .size(GlassSpacing.buttonSize + 8.dp)
-                                            .scale(micPulse)
+                                            .graphicsLayer {
+                                                val level = (recordingAmplitude.value / MIC_LEVEL_FULL_SCALE).coerceIn(0f, 1f)
+                                                scaleX = micPulse + level * 0.3f
+                                                scaleY = scaleX
+                                            }
                                             .background(
                                     GlassColors.error.copy(alpha = 0.3f),
                                                 CircleShape
@@ -925,7 +984,7 @@ fun ChatScreen(
                             .clip(CircleShape)
                             .background(
                                 when {
-                                    isRecording -> Brush.linearGradient(
+                                    isRecording || voiceModeActive -> Brush.linearGradient(
                                         colors = listOf(GlassColors.error, GlassColors.coral)
                                     )
                                     currentMessage.isNotBlank() -> GlassGradients.accent
@@ -935,8 +994,20 @@ fun ChatScreen(
                                 },
                                 CircleShape
                             )
-                            .clickable(enabled = !isLoading || currentMessage.isBlank()) {
-                                if (currentMessage.isNotBlank()) {
+                            .combinedClickable(
+                                enabled = !isLoading || currentMessage.isBlank() || voiceModeActive,
+                                onLongClick = {
+                                    // Долгое нажатие на микрофон — голосовой режим (разговор без рук)
+                                    if (currentMessage.isBlank() && !isRecording && hasAudioPermission) {
+                                        VoiceEventLogger.log(context, "mic_long_press voice_mode")
+                                        viewModel.toggleVoiceMode()
+                                    }
+                                }
+                            ) {
+                                if (voiceModeActive) {
+                                    VoiceEventLogger.log(context, "mic_click voice_mode_exit")
+                                    viewModel.toggleVoiceMode()
+                                } else if (currentMessage.isNotBlank()) {
                                     viewModel.sendMessage(currentMessage)
                                     onMessageSent()
                                     coroutineScope.launch {
@@ -971,7 +1042,7 @@ fun ChatScreen(
                                     strokeWidth = 2.dp
                                 )
                             }
-                            isRecording -> {
+                            isRecording || voiceModeActive -> {
                                     Icon(
                                     Icons.Default.Stop,
                                     "Стоп",
@@ -1155,7 +1226,7 @@ private fun AttachButton(
 
 @Composable
 private fun ChatEmptyState() {
-    val infiniteTransition = rememberInfiniteTransition(label = "blueberry")
+    val infiniteTransition = rememberGovernedTransition(label = "blueberry", priority = AnimationPriority.DECORATIVE)
     
     // Плавное дыхание основного круга
     val breathe by infiniteTransition.animateFloat(
@@ -1532,7 +1603,7 @@ private fun SessionsIconWithBadge(
     sessionCount: Int,
     onClick: () -> Unit
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "sessions")
+    val infiniteTransition = rememberGovernedTransition(label = "sessions", priority = AnimationPriority.DECORATIVE)
     
     // Мягкая медленная пульсация
     val pulse by infiniteTransition.animateFloat(
@@ -1606,7 +1677,7 @@ private fun SessionsIconWithBadge(
 
 @Composable
 private fun BlueberryAvatar(size: Dp = 36.dp) {
-    val infiniteTransition = rememberInfiniteTransition(label = "blueberry_avatar")
+    val infiniteTransition = rememberGovernedTransition(label = "blueberry_avatar", priority = AnimationPriority.DECORATIVE)
     
     // Subtle breathing animation
     val scale by infiniteTransition.animateFloat(
@@ -1657,7 +1728,7 @@ private fun BlueberryAvatar(size: Dp = 36.dp) {
 
 @Composable
 private fun ChatSkeletonBubble() {
-    val transition = rememberInfiniteTransition(label = "skeleton")
+    val transition = rememberGovernedTransition(label = "skeleton", priority = AnimationPriority.ESSENTIAL)
     val alpha by transition.animateFloat(
         initialValue = 0.4f,
         targetValue = 0.8f,
@@ -1726,14 +1797,272 @@ private fun formatMessageText(raw: String): String {
     return text.trim()
 }
 
+/**
+ * Поиск по сессиям: локальный FTS сразу, серверный — с задержкой во ViewModel
+ */
+@Composable
+private fun SessionSearchField(
+    query: String,
+    onQueryChange: (String) -> Unit
+) {
+    Row(
+        modifier = Modifier
+            .fillMaxWidth()
+            .padding(horizontal = 12.dp)
+            .padding(bottom = 8.dp)
+            .clip(RoundedCornerShape(10.dp))
+            .background(Color.White.copy(alpha = 0.06f))
+            .padding(horizontal = 10.dp, vertical = 8.dp),
+        verticalAlignment = Alignment.CenterVertically
+    ) {
+        Icon(
+            Icons.Default.Search,
+            contentDescription = null,
+            tint = GlassColors.accentSecondary.copy(alpha = 0.7f),
+            modifier = Modifier.size(16.dp)
+        )
+        Spacer(Modifier.width(8.dp))
+        Box(modifier = Modifier.weight(1f)) {
+            if (query.isEmpty()) {
+                Text(
+                    "Поиск по чатам",
+                    color = Color.White.copy(alpha = 0.35f),
+                    fontSize = 13.sp
+                )
+            }
+            BasicTextField(
+                value = query,
+                onValueChange = onQueryChange,
+                singleLine = true,
+                textStyle = MaterialTheme.typography.bodyMedium.copy(color = Color.White, fontSize = 13.sp),
+                cursorBrush = SolidColor(GlassColors.accentSecondary),
+                keyboardOptions = KeyboardOptions(imeAction = ImeAction.Search),
+                modifier = Modifier.fillMaxWidth()
+            )
+        }
+        if (query.isNotEmpty()) {
+            Icon(
+                Icons.Default.Close,
+                contentDescription = "Очистить",
+                tint = Color.White.copy(alpha = 0.5f),
+                modifier = Modifier
+                    .size(16.dp)
+                    .clickable { onQueryChange("") }
+            )
+        }
+    }
+}
+
+/**
+ * Список сессий: закреплённые → все (страницами) → архив (страницами, по раскрытию).
+ * Во время поиска — одна секция с результатами FTS
+ */
+@Composable
+private fun SessionsList(
+    pages: LazyPagingItems<ConversationEntity>,
+    archivedPages: LazyPagingItems<ConversationEntity>?,
+    pinned: List<ConversationEntity>,
+    archivedCount: Int,
+    isSearching: Boolean,
+    currentConversationId: String?,
+    onSelect: (String) -> Unit,
+    onDelete: (String) -> Unit,
+    onTogglePin: (ConversationEntity) -> Unit,
+    onToggleArchive: (ConversationEntity) -> Unit,
+    onToggleArchivedSection: () -> Unit
+) {
+    var currentRevealedSessionId by remember { mutableStateOf<String?>(null) }
+    
+    @Composable
+    fun LazyItemScope.SessionItem(convo: ConversationEntity) {
+        SessionRow(
+            convo = convo,
+            isSelected = convo.id == currentConversationId,
+            currentRevealedId = currentRevealedSessionId,
+            onReveal = { currentRevealedSessionId = it },
+            onClick = {
+                if (currentRevealedSessionId != null) {
+                    currentRevealedSessionId = null
+                } else {
+                    onSelect(convo.id)
+                }
+            },
+            onDelete = { onDelete(convo.id) },
+            onTogglePin = { onTogglePin(convo) },
+            onToggleArchive = { onToggleArchive(convo) }
+        )
+    }
+    
+    // Ключи секций с префиксами: при закреплении строка на кадр может оказаться в двух секциях
+    LazyColumn(
+        modifier = Modifier
+            .fillMaxSize()
+            .padding(horizontal = 12.dp),
+        verticalArrangement = Arrangement.spacedBy(6.dp),
+        contentPadding = PaddingValues(bottom = 16.dp)
+    ) {
+        if (!isSearching && pinned.isNotEmpty()) {
+            item(key = "header:pinned", contentType = "header") {
+                SessionSectionHeader(title = "Закреплённые")
+            }
+            items(pinned, key = { "pinned:${it.id}" }, contentType = { "session" }) { convo ->
+                SessionItem(convo)
+            }
+            item(key = "header:all", contentType = "header") {
+                SessionSectionHeader(title = "Все чаты")
+            }
+        }
+        
+        items(
+            count = pages.itemCount,
+            key = pages.itemKey { it.id },
+            contentType = { "session" }
+        ) { index ->
+            pages[index]?.let { convo -> SessionItem(convo) }
+        }
+        
+        if (isSearching && pages.itemCount == 0 && pages.loadState.refresh is LoadState.NotLoading) {
+            item(key = "search:empty", contentType = "header") {
+                Text(
+                    "Ничего не найдено",
+                    color = Color.White.copy(alpha = 0.45f),
+                    fontSize = 12.sp,
+                    textAlign = TextAlign.Center,
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(vertical = 16.dp)
+                )
+            }
+        }
+        
+        if (!isSearching && archivedCount > 0) {
+            item(key = "header:archived", contentType = "header") {
+                SessionSectionHeader(
+                    title = "Архив · $archivedCount",
+                    expanded = archivedPages != null,
+                    onClick = onToggleArchivedSection
+                )
+            }
+            if (archivedPages != null) {
+                items(
+                    count = archivedPages.itemCount,
+                    key = archivedPages.itemKey { "archived:${it.id}" },
+                    contentType = { "session" }
+                ) { index ->
+                    archivedPages[index]?.let { convo -> SessionItem(convo) }
+                }
+            }
+        }
+    }
+}
+
+@Composable
+private fun SessionSectionHeader(
+    title: String,
+    expanded: Boolean? = null,
+    onClick: (() -> Unit)? = null
+) {
+    Row(
+        modifier = Modifier
+            .fillMaxWidth()
+            .then(if (onClick != null) Modifier.clickable { onClick() } else Modifier)
+            .padding(horizontal = 4.dp, vertical = 4.dp),
+        verticalAlignment = Alignment.CenterVertically
+    ) {
+        Text(
+            text = title,
+            color = GlassColors.accentSecondary.copy(alpha = 0.8f),
+            fontSize = 11.sp,
+            fontWeight = FontWeight.Medium,
+            modifier = Modifier.weight(1f)
+        )
+        if (expanded != null) {
+            Icon(
+                if (expanded) Icons.Default.ExpandLess else Icons.Default.ExpandMore,
+                contentDescription = null,
+                tint = GlassColors.accentSecondary.copy(alpha = 0.8f),
+                modifier = Modifier.size(16.dp)
+            )
+        }
+    }
+}
+
+/**
+ * Строка сессии: свайп влево — удалить, долгое нажатие — закрепить / в архив
+ */
+@Composable
+private fun LazyItemScope.SessionRow(
+    convo: ConversationEntity,
+    isSelected: Boolean,
+    currentRevealedId: String?,
+    onReveal: (String?) -> Unit,
+    onClick: () -> Unit,
+    onDelete: () -> Unit,
+    onTogglePin: () -> Unit,
+    onToggleArchive: () -> Unit
+) {
+    var showMenu by remember { mutableStateOf(false) }
+    
+    Box(modifier = Modifier.animateItemPlacement(
+        animationSpec = spring(
+            dampingRatio = 0.7f,
+            stiffness = 400f
+        )
+    )) {
+        SwipeableSessionItem(
+            itemId = convo.id,
+            currentRevealedId = currentRevealedId,
+            onReveal = onReveal,
+            onDelete = onDelete
+        ) {
+            SimpleSessionCard(
+                convo = convo,
+                isSelected = isSelected,
+                onClick = onClick,
+                onLongClick = { showMenu = true }
+            )
+        }
+        
+        DropdownMenu(
+            expanded = showMenu,
+            onDismissRequest = { showMenu = false }
+        ) {
+            if (!convo.isArchived) {
+                DropdownMenuItem(
+                    text = { Text(if (convo.isPinned) "Открепить" else "Закрепить") },
+                    leadingIcon = { Icon(Icons.Default.PushPin, contentDescription = null) },
+                    onClick = {
+                        showMenu = false
+                        onTogglePin()
+                    }
+                )
+            }
+            DropdownMenuItem(
+                text = { Text(if (convo.isArchived) "Вернуть из архива" else "В архив") },
+                leadingIcon = {
+                    Icon(
+                        if (convo.isArchived) Icons.Default.Unarchive else Icons.Default.Archive,
+                        contentDescription = null
+                    )
+                },
+                onClick = {
+                    showMenu = false
+                    onToggleArchive()
+                }
+            )
+        }
+    }
+}
+
 /**
  * Simple Session Card — единый фиолетовый стиль
  */
 @Composable
 private fun SimpleSessionCard(
-    convo: com.health.companion.data.local.database.ConversationEntity,
+    convo: ConversationEntity,
     isSelected: Boolean,
-    onClick: () -> Unit
+    onClick: () -> Unit,
+    onLongClick: () -> Unit = {}
 ) {
     val dateFormat = remember { SimpleDateFormat("dd.MM HH:mm", Locale("ru")) }
     val purpleColor = GlassColors.accentSecondary
@@ -1752,20 +2081,29 @@ private fun SimpleSessionCard(
                         else purpleColor.copy(alpha = 0.2f),
                 shape = RoundedCornerShape(14.dp)
             )
-            .clickable { onClick() }
+            .combinedClickable(onClick = onClick, onLongClick = onLongClick)
             .padding(horizontal = 14.dp, vertical = 10.dp)
     ) {
         Row(
             modifier = Modifier.fillMaxWidth(),
             verticalAlignment = Alignment.CenterVertically
         ) {
-            // Фиолетовая точка
-            Box(
-                modifier = Modifier
-                    .size(8.dp)
-                    .clip(CircleShape)
-                    .background(purpleColor)
-            )
+            // Фиолетовая точка, у закреплённых — скрепка
+            if (convo.isPinned) {
+                Icon(
+                    Icons.Default.PushPin,
+                    contentDescription = null,
+                    tint = purpleColor,
+                    modifier = Modifier.size(10.dp)
+                )
+            } else {
+                Box(
+                    modifier = Modifier
+                        .size(8.dp)
+                        .clip(CircleShape)
+                        .background(purpleColor)
+                )
+            }
             
             Spacer(Modifier.width(12.dp))
             
@@ -1788,7 +2126,7 @@ private fun SimpleSessionCard(
                     
                     // Время последнего сообщения
                     Text(
-                        text = dateFormat.format(Date(convo.lastMessageAt ?: convo.updatedAt)),
+                        text = dateFormat.format(Date(convo.lastMessageAt)),
                         style = MaterialTheme.typography.labelSmall,
                         color = purpleColor.copy(alpha = 0.7f),
                         fontSize = 10.sp
@@ -0,0 +1,75 @@
+package com.health.companion.presentation.screens.chat
+
+import android.net.Uri
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.Immutable
+import androidx.compose.runtime.State
+import androidx.compose.runtime.derivedStateOf
+import androidx.compose.runtime.remember
+import com.health.companion.data.local.database.ConversationEntity
+import com.health.companion.data.remote.api.AttachmentDTO
+import com.health.companion.data.remote.api.MessageDTO
+
+/**
+ * Состояние экрана чата, разбитое по секциям.
+ * Каждая секция — отдельный StateFlow с distinctUntilChanged, поэтому токен стрима
+ * меняет только [ChatMessagesState], а композер и шторка не пересобираются
+ */
+@Immutable
+data class ChatScreenState(
+    val messages: ChatMessagesState = ChatMessagesState(),
+    val composer: ChatComposerState = ChatComposerState(),
+    val stream: ChatStreamState = ChatStreamState(),
+    val drawer: ChatDrawerState = ChatDrawerState()
+)
+
+@Immutable
+data class ChatMessagesState(
+    val messages: List<MessageDTO> = emptyList(),
+    /** Без пустых сообщений, новые первыми — под reverseLayout */
+    val visibleMessages: List<MessageDTO> = emptyList(),
+    val renderModels: Map<String, MessageRenderModel> = emptyMap(),
+    val sendStatus: Map<String, MessageSendStatus> = emptyMap(),
+    val authToken: String? = null
+)
+
+@Immutable
+data class ChatComposerState(
+    val text: String = "",
+    val isRecording: Boolean = false,
+    val partialVoiceResult: String = "",
+    val isUploading: Boolean = false,
+    val attachedImageUri: Uri? = null
+)
+
+@Immutable
+data class ChatStreamState(
+    val isLoading: Boolean = false,
+    val isStreaming: Boolean = false,
+    val isSyncing: Boolean = false,
+    val status: String = ""
+)
+
+/**
+ * Сам список сессий идёт страницами (ChatViewModel.conversationPages) —
+ * здесь только то, что мало: закреплённые, счётчики, строка поиска
+ */
+@Immutable
+data class ChatDrawerState(
+    val pinnedConversations: List<ConversationEntity> = emptyList(),
+    val conversationCount: Int = 0,
+    val archivedCount: Int = 0,
+    val searchQuery: String = "",
+    val showArchived: Boolean = false,
+    val currentConversationId: String? = null,
+    val sessionAttachments: List<AttachmentDTO> = emptyList(),
+    val attachmentsLoading: Boolean = false
+)
+
+/**
+ * Поле секции как отдельный State: читающий его scope инвалидируется,
+ * только когда меняется само поле, а не любая часть секции
+ */
+@Composable
+internal fun <S, T> State<S>.select(selector: (S) -> T): State<T> =
+    remember(this) { derivedStateOf { selector(value) } }
@@ -0,0 +1,150 @@
+package com.health.companion.presentation.screens.chat
+
+import android.util.LruCache
+import androidx.compose.foundation.layout.Spacer
+import androidx.compose.foundation.text.BasicText
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.Stable
+import androidx.compose.runtime.remember
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.draw.drawBehind
+import androidx.compose.ui.graphics.Color
+import androidx.compose.ui.layout.layout
+import androidx.compose.ui.semantics.semantics
+import androidx.compose.ui.semantics.text
+import androidx.compose.ui.text.AnnotatedString
+import androidx.compose.ui.text.TextLayoutResult
+import androidx.compose.ui.text.TextMeasurer
+import androidx.compose.ui.text.TextStyle
+import androidx.compose.ui.text.drawText
+import androidx.compose.ui.text.rememberTextMeasurer
+import androidx.compose.ui.unit.Constraints
+import androidx.compose.ui.unit.sp
+import com.health.companion.data.remote.api.MessageDTO
+import com.health.companion.presentation.components.GlassTypography
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.withContext
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.coroutines.coroutineContext
+
+/** Стиль основного текста пузырей — общий для user-текста и markdown-абзацев */
+internal val BubbleTextStyle: TextStyle by lazy {
+    GlassTypography.messageText.copy(fontSize = 13.sp, lineHeight = 18.sp, color = Color.White)
+}
+
+/** Где стоит текст: ширина у пузырей юзера и ассистента разная (аватар слева) */
+enum class BubbleTextSlot { USER, ASSISTANT }
+
+/**
+ * Предрасчёт текста пузырей около viewport на Dispatchers.Default.
+ *
+ * Пузыри меряют текст тем же [TextMeasurer] с теми же constraints, поэтому
+ * при прокрутке измерение — попадание в его кэш. Ширину текста берём из уже
+ * измеренных пузырей: до первого измерения предрасчёт не запускается
+ */
+@Stable
+class ChatTextPrecomputer(private val measurer: TextMeasurer) {
+
+    private val observedWidths = ConcurrentHashMap<BubbleTextSlot, Int>()
+    private val measured = ConcurrentHashMap.newKeySet<String>()
+
+    /** Вызывается из layout пузыря (главный поток) */
+    fun measure(text: AnnotatedString, slot: BubbleTextSlot, maxWidth: Int): TextLayoutResult {
+        observedWidths[slot] = maxWidth
+        return measurer.measure(text, BubbleTextStyle, constraints = Constraints(maxWidth = maxWidth))
+    }
+
+    suspend fun precompute(messages: List<MessageDTO>, models: Map<String, MessageRenderModel>) {
+        withContext(Dispatchers.Default) {
+            if (measured.size > MAX_TRACKED) measured.clear()
+            messages.forEach { message ->
+                coroutineContext.ensureActive()
+                val model = models[message.id]?.takeIf { it.matches(message) } ?: return@forEach
+                val slot = if (message.role == "user") BubbleTextSlot.USER else BubbleTextSlot.ASSISTANT
+                val width = observedWidths[slot] ?: return@forEach
+                if (!measured.add("${message.id}#${model.contentHash}#$width")) return@forEach
+
+                if (slot == BubbleTextSlot.USER) {
+                    measurer.measure(AnnotatedString(model.plainText), BubbleTextStyle, constraints = Constraints(maxWidth = width))
+                } else {
+                    model.blocks.forEach { block ->
+                        if (block is MarkdownBlock.Text) {
+                            measurer.measure(block.text, BubbleTextStyle, constraints = Constraints(maxWidth = width))
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    companion object {
+        /** Сколько сообщений за краями viewport меряем заранее */
+        const val WINDOW = 12
+
+        /** Кэш измерений: видимые пузыри + окно предрасчёта с запасом */
+        const val LAYOUT_CACHE_SIZE = 96
+        private const val MAX_TRACKED = 1_000
+    }
+}
+
+/**
+ * contentType для LazyColumn чата: слоты переиспользуются только между
+ * пузырями одной структуры (текст юзера ≠ markdown ассистента ≠ карточка картинки)
+ */
+fun chatItemContentType(message: MessageDTO): String = when {
+    message.role == "user" && !message.images.isNullOrEmpty() -> "user_image"
+    message.role == "user" -> "user"
+    message.agentName == "streaming" -> "assistant_streaming"
+    message.imageUrl != null -> "assistant_image"
+    else -> "assistant"
+}
+
+@Composable
+fun rememberChatTextPrecomputer(): ChatTextPrecomputer {
+    val measurer = rememberTextMeasurer(cacheSize = ChatTextPrecomputer.LAYOUT_CACHE_SIZE)
+    return remember(measurer) { ChatTextPrecomputer(measurer) }
+}
+
+/**
+ * Текст пузыря через [ChatTextPrecomputer]: размер — из готового layout, отрисовка — drawText.
+ * Без предрасчётчика (превью, другие экраны) — обычный BasicText
+ */
+@Composable
+fun BubbleText(
+    text: AnnotatedString,
+    slot: BubbleTextSlot,
+    precomputer: ChatTextPrecomputer?,
+    modifier: Modifier = Modifier
+) {
+    if (precomputer == null) {
+        BasicText(text = text, modifier = modifier, style = BubbleTextStyle)
+        return
+    }
+    val holder = remember { arrayOfNulls<TextLayoutResult>(1) }
+    Spacer(
+        modifier = modifier
+            .semantics { this.text = text }
+            .layout { measurable, constraints ->
+                val result = precomputer.measure(text, slot, constraints.maxWidth)
+                holder[0] = result
+                val placeable = measurable.measure(Constraints.fixed(result.size.width, result.size.height))
+                layout(placeable.width, placeable.height) { placeable.place(0, 0) }
+            }
+            .drawBehind { holder[0]?.let { drawText(it) } }
+    )
+}
+
+/**
+ * Пропорции уже загруженных картинок: заглушка при повторном показе сразу
+ * занимает итоговый размер, и список не прыгает, когда картинка догружается
+ */
+object ImageAspectRatios {
+    private val cache = LruCache<String, Float>(200)
+
+    operator fun get(url: String): Float? = cache.get(url)
+
+    fun remember(url: String, width: Int, height: Int) {
+        if (width > 0 && height > 0) cache.put(url, width.toFloat() / height)
+    }
+}
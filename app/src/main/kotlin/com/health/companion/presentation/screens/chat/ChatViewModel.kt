@@ -8,28 +8,57 @@ import androidx.lifecycle.SavedStateHandle
 import android.os.Build
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import androidx.paging.PagingData
+import androidx.paging.cachedIn
 import com.health.companion.data.local.database.ConversationEntity
 import com.health.companion.data.remote.api.MessageDTO
 import com.health.companion.data.repositories.AttachmentsRepository
 import com.health.companion.data.repositories.AuthRepository
 import com.health.companion.data.repositories.ChatRepository
+import com.health.companion.data.repositories.ConversationPrefetcher
 import com.health.companion.data.repositories.DocumentRepository
+import com.health.companion.data.repositories.OutboxRepository
+import com.health.companion.data.repositories.TranscriptionDeferredException
 import com.health.companion.data.repositories.VoiceRepository
 import com.health.companion.data.remote.api.AttachmentDTO
 import com.health.companion.data.remote.api.AttachmentMode
+import com.health.companion.ml.voice.HybridTranscript
+import com.health.companion.ml.voice.PcmPipe
+import com.health.companion.ml.voice.PcmRecorder
+import com.health.companion.ml.voice.SentenceSplitter
 import com.health.companion.ml.voice.VoiceInputManager
 import com.health.companion.utils.TokenManager
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.asSharedFlow
 import kotlinx.coroutines.flow.catch
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.emitAll
 import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.stateIn
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.selects.select
 import timber.log.Timber
 import java.util.Locale
 import java.util.UUID
@@ -41,9 +70,20 @@ sealed interface VoiceUiEvent {
     data class Error(val message: String) : VoiceUiEvent
 }
 
+/**
+ * Голосовой режим: слушаем → ждём ответ → озвучиваем → снова слушаем
+ */
+enum class VoiceModeState {
+    Off,
+    Listening,
+    Thinking,
+    Speaking
+}
+
 enum class MessageSendStatus {
     Sending,
     Sent,
+    Queued, // Нет сети — лежит в outbox, уйдёт автоматически
     Failed
 }
 
@@ -56,6 +96,8 @@ class ChatViewModel @Inject constructor(
     private val voiceInputManager: VoiceInputManager,
     private val voiceRepository: VoiceRepository,
     private val tokenManager: TokenManager,
+    private val outboxRepository: OutboxRepository,
+    private val conversationPrefetcher: ConversationPrefetcher,
     private val savedStateHandle: SavedStateHandle,
     @dagger.hilt.android.qualifiers.ApplicationContext private val appContext: Context
 ) : ViewModel() {
@@ -66,6 +108,9 @@ class ChatViewModel @Inject constructor(
     private val _messages = MutableStateFlow<List<MessageDTO>>(emptyList())
     val messages: StateFlow<List<MessageDTO>> = _messages.asStateFlow()
 
+    // Markdown парсится здесь на Dispatchers.Default, а не в композиции пузыря
+    private val renderCache = MessageRenderCache()
+
     private val _messageSendStatus = MutableStateFlow<Map<String, MessageSendStatus>>(emptyMap())
     val messageSendStatus: StateFlow<Map<String, MessageSendStatus>> = _messageSendStatus.asStateFlow()
 
@@ -87,6 +132,21 @@ class ChatViewModel @Inject constructor(
     private val _partialVoiceResult = MutableStateFlow("")
     val partialVoiceResult: StateFlow<String> = _partialVoiceResult.asStateFlow()
     
+    // Уровень микрофона по RMS кадров — для анимации кнопки записи
+    val recordingAmplitude: StateFlow<Int> = voiceRepository.recordingAmplitude
+    private var voiceAutoSend = false
+    private var voiceStopJob: kotlinx.coroutines.Job? = null
+    
+    // Гибридное распознавание: partial с устройства, итог с сервера
+    private val hybridTranscript = HybridTranscript()
+    // Черновик, подставленный вместо записи, ушедшей в фоновое распознавание
+    private var deferredDraft: String? = null
+    private var onDevicePipe: PcmPipe? = null
+    
+    private val _voiceModeState = MutableStateFlow(VoiceModeState.Off)
+    val voiceModeState: StateFlow<VoiceModeState> = _voiceModeState.asStateFlow()
+    private var voiceModeJob: Job? = null
+    
     // Upload state
     private val _isUploading = MutableStateFlow(false)
     val isUploading: StateFlow<Boolean> = _isUploading.asStateFlow()
@@ -112,28 +172,221 @@ class ChatViewModel @Inject constructor(
     private val _isStreaming = MutableStateFlow(false)
     val isStreaming: StateFlow<Boolean> = _isStreaming.asStateFlow()
     
+    // Текущий SSE-запрос: отмена закрывает EventSource
+    private var generationJob: Job? = null
+    
+    // Ответ из стрима на экране живёт под временным id, а в Room — под серверным
+    private val persistedMessageIds = mutableMapOf<String, String>()
+    
     // Auth token for image requests
     private val _authToken = MutableStateFlow<String?>(null)
     val authToken: StateFlow<String?> = _authToken.asStateFlow()
 
-    private val _conversations = MutableStateFlow<List<ConversationEntity>>(emptyList())
-    val conversations: StateFlow<List<ConversationEntity>> = _conversations.asStateFlow()
+    // Шторка сессий: список страницами из Room, поиск и архив
+    private val _conversationQuery = MutableStateFlow("")
+    private val _showArchived = MutableStateFlow(false)
+
+    val conversationPages: Flow<PagingData<ConversationEntity>> = _conversationQuery
+        .map { it.trim() }
+        .distinctUntilChanged()
+        .flatMapLatest { query ->
+            flow {
+                if (query.isNotEmpty()) delay(SEARCH_DEBOUNCE_MS)
+                emitAll(
+                    if (query.isEmpty()) chatRepository.pagedConversations()
+                    else chatRepository.pagedConversationSearch(query)
+                )
+            }
+        }
+        .cachedIn(viewModelScope)
+
+    val archivedConversationPages: Flow<PagingData<ConversationEntity>> =
+        chatRepository.pagedConversations(archived = true).cachedIn(viewModelScope)
+
+    // Offline outbox
+    private val _outboxQueueDepth = MutableStateFlow(0)
+    val outboxQueueDepth: StateFlow<Int> = _outboxQueueDepth.asStateFlow()
 
     private val _currentConversationId = MutableStateFlow<String?>(savedStateHandle.get<String>("conversationId"))
     val currentConversationId: StateFlow<String?> = _currentConversationId.asStateFlow()
+
+    // ==================== SCREEN STATE ====================
+    // Секции экрана для ChatScreen. stateIn отбрасывает равные значения,
+    // так что секция эмитит, только когда реально поменялось её содержимое
+
+    val messagesState: StateFlow<ChatMessagesState> = combine(
+        _messages
+            .map { messages -> messages to renderCache.render(messages) }
+            .flowOn(Dispatchers.Default),
+        _messageSendStatus,
+        _authToken
+    ) { (messages, renderModels), sendStatus, token ->
+        ChatMessagesState(
+            messages = messages,
+            visibleMessages = messages.filter { msg ->
+                msg.content.isNotBlank() || !msg.images.isNullOrEmpty() || msg.imageUrl != null
+            }.asReversed(),
+            renderModels = renderModels,
+            sendStatus = sendStatus,
+            authToken = token
+        )
+    }.flowOn(Dispatchers.Default)
+        .stateIn(viewModelScope, SharingStarted.Eagerly, ChatMessagesState())
+
+    val composerState: StateFlow<ChatComposerState> = combine(
+        _currentMessage,
+        isRecording,
+        _partialVoiceResult,
+        _isUploading,
+        _attachedImageUri
+    ) { text, recording, partial, uploading, imageUri ->
+        ChatComposerState(text, recording, partial, uploading, imageUri)
+    }.stateIn(viewModelScope, SharingStarted.Eagerly, ChatComposerState())
+
+    val streamState: StateFlow<ChatStreamState> = combine(
+        _isLoading,
+        _isStreaming,
+        _isSyncing,
+        _streamStatus
+    ) { loading, streaming, syncing, status ->
+        ChatStreamState(loading, streaming, syncing, status)
+    }.stateIn(viewModelScope, SharingStarted.Eagerly, ChatStreamState())
+
+    private val conversationSections: Flow<ChatDrawerState> = combine(
+        chatRepository.observePinnedConversations(),
+        chatRepository.observeConversationCount(),
+        chatRepository.observeConversationCount(archived = true),
+        _conversationQuery,
+        _showArchived
+    ) { pinned, count, archivedCount, query, showArchived ->
+        ChatDrawerState(
+            pinnedConversations = pinned,
+            conversationCount = count,
+            archivedCount = archivedCount,
+            searchQuery = query,
+            showArchived = showArchived
+        )
+    }.catch { e -> Timber.e(e, "Failed to observe conversations") }
+
+    val drawerState: StateFlow<ChatDrawerState> = combine(
+        conversationSections,
+        _currentConversationId,
+        sessionAttachments,
+        attachmentsLoading
+    ) { sections, conversationId, attachments, attachmentsBusy ->
+        sections.copy(
+            currentConversationId = conversationId,
+            sessionAttachments = attachments,
+            attachmentsLoading = attachmentsBusy
+        )
+    }.stateIn(viewModelScope, SharingStarted.Eagerly, ChatDrawerState())
+
+    val screenState: StateFlow<ChatScreenState> = combine(
+        messagesState,
+        composerState,
+        streamState,
+        drawerState
+    ) { messages, composer, stream, drawer ->
+        ChatScreenState(messages, composer, stream, drawer)
+    }.stateIn(viewModelScope, SharingStarted.Lazily, ChatScreenState())
     private val forceSafeVoice = isOppoDevice()
 
     init {
-        observeConversations()
+        autoSelectRecentConversation()
         loadRemoteConversations()
+        observeConversationSearch()
         observeCurrentConversationMessages()
         loadAuthToken()
         setupWebSocket()
         setupVoiceInput()
+        observeOutbox()
+        pausePrefetchWhileStreaming()
+    }
+    
+    private fun pausePrefetchWhileStreaming() {
+        viewModelScope.launch {
+            _isStreaming.collect { conversationPrefetcher.setPaused(it) }
+        }
+    }
+    
+    /**
+     * Открыт список сессий — подтягиваем недавние диалоги, пока пользователь выбирает
+     */
+    fun onConversationsDrawerOpened() {
+        conversationPrefetcher.prefetchRecent(_currentConversationId.value)
+    }
+    
+    private fun observeOutbox() {
+        viewModelScope.launch {
+            outboxRepository.queueDepth
+                .catch { e -> Timber.e(e, "Failed to observe outbox") }
+                .collect { depth -> _outboxQueueDepth.value = depth }
+        }
+        viewModelScope.launch {
+            // Статус меняем только по итогу конкретной операции: выброшенное после 4xx
+            // или исчерпанных попыток не должно выглядеть доставленным
+            outboxRepository.chatDeliveries.collect { result ->
+                if (_messageSendStatus.value[result.clientMessageId] == MessageSendStatus.Queued) {
+                    updateMessageStatus(
+                        result.clientMessageId,
+                        if (result.delivered) MessageSendStatus.Sent else MessageSendStatus.Failed
+                    )
+                }
+            }
+        }
+        viewModelScope.launch {
+            // Офлайн-диалог получил серверный id — переключаемся вслед за ним
+            outboxRepository.conversationRemaps.collect { (oldId, newId) ->
+                if (_currentConversationId.value == oldId) {
+                    _currentConversationId.value = newId
+                    savedStateHandle["conversationId"] = newId
+                }
+            }
+        }
     }
     
     private fun setupVoiceInput() {
-        // Reserved for future on-device recognition
+        viewModelScope.launch {
+            voiceRepository.partialTranscript.collect {
+                hybridTranscript.onServerPartial(it)
+                _partialVoiceResult.value = hybridTranscript.display
+            }
+        }
+        viewModelScope.launch {
+            voiceInputManager.partialResults.collect {
+                hybridTranscript.onDevicePartial(it)
+                _partialVoiceResult.value = hybridTranscript.display
+            }
+        }
+        viewModelScope.launch {
+            voiceInputManager.results.collect {
+                hybridTranscript.onDeviceResult(it.text)
+                _partialVoiceResult.value = hybridTranscript.display
+            }
+        }
+        viewModelScope.launch {
+            voiceInputManager.error.collect { error ->
+                // Серверная запись идёт независимо — просто остаёмся без мгновенного текста
+                Timber.w("On-device recognizer failed: ${error.getMessage()}, server-only")
+            }
+        }
+        viewModelScope.launch {
+            voiceRepository.deferredTranscript.filterNotNull().collect { text ->
+                voiceRepository.consumeDeferredTranscript()
+                // Свой черновик заменяем, набранное пользователем — дополняем
+                val current = _currentMessage.value
+                _currentMessage.value = if (current.isBlank() || current == deferredDraft) text else "$current $text"
+                deferredDraft = null
+            }
+        }
+        viewModelScope.launch {
+            voiceRepository.autoStopEvents.collect {
+                // В голосовом режиме автостоп обрабатывает сам цикл режима
+                if (voiceRepository.isRecording.value && _voiceModeState.value == VoiceModeState.Off) {
+                    finishVoiceInput()
+                }
+            }
+        }
     }
 
     private fun observeCurrentConversationMessages() {
@@ -194,21 +447,61 @@ class ChatViewModel @Inject constructor(
         }
     }
 
-    private fun observeConversations() {
+    /**
+     * Авто-выбор последней сессии при первом запуске.
+     * Берём одну строку по индексу lastMessageAt, а не весь список
+     */
+    private fun autoSelectRecentConversation() {
         viewModelScope.launch {
-            chatRepository.getLocalConversationsFlow()
-                .catch { e -> Timber.e(e, "Failed to observe conversations") }
-                .collect { list ->
-                    _conversations.value = list
-                    // Авто-выбор последней сессии при первом запуске
-                    if (_currentConversationId.value == null && list.isNotEmpty()) {
-                        val lastConv = list.maxByOrNull { it.updatedAt }
-                        lastConv?.let { 
-                            android.util.Log.d("AUTO_SELECT", "🎯 Auto-selecting last conversation: ${it.id}")
-                            selectConversation(it.id) 
-                        }
-                    }
+            try {
+                val lastConv = chatRepository.observeMostRecentConversation().filterNotNull().first()
+                if (_currentConversationId.value == null) {
+                    android.util.Log.d("AUTO_SELECT", "🎯 Auto-selecting last conversation: ${lastConv.id}")
+                    selectConversation(lastConv.id)
                 }
+            } catch (e: Exception) {
+                Timber.e(e, "Failed to auto-select conversation")
+            }
+        }
+    }
+
+    /**
+     * Серверный поиск поверх локального FTS: найденное ложится в Room,
+     * и открытый список обновляется сам
+     */
+    private fun observeConversationSearch() {
+        viewModelScope.launch {
+            _conversationQuery
+                .map { it.trim() }
+                .distinctUntilChanged()
+                .collectLatest { query ->
+                    if (query.length < MIN_REMOTE_SEARCH_LENGTH) return@collectLatest
+                    delay(REMOTE_SEARCH_DEBOUNCE_MS)
+                    chatRepository.searchRemoteConversations(query)
+                        .onFailure { e -> Timber.w(e, "Remote conversation search failed") }
+                }
+        }
+    }
+
+    fun onConversationQueryChange(query: String) {
+        _conversationQuery.value = query
+    }
+
+    fun toggleArchivedConversations() {
+        _showArchived.value = !_showArchived.value
+    }
+
+    fun setConversationPinned(conversationId: String, pinned: Boolean) {
+        viewModelScope.launch {
+            chatRepository.setConversationPinned(conversationId, pinned)
+                .onFailure { _uiState.value = ChatUiState.Error("Не удалось закрепить чат") }
+        }
+    }
+
+    fun setConversationArchived(conversationId: String, archived: Boolean) {
+        viewModelScope.launch {
+            chatRepository.setConversationArchived(conversationId, archived)
+                .onFailure { _uiState.value = ChatUiState.Error("Не удалось перенести чат в архив") }
         }
     }
 
@@ -218,6 +511,7 @@ class ChatViewModel @Inject constructor(
             chatRepository.getConversations()
                 .onSuccess { list -> 
                     android.util.Log.d("CONV_LOAD", "✅ Loaded ${list.size} conversations from server")
+                    conversationPrefetcher.prefetchRecent(_currentConversationId.value)
                 }
                 .onFailure { e -> 
                     android.util.Log.e("CONV_LOAD", "❌ Failed to load: ${e.message}")
@@ -257,11 +551,17 @@ class ChatViewModel @Inject constructor(
         }
     }
 
-    fun sendMessage(text: String) {
+    /**
+     * @param clientMessageId id пользовательского сообщения (idempotency key).
+     * Повторная отправка передаёт тот же id, чтобы сервер не создал дубль
+     */
+    fun sendMessage(text: String, clientMessageId: String = UUID.randomUUID().toString()) {
         android.util.Log.d("CHAT_DEBUG", "sendMessage called: $text")
         if (text.isBlank()) return
 
-        viewModelScope.launch {
+        generationJob = viewModelScope.launch {
+            // Сервер прислал хоть одно событие — сообщение пользователя у него сохранено
+            var serverAcknowledged = false
             try {
                 android.util.Log.d("CHAT_DEBUG", "Starting stream...")
                 _isLoading.value = true
@@ -284,7 +584,7 @@ class ChatViewModel @Inject constructor(
                 }
 
                 // Add user message immediately with the URI for display
-                val userMessageId = UUID.randomUUID().toString()
+                val userMessageId = clientMessageId
                 val attachedImageUris = if (hasAttachedImage && currentAttachedUri != null) {
                     listOf(currentAttachedUri.toString()).also {
                         android.util.Log.d("IMAGE_DEBUG", "5. Saving URI string for display: ${it.first()}")
@@ -304,7 +604,7 @@ class ChatViewModel @Inject constructor(
                     imageUrl = null,
                     images = attachedImageUris
                 )
-                _messages.value = _messages.value + userMessage
+                upsertMessage(userMessage)
                 android.util.Log.d("CHAT_DEBUG", "Added user message with images: ${userMessage.images}")
                 
                 // Clear old Failed statuses when sending new message
@@ -320,22 +620,27 @@ class ChatViewModel @Inject constructor(
                 val contentBuilder = StringBuilder()
                 var messageAdded = false
                 var currentImageUrl: String? = null
+                var currentImageBlurHash: String? = null
                 
                 // SSE streaming - just accumulate text, animation is in Composable
                 chatRepository.sendMessageStream(
                     message = text,
                     conversationId = _currentConversationId.value,
                     images = attachedImages,
+                    clientMessageId = userMessageId,
                     onStatus = { status ->
+                        serverAcknowledged = true
                         android.util.Log.d("STREAM_DIAG", "📊 STATUS: '$status'")
                         viewModelScope.launch(Dispatchers.Main.immediate) {
                             _streamStatus.value = status
                         }
                     },
                     onToken = { token ->
+                        serverAcknowledged = true
                         val tokenTime = System.currentTimeMillis()
                         contentBuilder.append(token)
                         val currentContent = contentBuilder.toString()
+                        _streamingResponse.value = currentContent
                         android.util.Log.d("STREAM_DIAG", "⚡ TOKEN @$tokenTime len=${currentContent.length} chunk='${token.take(20)}'")
                         
                         viewModelScope.launch(Dispatchers.Main.immediate) {
@@ -353,18 +658,22 @@ class ChatViewModel @Inject constructor(
                                     providerColor = null,
                                     modelUsed = null,
                                     createdAt = System.currentTimeMillis().toString(),
-                                    imageUrl = currentImageUrl
+                                    imageUrl = currentImageUrl,
+                                    imageBlurHash = currentImageBlurHash
                                 )
                                 _messages.value = _messages.value + msg
                             } else {
                                 // Update content - Composable will animate
                                 _messages.value = _messages.value.map { m ->
-                                    if (m.id == streamingMessageId) m.copy(content = currentContent, imageUrl = currentImageUrl) else m
+                                    if (m.id == streamingMessageId) {
+                                        m.copy(content = currentContent, imageUrl = currentImageUrl, imageBlurHash = currentImageBlurHash)
+                                    } else m
                                 }
                             }
                         }
                     },
-                    onImage = { url, prompt ->
+                    onImage = { url, prompt, blurHash ->
+                        serverAcknowledged = true
                         android.util.Log.d("STREAM_DIAG", "🖼️ IMAGE RECEIVED: url='$url', prompt='$prompt'")
                         Timber.d("🖼️ IMAGE EVENT: url=$url, prompt=$prompt")
                         
@@ -376,6 +685,7 @@ class ChatViewModel @Inject constructor(
                         }
                         android.util.Log.d("STREAM_DIAG", "🖼️ FULL URL: $fullUrl")
                         currentImageUrl = fullUrl
+                        if (blurHash != null) currentImageBlurHash = blurHash
                         
                         viewModelScope.launch(Dispatchers.Main.immediate) {
                             if (!messageAdded) {
@@ -391,14 +701,15 @@ class ChatViewModel @Inject constructor(
                                     providerColor = null,
                                     modelUsed = null,
                                     createdAt = System.currentTimeMillis().toString(),
-                                    imageUrl = fullUrl
+                                    imageUrl = fullUrl,
+                                    imageBlurHash = currentImageBlurHash
                                 )
                                 _messages.value = _messages.value + msg
                                 android.util.Log.d("STREAM_DIAG", "🖼️ Created message with imageUrl=$fullUrl")
                             } else {
                                 // Update with image URL
                                 _messages.value = _messages.value.map { m ->
-                                    if (m.id == streamingMessageId) m.copy(imageUrl = fullUrl) else m
+                                    if (m.id == streamingMessageId) m.copy(imageUrl = fullUrl, imageBlurHash = currentImageBlurHash) else m
                                 }
                                 android.util.Log.d("STREAM_DIAG", "🖼️ Updated message with imageUrl=$fullUrl")
                             }
@@ -407,6 +718,7 @@ class ChatViewModel @Inject constructor(
                     onDone = { messageId, content, newConversationId ->
                         android.util.Log.d("SAVE_MSG", "🎯 onDone called! msgId=$messageId, contentLen=${content.length}, builderLen=${contentBuilder.length}, convId=$newConversationId")
                         val finalContent = content.ifEmpty { contentBuilder.toString() }
+                        _streamingResponse.value = finalContent
                         android.util.Log.d("SAVE_MSG", "📝 finalContent len=${finalContent.length}, preview='${finalContent.take(50)}'")
                         
                         viewModelScope.launch(Dispatchers.Main) {
@@ -429,13 +741,20 @@ class ChatViewModel @Inject constructor(
                             
                             // ✅ SAVE TO LOCAL DATABASE with accumulated content
                             android.util.Log.d("SAVE_MSG", "⏳ Saving: convId=$convId, user='${text.take(30)}', assistant len=${finalContent.length}, img=$currentImageUrl")
+                            val assistantMessageId = messageId.ifEmpty { streamingMessageId }
+                            persistedMessageIds[streamingMessageId] = assistantMessageId
                             viewModelScope.launch(Dispatchers.IO) {
+                                // Сервер BlurHash не прислал — берём посчитанный экраном под временным id
+                                val blurHash = currentImageBlurHash
+                                    ?: _messages.value.firstOrNull { it.id == streamingMessageId }?.imageBlurHash
                                 chatRepository.saveStreamedMessages(
                                     conversationId = convId,
                                     userMessage = text,
-                                    assistantMessageId = messageId.ifEmpty { streamingMessageId },
+                                    assistantMessageId = assistantMessageId,
                                     assistantContent = finalContent,
-                                    imageUrl = currentImageUrl
+                                    imageUrl = currentImageUrl,
+                                    userMessageId = userMessageId,
+                                    imageBlurHash = blurHash
                                 )
                                 android.util.Log.d("SAVE_MSG", "✅ Saved to Room: convId=$convId")
                                 
@@ -479,6 +798,8 @@ class ChatViewModel @Inject constructor(
                         }
                     },
                     onError = { errorMsg ->
+                        // stopGeneration или перебивание: обрыв потока — не ошибка отправки
+                        if (!isActive) return@sendMessageStream
                         // Ignore "Socket closed" after message was added
                         if (messageAdded && errorMsg.contains("Socket closed", ignoreCase = true)) {
                             return@sendMessageStream
@@ -504,7 +825,7 @@ class ChatViewModel @Inject constructor(
                                 _isLoading.value = false
                                 
                                 // Retry ONCE (hadConversationId was true, now it's null — won't retry again)
-                                sendMessage(text)
+                                sendMessage(text, userMessageId)
                                 return@launch
                             }
                             
@@ -516,9 +837,44 @@ class ChatViewModel @Inject constructor(
                             _isStreaming.value = false
                             _isLoading.value = false
                         }
+                    },
+                    onQueued = { placeholder ->
+                        viewModelScope.launch(Dispatchers.Main.immediate) {
+                            val queuedConversationId = placeholder.getConversationId()
+                            if (_currentConversationId.value == null && queuedConversationId.isNotEmpty()) {
+                                _currentConversationId.value = queuedConversationId
+                                savedStateHandle["conversationId"] = queuedConversationId
+                            }
+                            upsertMessage(
+                                MessageDTO(
+                                    id = placeholder.getMessageId(),
+                                    content = placeholder.getMessageContent(),
+                                    role = "assistant",
+                                    agentName = "offline",
+                                    provider = "offline",
+                                    providerColor = null,
+                                    modelUsed = null,
+                                    createdAt = System.currentTimeMillis().toString()
+                                )
+                            )
+                            updateMessageStatus(userMessageId, MessageSendStatus.Queued)
+                            _streamStatus.value = ""
+                            _isStreaming.value = false
+                            _isLoading.value = false
+                        }
                     }
                 )
 
+            } catch (e: CancellationException) {
+                // stopGeneration — не ошибка отправки. Без ответа сервера не знаем,
+                // дошло ли сообщение: повтор с тем же id дубля не создаст
+                if (_messageSendStatus.value[clientMessageId] == MessageSendStatus.Sending) {
+                    updateMessageStatus(
+                        clientMessageId,
+                        if (serverAcknowledged) MessageSendStatus.Sent else MessageSendStatus.Failed
+                    )
+                }
+                throw e
             } catch (e: Exception) {
                 Timber.e(e, "Failed to send message")
                 _messageSendStatus.value = _messageSendStatus.value.toMutableMap().apply {
@@ -533,6 +889,22 @@ class ChatViewModel @Inject constructor(
         }
     }
 
+    /**
+     * Обрывает генерацию ответа: SSE закрывается, уже пришедший текст остаётся в чате
+     */
+    fun stopGeneration() {
+        val job = generationJob ?: return
+        if (!job.isActive) return
+        job.cancel()
+        generationJob = null
+        _messages.value = _messages.value.map { m ->
+            if (m.agentName == "streaming") m.copy(agentName = null) else m
+        }
+        _streamStatus.value = ""
+        _isStreaming.value = false
+        _isLoading.value = false
+    }
+
     fun retrySendMessage(messageId: String, content: String) {
         // Сохраняем изображения из оригинального сообщения
         val originalMessage = _messages.value.find { it.id == messageId }
@@ -553,7 +925,7 @@ class ChatViewModel @Inject constructor(
             }
         }
         
-        sendMessage(content)
+        sendMessage(content, messageId)
     }
 
     fun createNewConversation() {
@@ -598,7 +970,11 @@ class ChatViewModel @Inject constructor(
         savedStateHandle["conversationId"] = conversationId
         android.util.Log.d("SELECT_CONV", "✅ Set conversationId: $conversationId")
         
-        // 4. Синхронизируем с сервером в фоне
+        // 4. Синхронизируем с сервером в фоне (если префетч только что это сделал — Room уже актуален)
+        if (conversationPrefetcher.isFresh(conversationId)) {
+            android.util.Log.d("SELECT_CONV", "⚡ Prefetched, skip sync")
+            return
+        }
         viewModelScope.launch {
             android.util.Log.d("SELECT_CONV", "🔄 Syncing from server...")
             val result = chatRepository.syncConversationMessages(conversationId)
@@ -667,47 +1043,219 @@ class ChatViewModel @Inject constructor(
     }
     
     /**
-     * Toggle voice recording
+     * Toggle voice recording: streaming STT, partial text goes to [partialVoiceResult]
      */
     fun toggleVoiceInput(autoSend: Boolean) {
+        if (voiceRepository.isRecording.value) {
+            finishVoiceInput()
+            return
+        }
+        voiceAutoSend = autoSend
         viewModelScope.launch {
-            if (voiceRepository.isRecording.value) {
-                val stopResult = voiceRepository.stopRecording()
-                stopResult.onSuccess { file ->
-                    _voiceEvents.tryEmit(VoiceUiEvent.RecordingStopped)
-                    val transcribeResult = voiceRepository.transcribe(file)
-                    transcribeResult.onSuccess { response ->
-                        if (response.text.isNotBlank()) {
-                            if (autoSend) {
-                                sendMessage(response.text)
-                            } else {
-                                _currentMessage.value = response.text
-                            }
-                        }
-                    }.onFailure { e ->
+            hybridTranscript.reset()
+            _partialVoiceResult.value = ""
+            val pipe = openOnDevicePipe()
+            val startResult = voiceRepository.startStreamingTranscription(tap = pipe)
+            startResult.onFailure { e ->
+                Timber.e(e, "Failed to start recording")
+                pipe?.close()
+                _voiceEvents.tryEmit(VoiceUiEvent.Error("Не удалось начать запись"))
+                _uiState.value = ChatUiState.Error("Не удалось начать запись")
+            }.onSuccess {
+                if (pipe != null) {
+                    onDevicePipe = pipe
+                    voiceInputManager.startListening(audioSource = pipe.readSide, sampleRate = PcmRecorder.SAMPLE_RATE)
+                }
+                _voiceEvents.tryEmit(VoiceUiEvent.RecordingStarted)
+            }
+        }
+    }
+
+    /**
+     * Pipe для распознавателя на устройстве, если гибридный режим возможен.
+     * OPPO/OnePlus/realme ([forceSafeVoice]) и Android < 13 — только сервер:
+     * там SpeechRecognizer ведёт себя нестабильно или не умеет читать наш звук
+     */
+    private fun openOnDevicePipe(): PcmPipe? {
+        if (forceSafeVoice || !voiceInputManager.supportsExternalAudio()) return null
+        return try {
+            PcmPipe.create(viewModelScope)
+        } catch (e: Exception) {
+            Timber.w(e, "On-device pipe unavailable, server-only")
+            null
+        }
+    }
+
+    private fun stopOnDeviceRecognizer() {
+        val pipe = onDevicePipe ?: return
+        onDevicePipe = null
+        voiceInputManager.stopListening()
+        pipe.close()
+    }
+
+    /**
+     * Остановка записи — по кнопке или по VAD (тишина после фразы)
+     */
+    private fun finishVoiceInput() {
+        if (voiceStopJob?.isActive == true) return
+        voiceStopJob = viewModelScope.launch {
+            _voiceEvents.tryEmit(VoiceUiEvent.RecordingStopped)
+            stopOnDeviceRecognizer()
+            voiceRepository.stopStreamingTranscription()
+                .onSuccess { text ->
+                    // Итог сервера заменяет текст с устройства
+                    hybridTranscript.onServerFinal(text)
+                    applyVoiceTranscript(text)
+                }.onFailure { e ->
+                    val draft = hybridTranscript.fallback()
+                    if (e is TranscriptionDeferredException) deferredDraft = draft
+                    if (draft.isNotBlank()) {
+                        // Черновик может быть неполным — не отправляем сам, даём проверить
+                        Timber.w(e, "Server transcript failed, using partial text as draft")
+                        _currentMessage.value = draft
+                    } else if (e is TranscriptionDeferredException) {
+                        Timber.w(e, "Transcription deferred until online")
+                        _uiState.value = ChatUiState.Error("Нет сети — распознаем запись, когда появится соединение")
+                    } else {
                         Timber.e(e, "Failed to transcribe")
                         _voiceEvents.tryEmit(VoiceUiEvent.Error("Не удалось распознать речь"))
                         _uiState.value = ChatUiState.Error("Не удалось распознать речь")
                     }
-                    file.delete()
-                }.onFailure { e ->
-                    Timber.e(e, "Failed to stop recording")
-                    _voiceEvents.tryEmit(VoiceUiEvent.Error("Ошибка записи"))
-                    _uiState.value = ChatUiState.Error("Ошибка записи")
-                }
-            } else {
-                val startResult = voiceRepository.startRecording()
-                startResult.onFailure { e ->
-                    Timber.e(e, "Failed to start recording")
-                    _voiceEvents.tryEmit(VoiceUiEvent.Error("Не удалось начать запись"))
-                    _uiState.value = ChatUiState.Error("Не удалось начать запись")
-                }.onSuccess {
-                    _voiceEvents.tryEmit(VoiceUiEvent.RecordingStarted)
                 }
+            _partialVoiceResult.value = ""
+        }
+    }
+
+    private fun applyVoiceTranscript(text: String) {
+        if (text.isBlank()) return
+        if (voiceAutoSend) {
+            sendMessage(text)
+        } else {
+            _currentMessage.value = text
+        }
+    }
+
+    /**
+     * Озвучка ответа (TTS со стримингом). Повторное нажатие во время звучания — стоп
+     */
+    fun speakMessage(text: String) {
+        if (voiceRepository.isPlaying.value) {
+            voiceRepository.stopPlaying()
+            return
+        }
+        val spoken = SentenceSplitter.cleanForSpeech(text)
+        if (spoken.isEmpty()) return
+        viewModelScope.launch {
+            voiceRepository.speak(spoken).onFailure { e ->
+                Timber.e(e, "Failed to speak message")
+                _voiceEvents.tryEmit(VoiceUiEvent.Error("Не удалось озвучить ответ"))
+            }
+        }
+    }
+
+    /**
+     * Голосовой режим: фраза стримится на STT, ответ озвучивается по предложениям,
+     * пока LLM ещё генерирует следующие. Заговорили во время ответа — звук и
+     * генерация обрываются, а начало новой фразы уходит в следующий круг.
+     * Молчание после ответа или повторный вызов — выход из режима
+     */
+    fun toggleVoiceMode() {
+        if (voiceModeJob?.isActive == true) {
+            voiceModeJob?.cancel()
+            return
+        }
+        if (voiceRepository.isRecording.value) return
+        voiceModeJob = viewModelScope.launch {
+            try {
+                _voiceEvents.tryEmit(VoiceUiEvent.RecordingStarted)
+                runVoiceMode()
+            } finally {
+                voiceRepository.cancelStreamingTranscription()
+                voiceRepository.stopPlaying()
+                _voiceModeState.value = VoiceModeState.Off
+                _voiceEvents.tryEmit(VoiceUiEvent.RecordingStopped)
             }
         }
     }
 
+    private suspend fun runVoiceMode() {
+        var preroll = emptyList<ShortArray>()
+        while (true) {
+            _voiceModeState.value = VoiceModeState.Listening
+            val text = listenForPhrase(preroll)
+            if (text.isNullOrBlank()) return
+            _voiceModeState.value = VoiceModeState.Thinking
+            preroll = answerAloud(text)
+        }
+    }
+
+    /** Одна фраза до автостопа по VAD. null — ошибка (уже показана пользователю) */
+    private suspend fun listenForPhrase(preroll: List<ShortArray>): String? = coroutineScope {
+        // Подписка до старта записи: с preroll автостоп может прийти почти сразу
+        val autoStop = async(start = CoroutineStart.UNDISPATCHED) { voiceRepository.autoStopEvents.first() }
+        voiceRepository.startStreamingTranscription(preroll = preroll).onFailure { e ->
+            Timber.e(e, "Voice mode: failed to start recording")
+            autoStop.cancel()
+            _voiceEvents.tryEmit(VoiceUiEvent.Error("Не удалось начать запись"))
+            return@coroutineScope null
+        }
+        autoStop.await()
+        voiceRepository.stopStreamingTranscription()
+            .onFailure { e ->
+                Timber.e(e, "Voice mode: failed to transcribe")
+                _voiceEvents.tryEmit(VoiceUiEvent.Error("Не удалось распознать речь"))
+            }
+            .getOrNull()
+    }
+
+    /**
+     * Отправляет фразу и озвучивает ответ по мере генерации. Возвращает начало
+     * новой фразы, если пользователь перебил, иначе пустой список
+     */
+    private suspend fun answerAloud(text: String): List<ShortArray> = coroutineScope {
+        val queue = voiceRepository.createSpeechQueue(this)
+        val splitter = SentenceSplitter()
+        _streamingResponse.value = ""
+        sendMessage(text)
+        val generation = generationJob
+
+        val speakingState = launch {
+            queue.isSpeaking.first { it }
+            _voiceModeState.value = VoiceModeState.Speaking
+        }
+        val speech = launch {
+            var fed = 0
+            fun feed(answer: String) {
+                if (answer.length <= fed) return
+                splitter.append(answer.substring(fed)).forEach(queue::enqueue)
+                fed = answer.length
+            }
+            val tokens = launch { _streamingResponse.collect { feed(it) } }
+            generation?.join()
+            tokens.cancel()
+            feed(_streamingResponse.value)
+            splitter.flush()?.let(queue::enqueue)
+            queue.finish()
+            queue.awaitDone()
+        }
+        // Нет микрофона для перебивания — просто дослушиваем ответ
+        val bargeIn = async { voiceRepository.awaitBargeIn().getOrNull() ?: awaitCancellation() }
+
+        val preroll = select<List<ShortArray>> {
+            speech.onJoin { emptyList() }
+            bargeIn.onAwait { it }
+        }
+        if (preroll.isNotEmpty()) {
+            Timber.d("Voice mode: barge-in, cancelling answer")
+            queue.cancel()
+            stopGeneration()
+        }
+        speakingState.cancel()
+        speech.cancel()
+        bargeIn.cancel()
+        preroll
+    }
+
     fun isVoiceAvailable(): Boolean {
         return true
     }
@@ -758,7 +1306,22 @@ class ChatViewModel @Inject constructor(
             }
         }
     }
-    
+
+    /**
+     * BlurHash картинки, посчитанный при первой загрузке — при следующем открытии
+     * чата заглушка появится сразу, до сети
+     */
+    fun onImagePlaceholderComputed(messageId: String, blurHash: String) {
+        _messages.value = _messages.value.map { m ->
+            if (m.id == messageId && m.imageBlurHash == null) m.copy(imageBlurHash = blurHash) else m
+        }
+        // Картинка из стрима догрузилась после сохранения ответа — пишем под серверный id
+        val persistedId = persistedMessageIds[messageId] ?: messageId
+        viewModelScope.launch(Dispatchers.IO) {
+            chatRepository.saveImagePlaceholder(persistedId, blurHash)
+        }
+    }
+
     // ==================== Image-to-Image ====================
     
     /**
@@ -887,8 +1450,10 @@ class ChatViewModel @Inject constructor(
 
     override fun onCleared() {
         super.onCleared()
+        onDevicePipe?.close()
         voiceInputManager.destroy()
         voiceRepository.release()
+        conversationPrefetcher.setPaused(false)
         viewModelScope.launch {
             chatRepository.disconnectWebSocket()
         }
@@ -922,6 +1487,12 @@ class ChatViewModel @Inject constructor(
             model.contains("oppo") ||
             model.contains("find x7")
     }
+
+    companion object {
+        private const val SEARCH_DEBOUNCE_MS = 150L
+        private const val REMOTE_SEARCH_DEBOUNCE_MS = 400L
+        private const val MIN_REMOTE_SEARCH_LENGTH = 2
+    }
 }
 
 sealed class ChatUiState {
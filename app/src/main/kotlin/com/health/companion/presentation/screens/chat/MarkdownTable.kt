@@ -0,0 +1,458 @@
+package com.health.companion.presentation.screens.chat
+
+import androidx.compose.foundation.ExperimentalFoundationApi
+import androidx.compose.foundation.background
+import androidx.compose.foundation.border
+import androidx.compose.foundation.gestures.Orientation
+import androidx.compose.foundation.gestures.rememberScrollableState
+import androidx.compose.foundation.gestures.scrollable
+import androidx.compose.foundation.horizontalScroll
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.itemsIndexed
+import androidx.compose.foundation.rememberScrollState
+import androidx.compose.foundation.shape.RoundedCornerShape
+import androidx.compose.material3.Text
+import androidx.compose.runtime.*
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.draw.clip
+import androidx.compose.ui.draw.clipToBounds
+import androidx.compose.ui.graphics.Brush
+import androidx.compose.ui.graphics.Color
+import androidx.compose.ui.layout.onSizeChanged
+import androidx.compose.ui.platform.LocalConfiguration
+import androidx.compose.ui.platform.LocalDensity
+import androidx.compose.ui.text.TextStyle
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.text.rememberTextMeasurer
+import androidx.compose.ui.text.style.TextOverflow
+import androidx.compose.ui.unit.Dp
+import androidx.compose.ui.unit.IntOffset
+import androidx.compose.ui.unit.dp
+import androidx.compose.ui.unit.sp
+import com.health.companion.presentation.components.GlassColors
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import kotlin.math.roundToInt
+
+/** Ширина экрана, ниже которой таблица всегда показывается карточками */
+private const val COMPACT_SCREEN_WIDTH_DP = 360
+
+/** До этих размеров таблица рисуется целиком — виртуализация дороже самой таблицы */
+private const val PLAIN_TABLE_MAX_ROWS = 12
+private const val PLAIN_TABLE_MAX_COLUMNS = 4
+
+/** Сколько строк берём для подбора ширины колонок */
+internal const val COLUMN_WIDTH_SAMPLE_ROWS = 20
+
+private const val MIN_COLUMN_WIDTH_DP = 50
+private const val MAX_COLUMN_WIDTH_DP = 120
+private val CELL_PADDING = 6.dp
+private val ROW_HEIGHT = 40.dp
+private val MAX_TABLE_HEIGHT = 360.dp
+
+private val HeaderCellStyle = TextStyle(
+    fontSize = 11.sp,
+    fontWeight = FontWeight.Bold,
+    color = GlassColors.accent,
+    lineHeight = 14.sp
+)
+
+private val CellStyle = TextStyle(
+    fontSize = 11.sp,
+    fontWeight = FontWeight.Normal,
+    color = Color.White.copy(alpha = 0.9f),
+    lineHeight = 14.sp
+)
+
+/**
+ * Красивый рендеринг таблицы — карточки вместо ASCII
+ *
+ * - 1-2 колонки или узкий экран — карточки [TableRowCard]
+ * - Маленькая таблица — сетка целиком с горизонтальным скроллом
+ * - Большая (анализы на 40+ строк) — [VirtualizedTable]
+ */
+@Composable
+internal fun TableRenderer(rows: List<List<String>>) {
+    if (rows.isEmpty()) return
+
+    val headers = rows.firstOrNull() ?: return
+    val dataRows = remember(rows) { rows.drop(1) }
+    val isNarrowScreen = LocalConfiguration.current.screenWidthDp < COMPACT_SCREEN_WIDTH_DP
+
+    when {
+        (headers.size <= 2 || isNarrowScreen) && dataRows.isNotEmpty() -> CompactTable(headers, dataRows)
+        dataRows.size <= PLAIN_TABLE_MAX_ROWS && headers.size <= PLAIN_TABLE_MAX_COLUMNS -> PlainTable(headers, dataRows)
+        else -> VirtualizedTable(headers, dataRows)
+    }
+}
+
+/**
+ * Ширина колонок по длине текста в первых [sampleRows] строках — быстрая оценка
+ * до точного замера (минимум 50dp, ~6dp на символ, максимум 120dp)
+ */
+internal fun estimateColumnWidthsDp(
+    headers: List<String>,
+    dataRows: List<List<String>>,
+    sampleRows: Int = COLUMN_WIDTH_SAMPLE_ROWS
+): List<Int> {
+    val sample = dataRows.take(sampleRows)
+    return headers.indices.map { colIndex ->
+        val maxDataLen = sample.maxOfOrNull { row -> row.getOrNull(colIndex)?.length ?: 0 } ?: 0
+        val maxLen = maxOf(headers[colIndex].length, maxDataLen)
+        (MIN_COLUMN_WIDTH_DP + maxLen * 6).coerceIn(MIN_COLUMN_WIDTH_DP, MAX_COLUMN_WIDTH_DP)
+    }
+}
+
+/**
+ * Колонки, попадающие в окно [scrollPx, scrollPx + viewportPx), плюс по одной за краями,
+ * чтобы при прокрутке ячейка появлялась уже скомпонованной
+ */
+internal fun visibleColumnRange(startsPx: IntArray, widthsPx: IntArray, scrollPx: Int, viewportPx: Int): IntRange {
+    if (startsPx.isEmpty()) return IntRange.EMPTY
+    if (viewportPx <= 0) return 0..0
+    var first = 0
+    while (first < startsPx.lastIndex && startsPx[first] + widthsPx[first] <= scrollPx) first++
+    var last = first
+    while (last < startsPx.lastIndex && startsPx[last + 1] < scrollPx + viewportPx) last++
+    return (first - 1).coerceAtLeast(0)..(last + 1).coerceAtMost(startsPx.lastIndex)
+}
+
+/**
+ * Ширина колонок: сразу — оценка по длине строк, затем замер [COLUMN_WIDTH_SAMPLE_ROWS]
+ * строк через TextMeasurer на Dispatchers.Default. Остальные строки не меряются.
+ *
+ * Пока ответ стримится, колонок становится больше: замер старого набора короче
+ * текущих заголовков, поэтому он используется, только если число колонок совпадает
+ */
+@Composable
+private fun rememberColumnWidths(headers: List<String>, dataRows: List<List<String>>): List<Dp> {
+    val measurer = rememberTextMeasurer(cacheSize = 0)
+    val density = LocalDensity.current
+    val estimate = remember(headers, dataRows) { estimateColumnWidthsDp(headers, dataRows).map { it.dp } }
+    val measured = remember(headers.size) { mutableStateOf<List<Dp>?>(null) }
+    LaunchedEffect(headers, dataRows, density) {
+        measured.value = withContext(Dispatchers.Default) {
+            val sample = dataRows.take(COLUMN_WIDTH_SAMPLE_ROWS)
+            headers.indices.map { colIndex ->
+                val headerPx = measurer.measure(headers[colIndex], HeaderCellStyle, maxLines = 1).size.width
+                val cellPx = sample.maxOfOrNull { row ->
+                    measurer.measure(row.getOrElse(colIndex) { "" }, CellStyle, maxLines = 1).size.width
+                } ?: 0
+                with(density) { maxOf(headerPx, cellPx).toDp() + CELL_PADDING * 2 }
+                    .coerceIn(MIN_COLUMN_WIDTH_DP.dp, MAX_COLUMN_WIDTH_DP.dp)
+            }
+        }
+    }
+    return measured.value?.takeIf { it.size == headers.size } ?: estimate
+}
+
+/**
+ * Компактный вид: каждая строка как мини-карточка. Длинные таблицы — ленивым
+ * списком ограниченной высоты внутри пузыря
+ */
+@Composable
+private fun CompactTable(headers: List<String>, dataRows: List<List<String>>) {
+    if (dataRows.size <= PLAIN_TABLE_MAX_ROWS) {
+        Column(
+            modifier = Modifier.fillMaxWidth(),
+            verticalArrangement = Arrangement.spacedBy(6.dp)
+        ) {
+            dataRows.forEach { row ->
+                TableRowCard(headers, row)
+            }
+        }
+    } else {
+        LazyColumn(
+            modifier = Modifier
+                .fillMaxWidth()
+                .heightIn(max = MAX_TABLE_HEIGHT),
+            verticalArrangement = Arrangement.spacedBy(6.dp)
+        ) {
+            itemsIndexed(dataRows, contentType = { _, _ -> "table_card" }) { _, row ->
+                TableRowCard(headers, row)
+            }
+        }
+    }
+}
+
+/**
+ * Таблица с горизонтальным скроллом и ФИКСИРОВАННЫМИ колонками — вся сетка сразу
+ */
+@Composable
+private fun PlainTable(headers: List<String>, dataRows: List<List<String>>) {
+    val scrollState = rememberScrollState()
+    val showScrollHint = scrollState.value == 0 && headers.size > 3
+    val columnWidths = rememberColumnWidths(headers, dataRows)
+
+    TableContainer(showScrollHint = showScrollHint) {
+        Column(
+            modifier = Modifier
+                .horizontalScroll(scrollState)
+                .padding(4.dp)
+        ) {
+            Row(modifier = Modifier.background(headerBrush(), RoundedCornerShape(topStart = 8.dp, topEnd = 8.dp))) {
+                headers.forEachIndexed { index, header ->
+                    TableCell(header, columnWidths[index], HeaderCellStyle)
+                }
+            }
+            dataRows.forEachIndexed { rowIndex, row ->
+                Row(modifier = Modifier.background(rowBackground(rowIndex))) {
+                    // Используем те же ширины что и для header!
+                    headers.indices.forEach { colIndex ->
+                        TableCell(row.getOrElse(colIndex) { "" }, columnWidths[colIndex], CellStyle)
+                    }
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Виртуализованная таблица для больших ответов:
+ * - строки — LazyColumn ограниченной высоты, заголовок липкий (stickyHeader)
+ * - первая колонка (название показателя) закреплена, остальные скроллятся горизонтально
+ * - компонуются только колонки в видимом окне; смещение применяется на этапе layout,
+ *   так что прокрутка перекомпонует строки только при смене набора видимых колонок
+ */
+@OptIn(ExperimentalFoundationApi::class)
+@Composable
+private fun VirtualizedTable(headers: List<String>, dataRows: List<List<String>>) {
+    val density = LocalDensity.current
+    val columnWidths = rememberColumnWidths(headers, dataRows)
+
+    // Геометрия прокручиваемых колонок (всё, кроме первой) в px
+    val widthsPx = remember(columnWidths, density) {
+        with(density) { columnWidths.drop(1).map { it.roundToPx() }.toIntArray() }
+    }
+    val startsPx = remember(widthsPx) {
+        IntArray(widthsPx.size).also { starts ->
+            for (i in 1 until starts.size) starts[i] = starts[i - 1] + widthsPx[i - 1]
+        }
+    }
+    val contentWidthPx = widthsPx.sum()
+
+    var viewportPx by remember { mutableIntStateOf(0) }
+    var scrollPx by remember { mutableFloatStateOf(0f) }
+    val maxScrollPx = (contentWidthPx - viewportPx).coerceAtLeast(0).toFloat()
+    val currentMaxScroll by rememberUpdatedState(maxScrollPx)
+    val scrollableState = rememberScrollableState { delta ->
+        val old = scrollPx
+        scrollPx = (scrollPx - delta).coerceIn(0f, currentMaxScroll)
+        old - scrollPx
+    }
+    val visibleColumns by remember(startsPx, widthsPx) {
+        derivedStateOf {
+            visibleColumnRange(startsPx, widthsPx, scrollPx.roundToInt(), viewportPx)
+        }
+    }
+    val scrollOffset = remember { { scrollPx.coerceAtMost(currentMaxScroll).roundToInt() } }
+
+    TableContainer(
+        showScrollHint = scrollPx == 0f && maxScrollPx > 0f,
+        modifier = Modifier.scrollable(scrollableState, Orientation.Horizontal)
+    ) {
+        LazyColumn(
+            modifier = Modifier
+                .fillMaxWidth()
+                .heightIn(max = MAX_TABLE_HEIGHT)
+                .padding(4.dp)
+        ) {
+            stickyHeader(key = "header", contentType = "table_header") {
+                VirtualizedTableRow(
+                    cells = headers,
+                    style = HeaderCellStyle,
+                    columnWidths = columnWidths,
+                    startsPx = startsPx,
+                    visibleColumns = visibleColumns,
+                    scrollOffset = scrollOffset,
+                    modifier = Modifier.background(headerBrush(), RoundedCornerShape(topStart = 8.dp, topEnd = 8.dp)),
+                    onViewportWidth = { viewportPx = it }
+                )
+            }
+            itemsIndexed(dataRows, contentType = { _, _ -> "table_row" }) { rowIndex, row ->
+                VirtualizedTableRow(
+                    cells = row,
+                    style = CellStyle,
+                    columnWidths = columnWidths,
+                    startsPx = startsPx,
+                    visibleColumns = visibleColumns,
+                    scrollOffset = scrollOffset,
+                    modifier = Modifier.background(rowBackground(rowIndex))
+                )
+            }
+        }
+    }
+}
+
+/**
+ * Строка фиксированной высоты: стабильная высота не даёт списку прыгать,
+ * когда в окно въезжает колонка с двухстрочным текстом
+ */
+@Composable
+private fun VirtualizedTableRow(
+    cells: List<String>,
+    style: TextStyle,
+    columnWidths: List<Dp>,
+    startsPx: IntArray,
+    visibleColumns: IntRange,
+    scrollOffset: () -> Int,
+    modifier: Modifier = Modifier,
+    onViewportWidth: ((Int) -> Unit)? = null
+) {
+    Row(modifier = modifier.fillMaxWidth().height(ROW_HEIGHT)) {
+        TableCell(cells.getOrElse(0) { "" }, columnWidths[0], style, Modifier.fillMaxHeight())
+        Box(
+            modifier = Modifier
+                .weight(1f)
+                .fillMaxHeight()
+                .clipToBounds()
+                .then(if (onViewportWidth != null) Modifier.onSizeChanged { onViewportWidth(it.width) } else Modifier)
+        ) {
+            for (index in visibleColumns) {
+                key(index) {
+                    TableCell(
+                        text = cells.getOrElse(index + 1) { "" },
+                        width = columnWidths[index + 1],
+                        style = style,
+                        modifier = Modifier
+                            .fillMaxHeight()
+                            .offset { IntOffset(startsPx[index] - scrollOffset(), 0) }
+                    )
+                }
+            }
+        }
+    }
+}
+
+@Composable
+private fun TableCell(text: String, width: Dp, style: TextStyle, modifier: Modifier = Modifier) {
+    Box(
+        modifier = modifier
+            .width(width)
+            .padding(horizontal = CELL_PADDING, vertical = 6.dp),
+        contentAlignment = Alignment.CenterStart
+    ) {
+        Text(
+            text = text,
+            style = style,
+            maxLines = 2,
+            overflow = TextOverflow.Ellipsis
+        )
+    }
+}
+
+@Composable
+private fun TableContainer(
+    showScrollHint: Boolean,
+    modifier: Modifier = Modifier,
+    content: @Composable BoxScope.() -> Unit
+) {
+    Box(
+        modifier = modifier
+            .fillMaxWidth()
+            .clip(RoundedCornerShape(10.dp))
+            .background(
+                Brush.verticalGradient(
+                    colors = listOf(
+                        Color(0xFF1E2235),
+                        Color(0xFF171B2C)
+                    )
+                )
+            )
+            .border(1.dp, Color(0xFF3D4A6A).copy(alpha = 0.5f), RoundedCornerShape(10.dp))
+    ) {
+        content()
+
+        // Индикатор скролла справа
+        if (showScrollHint) {
+            Box(
+                modifier = Modifier
+                    .matchParentSize()
+                    .wrapContentWidth(Alignment.End)
+                    .width(24.dp)
+                    .background(
+                        Brush.horizontalGradient(
+                            colors = listOf(
+                                Color.Transparent,
+                                Color(0xFF171B2C).copy(alpha = 0.9f)
+                            )
+                        )
+                    ),
+                contentAlignment = Alignment.Center
+            ) {
+                Text(
+                    text = "›",
+                    color = GlassColors.accent.copy(alpha = 0.7f),
+                    fontSize = 18.sp,
+                    fontWeight = FontWeight.Bold
+                )
+            }
+        }
+    }
+}
+
+private fun headerBrush() = Brush.horizontalGradient(
+    colors = listOf(
+        GlassColors.surfaceAlt,
+        Color(0xFF232945)
+    )
+)
+
+private fun rowBackground(rowIndex: Int): Color =
+    if (rowIndex % 2 == 0) Color.Transparent else Color(0xFF1A1F30).copy(alpha = 0.5f)
+
+/**
+ * Карточка для строки таблицы (компактный вид)
+ */
+@Composable
+private fun TableRowCard(headers: List<String>, row: List<String>) {
+    Box(
+        modifier = Modifier
+            .fillMaxWidth()
+            .clip(RoundedCornerShape(8.dp))
+            .background(
+                Brush.horizontalGradient(
+                    colors = listOf(
+                        Color(0xFF1E2540).copy(alpha = 0.8f),
+                        Color(0xFF1A2035).copy(alpha = 0.6f)
+                    )
+                )
+            )
+            .border(1.dp, Color(0xFF3D4A6A).copy(alpha = 0.3f), RoundedCornerShape(8.dp))
+            .padding(10.dp)
+    ) {
+        Column(verticalArrangement = Arrangement.spacedBy(4.dp)) {
+            row.forEachIndexed { index, cell ->
+                if (cell.isNotBlank()) {
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.SpaceBetween
+                    ) {
+                        // Label
+                        Text(
+                            text = headers.getOrElse(index) { "" },
+                            style = TextStyle(
+                                fontSize = 10.sp,
+                                fontWeight = FontWeight.Medium,
+                                color = GlassColors.accent.copy(alpha = 0.8f)
+                            ),
+                            modifier = Modifier.weight(0.4f)
+                        )
+                        // Value
+                        Text(
+                            text = cell,
+                            style = TextStyle(
+                                fontSize = 12.sp,
+                                fontWeight = FontWeight.Normal,
+                                color = Color.White
+                            ),
+                            modifier = Modifier.weight(0.6f)
+                        )
+                    }
+                }
+            }
+        }
+    }
+}
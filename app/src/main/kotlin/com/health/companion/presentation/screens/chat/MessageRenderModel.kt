@@ -0,0 +1,289 @@
+package com.health.companion.presentation.screens.chat
+
+import androidx.compose.runtime.Immutable
+import androidx.compose.ui.graphics.Color
+import androidx.compose.ui.text.AnnotatedString
+import androidx.compose.ui.text.SpanStyle
+import androidx.compose.ui.text.buildAnnotatedString
+import androidx.compose.ui.text.font.FontFamily
+import androidx.compose.ui.text.font.FontStyle
+import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.text.withStyle
+import com.health.companion.data.remote.api.MessageDTO
+
+/**
+ * Готовая к отрисовке модель сообщения.
+ * Строится во ViewModel на Dispatchers.Default, поэтому пузырь при скролле
+ * только рисует — markdown не парсится заново при каждом возврате в viewport
+ */
+@Immutable
+data class MessageRenderModel(
+    val messageId: String,
+    val contentHash: Int,
+    val plainText: String,           // user: отформатированный текст
+    val blocks: List<MarkdownBlock>  // assistant: markdown-блоки
+) {
+    fun matches(message: MessageDTO): Boolean =
+        messageId == message.id && contentHash == message.content.hashCode()
+}
+
+/**
+ * LRU моделей по (id, hash контента). Отредактированное или дописанное
+ * сообщение получает новый ключ и перепарсивается, остальные берутся из кэша
+ */
+class MessageRenderCache(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+
+    private val lru = object : LinkedHashMap<String, MessageRenderModel>(maxSize, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, MessageRenderModel>?): Boolean =
+            size > maxSize
+    }
+
+    /**
+     * Вызывать вне main thread. Стримящееся сообщение пропускается —
+     * оно меняется на каждом токене и парсится в самом пузыре
+     */
+    fun render(messages: List<MessageDTO>): Map<String, MessageRenderModel> {
+        val result = HashMap<String, MessageRenderModel>(messages.size)
+        messages.forEach { message ->
+            if (message.agentName == STREAMING_AGENT) return@forEach
+            result[message.id] = get(message)
+        }
+        return result
+    }
+
+    fun get(message: MessageDTO): MessageRenderModel {
+        val hash = message.content.hashCode()
+        val key = "${message.id}#$hash"
+        synchronized(lru) { lru[key] }?.let { return it }
+
+        val model = if (message.role == "user") {
+            MessageRenderModel(message.id, hash, formatMessageTextV2(message.content), emptyList())
+        } else {
+            MessageRenderModel(message.id, hash, "", parseMarkdownBlocks(message.content))
+        }
+        synchronized(lru) { lru[key] = model }
+        return model
+    }
+
+    fun clear() = synchronized(lru) { lru.clear() }
+
+    companion object {
+        private const val DEFAULT_MAX_SIZE = 400
+        private const val STREAMING_AGENT = "streaming"
+    }
+}
+
+// === Markdown Parser ===
+
+/**
+ * Блоки уже содержат готовые AnnotatedString — в композиции ничего не парсится
+ */
+@Immutable
+sealed class MarkdownBlock {
+    data class Text(val text: AnnotatedString) : MarkdownBlock()
+    data class CodeBlock(val language: String, val code: String) : MarkdownBlock()
+    data class Table(val rows: List<List<String>>) : MarkdownBlock()
+    data class Heading(val level: Int, val text: AnnotatedString) : MarkdownBlock()  // ## или ###
+    data class ListItem(val text: AnnotatedString) : MarkdownBlock()                  // - item
+    data class Quote(val text: AnnotatedString) : MarkdownBlock()                     // > quote
+    object Divider : MarkdownBlock()                                          // ---
+}
+
+internal fun parseMarkdownBlocks(text: String): List<MarkdownBlock> {
+    val blocks = mutableListOf<MarkdownBlock>()
+    val lines = text.lines()
+    var i = 0
+    var textBuffer = StringBuilder()
+    
+    fun flushTextBuffer() {
+        val txt = textBuffer.toString().trim()
+        if (txt.isNotEmpty()) {
+            blocks.add(MarkdownBlock.Text(parseInlineMarkdown(txt)))
+        }
+        textBuffer = StringBuilder()
+    }
+    
+    while (i < lines.size) {
+        val line = lines[i]
+        val trimmedLine = line.trim()
+        
+        // Код блок начало
+        if (trimmedLine.startsWith("```")) {
+            flushTextBuffer()
+            val lang = trimmedLine.removePrefix("```").trim()
+            val codeLines = mutableListOf<String>()
+            i++
+            while (i < lines.size && !lines[i].trim().startsWith("```")) {
+                codeLines.add(lines[i])
+                i++
+            }
+            blocks.add(MarkdownBlock.CodeBlock(lang, codeLines.joinToString("\n")))
+            i++ // пропускаем закрывающий ```
+            continue
+        }
+        
+        // Разделитель ---
+        if (trimmedLine.matches(Regex("^-{3,}$")) || trimmedLine.matches(Regex("^\\*{3,}$"))) {
+            flushTextBuffer()
+            blocks.add(MarkdownBlock.Divider)
+            i++
+            continue
+        }
+        
+        // Заголовок # ## ### #### (проверяем от большего к меньшему!)
+        if (trimmedLine.startsWith("#### ")) {
+            flushTextBuffer()
+            blocks.add(MarkdownBlock.Heading(4, parseInlineMarkdown(trimmedLine.removePrefix("#### ").trim())))
+            i++
+            continue
+        }
+        if (trimmedLine.startsWith("### ")) {
+            flushTextBuffer()
+            blocks.add(MarkdownBlock.Heading(3, parseInlineMarkdown(trimmedLine.removePrefix("### ").trim())))
+            i++
+            continue
+        }
+        if (trimmedLine.startsWith("## ")) {
+            flushTextBuffer()
+            blocks.add(MarkdownBlock.Heading(2, parseInlineMarkdown(trimmedLine.removePrefix("## ").trim())))
+            i++
+            continue
+        }
+        if (trimmedLine.startsWith("# ")) {
+            flushTextBuffer()
+            blocks.add(MarkdownBlock.Heading(1, parseInlineMarkdown(trimmedLine.removePrefix("# ").trim())))
+            i++
+            continue
+        }
+        
+        // Цитата > text
+        if (trimmedLine.startsWith("> ")) {
+            flushTextBuffer()
+            val quoteText = StringBuilder(trimmedLine.removePrefix("> "))
+            i++
+            // Собираем многострочные цитаты
+            while (i < lines.size && lines[i].trim().startsWith("> ")) {
+                quoteText.append("\n").append(lines[i].trim().removePrefix("> "))
+                i++
+            }
+            blocks.add(MarkdownBlock.Quote(parseInlineMarkdown(quoteText.toString())))
+            continue
+        }
+        
+        // Список - item или * item
+        if (trimmedLine.matches(Regex("^[-*•]\\s+.+"))) {
+            flushTextBuffer()
+            val itemText = trimmedLine.replaceFirst(Regex("^[-*•]\\s+"), "")
+            blocks.add(MarkdownBlock.ListItem(parseInlineMarkdown(itemText)))
+            i++
+            continue
+        }
+        
+        // Проверка на таблицу: строка содержит | и следующая тоже (или это заголовок с ---)
+        if (line.contains("|") && trimmedLine.let { it.startsWith("|") || it.count { c -> c == '|' } >= 2 }) {
+            flushTextBuffer()
+            val tableLines = mutableListOf<String>()
+            while (i < lines.size && lines[i].contains("|")) {
+                val tableLine = lines[i].trim()
+                // Пропускаем разделители типа |---|---|
+                if (!tableLine.replace("|", "").replace("-", "").replace(":", "").replace(" ", "").isEmpty() ||
+                    tableLine.contains("---").not()) {
+                    if (!tableLine.matches(Regex("^[\\|\\s\\-:]+$"))) {
+                        tableLines.add(tableLine)
+                    }
+                }
+                i++
+            }
+            
+            if (tableLines.isNotEmpty()) {
+                val rows = tableLines.map { row ->
+                    row.split("|")
+                        .map { it.trim() }
+                        .filter { it.isNotEmpty() }
+                }.filter { it.isNotEmpty() }
+                
+                if (rows.isNotEmpty()) {
+                    blocks.add(MarkdownBlock.Table(rows))
+                }
+            }
+            continue
+        }
+        
+        // Обычный текст
+        textBuffer.appendLine(line)
+        i++
+    }
+    
+    flushTextBuffer()
+    return blocks.ifEmpty { listOf(MarkdownBlock.Text(parseInlineMarkdown(text))) }
+}
+
+internal fun parseInlineMarkdown(text: String): AnnotatedString {
+    return buildAnnotatedString {
+        // Используем regex для корректного парсинга **bold** и *italic*
+        var current = text
+            // Фикс прилипших чисел: "26февраля" -> "26 февраля"
+            .replace(Regex("(\\d)([а-яА-ЯёЁ])")) { "${it.groupValues[1]} ${it.groupValues[2]}" }
+            .replace(Regex("([а-яА-ЯёЁ])(\\d)")) { "${it.groupValues[1]} ${it.groupValues[2]}" }
+            // Сначала заменяем ** (жирный) - ВАЖНО: до одинарных *
+            .replace(Regex("\\*\\*(.+?)\\*\\*")) { "⬛BOLD⬛${it.groupValues[1]}⬛BOLD⬛" }
+            .replace(Regex("__(.+?)__")) { "⬛BOLD⬛${it.groupValues[1]}⬛BOLD⬛" }
+            // Затем одинарные * и _ (курсив)
+            .replace(Regex("(?<!\\*)\\*(?!\\*)(.+?)(?<!\\*)\\*(?!\\*)")) { "⬛ITALIC⬛${it.groupValues[1]}⬛ITALIC⬛" }
+            .replace(Regex("(?<!_)_(?!_)(.+?)(?<!_)_(?!_)")) { "⬛ITALIC⬛${it.groupValues[1]}⬛ITALIC⬛" }
+            // Inline код
+            .replace(Regex("`([^`]+)`")) { "⬛CODE⬛${it.groupValues[1]}⬛CODE⬛" }
+            .replace("• ", "  • ")
+            .replace(Regex("^#{1,4}\\s+", RegexOption.MULTILINE), "") // Удаляем оставшиеся заголовки
+        
+        var isBold = false
+        var isItalic = false
+        var isCode = false
+        
+        val parts = current.split("⬛")
+        parts.forEach { part ->
+            when (part) {
+                "BOLD" -> isBold = !isBold
+                "ITALIC" -> isItalic = !isItalic
+                "CODE" -> isCode = !isCode
+                else -> {
+                    val style = SpanStyle(
+                        fontWeight = if (isBold) FontWeight.Bold else FontWeight.Normal,
+                        fontStyle = if (isItalic) FontStyle.Italic else FontStyle.Normal,
+                        fontFamily = if (isCode) FontFamily.Monospace else FontFamily.Default,
+                        background = if (isCode) Color(0xFF2D2D3D) else Color.Transparent,
+                        color = if (isCode) Color(0xFF7AA2F7) else Color.Unspecified
+                    )
+                    withStyle(style) { append(part) }
+                }
+            }
+        }
+    }
+}
+
+
+/**
+ * Форматирование текста сообщения
+ */
+internal fun formatMessageTextV2(raw: String): String {
+    var text = raw.trim()
+    if (text.isEmpty()) return text
+    
+    // Normalize bullets
+    text = text.replace(Regex("(?m)^\\s*[-*•]\\s+"), "• ")
+    
+    // Remove markdown headings
+    text = text.replace(Regex("(?m)^\\s*#{1,6}\\s+"), "")
+    
+    // Fix numbered lists
+    text = text.replace(Regex("(?m)^(\\d+)\\.(\\S)"), "$1. $2")
+    
+    // Collapse multiple blank lines
+    text = text.replace(Regex("(\\n\\s*){3,}"), "\n\n")
+    
+    // Remove markdown emphasis
+    text = text.replace("*", "").replace("_", "")
+    
+    return text.trim()
+}
+
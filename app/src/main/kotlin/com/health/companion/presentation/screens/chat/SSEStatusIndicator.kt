@@ -34,6 +34,8 @@ import androidx.compose.ui.graphics.drawscope.rotate
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
+import com.health.companion.presentation.components.AnimationPriority
+import com.health.companion.presentation.components.rememberGovernedTransition
 import kotlin.math.PI
 import kotlin.math.cos
 import kotlin.math.sin
@@ -108,7 +110,7 @@ private fun GlassStatusBubble(config: StatusConfig) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun ThinkingAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "thinking")
+    val infiniteTransition = rememberGovernedTransition(label = "thinking", priority = AnimationPriority.ESSENTIAL)
     
     // Пульсация мозга
     val pulse by infiniteTransition.animateFloat(
@@ -168,7 +170,7 @@ private fun ThinkingAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun AnalyzingAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "analyzing")
+    val infiniteTransition = rememberGovernedTransition(label = "analyzing", priority = AnimationPriority.ESSENTIAL)
     
     // 5 баров с разными фазами
     val bars = List(5) { index ->
@@ -214,7 +216,7 @@ private fun AnalyzingAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun SearchingAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "searching")
+    val infiniteTransition = rememberGovernedTransition(label = "searching", priority = AnimationPriority.ESSENTIAL)
     
     val sweepAngle by infiniteTransition.animateFloat(
         initialValue = 0f,
@@ -300,7 +302,7 @@ private fun SearchingAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun WebSearchAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "web_search")
+    val infiniteTransition = rememberGovernedTransition(label = "web_search", priority = AnimationPriority.ESSENTIAL)
     
     val rotation by infiniteTransition.animateFloat(
         initialValue = 0f,
@@ -370,7 +372,7 @@ private fun WebSearchAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun GeneratingAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "generating")
+    val infiniteTransition = rememberGovernedTransition(label = "generating", priority = AnimationPriority.ESSENTIAL)
     
     val cursorAlpha by infiniteTransition.animateFloat(
         initialValue = 1f,
@@ -437,7 +439,7 @@ private fun GeneratingAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun ImageGeneratingAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "image_gen")
+    val infiniteTransition = rememberGovernedTransition(label = "image_gen", priority = AnimationPriority.ESSENTIAL)
     
     val progress by infiniteTransition.animateFloat(
         initialValue = 0f,
@@ -514,7 +516,7 @@ private fun ImageGeneratingAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun EnhancingAnimation(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "enhancing")
+    val infiniteTransition = rememberGovernedTransition(label = "enhancing", priority = AnimationPriority.ESSENTIAL)
     
     // Multiple sparkles with different phases
     val sparkles = List(6) { index ->
@@ -627,7 +629,7 @@ private fun EnhancingAnimation(color: Color) {
 // ═══════════════════════════════════════════════════════════
 @Composable
 private fun AnimatedDots(color: Color) {
-    val infiniteTransition = rememberInfiniteTransition(label = "dots")
+    val infiniteTransition = rememberGovernedTransition(label = "dots", priority = AnimationPriority.ESSENTIAL)
     
     val dots = List(3) { index ->
         infiniteTransition.animateFloat(
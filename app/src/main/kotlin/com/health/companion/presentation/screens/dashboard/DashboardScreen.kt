@@ -177,7 +177,7 @@ fun DashboardScreen(
 
 @Composable
 private fun HeroCardSkeleton() {
-    val transition = rememberInfiniteTransition(label = "skeleton")
+    val transition = rememberGovernedTransition(label = "skeleton", priority = AnimationPriority.ESSENTIAL)
     val alpha by transition.animateFloat(
         initialValue = 0.3f,
         targetValue = 0.6f,
@@ -227,7 +227,7 @@ private fun HeroCardSkeleton() {
 
 @Composable
 private fun StreakMiniSkeleton(modifier: Modifier = Modifier) {
-    val transition = rememberInfiniteTransition(label = "skeleton")
+    val transition = rememberGovernedTransition(label = "skeleton", priority = AnimationPriority.ESSENTIAL)
     val alpha by transition.animateFloat(
         initialValue = 0.3f,
         targetValue = 0.6f,
@@ -273,7 +273,7 @@ private fun StreakMiniSkeleton(modifier: Modifier = Modifier) {
 
 @Composable
 private fun FactCardSkeleton(modifier: Modifier = Modifier) {
-    val transition = rememberInfiniteTransition(label = "skeleton")
+    val transition = rememberGovernedTransition(label = "skeleton", priority = AnimationPriority.ESSENTIAL)
     val alpha by transition.animateFloat(
         initialValue = 0.3f,
         targetValue = 0.6f,
@@ -37,23 +37,7 @@ class DashboardViewModel @Inject constructor(
     private var refreshJob: Job? = null
 
     init {
-        // Сначала покажем кэш мгновенно (без isLoading)
-        dashboardRepository.getCachedDashboard()?.let { cached ->
-            _state.update {
-                it.copy(
-                    isLoading = false,
-                    greeting = cached.greeting,
-                    insight = cached.insight,
-                    messagesThisWeek = cached.messagesThisWeek,
-                    streak = cached.streak,
-                    factAboutMe = cached.factAboutMe,
-                    quickActions = cached.quickActions,
-                    lastUpdated = cached.lastUpdated
-                )
-            }
-            Timber.d("Dashboard init: showing cached data")
-        }
-        // Потом загрузим свежее в фоне
+        // Кэш с диска рисуется сразу, свежие данные догружаются в фоне
         loadDashboard()
     }
 
@@ -68,47 +52,52 @@ class DashboardViewModel @Inject constructor(
                 _state.update { it.copy(isLoading = true, error = null) }
             }
 
-            val dashboardDeferred = async { dashboardRepository.getDashboard() }
             val emotionalStateDeferred = async { dashboardRepository.getEmotionalState() }
             val memorySummaryDeferred = async { dashboardRepository.getMemorySummary() }
 
-            val dashboardResult = dashboardDeferred.await()
-            val emotionalState = emotionalStateDeferred.await().getOrNull()
-            val memorySummary = memorySummaryDeferred.await().getOrNull()
-
-            dashboardResult
-                .onSuccess { dashboard ->
-                    _state.update {
-                        it.copy(
-                            isLoading = false,
-                            greeting = dashboard.greeting,
-                            insight = dashboard.insight,
-                            messagesThisWeek = dashboard.messagesThisWeek,
-                            streak = dashboard.streak,
-                            factAboutMe = dashboard.factAboutMe,
-                            quickActions = dashboard.quickActions,
-                            lastUpdated = dashboard.lastUpdated,
-                            emotionalState = emotionalState,
-                            memorySummary = memorySummary,
-                            error = null
-                        )
-                    }
-                    Timber.d("Dashboard loaded: streak=${dashboard.streak.days}")
-                }
-                .onFailure { error ->
-                    // Не показываем ошибку если есть данные
-                    if (_state.value.greeting.isEmpty()) {
+            // Первое значение — из кэша (если есть), второе — после ревалидации
+            dashboardRepository.observeDashboard(forceRefresh = force).collect { dashboardResult ->
+                dashboardResult
+                    .onSuccess { dashboard ->
                         _state.update {
                             it.copy(
                                 isLoading = false,
-                                error = error.message ?: "Не удалось загрузить"
+                                greeting = dashboard.greeting,
+                                insight = dashboard.insight,
+                                messagesThisWeek = dashboard.messagesThisWeek,
+                                streak = dashboard.streak,
+                                factAboutMe = dashboard.factAboutMe,
+                                quickActions = dashboard.quickActions,
+                                lastUpdated = dashboard.lastUpdated,
+                                error = null
                             )
                         }
-                    } else {
-                        _state.update { it.copy(isLoading = false) }
+                        Timber.d("Dashboard loaded: streak=${dashboard.streak.days}")
                     }
-                    Timber.e(error, "Dashboard load failed")
-                }
+                    .onFailure { error ->
+                        // Не показываем ошибку если есть данные
+                        if (_state.value.greeting.isEmpty()) {
+                            _state.update {
+                                it.copy(
+                                    isLoading = false,
+                                    error = error.message ?: "Не удалось загрузить"
+                                )
+                            }
+                        } else {
+                            _state.update { it.copy(isLoading = false) }
+                        }
+                        Timber.e(error, "Dashboard load failed")
+                    }
+            }
+
+            val emotionalState = emotionalStateDeferred.await().getOrNull()
+            val memorySummary = memorySummaryDeferred.await().getOrNull()
+            _state.update {
+                it.copy(
+                    emotionalState = emotionalState ?: it.emotionalState,
+                    memorySummary = memorySummary ?: it.memorySummary
+                )
+            }
         }
     }
 
@@ -3,6 +3,7 @@ package com.health.companion.presentation.screens.documents
 import android.Manifest
 import android.content.Intent
 import android.net.Uri
+import android.os.SystemClock
 import androidx.activity.compose.rememberLauncherForActivityResult
 import androidx.compose.material.icons.automirrored.filled.ArrowBack
 import androidx.compose.ui.viewinterop.AndroidView
@@ -58,6 +59,8 @@ import androidx.compose.ui.platform.LocalDensity
 import androidx.compose.ui.unit.IntOffset
 import androidx.compose.ui.unit.IntSize
 import androidx.compose.ui.unit.sp
+import com.health.companion.presentation.components.AnimationPriority
+import com.health.companion.presentation.components.rememberGovernedTransition
 import kotlinx.coroutines.launch
 import kotlin.math.roundToInt
 import androidx.compose.ui.window.Dialog
@@ -66,6 +69,7 @@ import androidx.compose.ui.layout.onSizeChanged
 import androidx.hilt.navigation.compose.hiltViewModel
 import coil.compose.AsyncImage
 import coil.compose.SubcomposeAsyncImage
+import coil.imageLoader
 import coil.request.ImageRequest
 import com.google.accompanist.permissions.ExperimentalPermissionsApi
 import com.google.accompanist.permissions.isGranted
@@ -75,12 +79,17 @@ import com.health.companion.data.remote.api.DocumentResponse
 import com.health.companion.presentation.components.GlassCard
 import com.health.companion.presentation.components.GlassTheme
 import com.health.companion.presentation.components.GlassGradients
+import com.health.companion.utils.ImageClass
+import com.health.companion.utils.ThumbnailPrefetcher
+import com.health.companion.utils.ThumbnailSize
+import com.health.companion.utils.imageClass
 import kotlinx.coroutines.delay
 import java.time.Instant
 import java.time.format.DateTimeParseException
 
 // Base host for constructing full URLs from relative paths
 private val API_HOST = BuildConfig.API_BASE_URL.substringBefore("/api/")  // http://46.17.99.76:8000
+private val THUMB_SIZE = 44.dp
 
 // Helper functions to construct document URLs
 // Backend returns relative paths like "/api/v1/documents/{id}/thumbnail"
@@ -235,6 +244,54 @@ fun DocumentsScreen(
                             if (listState.isScrollInProgress) currentRevealedId = null
                         }
                         
+                        // Префетч миниатюр по видимому окну и скорости прокрутки
+                        val imageLoader = context.imageLoader
+                        val prefetcher = remember(imageLoader) { ThumbnailPrefetcher(context, imageLoader) }
+                        val thumbBucketPx = with(LocalDensity.current) { ThumbnailSize.bucket(THUMB_SIZE.roundToPx()) }
+                        DisposableEffect(prefetcher) {
+                            onDispose { prefetcher.cancelAll() }
+                        }
+                        LaunchedEffect(prefetcher, visibleDocuments, pendingUploads.size, thumbBucketPx) {
+                            val offset = pendingUploads.size
+                            var lastPosition = 0f
+                            var lastTime = 0L
+                            var velocity = 0f
+                            snapshotFlow {
+                                val visible = listState.layoutInfo.visibleItemsInfo
+                                val firstSize = visible.firstOrNull()?.size?.coerceAtLeast(1) ?: 1
+                                ListViewport(
+                                    position = listState.firstVisibleItemIndex +
+                                        listState.firstVisibleItemScrollOffset.toFloat() / firstSize,
+                                    first = visible.firstOrNull()?.index ?: 0,
+                                    last = visible.lastOrNull()?.index ?: -1,
+                                    isScrolling = listState.isScrollInProgress
+                                )
+                            }.collect { viewport ->
+                                val time = SystemClock.uptimeMillis()
+                                // Скорость в элементах/сек, сглаженная; в покое — ноль
+                                velocity = if (!viewport.isScrolling) {
+                                    0f
+                                } else if (lastTime != 0L) {
+                                    val dt = (time - lastTime).coerceAtLeast(1L) / 1000f
+                                    velocity * 0.6f + (viewport.position - lastPosition) / dt * 0.4f
+                                } else velocity
+                                lastPosition = viewport.position
+                                lastTime = time
+                                
+                                prefetcher.onViewport(
+                                    firstVisible = viewport.first,
+                                    lastVisible = viewport.last,
+                                    itemCount = listState.layoutInfo.totalItemsCount,
+                                    velocity = velocity,
+                                    bucketPx = thumbBucketPx
+                                ) { index ->
+                                    visibleDocuments.getOrNull(index - offset)
+                                        ?.takeIf { it.mimeType?.startsWith("image/") == true }
+                                        ?.getThumbnailUrl()
+                                }
+                            }
+                        }
+                        
                         // Автообновление пока есть документы без smartTitle
                         val hasProcessingDocs = visibleDocuments.any { viewModel.isAwaitingAiProcessing(it, now) }
                         LaunchedEffect(hasProcessingDocs) {
@@ -473,7 +530,7 @@ private fun CompactDocCard(
     val isImage = document.mimeType?.startsWith("image/") == true
     
     // Анимация для обработки
-    val infiniteTransition = rememberInfiniteTransition(label = "proc")
+    val infiniteTransition = rememberGovernedTransition(label = "proc", priority = AnimationPriority.ESSENTIAL)
     val pulseAlpha by infiniteTransition.animateFloat(
         initialValue = 0.5f,
         targetValue = 1f,
@@ -543,18 +600,22 @@ private fun CompactDocCard(
             // Иконка/thumbnail слева — блок маленький, иконка БОЛЬШАЯ внутри!
             Box(
                 modifier = Modifier
-                    .size(44.dp)
+                    .size(THUMB_SIZE)
                     .clip(RoundedCornerShape(10.dp))
                     .background(tint.copy(alpha = 0.15f)),
                 contentAlignment = Alignment.Center
             ) {
                 if (isImage) {
-                    SubcomposeAsyncImage(
-                        model = ImageRequest.Builder(context)
-                            .data(thumbUrl)
+                    // Тот же размер и ключ, что у ThumbnailPrefetcher — префетч попадает в memory cache
+                    val bucketPx = with(LocalDensity.current) { ThumbnailSize.bucket(THUMB_SIZE.roundToPx()) }
+                    val request = remember(thumbUrl, bucketPx, token) {
+                        ThumbnailSize.request(context, thumbUrl, bucketPx)
                             .crossfade(100)
                             .setHeader("Authorization", "Bearer ${token ?: ""}")
-                            .build(),
+                            .build()
+                    }
+                    SubcomposeAsyncImage(
+                        model = request,
                         contentDescription = null,
                         modifier = Modifier
                             .fillMaxSize()
@@ -941,7 +1002,7 @@ private fun UploadingDocumentItem(
     onRetry: () -> Unit,
     onCancel: () -> Unit
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "upload")
+    val infiniteTransition = rememberGovernedTransition(label = "upload", priority = AnimationPriority.ESSENTIAL)
     
     // Shimmer эффект для загрузки
     val shimmerOffset by infiniteTransition.animateFloat(
@@ -1025,11 +1086,20 @@ private fun UploadingDocumentItem(
                             modifier = Modifier.size(26.dp)
                         )
                     } else {
-                        CircularProgressIndicator(
-                            modifier = Modifier.size(24.dp),
-                            color = Color(0xFF6366F1),
-                            strokeWidth = 2.5.dp
-                        )
+                        if (pending.progress > 0f) {
+                            CircularProgressIndicator(
+                                progress = { pending.progress },
+                                modifier = Modifier.size(24.dp),
+                                color = Color(0xFF6366F1),
+                                strokeWidth = 2.5.dp
+                            )
+                        } else {
+                            CircularProgressIndicator(
+                                modifier = Modifier.size(24.dp),
+                                color = Color(0xFF6366F1),
+                                strokeWidth = 2.5.dp
+                            )
+                        }
                     }
                 }
                 
@@ -1059,7 +1129,11 @@ private fun UploadingDocumentItem(
                             )
                         } else {
                             Text(
-                                text = "Загрузка на сервер...",
+                                text = if (pending.progress > 0f) {
+                                    "Загрузка на сервер... ${(pending.progress * 100).toInt()}%"
+                                } else {
+                                    "Загрузка на сервер..."
+                                },
                                 style = MaterialTheme.typography.labelSmall,
                                 color = Color(0xFF6366F1),
                                 fontSize = 11.sp
@@ -1143,7 +1217,7 @@ private fun GlassDocumentItemV2(
     val isProcessing = isAwaitingAi
     
     // Анимация для обработки
-    val infiniteTransition = rememberInfiniteTransition(label = "processing")
+    val infiniteTransition = rememberGovernedTransition(label = "processing", priority = AnimationPriority.ESSENTIAL)
     val shimmerOffset by infiniteTransition.animateFloat(
         initialValue = 0f,
         targetValue = 1f,
@@ -1204,20 +1278,21 @@ private fun GlassDocumentItemV2(
             // Thumbnail — блок 44dp, иконка БОЛЬШАЯ внутри!
             Box(
                 modifier = Modifier
-                    .size(44.dp)
+                    .size(THUMB_SIZE)
                     .clip(RoundedCornerShape(10.dp))
                     .background(tint.copy(alpha = 0.15f)),
                 contentAlignment = Alignment.Center
             ) {
                 if (isImage) {
-                    SubcomposeAsyncImage(
-                        model = ImageRequest.Builder(context)
-                            .data(thumbnailUrl)
+                    val bucketPx = with(LocalDensity.current) { ThumbnailSize.bucket(THUMB_SIZE.roundToPx()) }
+                    val request = remember(thumbnailUrl, bucketPx, authToken) {
+                        ThumbnailSize.request(context, thumbnailUrl, bucketPx)
                             .crossfade(150)
-                            .memoryCacheKey(thumbnailUrl)
-                            .diskCacheKey(thumbnailUrl)
                             .setHeader("Authorization", "Bearer ${authToken ?: ""}")
-                            .build(),
+                            .build()
+                    }
+                    SubcomposeAsyncImage(
+                        model = request,
                         contentDescription = displayName,
                         modifier = Modifier
                             .fillMaxSize()
@@ -1338,7 +1413,7 @@ private fun GlassStatusChip(status: String, showReady: Boolean) {
 
 @Composable
 private fun DocumentSkeletonItem() {
-    val transition = rememberInfiniteTransition(label = "skeleton")
+    val transition = rememberGovernedTransition(label = "skeleton", priority = AnimationPriority.ESSENTIAL)
     val alpha by transition.animateFloat(
         initialValue = 0.3f,
         targetValue = 0.7f,
@@ -1601,8 +1676,7 @@ private fun ImagePreviewDialog(
                 model = ImageRequest.Builder(context)
                     .data(imageUrl)
                     .crossfade(150)
-                    .memoryCacheKey(imageUrl)
-                    .diskCacheKey(imageUrl)
+                    .imageClass(ImageClass.CHAT_PHOTO, imageUrl)
                     .setHeader("Authorization", "Bearer ${authToken ?: ""}")
                     .build(),
                 contentDescription = title,
@@ -1921,3 +1995,13 @@ private fun PdfPreviewDialog(
         }
     }
 }
+
+/**
+ * Снимок видимого окна списка документов для префетча миниатюр
+ */
+private data class ListViewport(
+    val position: Float,
+    val first: Int,
+    val last: Int,
+    val isScrolling: Boolean
+)
@@ -15,12 +15,11 @@ import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.isActive
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import timber.log.Timber
-import com.health.companion.utils.ImagePreloader
-import com.health.companion.BuildConfig
 import java.io.File
 import java.text.SimpleDateFormat
 import java.time.Instant
@@ -67,6 +66,25 @@ class DocumentsViewModel @Inject constructor(
     init {
         loadDocuments()
         loadAuthToken()
+        observeUploadProgress()
+    }
+
+    /** Прогресс из репозитория → PendingUpload.progress */
+    private fun observeUploadProgress() {
+        viewModelScope.launch {
+            documentRepository.uploadProgress.collect { progress ->
+                _pendingUploads.update { pending ->
+                    pending.map { upload ->
+                        val fraction = progress[upload.uri]
+                        if (fraction != null && upload.status == UploadStatus.UPLOADING) {
+                            upload.copy(progress = fraction)
+                        } else {
+                            upload
+                        }
+                    }
+                }
+            }
+        }
     }
 
     private fun loadAuthToken() {
@@ -87,9 +105,6 @@ class DocumentsViewModel @Inject constructor(
                     ensureUploadTimes(docs)
                     handlePolling(docs)
                     _uiState.value = DocumentsUiState.Idle
-                    
-                    // Предзагружаем thumbnails в кэш для мгновенного отображения
-                    preloadThumbnails(docs)
                 }.onFailure { e ->
                     Timber.e(e, "DocumentsViewModel: Failed to load documents - ${e.message}")
                     _uiState.value = DocumentsUiState.Error(e.message ?: "Failed to load documents")
@@ -339,7 +354,7 @@ class DocumentsViewModel @Inject constructor(
         
         // Сбрасываем статус
         _pendingUploads.value = _pendingUploads.value.map {
-            if (it.id == pendingId) it.copy(status = UploadStatus.UPLOADING, error = null)
+            if (it.id == pendingId) it.copy(status = UploadStatus.UPLOADING, progress = 0f, error = null)
             else it
         }
         
@@ -469,28 +484,6 @@ class DocumentsViewModel @Inject constructor(
         return diff < twoMinutes
     }
     
-    /**
-     * Предзагружает thumbnails документов в кэш для мгновенного отображения
-     */
-    private fun preloadThumbnails(docs: List<DocumentResponse>) {
-        viewModelScope.launch {
-            val token = tokenManager.getAccessToken()
-            val apiHost = BuildConfig.API_BASE_URL.substringBefore("/api/")
-            
-            val thumbnailUrls = docs
-                .filter { it.mimeType?.startsWith("image/") == true }
-                .take(20) // Первые 20 изображений
-                .mapNotNull { doc ->
-                    doc.thumbnailUrl?.let { "$apiHost$it" }
-                        ?: "${BuildConfig.API_BASE_URL}/documents/${doc.id}/thumbnail"
-                }
-            
-            if (thumbnailUrls.isNotEmpty()) {
-                ImagePreloader.preloadImages(context, thumbnailUrls, token)
-            }
-        }
-    }
-
     private fun ensureUploadTimes(docs: List<DocumentResponse>) {
         docs.forEach { doc ->
             if (!localUploadTimes.containsKey(doc.id)) {
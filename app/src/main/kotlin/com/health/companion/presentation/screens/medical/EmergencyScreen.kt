@@ -119,7 +119,7 @@ private fun EmergencyNumbersCard(
     emergencyInfo: EmergencyInfoResponse?,
     onCall: (String) -> Unit
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "pulse")
+    val infiniteTransition = rememberGovernedTransition(label = "pulse", priority = AnimationPriority.DECORATIVE)
     val pulseScale by infiniteTransition.animateFloat(
         initialValue = 1f,
         targetValue = 1.02f,
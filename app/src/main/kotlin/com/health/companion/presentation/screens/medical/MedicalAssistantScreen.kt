@@ -128,7 +128,7 @@ fun MedicalAssistantScreen(
 
 @Composable
 private fun MedicalHeader() {
-    val infiniteTransition = rememberInfiniteTransition(label = "header")
+    val infiniteTransition = rememberGovernedTransition(label = "header", priority = AnimationPriority.DECORATIVE)
     val pulseScale by infiniteTransition.animateFloat(
         initialValue = 1f,
         targetValue = 1.05f,
@@ -350,7 +350,7 @@ private fun EmergencyCard(
     emergencyInfo: com.health.companion.data.remote.api.EmergencyInfoResponse?,
     onClick: () -> Unit
 ) {
-    val infiniteTransition = rememberInfiniteTransition(label = "emergency")
+    val infiniteTransition = rememberGovernedTransition(label = "emergency", priority = AnimationPriority.DECORATIVE)
     val pulseAlpha by infiniteTransition.animateFloat(
         initialValue = 0.5f,
         targetValue = 1f,
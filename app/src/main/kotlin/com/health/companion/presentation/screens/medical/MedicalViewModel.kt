@@ -171,14 +171,15 @@ class MedicalViewModel @Inject constructor(
             _isLoading.value = true
             _error.value = null
             
-            repository.getRecommendations(focusArea)
-                .onSuccess { _recommendations.value = it }
-                .onFailure { 
-                    _error.value = it.message
-                    Timber.e(it, "Failed to load recommendations")
-                }
-            
-            _isLoading.value = false
+            repository.observeRecommendations(focusArea).collect { result ->
+                result
+                    .onSuccess { _recommendations.value = it }
+                    .onFailure { 
+                        _error.value = it.message
+                        Timber.e(it, "Failed to load recommendations")
+                    }
+                _isLoading.value = false
+            }
         }
     }
     
@@ -186,9 +187,11 @@ class MedicalViewModel @Inject constructor(
     
     fun loadEmergencyInfo() {
         viewModelScope.launch {
-            repository.getEmergencyInfo()
-                .onSuccess { _emergencyInfo.value = it }
-                .onFailure { Timber.e(it, "Failed to load emergency info") }
+            repository.observeEmergencyInfo().collect { result ->
+                result
+                    .onSuccess { _emergencyInfo.value = it }
+                    .onFailure { Timber.e(it, "Failed to load emergency info") }
+            }
         }
     }
     
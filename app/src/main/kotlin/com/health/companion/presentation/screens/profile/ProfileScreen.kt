@@ -109,7 +109,7 @@ fun ProfileScreen(
 
 @Composable
 private fun ProfileHeader(profile: UserProfile?, isLoading: Boolean) {
-    val infiniteTransition = rememberInfiniteTransition(label = "avatar")
+    val infiniteTransition = rememberGovernedTransition(label = "avatar", priority = AnimationPriority.DECORATIVE)
     val glowAlpha by infiniteTransition.animateFloat(
         initialValue = 0.3f,
         targetValue = 0.7f,
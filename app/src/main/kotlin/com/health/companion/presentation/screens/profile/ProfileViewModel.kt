@@ -68,14 +68,16 @@ class ProfileViewModel @Inject constructor(
             _isLoading.value = true
             _error.value = null
             
-            repository.getProfile()
-                .onSuccess { _profile.value = it }
-                .onFailure { 
-                    Timber.e(it, "Failed to load profile")
-                    _error.value = it.message
-                }
-            
-            _isLoading.value = false
+            // Кэш с диска приходит первым — спиннер снимаем сразу после него
+            repository.observeProfile().collect { result ->
+                result
+                    .onSuccess { _profile.value = it }
+                    .onFailure { 
+                        Timber.e(it, "Failed to load profile")
+                        _error.value = it.message
+                    }
+                _isLoading.value = false
+            }
         }
     }
     
@@ -83,9 +85,11 @@ class ProfileViewModel @Inject constructor(
     
     fun loadQuestionnaire(section: String? = null) {
         viewModelScope.launch {
-            repository.getQuestionnaire(section)
-                .onSuccess { _questionnaire.value = it }
-                .onFailure { Timber.e(it, "Failed to load questionnaire") }
+            repository.observeQuestionnaire(section).collect { result ->
+                result
+                    .onSuccess { _questionnaire.value = it }
+                    .onFailure { Timber.e(it, "Failed to load questionnaire") }
+            }
         }
     }
     
@@ -135,9 +139,11 @@ class ProfileViewModel @Inject constructor(
     
     fun loadImportantDates() {
         viewModelScope.launch {
-            repository.getImportantDates()
-                .onSuccess { _importantDates.value = it }
-                .onFailure { Timber.e(it, "Failed to load important dates") }
+            repository.observeImportantDates().collect { result ->
+                result
+                    .onSuccess { _importantDates.value = it }
+                    .onFailure { Timber.e(it, "Failed to load important dates") }
+            }
         }
     }
     
@@ -166,9 +172,11 @@ class ProfileViewModel @Inject constructor(
     
     fun loadImportantPeople() {
         viewModelScope.launch {
-            repository.getImportantPeople()
-                .onSuccess { _importantPeople.value = it }
-                .onFailure { Timber.e(it, "Failed to load important people") }
+            repository.observeImportantPeople().collect { result ->
+                result
+                    .onSuccess { _importantPeople.value = it }
+                    .onFailure { Timber.e(it, "Failed to load important people") }
+            }
         }
     }
     
@@ -197,9 +205,11 @@ class ProfileViewModel @Inject constructor(
     
     fun loadPatterns() {
         viewModelScope.launch {
-            repository.getLifePatterns()
-                .onSuccess { _patterns.value = it }
-                .onFailure { Timber.e(it, "Failed to load patterns") }
+            repository.observeLifePatterns().collect { result ->
+                result
+                    .onSuccess { _patterns.value = it }
+                    .onFailure { Timber.e(it, "Failed to load patterns") }
+            }
         }
     }
     
@@ -27,7 +27,10 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.hilt.navigation.compose.hiltViewModel
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import coil.imageLoader
+import com.health.companion.BuildConfig
 import com.health.companion.presentation.components.GlassTheme
+import com.health.companion.utils.TieredMemoryCache
 
 @Composable
 fun SettingsScreen(
@@ -239,6 +242,59 @@ fun SettingsScreen(
             }
         }
 
+        // Диагностика кэшей изображений и озвучки — только в debug-сборке
+        if (BuildConfig.DEBUG_MODE) {
+            var imageCacheStats by remember { mutableStateOf<String?>(null) }
+            GlassCard(
+                modifier = Modifier.fillMaxWidth(),
+                onClick = {
+                    imageCacheStats = (context.imageLoader.memoryCache as? TieredMemoryCache)
+                        ?.diagnostics()
+                        ?: "Кэш без классов"
+                }
+            ) {
+                Column(
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(14.dp)
+                ) {
+                    Text(
+                        text = "Кэш изображений",
+                        style = MaterialTheme.typography.bodyMedium,
+                        color = GlassTheme.textPrimary
+                    )
+                    Text(
+                        text = imageCacheStats ?: "Нажмите, чтобы обновить",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = GlassTheme.textSecondary
+                    )
+                }
+            }
+
+            val ttsCacheStats by viewModel.ttsCacheStats.collectAsStateWithLifecycle()
+            GlassCard(
+                modifier = Modifier.fillMaxWidth(),
+                onClick = viewModel::refreshTtsCacheStats
+            ) {
+                Column(
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(14.dp)
+                ) {
+                    Text(
+                        text = "Кэш озвучки",
+                        style = MaterialTheme.typography.bodyMedium,
+                        color = GlassTheme.textPrimary
+                    )
+                    Text(
+                        text = ttsCacheStats ?: "Нажмите, чтобы обновить",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = GlassTheme.textSecondary
+                    )
+                }
+            }
+        }
+
         Spacer(modifier = Modifier.height(8.dp))
 
         // Logout Button
@@ -3,15 +3,19 @@ package com.health.companion.presentation.screens.settings
 import android.content.Context
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.health.companion.data.local.CacheStore
+import com.health.companion.data.local.TtsAudioCache
 import com.health.companion.data.repositories.AuthRepository
 import com.health.companion.data.repositories.ChatRepository
 import com.health.companion.utils.TokenManager
 import dagger.hilt.android.lifecycle.HiltViewModel
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import timber.log.Timber
 import javax.inject.Inject
 
@@ -20,6 +24,8 @@ class SettingsViewModel @Inject constructor(
     private val authRepository: AuthRepository,
     private val chatRepository: ChatRepository,
     private val tokenManager: TokenManager,
+    private val cacheStore: CacheStore,
+    private val ttsAudioCache: TtsAudioCache,
     @ApplicationContext private val context: Context
 ) : ViewModel() {
 
@@ -32,6 +38,10 @@ class SettingsViewModel @Inject constructor(
     private val _userEmail = MutableStateFlow("—")
     val userEmail: StateFlow<String> = _userEmail.asStateFlow()
 
+    // Диагностика кэша озвучки (debug): null — ещё не запрашивали
+    private val _ttsCacheStats = MutableStateFlow<String?>(null)
+    val ttsCacheStats: StateFlow<String?> = _ttsCacheStats.asStateFlow()
+
     init {
         loadUserProfile()
     }
@@ -59,6 +69,7 @@ class SettingsViewModel @Inject constructor(
             try {
                 // Clear local chat data first
                 chatRepository.clearAllLocalData()
+                cacheStore.clear()
                 chatRepository.disconnectWebSocket()
                 
                 // Then logout from server
@@ -69,11 +80,23 @@ class SettingsViewModel @Inject constructor(
                 Timber.e(e, "Logout failed")
                 // Still clear tokens and local data on error
                 try { chatRepository.clearAllLocalData() } catch (_: Exception) {}
+                try { cacheStore.clear() } catch (_: Exception) {}
                 tokenManager.clearTokens()
             }
         }
     }
 
+    fun refreshTtsCacheStats() {
+        viewModelScope.launch {
+            // stats() обходит каталог кэша — не на главном потоке
+            val stats = withContext(Dispatchers.IO) { ttsAudioCache.stats() }
+            _ttsCacheStats.value =
+                "${stats.entries} фраз, ${stats.sizeBytes / 1024} KB, " +
+                    "hit ${stats.hits}, miss ${stats.misses} (${(stats.hitRate * 100).toInt()}%), " +
+                    "сэкономлено ${stats.bytesServed / 1024} KB, evict ${stats.evicted}, битых ${stats.corrupted}"
+        }
+    }
+
     fun clearState() {
         _uiState.value = SettingsUiState.Idle
     }
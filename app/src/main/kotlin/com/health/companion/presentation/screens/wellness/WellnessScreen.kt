@@ -315,7 +315,7 @@ private fun GlassPanel(
 
 @Composable
 private fun GlassLoadingIndicator() {
-    val infiniteTransition = rememberInfiniteTransition(label = "loading")
+    val infiniteTransition = rememberGovernedTransition(label = "loading", priority = AnimationPriority.ESSENTIAL)
     val rotation by infiniteTransition.animateFloat(
         initialValue = 0f,
         targetValue = 360f,
@@ -565,7 +565,7 @@ private fun MoodOrb(
 ) {
     val color = WellnessTheme.moodColors.getOrElse(level - 1) { WellnessTheme.accentPurple }
     
-    val infiniteTransition = rememberInfiniteTransition(label = "orb")
+    val infiniteTransition = rememberGovernedTransition(label = "orb", priority = AnimationPriority.DECORATIVE)
     val glowAlpha by infiniteTransition.animateFloat(
         initialValue = 0.3f,
         targetValue = 0.6f,
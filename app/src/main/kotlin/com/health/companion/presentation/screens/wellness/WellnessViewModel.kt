@@ -83,27 +83,33 @@ class WellnessViewModel @Inject constructor(
     // ==================== MOOD ====================
     
     private suspend fun loadMoodToday() {
-        wellnessRepository.getMoodToday().onSuccess { response ->
-            _isMoodRecordedToday.value = response.recorded
-            _moodToday.value = response.entry
-        }.onFailure { e ->
-            Timber.e(e, "Failed to load mood today")
+        wellnessRepository.observeMoodToday().collect { result ->
+            result.onSuccess { response ->
+                _isMoodRecordedToday.value = response.recorded
+                _moodToday.value = response.entry
+            }.onFailure { e ->
+                Timber.e(e, "Failed to load mood today")
+            }
         }
     }
     
     private suspend fun loadMoodHistory(days: Int = 30) {
-        wellnessRepository.getMoodHistory(days).onSuccess { entries ->
-            _moodHistory.value = entries
-        }.onFailure { e ->
-            Timber.e(e, "Failed to load mood history")
+        wellnessRepository.observeMoodHistory(days).collect { result ->
+            result.onSuccess { entries ->
+                _moodHistory.value = entries
+            }.onFailure { e ->
+                Timber.e(e, "Failed to load mood history")
+            }
         }
     }
     
     private suspend fun loadMoodStats(days: Int = 30) {
-        wellnessRepository.getMoodStats(days).onSuccess { stats ->
-            _moodStats.value = stats
-        }.onFailure { e ->
-            Timber.e(e, "Failed to load mood stats")
+        wellnessRepository.observeMoodStats(days).collect { result ->
+            result.onSuccess { stats ->
+                _moodStats.value = stats
+            }.onFailure { e ->
+                Timber.e(e, "Failed to load mood stats")
+            }
         }
     }
     
@@ -150,18 +156,22 @@ class WellnessViewModel @Inject constructor(
     // ==================== HABITS ====================
     
     private suspend fun loadHabits() {
-        wellnessRepository.getHabits().onSuccess { habitsList ->
-            _habits.value = habitsList.sortedBy { !it.completedToday }
-        }.onFailure { e ->
-            Timber.e(e, "Failed to load habits")
+        wellnessRepository.observeHabits().collect { result ->
+            result.onSuccess { habitsList ->
+                _habits.value = habitsList.sortedBy { !it.completedToday }
+            }.onFailure { e ->
+                Timber.e(e, "Failed to load habits")
+            }
         }
     }
     
     private suspend fun loadHabitsStats() {
-        wellnessRepository.getHabitsStats().onSuccess { stats ->
-            _habitsStats.value = stats
-        }.onFailure { e ->
-            Timber.e(e, "Failed to load habits stats")
+        wellnessRepository.observeHabitsStats().collect { result ->
+            result.onSuccess { stats ->
+                _habitsStats.value = stats
+            }.onFailure { e ->
+                Timber.e(e, "Failed to load habits stats")
+            }
         }
     }
     
@@ -296,10 +306,12 @@ class WellnessViewModel @Inject constructor(
     // ==================== DIGEST ====================
     
     private suspend fun loadDigestPreview() {
-        wellnessRepository.getDigestPreview().onSuccess { digest ->
-            _dailyDigest.value = digest
-        }.onFailure { e ->
-            Timber.e(e, "Failed to load digest preview")
+        wellnessRepository.observeDigestPreview().collect { result ->
+            result.onSuccess { digest ->
+                _dailyDigest.value = digest
+            }.onFailure { e ->
+                Timber.e(e, "Failed to load digest preview")
+            }
         }
     }
     
@@ -0,0 +1,118 @@
+package com.health.companion.services
+
+import android.content.Context
+import androidx.hilt.work.HiltWorker
+import androidx.work.CoroutineWorker
+import androidx.work.WorkerParameters
+import com.health.companion.data.local.database.OutboxOperationEntity
+import com.health.companion.data.remote.api.ChatApi
+import com.health.companion.data.remote.api.CompleteHabitRequest
+import com.health.companion.data.remote.api.HealthApi
+import com.health.companion.data.remote.api.ManualMetricRequest
+import com.health.companion.data.remote.api.MoodEntryRequest
+import com.health.companion.data.remote.api.MoodRequest
+import com.health.companion.data.remote.api.UpdateConversationRequest
+import com.health.companion.data.remote.api.WellnessApi
+import com.health.companion.data.repositories.ChatRepository
+import com.health.companion.data.repositories.OutboxOperationType
+import com.health.companion.data.repositories.OutboxRepository
+import com.health.companion.data.repositories.QueuedChatMessage
+import com.health.companion.data.repositories.QueuedHabitCompletion
+import dagger.assisted.Assisted
+import dagger.assisted.AssistedInject
+import kotlinx.coroutines.CancellationException
+import kotlinx.serialization.json.Json
+import retrofit2.HttpException
+import timber.log.Timber
+
+/**
+ * Отправляет операции из outbox пачками и строго по порядку.
+ * Запускается WorkManager-ом только при наличии сети; при первой временной
+ * ошибке останавливается и просит retry с backoff, чтобы не нарушить порядок.
+ */
+@HiltWorker
+class OutboxWorker @AssistedInject constructor(
+    @Assisted context: Context,
+    @Assisted params: WorkerParameters,
+    private val outboxRepository: OutboxRepository,
+    private val chatRepository: ChatRepository,
+    private val chatApi: ChatApi,
+    private val wellnessApi: WellnessApi,
+    private val healthApi: HealthApi
+) : CoroutineWorker(context, params) {
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    override suspend fun doWork(): Result {
+        try {
+            while (true) {
+                val batch = outboxRepository.nextBatch(BATCH_SIZE)
+                if (batch.isEmpty()) return Result.success()
+                Timber.d("Outbox: flushing batch of ${batch.size}")
+
+                for (operation in batch) {
+                    val error = runCatching { dispatch(operation) }.exceptionOrNull()
+                    // Остановка воркера — не попытка доставки: не считаем и не выбрасываем операцию
+                    if (error is CancellationException) throw error
+                    when {
+                        error == null -> outboxRepository.markDelivered(operation)
+                        isPermanent(error) || operation.attempts + 1 >= MAX_ATTEMPTS ->
+                            outboxRepository.markDropped(operation, error)
+                        else -> {
+                            Timber.w(error, "Outbox: ${operation.type} failed, will retry")
+                            outboxRepository.markFailed(operation, error)
+                            return Result.retry()
+                        }
+                    }
+                }
+            }
+        } finally {
+            outboxRepository.onFlushFinished()
+        }
+    }
+
+    private suspend fun dispatch(operation: OutboxOperationEntity) {
+        when (OutboxOperationType.valueOf(operation.type)) {
+            OutboxOperationType.CHAT_MESSAGE -> {
+                val message = json.decodeFromString<QueuedChatMessage>(operation.payload)
+                val conversationId = operation.targetId ?: message.localConversationId
+                val serverConversationId = chatRepository.deliverQueuedMessage(message, conversationId).getOrThrow()
+                if (serverConversationId != conversationId) {
+                    outboxRepository.remapConversation(conversationId, serverConversationId)
+                }
+            }
+            OutboxOperationType.WELLNESS_MOOD ->
+                wellnessApi.recordMood(json.decodeFromString<MoodRequest>(operation.payload))
+            OutboxOperationType.HEALTH_MOOD ->
+                healthApi.submitMoodEntry(json.decodeFromString<MoodEntryRequest>(operation.payload))
+            OutboxOperationType.HABIT_COMPLETE -> {
+                val completion = json.decodeFromString<QueuedHabitCompletion>(operation.payload)
+                wellnessApi.completeHabit(completion.habitId, CompleteHabitRequest(note = completion.note))
+            }
+            OutboxOperationType.HEALTH_METRIC ->
+                healthApi.addManualMetric(json.decodeFromString<ManualMetricRequest>(operation.payload))
+            OutboxOperationType.CONVERSATION_FLAGS -> {
+                val conversationId = requireNotNull(operation.targetId) { "Conversation flags without target" }
+                chatApi.updateConversation(
+                    conversationId,
+                    json.decodeFromString<UpdateConversationRequest>(operation.payload)
+                )
+            }
+        }
+    }
+
+    /**
+     * 4xx (кроме 408/429) повторять бесполезно — запрос отклонён сервером
+     */
+    private fun isPermanent(error: Throwable): Boolean {
+        if (error is IllegalArgumentException) return true // битый payload / неизвестный type
+        val code = (error as? HttpException)?.code() ?: return false
+        return code in 400..499 && code != 408 && code != 429
+    }
+
+    companion object {
+        const val WORK_NAME = "outbox_flush"
+        private const val BATCH_SIZE = 20
+        private const val MAX_ATTEMPTS = 8
+    }
+}
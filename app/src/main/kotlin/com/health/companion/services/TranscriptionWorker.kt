@@ -0,0 +1,77 @@
+package com.health.companion.services
+
+import android.content.Context
+import androidx.hilt.work.HiltWorker
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import com.health.companion.data.repositories.VoiceRepository
+import dagger.assisted.Assisted
+import dagger.assisted.AssistedInject
+import timber.log.Timber
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Распознаёт голосовую запись, которую не удалось отправить сразу.
+ * Запускается только при наличии сети; загрузка продолжается с принятого
+ * сервером смещения, так что повтор не шлёт запись заново
+ */
+@HiltWorker
+class TranscriptionWorker @AssistedInject constructor(
+    @Assisted context: Context,
+    @Assisted params: WorkerParameters,
+    private val voiceRepository: VoiceRepository
+) : CoroutineWorker(context, params) {
+
+    override suspend fun doWork(): Result {
+        val file = inputData.getString(KEY_FILE)?.let(::File)
+        if (file == null || !file.exists()) return Result.success()
+        val language = inputData.getString(KEY_LANGUAGE) ?: "ru"
+        val mimeType = inputData.getString(KEY_MIME_TYPE) ?: "audio/mp4"
+
+        val error = voiceRepository.transcribeDeferred(file, language, mimeType).exceptionOrNull()
+            ?: return Result.success()
+        if (VoiceRepository.isRetryable(error) && runAttemptCount + 1 < MAX_ATTEMPTS) {
+            Timber.w(error, "Deferred transcription failed, will retry")
+            return Result.retry()
+        }
+        Timber.e(error, "Deferred transcription dropped after ${runAttemptCount + 1} attempts")
+        file.delete()
+        return Result.failure()
+    }
+
+    companion object {
+        private const val KEY_FILE = "file"
+        private const val KEY_LANGUAGE = "language"
+        private const val KEY_MIME_TYPE = "mime_type"
+        private const val MAX_ATTEMPTS = 8
+        private const val BACKOFF_SECONDS = 30L
+
+        fun enqueue(context: Context, file: File, language: String, mimeType: String) {
+            val request = OneTimeWorkRequestBuilder<TranscriptionWorker>()
+                .setInputData(
+                    workDataOf(
+                        KEY_FILE to file.absolutePath,
+                        KEY_LANGUAGE to language,
+                        KEY_MIME_TYPE to mimeType
+                    )
+                )
+                .setConstraints(
+                    Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build()
+                )
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context)
+                .enqueueUniqueWork("transcription_${file.name}", ExistingWorkPolicy.KEEP, request)
+        }
+    }
+}
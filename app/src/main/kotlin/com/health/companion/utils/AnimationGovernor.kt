@@ -0,0 +1,174 @@
+package com.health.companion.utils
+
+import android.app.Activity
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.PowerManager
+import android.provider.Settings
+import androidx.core.content.ContextCompat
+import androidx.metrics.performance.JankStats
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import timber.log.Timber
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Уровень анимаций, который может себе позволить устройство прямо сейчас
+ */
+enum class AnimationLevel {
+    FULL,    // Все анимации
+    REDUCED, // Только функциональные индикаторы, декор — статичный
+    STATIC   // Всё статично
+}
+
+/**
+ * Бюджет анимаций: следит за временем кадров (JankStats), режимом энергосбережения
+ * и температурой устройства и понижает [level], когда анимациям стоит уступить.
+ *
+ * Анимации на экране регистрируются через [register] — пока ни одной нет,
+ * JankStats не трекает кадры, чтобы не штрафовать уровень за чужой jank
+ */
+@Singleton
+class AnimationGovernor @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+    private val powerManager = context.getSystemService(PowerManager::class.java)
+
+    private val _level = MutableStateFlow(AnimationLevel.FULL)
+    val level: StateFlow<AnimationLevel> = _level.asStateFlow()
+
+    private val activeAnimations = ConcurrentHashMap<String, AtomicInteger>()
+
+    @Volatile private var isPowerSave = powerManager.isPowerSaveMode
+    @Volatile private var thermalStatus = powerManager.currentThermalStatus
+    @Volatile private var animationsDisabled = false
+    @Volatile private var isJanky = false
+    private var jankDegradedAt = 0L
+
+    // Окно кадров для оценки доли jank; трогается только из колбэка JankStats
+    private var windowFrames = 0
+    private var windowJankFrames = 0
+
+    private var jankStats: JankStats? = null
+    private var isResumed = false
+
+    private val thermalListener = PowerManager.OnThermalStatusChangedListener { status ->
+        thermalStatus = status
+        recompute()
+    }
+
+    private val powerSaveReceiver = object : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            isPowerSave = powerManager.isPowerSaveMode
+            recompute()
+        }
+    }
+
+    init {
+        ContextCompat.registerReceiver(
+            context,
+            powerSaveReceiver,
+            IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED),
+            ContextCompat.RECEIVER_NOT_EXPORTED
+        )
+        powerManager.addThermalStatusListener(context.mainExecutor, thermalListener)
+        recompute()
+    }
+
+    /**
+     * Подключить трекинг кадров к окну активити (вызывать из onCreate)
+     */
+    fun attach(activity: Activity) {
+        animationsDisabled = Settings.Global.getFloat(
+            activity.contentResolver, Settings.Global.ANIMATOR_DURATION_SCALE, 1f
+        ) == 0f
+        jankStats = JankStats.createAndTrack(activity.window) { frame ->
+            onFrame(frame.isJank)
+        }
+        updateTracking()
+        recompute()
+    }
+
+    fun detach() {
+        jankStats?.isTrackingEnabled = false
+        jankStats = null
+    }
+
+    fun onResume() {
+        isResumed = true
+        updateTracking()
+    }
+
+    fun onPause() {
+        isResumed = false
+        updateTracking()
+    }
+
+    /**
+     * Анимация появилась на экране. Возвращает функцию отписки
+     */
+    fun register(name: String): () -> Unit {
+        activeAnimations.getOrPut(name) { AtomicInteger() }.incrementAndGet()
+        updateTracking()
+        return {
+            activeAnimations[name]?.decrementAndGet()
+            updateTracking()
+        }
+    }
+
+    fun activeAnimationCount(): Int = activeAnimations.values.sumOf { it.get().coerceAtLeast(0) }
+
+    private fun updateTracking() {
+        jankStats?.isTrackingEnabled = isResumed && activeAnimationCount() > 0
+    }
+
+    private fun onFrame(jank: Boolean) {
+        windowFrames++
+        if (jank) windowJankFrames++
+        if (windowFrames < FRAME_WINDOW) return
+
+        val ratio = windowJankFrames.toFloat() / windowFrames
+        windowFrames = 0
+        windowJankFrames = 0
+
+        // Гистерезис + минимальное время в пониженном режиме, чтобы уровень не прыгал:
+        // без декора jank пропадает, и без паузы анимации сразу бы вернулись
+        val janky = if (isJanky) {
+            ratio > JANK_RECOVER_RATIO || System.currentTimeMillis() - jankDegradedAt < JANK_COOLDOWN_MS
+        } else {
+            ratio > JANK_DEGRADE_RATIO
+        }
+        if (janky != isJanky) {
+            if (janky) jankDegradedAt = System.currentTimeMillis()
+            isJanky = janky
+            Timber.d("AnimationGovernor: jank ratio=${"%.2f".format(ratio)}, degraded=$janky")
+            recompute()
+        }
+    }
+
+    private fun recompute() {
+        val newLevel = when {
+            animationsDisabled || thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE -> AnimationLevel.STATIC
+            isPowerSave || thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE || isJanky -> AnimationLevel.REDUCED
+            else -> AnimationLevel.FULL
+        }
+        if (_level.value != newLevel) {
+            Timber.d("AnimationGovernor: $newLevel (powerSave=$isPowerSave, thermal=$thermalStatus, jank=$isJanky)")
+            _level.value = newLevel
+        }
+    }
+
+    companion object {
+        private const val FRAME_WINDOW = 120
+        private const val JANK_DEGRADE_RATIO = 0.2f
+        private const val JANK_RECOVER_RATIO = 0.05f
+        private const val JANK_COOLDOWN_MS = 30_000L
+    }
+}
@@ -0,0 +1,210 @@
+package com.health.companion.utils
+
+import android.graphics.Bitmap
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Drawable
+import timber.log.Timber
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.floor
+import kotlin.math.pow
+import kotlin.math.sign
+import kotlin.math.withSign
+
+/**
+ * BlurHash (https://blurha.sh): ~30 символов вместо картинки, декодируется
+ * в размытую заглушку за доли миллисекунды — показываем её сразу после SSE-события
+ * image, пока полное изображение ещё качается
+ */
+object BlurHash {
+
+    /** Размер декодированной заглушки: растягивается на карточку, детали не нужны */
+    const val PLACEHOLDER_SIZE = 32
+
+    private const val CHARS =
+        "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~"
+
+    fun decode(hash: String?, width: Int = PLACEHOLDER_SIZE, height: Int = PLACEHOLDER_SIZE): Bitmap? {
+        val pixels = hash?.let { decodePixels(it, width, height) } ?: return null
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888)
+    }
+
+    /**
+     * Хэш по загруженной картинке: уменьшаем до [PLACEHOLDER_SIZE] и кодируем.
+     * Hardware-битмап сначала копируется в ARGB_8888 — из него нельзя читать пиксели.
+     * Вызывать вне главного потока
+     */
+    fun fromDrawable(drawable: Drawable): String? {
+        val source = (drawable as? BitmapDrawable)?.bitmap ?: return null
+        return try {
+            val readable = if (source.config == Bitmap.Config.HARDWARE) {
+                source.copy(Bitmap.Config.ARGB_8888, false) ?: return null
+            } else {
+                source
+            }
+            val small = Bitmap.createScaledBitmap(readable, PLACEHOLDER_SIZE, PLACEHOLDER_SIZE, true)
+            encode(small).also {
+                if (small !== readable) small.recycle()
+                if (readable !== source) readable.recycle()
+            }
+        } catch (e: Exception) {
+            Timber.w(e, "BlurHash: failed to encode placeholder")
+            null
+        }
+    }
+
+    /** Битмап уже уменьшен вызывающим (см. [PLACEHOLDER_SIZE]) — кодируем его пиксели как есть */
+    fun encode(bitmap: Bitmap, componentsX: Int = 4, componentsY: Int = 3): String {
+        val pixels = IntArray(bitmap.width * bitmap.height)
+        bitmap.getPixels(pixels, 0, bitmap.width, 0, 0, bitmap.width, bitmap.height)
+        return encodePixels(pixels, bitmap.width, bitmap.height, componentsX, componentsY)
+    }
+
+    /** ARGB-пиксели по хэшу или null, если хэш битый */
+    internal fun decodePixels(hash: String, width: Int, height: Int, punch: Float = 1f): IntArray? {
+        if (hash.length < 6 || width <= 0 || height <= 0) return null
+        val sizeFlag = decode83(hash, 0, 1) ?: return null
+        val componentsX = sizeFlag % 9 + 1
+        val componentsY = sizeFlag / 9 + 1
+        if (hash.length != 4 + 2 * componentsX * componentsY) return null
+
+        val quantisedMax = decode83(hash, 1, 2) ?: return null
+        val maxValue = (quantisedMax + 1) / 166f * punch
+        val colors = Array(componentsX * componentsY) { index ->
+            if (index == 0) {
+                val value = decode83(hash, 2, 6) ?: return null
+                decodeDc(value)
+            } else {
+                val from = 4 + index * 2
+                val value = decode83(hash, from, from + 2) ?: return null
+                decodeAc(value, maxValue)
+            }
+        }
+
+        val cosX = cosines(width, componentsX)
+        val cosY = cosines(height, componentsY)
+        val pixels = IntArray(width * height)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                var r = 0f
+                var g = 0f
+                var b = 0f
+                for (j in 0 until componentsY) {
+                    for (i in 0 until componentsX) {
+                        val basis = cosX[x * componentsX + i] * cosY[y * componentsY + j]
+                        val color = colors[j * componentsX + i]
+                        r += color[0] * basis
+                        g += color[1] * basis
+                        b += color[2] * basis
+                    }
+                }
+                pixels[y * width + x] = (0xFF shl 24) or
+                    (linearToSrgb(r) shl 16) or (linearToSrgb(g) shl 8) or linearToSrgb(b)
+            }
+        }
+        return pixels
+    }
+
+    internal fun encodePixels(pixels: IntArray, width: Int, height: Int, componentsX: Int, componentsY: Int): String {
+        require(componentsX in 1..9 && componentsY in 1..9) { "components must be in 1..9" }
+        require(pixels.size == width * height) { "pixels size mismatch" }
+
+        val factors = Array(componentsX * componentsY) { index ->
+            val i = index % componentsX
+            val j = index / componentsX
+            val normalisation = if (i == 0 && j == 0) 1f else 2f
+            var r = 0f
+            var g = 0f
+            var b = 0f
+            for (y in 0 until height) {
+                for (x in 0 until width) {
+                    val basis = normalisation *
+                        cos(PI * i * x / width).toFloat() * cos(PI * j * y / height).toFloat()
+                    val pixel = pixels[y * width + x]
+                    r += basis * srgbToLinear((pixel shr 16) and 0xFF)
+                    g += basis * srgbToLinear((pixel shr 8) and 0xFF)
+                    b += basis * srgbToLinear(pixel and 0xFF)
+                }
+            }
+            val scale = 1f / (width * height)
+            floatArrayOf(r * scale, g * scale, b * scale)
+        }
+
+        val hash = StringBuilder()
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1)
+
+        val ac = factors.drop(1)
+        val maxValue = if (ac.isNotEmpty()) {
+            val actualMax = ac.maxOf { color -> color.maxOf { abs(it) } }
+            val quantisedMax = floor(actualMax * 166 - 0.5f).toInt().coerceIn(0, 82)
+            encode83(hash, quantisedMax, 1)
+            (quantisedMax + 1) / 166f
+        } else {
+            encode83(hash, 0, 1)
+            1f
+        }
+
+        val dc = factors[0]
+        encode83(hash, (linearToSrgb(dc[0]) shl 16) + (linearToSrgb(dc[1]) shl 8) + linearToSrgb(dc[2]), 4)
+        ac.forEach { color ->
+            val quant = color.map { value ->
+                (signPow(value / maxValue, 0.5f) * 9 + 9.5f).toInt().coerceIn(0, 18)
+            }
+            encode83(hash, quant[0] * 19 * 19 + quant[1] * 19 + quant[2], 2)
+        }
+        return hash.toString()
+    }
+
+    private fun cosines(size: Int, components: Int): FloatArray {
+        val table = FloatArray(size * components)
+        for (p in 0 until size) {
+            for (c in 0 until components) {
+                table[p * components + c] = cos(PI * p * c / size).toFloat()
+            }
+        }
+        return table
+    }
+
+    private fun decodeDc(value: Int): FloatArray = floatArrayOf(
+        srgbToLinear(value shr 16),
+        srgbToLinear((value shr 8) and 0xFF),
+        srgbToLinear(value and 0xFF)
+    )
+
+    private fun decodeAc(value: Int, maxValue: Float): FloatArray = floatArrayOf(
+        signPow((value / (19 * 19) - 9) / 9f, 2f) * maxValue,
+        signPow(((value / 19) % 19 - 9) / 9f, 2f) * maxValue,
+        signPow((value % 19 - 9) / 9f, 2f) * maxValue
+    )
+
+    private fun decode83(hash: String, from: Int, to: Int): Int? {
+        var value = 0
+        for (index in from until to) {
+            val digit = CHARS.indexOf(hash[index])
+            if (digit < 0) return null
+            value = value * 83 + digit
+        }
+        return value
+    }
+
+    private fun encode83(target: StringBuilder, value: Int, length: Int) {
+        for (position in 1..length) {
+            val digit = (value / 83.0.pow(length - position).toInt()) % 83
+            target.append(CHARS[digit])
+        }
+    }
+
+    private fun srgbToLinear(value: Int): Float {
+        val v = value / 255f
+        return if (v <= 0.04045f) v / 12.92f else ((v + 0.055f) / 1.055f).pow(2.4f)
+    }
+
+    private fun linearToSrgb(value: Float): Int {
+        val v = value.coerceIn(0f, 1f)
+        val srgb = if (v <= 0.0031308f) v * 12.92f else 1.055f * v.pow(1 / 2.4f) - 0.055f
+        return (srgb * 255 + 0.5f).toInt().coerceIn(0, 255)
+    }
+
+    private fun signPow(value: Float, exp: Float): Float = abs(value).pow(exp).withSign(sign(value))
+}
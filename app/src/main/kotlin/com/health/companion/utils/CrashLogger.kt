@@ -2,21 +2,31 @@ package com.health.companion.utils
 
 import android.app.Application
 import android.content.Context
-import java.io.File
 import java.io.PrintWriter
 import java.io.StringWriter
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.Locale
 
+/**
+ * Последние падения в [RingLog]. Файл открывается в [install], заранее:
+ * в обработчике падения остаётся только скопировать текст в отображённую память
+ */
 object CrashLogger {
-    private const val FILE_NAME = "last_crash.txt"
+    private const val FILE_NAME = "crashes.ring"
+    private const val SLOT_SIZE = 16 * 1024
+    private const val MAX_CRASHES = 4
+
+    @Volatile
+    private var ring: RingLog? = null
+
+    private fun ring(context: Context): RingLog? = ring ?: synchronized(this) {
+        ring ?: RingLog.open(context.applicationContext, FILE_NAME, SLOT_SIZE, MAX_CRASHES).also { ring = it }
+    }
 
     fun install(application: Application) {
+        ring(application)
         val defaultHandler = Thread.getDefaultUncaughtExceptionHandler()
         Thread.setDefaultUncaughtExceptionHandler { thread, throwable ->
             try {
-                writeCrash(application, thread, throwable)
+                writeCrash(thread, throwable)
             } catch (_: Exception) {
                 // Best effort only
             } finally {
@@ -25,24 +35,17 @@ object CrashLogger {
         }
     }
 
-    fun readCrash(context: Context): String {
-        val file = File(context.filesDir, FILE_NAME)
-        if (!file.exists()) return "Нет данных о падениях"
-        return file.readText()
-    }
+    fun readCrash(context: Context): String =
+        ring(context)?.latest()?.let { "Time: ${it.time("yyyy-MM-dd HH:mm:ss")}\n${it.message}" }
+            ?: "Нет данных о падениях"
 
     fun clearCrash(context: Context) {
-        val file = File(context.filesDir, FILE_NAME)
-        if (file.exists()) {
-            file.delete()
-        }
+        ring(context)?.clear()
     }
 
-    private fun writeCrash(context: Context, thread: Thread, throwable: Throwable) {
-        val formatter = SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
-        val header = "Time: ${formatter.format(Date())}\nThread: ${thread.name}\n\n"
+    private fun writeCrash(thread: Thread, throwable: Throwable) {
         val sw = StringWriter()
         PrintWriter(sw).use { throwable.printStackTrace(it) }
-        File(context.filesDir, FILE_NAME).writeText(header + sw.toString())
+        ring?.append("Thread: ${thread.name}\n\n$sw")
     }
 }
@@ -0,0 +1,253 @@
+package com.health.companion.utils
+
+import android.app.ActivityManager
+import android.content.ComponentCallbacks2
+import android.content.Context
+import coil.intercept.Interceptor
+import coil.memory.MemoryCache
+import coil.request.ImageRequest
+import coil.request.ImageResult
+import coil.size.Dimension
+import coil.size.Size
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Классы изображений с отдельными бюджетами memory cache.
+ * [share] — доля общего бюджета, [trimOrder] — кто отдаёт память первым при onTrimMemory
+ */
+enum class ImageClass(val share: Double, val trimOrder: Int) {
+    CHAT_PHOTO(0.45, 2),  // Фото в пузырях чата — на экране дольше всего
+    GENERATED(0.35, 1),   // Сгенерированные картинки: большие, но есть на диске
+    THUMBNAIL(0.20, 0)    // Миниатюры документов: маленькие, дешево декодировать заново
+}
+
+/**
+ * Memory cache с отдельным LRU на каждый [ImageClass]: миниатюры при прокрутке
+ * не вытесняют фото чата. Класс берётся из extras ключа (см. [imageClass]);
+ * запросы без явного ключа попадают в [ImageClass.CHAT_PHOTO].
+ *
+ * onTrimMemory приходит от Coil (ImageLoader сам подписан на ComponentCallbacks2)
+ * и режет классы по очереди: сначала миниатюры, фото чата — последними
+ */
+class TieredMemoryCache(
+    context: Context,
+    totalBytes: Long
+) : MemoryCache {
+
+    private val tiers: Map<ImageClass, MemoryCache> = ImageClass.entries.associateWith { imageClass ->
+        MemoryCache.Builder(context)
+            .maxSizeBytes((totalBytes * imageClass.share).toInt())
+            .strongReferencesEnabled(true)
+            .build()
+    }
+
+    private val stats: Map<ImageClass, TierCounters> = ImageClass.entries.associateWith { TierCounters() }
+
+    // Coil не сообщает о вытеснении, а keys включают и слабые ссылки. Повторяем порядок
+    // сильного LRU и по его размеру в байтах узнаём, какие записи из него ушли
+    private val strongEntries: Map<ImageClass, StrongEntries> = ImageClass.entries.associateWith { StrongEntries() }
+    private val trims = AtomicLong()
+
+    override val size: Int get() = tiers.values.sumOf { it.size }
+    override val maxSize: Int get() = tiers.values.sumOf { it.maxSize }
+    override val keys: Set<MemoryCache.Key> get() = tiers.values.flatMapTo(HashSet()) { it.keys }
+
+    override fun get(key: MemoryCache.Key): MemoryCache.Value? {
+        val imageClass = classOf(key)
+        val value = tiers.getValue(imageClass)[key]
+        val counters = stats.getValue(imageClass)
+        if (value != null) {
+            counters.hits.incrementAndGet()
+            strongEntries.getValue(imageClass).touch(key)
+        } else {
+            counters.misses.incrementAndGet()
+        }
+        return value
+    }
+
+    override fun set(key: MemoryCache.Key, value: MemoryCache.Value) {
+        val imageClass = classOf(key)
+        val tier = tiers.getValue(imageClass)
+        tier[key] = value
+        val strong = strongEntries.getValue(imageClass)
+        // Больше бюджета класса Coil в сильный кэш не кладёт
+        val bytes = value.bitmap.allocationByteCount
+        if (bytes <= tier.maxSize) strong.put(key, bytes) else strong.remove(key)
+        val evicted = strong.trimTo(tier.size.toLong())
+        if (evicted > 0) stats.getValue(imageClass).evictions.addAndGet(evicted.toLong())
+    }
+
+    override fun remove(key: MemoryCache.Key): Boolean {
+        val imageClass = classOf(key)
+        strongEntries.getValue(imageClass).remove(key)
+        return tiers.getValue(imageClass).remove(key)
+    }
+
+    override fun clear() {
+        tiers.values.forEach { it.clear() }
+        strongEntries.values.forEach { it.trimTo(0) }
+    }
+
+    // TRIM_MEMORY_RUNNING_* устарели с API 34 (там не приходят), но на старых версиях это основной сигнал
+    @Suppress("DEPRECATION")
+    override fun trimMemory(level: Int) {
+        trims.incrementAndGet()
+        // Сколько классов (по trimOrder) очистить целиком и какой следующий ужать вдвое
+        val (cleared, halved) = when {
+            level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND -> ImageClass.entries.size to -1
+            // UI_HIDDEN (20) больше RUNNING_CRITICAL (15), но это просто уход в фон, а не
+            // нехватка памяти: как и Coil, ничего не сбрасываем — вернёмся к тёплому кэшу
+            level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN -> return
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL -> 2 to 2
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW -> 1 to 1
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE -> 0 to 0
+            else -> return
+        }
+        ImageClass.entries.forEach { imageClass ->
+            val tier = tiers.getValue(imageClass)
+            when {
+                imageClass.trimOrder < cleared -> tier.clear()
+                // RUNNING_LOW внутри Coil = trimToSize(size / 2)
+                imageClass.trimOrder == halved -> tier.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            }
+            // Отданное по onTrimMemory — не вытеснение, в статистику не идёт
+            strongEntries.getValue(imageClass).trimTo(tier.size.toLong())
+        }
+    }
+
+    fun snapshot(): List<ImageTierStats> = ImageClass.entries.map { imageClass ->
+        val tier = tiers.getValue(imageClass)
+        val counters = stats.getValue(imageClass)
+        ImageTierStats(
+            imageClass = imageClass,
+            sizeBytes = tier.size,
+            maxSizeBytes = tier.maxSize,
+            hits = counters.hits.get(),
+            misses = counters.misses.get(),
+            evictions = counters.evictions.get()
+        )
+    }
+
+    fun diagnostics(): String = buildString {
+        snapshot().forEach { tier ->
+            appendLine(
+                "${tier.imageClass}: ${tier.sizeBytes / 1024}/${tier.maxSizeBytes / 1024} KB, " +
+                    "hit ${tier.hits}, miss ${tier.misses} (${(tier.hitRate * 100).toInt()}%), evict ${tier.evictions}"
+            )
+        }
+        appendLine("onTrimMemory: ${trims.get()}")
+    }
+
+    private fun classOf(key: MemoryCache.Key): ImageClass =
+        key.extras[EXTRA_IMAGE_CLASS]?.let { name -> ImageClass.entries.firstOrNull { it.name == name } }
+            ?: ImageClass.CHAT_PHOTO
+
+    /** Ключи сильного кэша в порядке доступа (старые — первыми) и их размер в байтах */
+    private class StrongEntries {
+        private val entries = LinkedHashMap<MemoryCache.Key, Int>(16, 0.75f, true)
+        private var bytes = 0L
+
+        @Synchronized
+        fun touch(key: MemoryCache.Key) {
+            entries[key]
+        }
+
+        @Synchronized
+        fun put(key: MemoryCache.Key, size: Int) {
+            entries.put(key, size)?.let { bytes -= it }
+            bytes += size
+        }
+
+        @Synchronized
+        fun remove(key: MemoryCache.Key) {
+            entries.remove(key)?.let { bytes -= it }
+        }
+
+        /** Убирает самые старые записи, пока не уложится в [maxBytes]; возвращает их число */
+        @Synchronized
+        fun trimTo(maxBytes: Long): Int {
+            var removed = 0
+            val iterator = entries.values.iterator()
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next()
+                iterator.remove()
+                removed++
+            }
+            return removed
+        }
+    }
+
+    private class TierCounters {
+        val hits = AtomicLong()
+        val misses = AtomicLong()
+        val evictions = AtomicLong()
+    }
+
+    companion object {
+        const val EXTRA_IMAGE_CLASS = "image_class"
+
+        /** Слабые устройства: меньше бюджет и RGB_565 там, где нет альфы */
+        fun isLowRam(context: Context): Boolean {
+            val activityManager = context.getSystemService(ActivityManager::class.java)
+            return activityManager.isLowRamDevice || activityManager.memoryClass <= LOW_RAM_MEMORY_CLASS_MB
+        }
+
+        fun budgetBytes(context: Context): Long {
+            val memoryClassMb = context.getSystemService(ActivityManager::class.java).memoryClass
+            val percent = if (isLowRam(context)) 0.15 else 0.25
+            return (memoryClassMb * 1024L * 1024L * percent).toLong()
+        }
+
+        private const val LOW_RAM_MEMORY_CLASS_MB = 192
+    }
+}
+
+data class ImageTierStats(
+    val imageClass: ImageClass,
+    val sizeBytes: Int,
+    val maxSizeBytes: Int,
+    val hits: Long,
+    val misses: Long,
+    val evictions: Long
+) {
+    val hitRate: Float get() = if (hits + misses == 0L) 0f else hits.toFloat() / (hits + misses)
+}
+
+/** Memory-ключ с классом изображения — для поиска в кэше и placeholderMemoryCacheKey */
+fun imageClassKey(imageClass: ImageClass, key: String): MemoryCache.Key =
+    MemoryCache.Key(key, mapOf(TieredMemoryCache.EXTRA_IMAGE_CLASS to imageClass.name))
+
+/**
+ * Явный ключ с классом изображения: memory — в бюджет класса, диск — по [diskKey]
+ */
+fun ImageRequest.Builder.imageClass(
+    imageClass: ImageClass,
+    key: String,
+    diskKey: String = key
+): ImageRequest.Builder = memoryCacheKey(imageClassKey(imageClass, key)).diskCacheKey(diskKey)
+
+/**
+ * Не декодируем больше экрана: запрос с неопределённым размером (Size.ORIGINAL,
+ * неограниченные constraints) получает потолок по длинной стороне дисплея
+ */
+class DecodeSizeCapInterceptor(private val maxPx: Int) : Interceptor {
+
+    override suspend fun intercept(chain: Interceptor.Chain): ImageResult {
+        if (chain.request.parameters.value<Boolean>(PARAM_UNCAPPED) == true) return chain.proceed(chain.request)
+        val size = chain.size
+        val width = size.width.capped()
+        val height = size.height.capped()
+        if (width == size.width && height == size.height) return chain.proceed(chain.request)
+        return chain.withSize(Size(width, height)).proceed(chain.request)
+    }
+
+    private fun Dimension.capped(): Dimension = when (this) {
+        is Dimension.Pixels -> if (px > maxPx) Dimension(maxPx) else this
+        Dimension.Undefined -> Dimension(maxPx)
+    }
+
+    companion object {
+        /** Параметр запроса: размер задан явно и больше экрана намеренно (zoom в превью) */
+        const val PARAM_UNCAPPED = "decode_size_uncapped"
+    }
+}
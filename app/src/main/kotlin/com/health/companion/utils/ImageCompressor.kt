@@ -0,0 +1,235 @@
+package com.health.companion.utils
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.Matrix
+import android.graphics.Rect
+import android.media.ExifInterface
+import timber.log.Timber
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+/**
+ * Сжатый JPEG: без EXIF, уже повёрнутый как на экране камеры
+ */
+class CompressedImage(
+    val bytes: ByteArray,
+    val width: Int,
+    val height: Int,
+    val quality: Int
+)
+
+/**
+ * Сжатие фото под лимит размера: один decode и не больше двух encode.
+ *
+ * 1. Размеры из заголовка → целевые размеры по бюджету байт, заранее
+ * 2. Decode сразу в целевой размер: inSampleSize — грубо степенью двойки,
+ *    inDensity/inTargetDensity — точно; поворот по EXIF — одним Matrix
+ * 3. Качество — бинарным поиском на выборке тайлов ~256×256, полный encode один;
+ *    если предсказание промахнулось, второй — с уменьшением по факту
+ *
+ * Bitmap.compress пишет JPEG без метаданных: EXIF (GPS, модель телефона) на сервер не уходит
+ */
+object ImageCompressor {
+    /** JPEG фото с телефона при q 60–90 — обычно 0.2–0.5 байта на пиксель */
+    private const val ESTIMATED_BYTES_PER_PIXEL = 0.5
+
+    /**
+     * Длинная сторона: текст анализов читается. Итоговый битмап ARGB_8888 ≤ ~38 MB;
+     * на время decode к нему добавляется промежуточный после inSampleSize (< 4× цели),
+     * а при повороте — ещё одна копия цели
+     */
+    const val MAX_DIMENSION = 3072
+    const val MIN_QUALITY = 60
+    const val MAX_QUALITY = 90
+    private const val SAFETY_MARGIN = 1.1
+    private const val SAMPLE_GRID = 4
+    private const val SAMPLE_TILE = 64
+
+    /**
+     * [openStream] вызывается несколько раз (заголовок, EXIF, decode) — поток
+     * не держит весь файл в памяти. null — изображение не декодируется
+     * или даже после уменьшения не уложилось в [maxBytes]
+     */
+    fun compress(openStream: () -> InputStream, maxBytes: Int): CompressedImage? {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        openStream().use { BitmapFactory.decodeStream(it, null, bounds) }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+
+        val orientation = try {
+            openStream().use { ExifInterface(it) }
+                .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
+        } catch (e: Exception) {
+            ExifInterface.ORIENTATION_NORMAL
+        }
+
+        val (targetWidth, targetHeight) = targetDimensions(bounds.outWidth, bounds.outHeight, maxBytes)
+        val options = BitmapFactory.Options().apply {
+            inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight, targetWidth, targetHeight)
+            // Остаток после степени двойки — масштабом декодера: битмап сразу целевого
+            // размера, без второй полноразмерной копии в transform()
+            inScaled = true
+            inDensity = bounds.outWidth
+            inTargetDensity = targetWidth * inSampleSize
+            // Явно: без HARDWARE — нужны пиксели для Canvas и compress
+            inPreferredConfig = Bitmap.Config.ARGB_8888
+        }
+        val decoded = openStream().use { BitmapFactory.decodeStream(it, null, options) } ?: return null
+        val bitmap = transform(decoded, targetWidth, targetHeight, orientation)
+
+        try {
+            val quality = predictQuality(bitmap, maxBytes)
+            val bytes = encode(bitmap, quality)
+            Timber.d(
+                "ImageCompressor: ${bounds.outWidth}x${bounds.outHeight} → ${bitmap.width}x${bitmap.height}, " +
+                    "sample=${options.inSampleSize}, q=$quality, ${bytes.size / 1024} KB"
+            )
+            if (bytes.size <= maxBytes) return CompressedImage(bytes, bitmap.width, bitmap.height, quality)
+
+            // Предсказание промахнулось — второй и последний encode на меньшем размере
+            val shrink = shrinkFactor(bytes.size, maxBytes)
+            val smaller = Bitmap.createScaledBitmap(
+                bitmap,
+                max(1, (bitmap.width * shrink).roundToInt()),
+                max(1, (bitmap.height * shrink).roundToInt()),
+                true
+            )
+            try {
+                val retry = encode(smaller, quality)
+                Timber.d("ImageCompressor: retry ${smaller.width}x${smaller.height}, ${retry.size / 1024} KB")
+                if (retry.size > maxBytes) {
+                    Timber.w("ImageCompressor: ${retry.size / 1024} KB still over ${maxBytes / 1024} KB, giving up")
+                    return null
+                }
+                return CompressedImage(retry, smaller.width, smaller.height, quality)
+            } finally {
+                if (smaller !== bitmap) smaller.recycle()
+            }
+        } finally {
+            bitmap.recycle()
+        }
+    }
+
+    /** Размеры, при которых JPEG укладывается в бюджет; пропорции сохраняются, не увеличиваем */
+    internal fun targetDimensions(
+        width: Int,
+        height: Int,
+        maxBytes: Int,
+        bytesPerPixel: Double = ESTIMATED_BYTES_PER_PIXEL
+    ): Pair<Int, Int> {
+        val budgetPixels = maxBytes / bytesPerPixel
+        val scale = minOf(
+            1.0,
+            sqrt(budgetPixels / (width.toDouble() * height)),
+            MAX_DIMENSION.toDouble() / max(width, height)
+        )
+        return max(1, (width * scale).toInt()) to max(1, (height * scale).toInt())
+    }
+
+    /** Наибольшая степень двойки, после которой картинка ещё не меньше цели */
+    internal fun sampleSize(width: Int, height: Int, targetWidth: Int, targetHeight: Int): Int {
+        var sample = 1
+        while (width / (sample * 2) >= targetWidth && height / (sample * 2) >= targetHeight) {
+            sample *= 2
+        }
+        return sample
+    }
+
+    /** Наибольшее качество, при котором [fits]; [fits] монотонен. Если не подходит ничего — [MIN_QUALITY] */
+    internal fun searchQuality(fits: (Int) -> Boolean): Int {
+        var low = MIN_QUALITY
+        var high = MAX_QUALITY
+        var best = MIN_QUALITY
+        while (low <= high) {
+            val mid = (low + high) / 2
+            if (fits(mid)) {
+                best = mid
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return best
+    }
+
+    /** Во сколько раз уменьшить стороны: размер JPEG примерно пропорционален числу пикселей */
+    internal fun shrinkFactor(actualBytes: Int, maxBytes: Int): Double =
+        sqrt(maxBytes.toDouble() / actualBytes) * 0.95
+
+    private fun predictQuality(bitmap: Bitmap, maxBytes: Int): Int {
+        val sample = sampleTiles(bitmap)
+        val pixels = bitmap.width.toDouble() * bitmap.height
+        val samplePixels = sample.width.toDouble() * sample.height
+        try {
+            return searchQuality { quality ->
+                encode(sample, quality).size / samplePixels * pixels * SAFETY_MARGIN <= maxBytes
+            }
+        } finally {
+            if (sample !== bitmap) sample.recycle()
+        }
+    }
+
+    /** Сетка тайлов со всей картинки: детализация фото неравномерна, один кусок врёт */
+    private fun sampleTiles(bitmap: Bitmap): Bitmap {
+        val size = SAMPLE_GRID * SAMPLE_TILE
+        if (bitmap.width <= size || bitmap.height <= size) return bitmap
+        val sample = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(sample)
+        val stepX = (bitmap.width - SAMPLE_TILE) / (SAMPLE_GRID - 1)
+        val stepY = (bitmap.height - SAMPLE_TILE) / (SAMPLE_GRID - 1)
+        for (row in 0 until SAMPLE_GRID) {
+            for (column in 0 until SAMPLE_GRID) {
+                val left = column * stepX
+                val top = row * stepY
+                canvas.drawBitmap(
+                    bitmap,
+                    Rect(left, top, left + SAMPLE_TILE, top + SAMPLE_TILE),
+                    Rect(column * SAMPLE_TILE, row * SAMPLE_TILE, (column + 1) * SAMPLE_TILE, (row + 1) * SAMPLE_TILE),
+                    null
+                )
+            }
+        }
+        return sample
+    }
+
+    /**
+     * Поворот по EXIF и, если декодер не попал в цель, досжатие — одним преобразованием.
+     * Расхождение в пиксель от округления масштаба декодера не пересчитываем
+     */
+    private fun transform(decoded: Bitmap, targetWidth: Int, targetHeight: Int, orientation: Int): Bitmap {
+        val needsScale = decoded.width > targetWidth + 1 || decoded.height > targetHeight + 1
+        val scaleX = if (needsScale) min(1f, targetWidth.toFloat() / decoded.width) else 1f
+        val scaleY = if (needsScale) min(1f, targetHeight.toFloat() / decoded.height) else 1f
+        if (scaleX >= 1f && scaleY >= 1f && orientation == ExifInterface.ORIENTATION_NORMAL) return decoded
+
+        val matrix = Matrix().apply {
+            setScale(scaleX, scaleY)
+            when (orientation) {
+                ExifInterface.ORIENTATION_FLIP_HORIZONTAL -> postScale(-1f, 1f)
+                ExifInterface.ORIENTATION_ROTATE_180 -> postRotate(180f)
+                ExifInterface.ORIENTATION_FLIP_VERTICAL -> postScale(1f, -1f)
+                ExifInterface.ORIENTATION_TRANSPOSE -> {
+                    postRotate(90f)
+                    postScale(-1f, 1f)
+                }
+                ExifInterface.ORIENTATION_ROTATE_90 -> postRotate(90f)
+                ExifInterface.ORIENTATION_TRANSVERSE -> {
+                    postRotate(-90f)
+                    postScale(-1f, 1f)
+                }
+                ExifInterface.ORIENTATION_ROTATE_270 -> postRotate(-90f)
+            }
+        }
+        val transformed = Bitmap.createBitmap(decoded, 0, 0, decoded.width, decoded.height, matrix, true)
+        if (transformed !== decoded) decoded.recycle()
+        return transformed
+    }
+
+    private fun encode(bitmap: Bitmap, quality: Int): ByteArray =
+        ByteArrayOutputStream().also { bitmap.compress(Bitmap.CompressFormat.JPEG, quality, it) }.toByteArray()
+}
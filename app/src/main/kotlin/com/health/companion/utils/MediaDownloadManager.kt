@@ -0,0 +1,210 @@
+package com.health.companion.utils
+
+import android.content.ContentValues
+import android.content.Context
+import android.net.Uri
+import android.os.Environment
+import android.provider.MediaStore
+import coil.ImageLoader
+import com.health.companion.di.StreamingHttp
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okio.FileSystem
+import timber.log.Timber
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.coroutines.coroutineContext
+
+/**
+ * Состояние сохранения одного изображения в галерею
+ */
+sealed interface MediaDownloadState {
+    data class Running(val bytesCopied: Long, val totalBytes: Long) : MediaDownloadState {
+        val progress: Float? get() = if (totalBytes > 0) bytesCopied.toFloat() / totalBytes else null
+    }
+    data class Done(val uri: Uri, val fromCache: Boolean) : MediaDownloadState
+    data class Failed(val message: String) : MediaDownloadState
+}
+
+/**
+ * Сохранение изображений в галерею (MediaStore, Pictures/HealthCompanion).
+ *
+ * - Байты идут потоком из HTTP-ответа в pending-запись MediaStore, без декодирования в Bitmap
+ * - Если картинка уже в disk cache Coil — копируем файл кэша, без сети
+ * - Не больше [MAX_CONCURRENT] сохранений одновременно; повторный запрос того же URL
+ *   не качает байты второй раз, а возвращает уже идущее или готовое сохранение
+ * - Отмена ([cancel]) удаляет недописанную запись из MediaStore
+ */
+@Singleton
+class MediaDownloadManager @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val imageLoader: ImageLoader,
+    // BODY-логгер буферизует тело ответа целиком — для скачивания файлов он не нужен
+    @StreamingHttp private val downloadClient: OkHttpClient
+) {
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val semaphore = Semaphore(MAX_CONCURRENT)
+    private val jobs = ConcurrentHashMap<String, Job>()
+
+    private val _downloads = MutableStateFlow<Map<String, MediaDownloadState>>(emptyMap())
+    val downloads: StateFlow<Map<String, MediaDownloadState>> = _downloads.asStateFlow()
+
+    /**
+     * Ставит сохранение в очередь. false — URL уже сохраняется или сохранён в этой сессии
+     */
+    fun enqueue(url: String, displayName: String = defaultDisplayName()): Boolean {
+        val current = _downloads.value[url]
+        if (current is MediaDownloadState.Done || jobs[url]?.isActive == true) return false
+
+        _downloads.update { it + (url to MediaDownloadState.Running(0, -1)) }
+        jobs[url] = scope.launch {
+            val result = try {
+                semaphore.withPermit { save(url, displayName) }
+            } catch (e: CancellationException) {
+                _downloads.update { it - url }
+                throw e
+            } catch (e: Exception) {
+                Timber.e(e, "MediaDownload: failed to save $url")
+                MediaDownloadState.Failed(e.localizedMessage ?: "Ошибка сохранения")
+            }
+            _downloads.update { it + (url to result) }
+            jobs.remove(url)
+        }
+        return true
+    }
+
+    fun cancel(url: String) {
+        jobs.remove(url)?.cancel()
+    }
+
+    fun cancelAll() {
+        jobs.keys.toList().forEach(::cancel)
+    }
+
+    private suspend fun save(url: String, displayName: String): MediaDownloadState {
+        // Coil кладёт картинки в disk cache по URL (см. imageClass) — файл там уже готовый
+        imageLoader.diskCache?.openSnapshot(url)?.use { snapshot ->
+            val file = snapshot.data
+            val size = FileSystem.SYSTEM.metadata(file).size ?: -1L
+            FileSystem.SYSTEM.read(file) {
+                val header = peek().readByteArray(minOf(size.coerceAtLeast(0), SNIFF_BYTES.toLong()))
+                val uri = writeToMediaStore(url, displayName, sniffMimeType(header), size, inputStream())
+                Timber.d("MediaDownload: saved $url from disk cache")
+                return MediaDownloadState.Done(uri, fromCache = true)
+            }
+        }
+
+        val request = Request.Builder().url(url).build()
+        downloadClient.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) throw IOException("HTTP ${response.code}")
+            val body = response.body ?: throw IOException("Пустой ответ")
+            val source = body.source()
+            val mimeType = body.contentType()
+                ?.takeIf { it.type == "image" }
+                ?.let { "${it.type}/${it.subtype}" }
+                ?: run {
+                    // Заголовок читается в буфер source — inputStream() отдаст его же, повторно не качаем
+                    source.request(SNIFF_BYTES.toLong())
+                    sniffMimeType(source.buffer.copy().readByteArray(minOf(source.buffer.size, SNIFF_BYTES.toLong())))
+                }
+            val uri = writeToMediaStore(url, displayName, mimeType, body.contentLength(), source.inputStream())
+            Timber.d("MediaDownload: saved $url from network")
+            return MediaDownloadState.Done(uri, fromCache = false)
+        }
+    }
+
+    /** Pending-запись: галерея не видит файл, пока он не дописан целиком */
+    private suspend fun writeToMediaStore(
+        url: String,
+        displayName: String,
+        mimeType: String,
+        totalBytes: Long,
+        input: InputStream
+    ): Uri {
+        val resolver = context.contentResolver
+        val values = ContentValues().apply {
+            put(MediaStore.Images.Media.DISPLAY_NAME, "$displayName.${extensionFor(mimeType)}")
+            put(MediaStore.Images.Media.MIME_TYPE, mimeType)
+            put(MediaStore.Images.Media.RELATIVE_PATH, "${Environment.DIRECTORY_PICTURES}/$ALBUM")
+            put(MediaStore.Images.Media.IS_PENDING, 1)
+        }
+        val uri = resolver.insert(MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY), values)
+            ?: throw IOException("MediaStore insert failed")
+        try {
+            resolver.openOutputStream(uri)?.use { output -> copy(url, input, output, totalBytes) }
+                ?: throw IOException("MediaStore open failed")
+            resolver.update(uri, ContentValues().apply { put(MediaStore.Images.Media.IS_PENDING, 0) }, null, null)
+            return uri
+        } catch (e: Throwable) {
+            // Отмена или обрыв — не оставляем в галерее битый файл
+            resolver.delete(uri, null, null)
+            throw e
+        }
+    }
+
+    private suspend fun copy(url: String, input: InputStream, output: OutputStream, totalBytes: Long) {
+        val buffer = ByteArray(BUFFER_SIZE)
+        var copied = 0L
+        var reported = 0L
+        while (true) {
+            coroutineContext.ensureActive()
+            val read = input.read(buffer)
+            if (read < 0) break
+            output.write(buffer, 0, read)
+            copied += read
+            if (copied - reported >= PROGRESS_STEP_BYTES) {
+                reported = copied
+                _downloads.update { it + (url to MediaDownloadState.Running(copied, totalBytes)) }
+            }
+        }
+    }
+
+    private fun defaultDisplayName(): String = "AI_Image_${System.currentTimeMillis()}"
+
+    companion object {
+        const val MAX_CONCURRENT = 2
+        private const val ALBUM = "HealthCompanion"
+        private const val BUFFER_SIZE = 64 * 1024
+        private const val PROGRESS_STEP_BYTES = 128 * 1024L
+        private const val SNIFF_BYTES = 12
+
+        /** MIME по сигнатуре файла; в кэше Coil Content-Type не хранится рядом с данными */
+        internal fun sniffMimeType(header: ByteArray): String {
+            fun at(index: Int) = header.getOrNull(index)?.toInt()?.and(0xFF)
+            return when {
+                at(0) == 0x89 && at(1) == 0x50 && at(2) == 0x4E && at(3) == 0x47 -> "image/png"
+                at(0) == 0xFF && at(1) == 0xD8 -> "image/jpeg"
+                at(0) == 0x47 && at(1) == 0x49 && at(2) == 0x46 -> "image/gif"
+                header.size >= 12 &&
+                    String(header, 0, 4, Charsets.US_ASCII) == "RIFF" &&
+                    String(header, 8, 4, Charsets.US_ASCII) == "WEBP" -> "image/webp"
+                else -> "image/png"
+            }
+        }
+
+        internal fun extensionFor(mimeType: String): String = when (mimeType) {
+            "image/jpeg" -> "jpg"
+            "image/gif" -> "gif"
+            "image/webp" -> "webp"
+            else -> "png"
+        }
+    }
+}
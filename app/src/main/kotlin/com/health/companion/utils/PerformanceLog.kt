@@ -0,0 +1,30 @@
+package com.health.companion.utils
+
+import android.content.Context
+
+/**
+ * Журнал замеров латентности (первый звук TTS, финал STT и т.п.) в [RingLog].
+ * До [install] замеры отбрасываются
+ */
+object PerformanceLog {
+    private const val FILE_NAME = "performance.ring"
+    private const val SLOT_SIZE = 96
+    private const val MAX_RECORDS = 1024
+
+    @Volatile
+    private var ring: RingLog? = null
+
+    fun install(context: Context) {
+        if (ring == null) ring = RingLog.open(context.applicationContext, FILE_NAME, SLOT_SIZE, MAX_RECORDS)
+    }
+
+    fun record(event: String, durationMs: Long) {
+        ring?.append("$event ${durationMs}ms")
+    }
+
+    fun records(): Sequence<LogRecord> = ring?.records() ?: emptySequence()
+
+    fun clear() {
+        ring?.clear()
+    }
+}
@@ -0,0 +1,172 @@
+package com.health.companion.utils
+
+import android.content.Context
+import android.os.Build
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.lang.invoke.VarHandle
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Запись журнала: порядковый номер, время и текст
+ */
+data class LogRecord(
+    val sequence: Long,
+    val timestampMs: Long,
+    val message: String
+) {
+    fun time(pattern: String = "HH:mm:ss"): String =
+        SimpleDateFormat(pattern, Locale.US).format(Date(timestampMs))
+
+    fun format(pattern: String = "HH:mm:ss"): String = "${time(pattern)}  $message"
+}
+
+/**
+ * Журнал-кольцо в memory-mapped файле со слотами фиксированного размера.
+ *
+ * - Запись без блокировок: номер слота берётся из [AtomicLong], дальше —
+ *   несколько put в отображённую память, без системных вызовов и fsync.
+ *   Страницы сбрасывает ядро, поэтому запись переживает и падение процесса
+ * - Новые записи затирают самые старые; текст длиннее слота обрезается
+ * - Чтение ленивое: [records] декодирует слот, только когда до него дошли
+ *
+ * Слот: `[stamp: Long][timestamp: Long][length: Short][UTF-8 …]`. stamp = номер + 1
+ * пишется последним — недописанный или перезаписанный слот читатель пропускает.
+ * Обычные put в MappedByteBuffer порядок не гарантируют, поэтому вокруг stamp
+ * стоят release/acquire-барьеры ([releaseFence], [acquireFence]).
+ *
+ * Гарантия — только внутри живого процесса. После отключения питания ядро могло
+ * сбросить страницы частично, и запись окажется рваной; читатель это переживает
+ * (длина обрезается по слоту, битый UTF-8 заменяется), но текст может быть мусорным
+ */
+class RingLog(
+    file: File,
+    private val slotSize: Int,
+    private val slotCount: Int,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    private val buffer: MappedByteBuffer
+    private val nextSequence: AtomicLong
+    private val maxPayload = slotSize - PAYLOAD_OFFSET
+
+    // До API 33 нет VarHandle: volatile-доступ к этому полю даёт на ART те же барьеры
+    private val fence = AtomicLong()
+
+    init {
+        require(slotSize in (PAYLOAD_OFFSET + 1)..MAX_SLOT_SIZE) { "Bad slot size: $slotSize" }
+        require(slotCount > 0) { "Bad slot count: $slotCount" }
+        file.parentFile?.mkdirs()
+        val size = HEADER_SIZE + slotSize.toLong() * slotCount
+        buffer = RandomAccessFile(file, "rw").use { raf ->
+            val reuse = raf.length() == size && raf.readInt() == MAGIC &&
+                raf.readInt() == slotSize && raf.readInt() == slotCount
+            if (!reuse) {
+                // Другой формат или размер — начинаем с чистого файла
+                raf.setLength(0)
+                raf.setLength(size)
+            }
+            raf.channel.map(FileChannel.MapMode.READ_WRITE, 0, size).also { mapped ->
+                if (!reuse) {
+                    mapped.putInt(0, MAGIC)
+                    mapped.putInt(4, slotSize)
+                    mapped.putInt(8, slotCount)
+                }
+            }
+        }
+        var last = 0L
+        for (slot in 0 until slotCount) last = maxOf(last, buffer.getLong(slotBase(slot)))
+        nextSequence = AtomicLong(last)
+    }
+
+    fun append(message: String) {
+        val sequence = nextSequence.getAndIncrement()
+        val base = slotBase((sequence % slotCount).toInt())
+        val payload = encode(message)
+        buffer.putLong(base, 0L)
+        // Обнулённый stamp виден раньше новых байт: читатель старой записи заметит подмену
+        releaseFence()
+        buffer.putLong(base + TIMESTAMP_OFFSET, clock())
+        buffer.putShort(base + LENGTH_OFFSET, payload.size.toShort())
+        for (i in payload.indices) buffer.put(base + PAYLOAD_OFFSET + i, payload[i])
+        releaseFence()
+        buffer.putLong(base, sequence + 1)
+    }
+
+    /** Записи от старых к новым; слот декодируется при обходе */
+    fun records(): Sequence<LogRecord> {
+        val end = nextSequence.get()
+        val start = maxOf(0L, end - slotCount)
+        return (start until end).asSequence().mapNotNull(::read)
+    }
+
+    fun latest(): LogRecord? {
+        val end = nextSequence.get()
+        return if (end == 0L) null else read(end - 1)
+    }
+
+    fun clear() {
+        for (slot in 0 until slotCount) buffer.putLong(slotBase(slot), 0L)
+    }
+
+    private fun read(sequence: Long): LogRecord? {
+        val base = slotBase((sequence % slotCount).toInt())
+        val stamp = buffer.getLong(base)
+        if (stamp != sequence + 1) return null
+        acquireFence()
+        val timestamp = buffer.getLong(base + TIMESTAMP_OFFSET)
+        val length = buffer.getShort(base + LENGTH_OFFSET).toInt().coerceIn(0, maxPayload)
+        val bytes = ByteArray(length) { buffer.get(base + PAYLOAD_OFFSET + it) }
+        acquireFence()
+        // Слот переписали, пока читали
+        if (buffer.getLong(base) != stamp) return null
+        return LogRecord(sequence, timestamp, String(bytes, Charsets.UTF_8))
+    }
+
+    /** UTF-8, обрезанный по границе символа */
+    private fun encode(message: String): ByteArray {
+        val bytes = message.toByteArray(Charsets.UTF_8)
+        if (bytes.size <= maxPayload) return bytes
+        var cut = maxPayload
+        while (cut > 0 && (bytes[cut].toInt() and 0xC0) == 0x80) cut--
+        return bytes.copyOf(cut)
+    }
+
+    private fun slotBase(slot: Int): Int = HEADER_SIZE + slot * slotSize
+
+    /** Предыдущие чтения и записи не переедут за следующие записи */
+    private fun releaseFence() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) VarHandle.releaseFence() else fence.set(0L)
+    }
+
+    /** Предыдущие чтения не переедут за следующие чтения и записи */
+    private fun acquireFence() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) VarHandle.acquireFence() else fence.get()
+    }
+
+    companion object {
+        private const val MAGIC = 0x52494E47 // "RING"
+        private const val HEADER_SIZE = 16
+        private const val TIMESTAMP_OFFSET = 8
+        private const val LENGTH_OFFSET = 16
+        private const val PAYLOAD_OFFSET = 18
+        private const val MAX_SLOT_SIZE = PAYLOAD_OFFSET + Short.MAX_VALUE
+
+        /**
+         * Журнал в filesDir/diagnostics. null — файл не открылся; логирование
+         * best effort и не должно ронять приложение
+         */
+        fun open(context: Context, name: String, slotSize: Int, slotCount: Int): RingLog? = try {
+            RingLog(File(File(context.filesDir, "diagnostics"), name), slotSize, slotCount)
+        } catch (e: IOException) {
+            Timber.w(e, "RingLog: failed to open $name")
+            null
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.health.companion.utils
+
+import android.content.Context
+import coil.ImageLoader
+import coil.memory.MemoryCache
+import coil.request.Disposable
+import coil.request.ImageRequest
+import coil.size.Scale
+import timber.log.Timber
+import kotlin.math.abs
+
+/**
+ * Корзины размеров миниатюр. Префетч и AsyncImage на экране обязаны просить
+ * один и тот же размер и ключ — иначе прогретая запись в memory cache не совпадёт
+ */
+object ThumbnailSize {
+    private val BUCKETS_PX = intArrayOf(64, 96, 128, 192, 256, 384, 512)
+
+    fun bucket(px: Int): Int = BUCKETS_PX.firstOrNull { it >= px } ?: BUCKETS_PX.last()
+
+    /** Memory-ключ зависит от корзины; на диске лежит оригинал по URL */
+    fun memoryKey(url: String, bucketPx: Int): String = "$url#${bucketPx}px"
+
+    /** Тот же ключ, что кладёт [request]: с классом THUMBNAIL для TieredMemoryCache */
+    fun memoryCacheKey(url: String, bucketPx: Int): MemoryCache.Key =
+        imageClassKey(ImageClass.THUMBNAIL, memoryKey(url, bucketPx))
+
+    fun request(context: Context, url: String, bucketPx: Int): ImageRequest.Builder =
+        ImageRequest.Builder(context)
+            .data(url)
+            .size(bucketPx)
+            .scale(Scale.FILL)
+            .memoryCacheKey(memoryCacheKey(url, bucketPx))
+            .diskCacheKey(url)
+}
+
+/**
+ * Префетч миниатюр по видимому окну списка: грузит [lookAhead] элементов впереди
+ * по направлению прокрутки (больше — при быстрой прокрутке) и отменяет запросы,
+ * которые выпали из окна. Вызывается с главного потока
+ */
+class ThumbnailPrefetcher(
+    private val context: Context,
+    private val imageLoader: ImageLoader,
+    private val lookAhead: Int = DEFAULT_LOOK_AHEAD,
+    private val maxLookAhead: Int = DEFAULT_MAX_LOOK_AHEAD
+) {
+    private val inFlight = HashMap<String, Disposable>()
+
+    var enqueued = 0
+        private set
+    var cancelled = 0
+        private set
+
+    /**
+     * @param velocity скорость прокрутки в элементах/сек, знак — направление (+ вниз по списку)
+     * @param urlAt URL миниатюры для индекса списка или null, если у элемента её нет
+     */
+    fun onViewport(
+        firstVisible: Int,
+        lastVisible: Int,
+        itemCount: Int,
+        velocity: Float,
+        bucketPx: Int,
+        urlAt: (Int) -> String?
+    ) {
+        val window = prefetchWindow(firstVisible, lastVisible, itemCount, velocity, lookAhead, maxLookAhead)
+        val wanted = LinkedHashMap<String, String>()
+        for (index in window) {
+            urlAt(index)?.let { url -> wanted[ThumbnailSize.memoryKey(url, bucketPx)] = url }
+        }
+
+        // Выпавшие из окна — отменяем, завершённые — просто забываем
+        val iterator = inFlight.entries.iterator()
+        while (iterator.hasNext()) {
+            val (key, disposable) = iterator.next()
+            when {
+                disposable.isDisposed -> iterator.remove()
+                key !in wanted -> {
+                    disposable.dispose()
+                    cancelled++
+                    iterator.remove()
+                }
+            }
+        }
+
+        wanted.forEach { (key, url) ->
+            if (key in inFlight) return@forEach
+            if (imageLoader.memoryCache?.get(ThumbnailSize.memoryCacheKey(url, bucketPx)) != null) return@forEach
+            inFlight[key] = imageLoader.enqueue(ThumbnailSize.request(context, url, bucketPx).build())
+            enqueued++
+        }
+    }
+
+    fun cancelAll() {
+        inFlight.values.forEach { if (!it.isDisposed) it.dispose() }
+        inFlight.clear()
+        Timber.d("ThumbnailPrefetcher: enqueued=$enqueued, cancelled=$cancelled")
+    }
+
+    companion object {
+        const val DEFAULT_LOOK_AHEAD = 6
+        const val DEFAULT_MAX_LOOK_AHEAD = 24
+
+        /** Сколько секунд прокрутки вперёд покрываем при быстром флинге */
+        private const val VELOCITY_HORIZON_SEC = 0.5f
+        private const val IDLE_VELOCITY = 0.5f
+
+        /**
+         * Окно префетча без видимых элементов — их грузит сам экран.
+         * В покое смотрим вниз, при прокрутке вверх — выше первого видимого
+         */
+        internal fun prefetchWindow(
+            firstVisible: Int,
+            lastVisible: Int,
+            itemCount: Int,
+            velocity: Float,
+            lookAhead: Int,
+            maxLookAhead: Int
+        ): IntRange {
+            if (itemCount <= 0 || lastVisible < firstVisible) return IntRange.EMPTY
+            val ahead = (lookAhead + (abs(velocity) * VELOCITY_HORIZON_SEC).toInt())
+                .coerceAtMost(maxLookAhead)
+            return if (velocity < -IDLE_VELOCITY) {
+                (firstVisible - ahead).coerceAtLeast(0) until firstVisible
+            } else {
+                (lastVisible + 1)..(lastVisible + ahead).coerceAtMost(itemCount - 1)
+            }
+        }
+    }
+}
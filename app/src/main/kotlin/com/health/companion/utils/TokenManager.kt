@@ -4,6 +4,7 @@ import androidx.datastore.core.DataStore
 import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.core.edit
 import androidx.datastore.preferences.core.stringPreferencesKey
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.map
 import timber.log.Timber
@@ -72,6 +73,9 @@ class TokenManager @Inject constructor(
         }.first()
     }
     
+    /** Текущий пользователь; null после выхода из аккаунта */
+    val userIdFlow: Flow<String?> = dataStore.data.map { preferences -> preferences[USER_ID] }
+    
     suspend fun getUserId(): String? {
         return dataStore.data.map { preferences ->
             preferences[USER_ID]
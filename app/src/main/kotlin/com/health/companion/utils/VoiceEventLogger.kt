@@ -1,32 +1,32 @@
 package com.health.companion.utils
 
 import android.content.Context
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.Locale
 
+/**
+ * Журнал голосовых событий для диагностики. Пишется в [RingLog]:
+ * запись — микросекунды без диска, можно звать с главного потока
+ */
 object VoiceEventLogger {
-    private const val PREFS = "voice_events"
-    private const val KEY = "events"
+    private const val FILE_NAME = "voice_events.ring"
+    private const val SLOT_SIZE = 192
     private const val MAX_LINES = 200
 
-    fun log(context: Context, message: String) {
-        val prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
-        val current = prefs.getString(KEY, "") ?: ""
-        val formatter = SimpleDateFormat("HH:mm:ss", Locale.US)
-        val line = "${formatter.format(Date())}  $message"
-        val lines = (current.split("\n").filter { it.isNotBlank() } + line).takeLast(MAX_LINES)
-        prefs.edit().putString(KEY, lines.joinToString("\n")).commit()
+    @Volatile
+    private var ring: RingLog? = null
+
+    private fun ring(context: Context): RingLog? = ring ?: synchronized(this) {
+        ring ?: RingLog.open(context.applicationContext, FILE_NAME, SLOT_SIZE, MAX_LINES).also { ring = it }
     }
 
-    fun read(context: Context): String {
-        val prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
-        return prefs.getString(KEY, "")?.ifBlank { "Нет событий" } ?: "Нет событий"
+    fun log(context: Context, message: String) {
+        ring(context)?.append(message)
     }
 
+    fun read(context: Context): String =
+        ring(context)?.records()?.joinToString("\n") { it.format() }?.ifBlank { null } ?: "Нет событий"
+
     fun clear(context: Context) {
-        val prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE)
-        prefs.edit().remove(KEY).apply()
+        ring(context)?.clear()
     }
 
     fun diagnostics(context: Context): String {
@@ -0,0 +1,137 @@
+package com.health.companion.data.local
+
+import com.health.companion.data.local.dao.CacheEntryDao
+import com.health.companion.data.local.database.CacheEntryEntity
+import io.mockk.coEvery
+import io.mockk.mockk
+import io.mockk.slot
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicInteger
+
+class CacheStoreTest {
+
+    private lateinit var cacheStore: CacheStore
+    private val cacheEntryDao = mockk<CacheEntryDao>()
+    private val rows = mutableMapOf<String, CacheEntryEntity>()
+
+    @Before
+    fun setup() {
+        val keySlot = slot<String>()
+        val entrySlot = slot<CacheEntryEntity>()
+        coEvery { cacheEntryDao.get(capture(keySlot)) } answers { rows[keySlot.captured] }
+        coEvery { cacheEntryDao.upsert(capture(entrySlot)) } answers { rows[entrySlot.captured.key] = entrySlot.captured }
+        coEvery { cacheEntryDao.delete(capture(keySlot)) } answers { rows.remove(keySlot.captured) }
+        coEvery { cacheEntryDao.deleteAll() } answers { rows.clear() }
+        cacheStore = CacheStore(cacheEntryDao)
+    }
+
+    @Test
+    fun `stream should emit stale cache first and then revalidated value`() = runTest {
+        // Arrange
+        rows["k"] = CacheEntryEntity(key = "k", payload = "[\"old\"]", fetchedAt = 0L, ttlMs = 1_000L)
+
+        // Act
+        val emissions = cacheStore.stream<List<String>>("k", ttlMs = 1_000L) { listOf("new") }.toList()
+
+        // Assert
+        assertEquals(listOf(listOf("old"), listOf("new")), emissions.map { it.getOrThrow() })
+        assertTrue(rows.getValue("k").payload.contains("new"))
+    }
+
+    @Test
+    fun `stream should not hit network when cache is fresh`() = runTest {
+        // Arrange
+        rows["k"] = CacheEntryEntity(key = "k", payload = "[\"cached\"]", ttlMs = 60_000L)
+        val calls = AtomicInteger(0)
+
+        // Act
+        val emissions = cacheStore.stream<List<String>>("k", ttlMs = 60_000L) {
+            calls.incrementAndGet()
+            listOf("new")
+        }.toList()
+
+        // Assert
+        assertEquals(1, emissions.size)
+        assertEquals(0, calls.get())
+    }
+
+    @Test
+    fun `get should return stale value when revalidation fails`() = runTest {
+        // Arrange
+        rows["k"] = CacheEntryEntity(key = "k", payload = "[\"old\"]", fetchedAt = 0L, ttlMs = 1_000L)
+
+        // Act
+        val result = cacheStore.get<List<String>>("k", ttlMs = 1_000L) { throw IOException("offline") }
+
+        // Assert
+        assertEquals(listOf("old"), result)
+    }
+
+    @Test
+    fun `concurrent requests for the same key should share one fetch`() = runTest {
+        // Arrange
+        val calls = AtomicInteger(0)
+        val gate = CompletableDeferred<Unit>()
+        val fetch: suspend () -> List<String> = {
+            calls.incrementAndGet()
+            gate.await()
+            listOf("value")
+        }
+
+        // Act
+        val first = async { cacheStore.get("k", ttlMs = 1_000L, fetch = fetch) }
+        val second = async { cacheStore.get("k", ttlMs = 1_000L, fetch = fetch) }
+        yield()
+        gate.complete(Unit)
+
+        // Assert
+        assertEquals(listOf("value"), first.await())
+        assertEquals(listOf("value"), second.await())
+        assertEquals(1, calls.get())
+    }
+
+    @Test
+    fun `fetch finished after clear should not be written back`() = runTest {
+        // Arrange: запрос начат до выхода из аккаунта
+        val gate = CompletableDeferred<Unit>()
+        val pending = async {
+            cacheStore.get("k", ttlMs = 1_000L) {
+                gate.await()
+                listOf("previous user")
+            }
+        }
+        yield()
+
+        // Act
+        cacheStore.clear()
+        gate.complete(Unit)
+        pending.await()
+
+        // Assert
+        assertTrue(rows.isEmpty())
+    }
+
+    @Test
+    fun `keys should be scoped to current user`() = runTest {
+        // Arrange
+        val store = CacheStore(cacheEntryDao, flowOf("42"))
+        rows["k"] = CacheEntryEntity(key = "k", payload = "[\"unscoped\"]", ttlMs = 60_000L)
+
+        // Act
+        val result = store.get<List<String>>("k", ttlMs = 60_000L) { listOf("mine") }
+
+        // Assert
+        assertEquals(listOf("mine"), result)
+        assertTrue(rows.containsKey("u:42:k"))
+    }
+}
@@ -0,0 +1,120 @@
+package com.health.companion.data.local
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class TtsAudioCacheTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private var now = 1_000_000L
+
+    private fun cache(maxBytes: Long = TtsAudioCache.DEFAULT_MAX_BYTES) =
+        TtsAudioCache(File(tmp.root, "tts"), maxBytes) { now }
+
+    @Test
+    fun `key should ignore whitespace and unicode form but not voice or speed`() {
+        // Arrange
+        val composed = "Доброе утро, вот ваш дайджест"
+        val decomposed = "  Доброе   утро,\nвот ваш дайджест ".replace("й", "и\u0306")
+
+        // Act & Assert
+        assertEquals(
+            TtsAudioCache.key(composed, "nova", 1.0f, "ru"),
+            TtsAudioCache.key(decomposed, "nova", 1.0f, "ru")
+        )
+        assertNotEquals(
+            TtsAudioCache.key(composed, "nova", 1.0f, "ru"),
+            TtsAudioCache.key(composed, "echo", 1.0f, "ru")
+        )
+        assertNotEquals(
+            TtsAudioCache.key(composed, "nova", 1.0f, "ru"),
+            TtsAudioCache.key(composed, "nova", 1.25f, "ru")
+        )
+    }
+
+    @Test
+    fun `get should return stored audio and count hits and misses`() {
+        // Arrange
+        val cache = cache()
+        val audio = ByteArray(1_000) { it.toByte() }
+
+        // Act
+        val miss = cache.get("k")
+        cache.put("k", audio)
+        val hit = cache.get("k")
+
+        // Assert
+        assertNull(miss)
+        assertArrayEquals(audio, hit!!.readBytes())
+        val stats = cache.stats()
+        assertEquals(1L, stats.hits)
+        assertEquals(1L, stats.misses)
+        assertEquals(1_000L, stats.bytesServed)
+        assertEquals(0.5, stats.hitRate, 0.0)
+    }
+
+    @Test
+    fun `get should drop entry that fails integrity check`() {
+        // Arrange
+        val cache = cache()
+        val file = cache.put("k", ByteArray(100) { 1 })!!
+        file.writeBytes(ByteArray(50))
+
+        // Act
+        val result = cache.get("k")
+
+        // Assert
+        assertNull(result)
+        assertEquals(1L, cache.stats().corrupted)
+        assertEquals(0, cache.stats().entries)
+    }
+
+    @Test
+    fun `put should evict least recently used entries over the size cap`() {
+        // Arrange: 3 записи по 400 байт при лимите ~1000
+        val cache = cache(maxBytes = 1_000)
+        cache.put("a", ByteArray(400)); now += STEP
+        cache.put("b", ByteArray(400)); now += STEP
+        cache.get("a"); now += STEP
+
+        // Act
+        cache.put("c", ByteArray(400))
+
+        // Assert: вытеснена «b» — к «a» обращались позже
+        assertNotNull(cache.get("a"))
+        assertNull(cache.get("b"))
+        assertNotNull(cache.get("c"))
+        assertEquals(1L, cache.stats().evicted)
+    }
+
+    @Test
+    fun `put should not evict entry handed out moments ago`() {
+        // Arrange: «a» только что отдана плееру, лимит уже исчерпан
+        val cache = cache(maxBytes = 1_000)
+        cache.put("a", ByteArray(600)); now += STEP
+        val playing = cache.get("a")!!
+        now += 100
+
+        // Act
+        cache.put("b", ByteArray(600))
+
+        // Assert: файл на месте, хотя кэш временно сверх лимита
+        assertTrue(playing.exists())
+        assertEquals(0L, cache.stats().evicted)
+    }
+
+    companion object {
+        /** Больше [TtsAudioCache.IN_USE_GRACE_MS]: предыдущие записи уже можно вытеснять */
+        private const val STEP = 10_000L
+    }
+}
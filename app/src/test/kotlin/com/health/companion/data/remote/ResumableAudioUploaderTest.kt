@@ -0,0 +1,213 @@
+package com.health.companion.data.remote
+
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.mockwebserver.SocketPolicy
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.Base64
+
+class ResumableAudioUploaderTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private val server = MockWebServer()
+    private val stand = UploadStand()
+    private var networkAvailable = true
+    private var networkWaits = 0
+
+    @Before
+    fun setUp() {
+        server.dispatcher = stand
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    /**
+     * Локальный стенд /voice/uploads: собирает файл, проверяет смещение и
+     * контрольную сумму каждой части, умеет «терять» ответ и портить часть
+     */
+    private class UploadStand : Dispatcher() {
+        val received = ByteArrayOutputStream()
+        var patchBytes = 0
+        var supported = true
+
+        /** Номера PATCH (с 1), на которых байты приняты, а соединение рвётся до ответа */
+        val dropResponseOn = mutableSetOf<Int>()
+
+        /** Номера PATCH, на которых часть «приходит битой» */
+        val corruptOn = mutableSetOf<Int>()
+        private var patches = 0
+
+        override fun dispatch(request: RecordedRequest): MockResponse = synchronized(this) {
+            when {
+                !supported -> MockResponse().setResponseCode(404)
+                request.method == "POST" ->
+                    MockResponse().setResponseCode(201)
+                        .setBody("""{"upload_id":"u1","offset":0,"chunk_size":$CHUNK}""")
+                request.method == "HEAD" ->
+                    MockResponse().setHeader("Upload-Offset", received.size())
+                request.method == "PATCH" -> patch(request)
+                else -> MockResponse().setResponseCode(405)
+            }
+        }
+
+        private fun patch(request: RecordedRequest): MockResponse {
+            patches++
+            val offset = request.getHeader("Upload-Offset")!!.toLong()
+            if (offset != received.size().toLong()) {
+                return MockResponse().setResponseCode(409).setHeader("Upload-Offset", received.size())
+            }
+            val chunk = request.body.readByteArray()
+            patchBytes += chunk.size
+            val expected = "sha256 " + Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(chunk)
+            )
+            if (patches in corruptOn || request.getHeader("Upload-Checksum") != expected) {
+                return MockResponse().setResponseCode(460)
+            }
+            received.write(chunk)
+            if (patches in dropResponseOn) {
+                return MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST)
+            }
+            return MockResponse().setResponseCode(204).setHeader("Upload-Offset", received.size())
+        }
+    }
+
+    private fun uploader() = ResumableAudioUploader(
+        OkHttpClient.Builder().retryOnConnectionFailure(false).build(),
+        server.url("/voice/uploads").toString(),
+        awaitNetwork = { networkWaits++; networkAvailable },
+        retryDelayMs = 0
+    )
+
+    private fun audioFile(size: Int = 200_000): File =
+        tmp.newFile("note.m4a").apply { writeBytes(ByteArray(size) { (it * 31).toByte() }) }
+
+    @Test
+    fun `upload should send file in server-sized chunks`() = runBlocking {
+        // Arrange
+        val file = audioFile()
+
+        // Act
+        val uploadId = uploader().upload(file, "audio/mp4")
+
+        // Assert: 200 000 байт частями по 64 КБ — 4 PATCH
+        assertEquals("u1", uploadId)
+        assertArrayEquals(file.readBytes(), stand.received.toByteArray())
+        assertEquals(4, server.requestCount - 1)
+    }
+
+    @Test
+    fun `upload should resume from server offset after lost response`() = runBlocking {
+        // Arrange: вторая часть дошла, но ответ потерян
+        val file = audioFile()
+        stand.dropResponseOn += 2
+
+        // Act
+        uploader().upload(file, "audio/mp4")
+
+        // Assert: смещение спросили через HEAD, ни один байт не ушёл дважды
+        assertArrayEquals(file.readBytes(), stand.received.toByteArray())
+        assertEquals(file.length().toInt(), stand.patchBytes)
+        assertEquals(1, networkWaits)
+    }
+
+    @Test
+    fun `upload should resend chunk rejected by checksum`() = runBlocking {
+        // Arrange
+        val file = audioFile()
+        stand.corruptOn += 3
+
+        // Act
+        uploader().upload(file, "audio/mp4")
+
+        // Assert
+        assertArrayEquals(file.readBytes(), stand.received.toByteArray())
+        assertEquals(file.length().toInt() + CHUNK, stand.patchBytes)
+    }
+
+    @Test
+    fun `next upload of the same file should continue interrupted session`() = runBlocking {
+        // Arrange: после второй части сети нет и не будет
+        val file = audioFile()
+        val uploader = uploader()
+        stand.dropResponseOn += 2
+        networkAvailable = false
+        try {
+            uploader.upload(file, "audio/mp4")
+            fail("Expected IOException")
+        } catch (e: IOException) {
+            // ожидаемо
+        }
+
+        // Act: сеть вернулась
+        networkAvailable = true
+        val uploadId = uploader.upload(file, "audio/mp4")
+
+        // Assert
+        assertEquals("u1", uploadId)
+        assertArrayEquals(file.readBytes(), stand.received.toByteArray())
+        assertEquals(file.length().toInt(), stand.patchBytes)
+    }
+
+    @Test
+    fun `interactive upload should fail fast and leave session for background retry`() = runBlocking {
+        // Arrange
+        val file = audioFile()
+        val uploader = uploader()
+        stand.dropResponseOn += 2
+
+        // Act: интерактивная попытка не ждёт сеть
+        try {
+            uploader.upload(file, "audio/mp4", waitForNetwork = false)
+            fail("Expected IOException")
+        } catch (e: IOException) {
+            // ожидаемо
+        }
+        val uploadId = uploader.upload(file, "audio/mp4")
+
+        // Assert: ожидания сети не было, фоновая попытка докачала без повторов
+        assertEquals(0, networkWaits)
+        assertEquals("u1", uploadId)
+        assertArrayEquals(file.readBytes(), stand.received.toByteArray())
+        assertEquals(file.length().toInt(), stand.patchBytes)
+    }
+
+    @Test
+    fun `upload should return null when server has no resumable endpoint`() = runBlocking {
+        // Arrange
+        stand.supported = false
+
+        // Act
+        val uploadId = uploader().upload(audioFile(), "audio/mp4")
+
+        // Assert
+        assertNull(uploadId)
+        assertEquals(0, stand.patchBytes)
+    }
+
+    companion object {
+        private const val CHUNK = 64 * 1024
+    }
+}
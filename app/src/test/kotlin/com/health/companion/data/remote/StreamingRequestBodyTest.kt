@@ -0,0 +1,76 @@
+package com.health.companion.data.remote
+
+import okhttp3.MediaType.Companion.toMediaType
+import okio.Buffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+
+class StreamingRequestBodyTest {
+
+    private val data = ByteArray(100_000) { (it * 7).toByte() }
+
+    @Test
+    fun `writeTo should copy whole stream and report monotonic progress`() {
+        // Arrange
+        val progress = mutableListOf<Long>()
+        val body = StreamingRequestBody(
+            contentType = "application/pdf".toMediaType(),
+            contentLength = data.size.toLong(),
+            openStream = { ByteArrayInputStream(data) },
+            onProgress = { sent, _ -> progress += sent }
+        )
+        val sink = Buffer()
+
+        // Act
+        body.writeTo(sink)
+
+        // Assert
+        assertArrayEquals(data, sink.readByteArray())
+        assertEquals(0L, progress.first())
+        assertEquals(data.size.toLong(), progress.last())
+        assertTrue(progress.zipWithNext().all { (a, b) -> b > a })
+        assertTrue("не чаще раза на процент", progress.size <= 101)
+    }
+
+    @Test
+    fun `writeTo should reopen stream on retry`() {
+        // Arrange
+        var opened = 0
+        val body = StreamingRequestBody(
+            contentType = null,
+            contentLength = data.size.toLong(),
+            openStream = { opened++; ByteArrayInputStream(data) }
+        )
+
+        // Act
+        body.writeTo(Buffer())
+        val retry = Buffer().also(body::writeTo)
+
+        // Assert
+        assertEquals(2, opened)
+        assertArrayEquals(data, retry.readByteArray())
+    }
+
+    @Test
+    fun `unknown length should report progress per chunk`() {
+        // Arrange
+        val progress = mutableListOf<Pair<Long, Long>>()
+        val body = StreamingRequestBody(
+            contentType = null,
+            contentLength = -1L,
+            openStream = { ByteArrayInputStream(data) },
+            onProgress = { sent, total -> progress += sent to total }
+        )
+
+        // Act
+        body.writeTo(Buffer())
+
+        // Assert
+        assertEquals(-1L, body.contentLength())
+        assertTrue(progress.all { it.second == -1L })
+        assertEquals(data.size.toLong(), progress.last().first)
+    }
+}
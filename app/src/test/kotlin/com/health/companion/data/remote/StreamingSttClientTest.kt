@@ -0,0 +1,110 @@
+package com.health.companion.data.remote
+
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okio.ByteString
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicInteger
+
+class StreamingSttClientTest {
+
+    private val server = MockWebServer()
+    private val receivedBytes = AtomicInteger()
+    private val receivedText = mutableListOf<String>()
+
+    @Before
+    fun setUp() {
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    /** Локальный стенд: partial на каждый кадр, final после end */
+    private fun streamingServer(replyWithError: Boolean = false) = object : WebSocketListener() {
+        override fun onMessage(webSocket: WebSocket, text: String) {
+            synchronized(receivedText) { receivedText += text }
+            if (text.contains("\"end\"")) {
+                if (replyWithError) {
+                    webSocket.send("""{"type":"error","message":"model overloaded"}""")
+                } else {
+                    webSocket.send("""{"type":"final","text":"привет мир"}""")
+                }
+            }
+        }
+
+        override fun onMessage(webSocket: WebSocket, bytes: ByteString) {
+            val total = receivedBytes.addAndGet(bytes.size)
+            webSocket.send("""{"type":"partial","text":"привет $total"}""")
+        }
+
+        override fun onOpen(webSocket: WebSocket, response: Response) = Unit
+    }
+
+    private fun client() = StreamingSttClient(OkHttpClient(), server.url("/voice/transcribe/stream").toString())
+
+    @Test
+    fun `transcribe should stream frames and finish with final text`() = runBlocking {
+        // Arrange
+        server.enqueue(MockResponse().withWebSocketUpgrade(streamingServer()))
+        val frames = flowOf(ShortArray(640), ShortArray(640), ShortArray(320))
+
+        // Act
+        val events = withTimeout(5_000) { client().transcribe(frames, "ru", 16_000).toList() }
+
+        // Assert
+        assertEquals(TranscriptEvent.Final("привет мир"), events.last())
+        assertTrue(events.dropLast(1).all { it is TranscriptEvent.Partial })
+        assertEquals((640 + 640 + 320) * 2, receivedBytes.get())
+        assertTrue(receivedText.first().contains("\"sample_rate\":16000"))
+        assertTrue(receivedText.last().contains("\"end\""))
+    }
+
+    @Test
+    fun `transcribe should fail on server error message`() = runBlocking {
+        // Arrange
+        server.enqueue(MockResponse().withWebSocketUpgrade(streamingServer(replyWithError = true)))
+
+        // Act & Assert
+        try {
+            withTimeout(5_000) { client().transcribe(flowOf(ShortArray(640)), "ru", 16_000).toList() }
+            fail("Expected IOException")
+        } catch (e: IOException) {
+            assertEquals("model overloaded", e.message)
+        }
+    }
+
+    @Test
+    fun `transcribe should fail as soon as server closes without final`() = runBlocking {
+        // Arrange: на end сервер закрывает сокет, финала нет
+        server.enqueue(MockResponse().withWebSocketUpgrade(object : WebSocketListener() {
+            override fun onMessage(webSocket: WebSocket, text: String) {
+                if (text.contains("\"end\"")) webSocket.close(1011, "overloaded")
+            }
+        }))
+
+        // Act & Assert: ошибка приходит сразу, а не по таймауту финала
+        try {
+            withTimeout(1_000) { client().transcribe(flowOf(ShortArray(640)), "ru", 16_000).toList() }
+            fail("Expected IOException")
+        } catch (e: IOException) {
+            assertTrue(e.message!!.contains("1011"))
+        }
+    }
+}
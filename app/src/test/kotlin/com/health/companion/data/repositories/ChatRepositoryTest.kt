@@ -1,34 +1,57 @@
 package com.health.companion.data.repositories
 
+import android.util.Log
 import com.health.companion.data.local.dao.ChatMessageDao
+import com.health.companion.data.local.dao.ConversationDao
 import com.health.companion.data.local.database.ChatMessageEntity
+import com.health.companion.data.local.database.ConversationEntity
 import com.health.companion.data.remote.api.ChatApi
+import com.health.companion.data.remote.api.ChatMessageData
 import com.health.companion.data.remote.api.ChatMessageRequest
 import com.health.companion.data.remote.api.ChatMessageResponse
 import com.health.companion.data.remote.api.ConversationDTO
+import com.health.companion.data.remote.api.ConversationsResponse
 import com.health.companion.data.remote.api.DeleteResponse
+import com.health.companion.data.remote.api.MessageDTO
 import com.health.companion.services.WebSocketManager
+import com.health.companion.utils.TokenManager
 import io.mockk.coEvery
 import io.mockk.coVerify
+import io.mockk.every
 import io.mockk.just
 import io.mockk.mockk
+import io.mockk.mockkStatic
 import io.mockk.runs
 import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.test.runTest
+import okhttp3.OkHttpClient
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
 import org.junit.Before
 import org.junit.Test
+import java.net.ConnectException
 
 class ChatRepositoryTest {
 
     private lateinit var chatRepository: ChatRepository
     private val chatApi = mockk<ChatApi>()
     private val chatMessageDao = mockk<ChatMessageDao>()
+    private val conversationDao = mockk<ConversationDao>()
     private val webSocketManager = mockk<WebSocketManager>()
+    private val tokenManager = mockk<TokenManager>(relaxed = true)
+    private val outboxRepository = mockk<OutboxRepository>(relaxed = true)
 
     @Before
     fun setup() {
-        chatRepository = ChatRepositoryImpl(chatApi, chatMessageDao, webSocketManager)
+        chatRepository = ChatRepositoryImpl(
+            chatApi,
+            chatMessageDao,
+            conversationDao,
+            webSocketManager,
+            tokenManager,
+            OkHttpClient(),
+            outboxRepository
+        )
     }
 
     @Test
@@ -37,26 +60,61 @@ class ChatRepositoryTest {
         val message = "Hello, how are you?"
         val conversationId = "conv-123"
         val expectedResponse = ChatMessageResponse(
-            response = "I'm doing well! How can I help you today?",
+            message = ChatMessageData(
+                id = "msg-assistant",
+                content = "I'm doing well! How can I help you today?",
+                role = "assistant"
+            ),
             conversation_id = conversationId,
-            agents_used = listOf("wellness_agent"),
-            confidence = 0.95f,
+            agent_used = "wellness_agent",
+            confidence = 0.95,
             sources = listOf("medical_knowledge_base")
         )
 
         coEvery { chatApi.sendMessage(any()) } returns expectedResponse
-        coEvery { chatMessageDao.insert(any()) } just runs
+        coEvery { chatMessageDao.insertChatTurn(any(), any(), any()) } just runs
 
         // Act
-        val result = chatRepository.sendMessage(message, conversationId)
+        val result = chatRepository.sendMessage(message, conversationId).getOrThrow()
 
         // Assert
         assertEquals(expectedResponse, result)
-        assertEquals(expectedResponse.response, result.response)
         assertEquals(conversationId, result.conversation_id)
         
-        // Verify database insertions (user message + assistant message)
-        coVerify(exactly = 2) { chatMessageDao.insert(any()) }
+        // Verify one transactional write (user message + assistant message)
+        coVerify(exactly = 1) {
+            chatMessageDao.insertChatTurn(
+                match { it.id == conversationId },
+                match { it.map { m -> m.role } == listOf("user", "assistant") },
+                any()
+            )
+        }
+        coVerify(exactly = 0) { chatMessageDao.insert(any()) }
+    }
+
+    @Test
+    fun `saveStreamedMessages should write the whole turn in one transaction`() = runTest {
+        // Arrange
+        val conversationId = "conv-123"
+        coEvery { chatMessageDao.insertChatTurn(any(), any(), any()) } just runs
+
+        // Act
+        chatRepository.saveStreamedMessages(
+            conversationId = conversationId,
+            userMessage = "Hello",
+            assistantMessageId = "msg-2",
+            assistantContent = "Hi there!"
+        )
+
+        // Assert
+        coVerify(exactly = 1) {
+            chatMessageDao.insertChatTurn(
+                match { it.id == conversationId },
+                match { it.size == 2 && it[1].id == "msg-2" },
+                any()
+            )
+        }
+        coVerify(exactly = 0) { conversationDao.updateUpdatedAt(any(), any()) }
     }
 
     @Test
@@ -88,6 +146,133 @@ class ChatRepositoryTest {
         }
     }
 
+    @Test
+    fun `sendMessage should send client message id and store user message under it`() = runTest {
+        // Arrange
+        val clientMessageId = "client-msg-1"
+        coEvery { chatApi.sendMessage(any()) } returns ChatMessageResponse(
+            message = ChatMessageData(id = "srv-assistant", content = "Hi", role = "assistant"),
+            conversation_id = "conv-123"
+        )
+        coEvery { chatMessageDao.insertChatTurn(any(), any(), any()) } just runs
+
+        // Act
+        chatRepository.sendMessage("Hello", "conv-123", clientMessageId)
+
+        // Assert
+        coVerify { chatApi.sendMessage(match { it.client_message_id == clientMessageId }) }
+        coVerify {
+            chatMessageDao.insertChatTurn(any(), match { it.first().id == clientMessageId }, any())
+        }
+    }
+
+    @Test
+    fun `syncConversationMessages should replace local client ids with echoed server ids`() = runTest {
+        // Arrange: local row stored under the client id before the server assigned its own
+        val conversationId = "conv-123"
+        val local = listOf(
+            ChatMessageEntity(id = "client-msg-1", conversationId = conversationId, content = "Hello", role = "user"),
+            ChatMessageEntity(id = "srv-2", conversationId = conversationId, content = "Hi there!", role = "assistant")
+        )
+        // Simulated server: echoes client_message_id back with its own id
+        val server = listOf(
+            MessageDTO(id = "srv-1", content = "Hello", role = "user", createdAt = "1000", clientMessageId = "client-msg-1"),
+            MessageDTO(id = "srv-2", content = "Hi there!", role = "assistant", createdAt = "2000")
+        )
+        coEvery { chatApi.getMessages(conversationId) } returns server
+        coEvery { chatMessageDao.getMessages(conversationId) } returns local
+        coEvery { chatMessageDao.insertAllAndTouch(any(), any(), any(), any()) } just runs
+
+        // Act
+        chatRepository.syncConversationMessages(conversationId)
+
+        // Assert
+        coVerify(exactly = 1) {
+            chatMessageDao.insertAllAndTouch(
+                conversationId,
+                match { rows -> rows.map { it.id } == listOf("srv-1", "srv-2") },
+                2000L,
+                listOf("client-msg-1")
+            )
+        }
+    }
+
+    @Test
+    fun `syncConversationMessages should reconcile legacy rows without echo by content`() = runTest {
+        // Arrange: row saved with a random id before client ids were sent
+        val conversationId = "conv-123"
+        val local = listOf(
+            ChatMessageEntity(id = "random-uuid", conversationId = conversationId, content = "Hello", role = "user")
+        )
+        val server = listOf(
+            MessageDTO(id = "srv-1", content = "Hello", role = "user", createdAt = "1000")
+        )
+        coEvery { chatApi.getMessages(conversationId) } returns server
+        coEvery { chatMessageDao.getMessages(conversationId) } returns local
+        coEvery { outboxRepository.pendingChatMessageIds() } returns emptySet()
+        coEvery { chatMessageDao.insertAllAndTouch(any(), any(), any(), any()) } just runs
+
+        // Act
+        chatRepository.syncConversationMessages(conversationId)
+
+        // Assert
+        coVerify { chatMessageDao.insertAllAndTouch(conversationId, any(), any(), listOf("random-uuid")) }
+    }
+
+    @Test
+    fun `syncConversationMessages should not reconcile by content rows still queued in outbox`() = runTest {
+        // Arrange: «да» уже на сервере, второе «да» ещё ждёт в outbox
+        val conversationId = "conv-123"
+        val local = listOf(
+            ChatMessageEntity(id = "srv-1", conversationId = conversationId, content = "да", role = "user"),
+            ChatMessageEntity(id = "queued-msg", conversationId = conversationId, content = "да", role = "user")
+        )
+        val server = listOf(
+            MessageDTO(id = "srv-1", content = "да", role = "user", createdAt = "1000")
+        )
+        coEvery { chatApi.getMessages(conversationId) } returns server
+        coEvery { chatMessageDao.getMessages(conversationId) } returns local
+        coEvery { outboxRepository.pendingChatMessageIds() } returns setOf("queued-msg")
+        coEvery { chatMessageDao.insertAllAndTouch(any(), any(), any(), any()) } just runs
+
+        // Act
+        chatRepository.syncConversationMessages(conversationId)
+
+        // Assert
+        coVerify { chatMessageDao.insertAllAndTouch(conversationId, any(), any(), emptyList()) }
+    }
+
+    @Test
+    fun `sendMessage offline should save placeholder and queue message in outbox`() = runTest {
+        // Arrange
+        coEvery { chatApi.sendMessage(any()) } throws ConnectException("offline")
+        coEvery { chatMessageDao.insertChatTurn(any(), any(), any()) } just runs
+
+        // Act
+        val result = chatRepository.sendMessage("Hello", "conv-123", "client-msg-1").getOrThrow()
+
+        // Assert
+        assertEquals("offline", result.message?.agent_name)
+        coVerify(exactly = 1) {
+            outboxRepository.enqueue(
+                OutboxOperationType.CHAT_MESSAGE,
+                match { it.contains("client-msg-1") && it.contains(result.getMessageId()) },
+                "conv-123"
+            )
+        }
+    }
+
+    @Test
+    fun `toFtsQuery should build prefix terms and strip FTS syntax`() {
+        // Act
+        val match = ChatRepositoryImpl.toFtsQuery("  Сон, \"давление\" OR* -bp ")
+        val empty = ChatRepositoryImpl.toFtsQuery(" *:- ")
+
+        // Assert
+        assertEquals("сон* давление* or* bp*", match)
+        assertNull(empty)
+    }
+
     @Test
     fun `getConversationMessages should return messages from database`() = runTest {
         // Arrange
@@ -151,6 +336,53 @@ class ChatRepositoryTest {
             }
     }
 
+    @Test
+    fun `getConversations full sync should keep offline conversation with queued message`() = runTest {
+        // Arrange
+        mockkStatic(Log::class)
+        every { Log.d(any(), any()) } returns 0
+        coEvery { chatApi.getConversations(size = any(), page = any(), search = any()) } returns
+            ConversationsResponse(
+                items = listOf(ConversationDTO(id = "conv-server", title = "Сон")),
+                total = 1,
+                page = 1,
+                pages = 1
+            )
+        coEvery { conversationDao.upsertAll(any()) } just runs
+        coEvery { conversationDao.getAllIds() } returns listOf("conv-server", "conv-offline", "conv-stale")
+        coEvery { outboxRepository.pendingConversationIds() } returns setOf("conv-offline")
+        coEvery { outboxRepository.pendingTargetIds(any()) } returns emptySet()
+        coEvery { conversationDao.deleteByIds(any()) } just runs
+
+        // Act
+        chatRepository.getConversations().getOrThrow()
+
+        // Assert
+        coVerify(exactly = 1) { conversationDao.deleteByIds(listOf("conv-stale")) }
+    }
+
+    @Test
+    fun `searchRemoteConversations should keep local pin while flags update is queued`() = runTest {
+        // Arrange
+        coEvery { chatApi.getConversations(size = any(), page = any(), search = any()) } returns
+            ConversationsResponse(
+                items = listOf(ConversationDTO(id = "conv-1", title = "Давление", isPinned = false)),
+                total = 1,
+                page = 1,
+                pages = 1
+            )
+        coEvery { outboxRepository.pendingTargetIds(OutboxOperationType.CONVERSATION_FLAGS) } returns setOf("conv-1")
+        coEvery { conversationDao.getConversationById("conv-1") } returns
+            ConversationEntity(id = "conv-1", title = "Давление", isPinned = true)
+        coEvery { conversationDao.upsertAll(any()) } just runs
+
+        // Act
+        chatRepository.searchRemoteConversations("давл").getOrThrow()
+
+        // Assert
+        coVerify { conversationDao.upsertAll(match { it.single().isPinned }) }
+    }
+
     @Test
     fun `deleteConversation should delete from API and database`() = runTest {
         // Arrange
@@ -27,10 +27,11 @@ class HealthRepositoryTest {
     private val healthApi = mockk<HealthApi>()
     private val healthMetricDao = mockk<HealthMetricDao>()
     private val moodEntryDao = mockk<MoodEntryDao>()
+    private val outboxRepository = mockk<OutboxRepository>(relaxed = true)
 
     @Before
     fun setup() {
-        healthRepository = HealthRepositoryImpl(healthApi, healthMetricDao, moodEntryDao)
+        healthRepository = HealthRepositoryImpl(healthApi, healthMetricDao, moodEntryDao, outboxRepository)
     }
 
     @Test
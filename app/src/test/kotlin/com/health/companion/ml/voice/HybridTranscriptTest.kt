@@ -0,0 +1,86 @@
+package com.health.companion.ml.voice
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class HybridTranscriptTest {
+
+    @Test
+    fun `display should prefer on-device partials until server final arrives`() {
+        // Arrange
+        val transcript = HybridTranscript()
+
+        // Act & Assert
+        transcript.onServerPartial("дав")
+        assertEquals("дав", transcript.display)
+
+        transcript.onDevicePartial("давление сто")
+        transcript.onServerPartial("давление 1")
+        assertEquals("давление сто", transcript.display)
+
+        transcript.onServerFinal("Давление 120 на 80")
+        transcript.onDevicePartial("давление сто двадцать на восемьдесят")
+        assertEquals("Давление 120 на 80", transcript.display)
+    }
+
+    @Test
+    fun `blank on-device reset should keep last recognized text`() {
+        // Arrange
+        val transcript = HybridTranscript()
+        transcript.onDevicePartial("пульс семьдесят")
+
+        // Act
+        transcript.onDevicePartial("")
+
+        // Assert
+        assertEquals("пульс семьдесят", transcript.display)
+        assertEquals("пульс семьдесят", transcript.fallback())
+    }
+
+    @Test
+    fun `reset should clear all sources`() {
+        // Arrange
+        val transcript = HybridTranscript()
+        transcript.onDevicePartial("текст")
+        transcript.onServerFinal("Текст")
+
+        // Act
+        transcript.reset()
+
+        // Assert
+        assertNull(transcript.serverFinal)
+        assertEquals("", transcript.display)
+        assertEquals("", transcript.fallback())
+    }
+
+    @Test
+    fun `on-device results should accumulate phrases across recognizer restarts`() {
+        // Arrange
+        val transcript = HybridTranscript()
+        transcript.onDevicePartial("давление сто двадцать")
+        transcript.onDeviceResult("давление сто двадцать на восемьдесят")
+
+        // Act: распознаватель перезапущен, запоздавший partial прошлой фразы и новая фраза
+        transcript.onDevicePartial("давление сто двадцать на восемьдесят")
+        transcript.onDevicePartial("пульс семьдесят")
+
+        // Assert
+        assertEquals("давление сто двадцать на восемьдесят пульс семьдесят", transcript.display)
+        assertEquals("давление сто двадцать на восемьдесят пульс семьдесят", transcript.fallback())
+    }
+
+    @Test
+    fun `display should switch to server partial once it is longer`() {
+        // Arrange
+        val transcript = HybridTranscript()
+        transcript.onDeviceResult("давление сто двадцать")
+
+        // Act
+        transcript.onServerPartial("Давление 120 на 80, пульс 70")
+
+        // Assert
+        assertEquals("Давление 120 на 80, пульс 70", transcript.display)
+        assertEquals("Давление 120 на 80, пульс 70", transcript.fallback())
+    }
+}
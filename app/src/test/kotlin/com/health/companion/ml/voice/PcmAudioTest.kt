@@ -0,0 +1,45 @@
+package com.health.companion.ml.voice
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class PcmAudioTest {
+
+    @Test
+    fun `toLittleEndianBytes should encode samples low byte first`() {
+        // Arrange
+        val samples = shortArrayOf(0x1234, -2)
+
+        // Act
+        val bytes = PcmAudio.toLittleEndianBytes(samples)
+
+        // Assert
+        assertArrayEquals(byteArrayOf(0x34, 0x12, 0xFE.toByte(), 0xFF.toByte()), bytes)
+    }
+
+    @Test
+    fun `WavFileWriter should patch sizes into header on close`() {
+        // Arrange
+        val file = File.createTempFile("pcm_test", ".wav")
+
+        // Act
+        WavFileWriter(file, 16_000).use { writer ->
+            writer.write(ShortArray(160))
+            writer.write(ShortArray(100), count = 40)
+        }
+
+        // Assert
+        val bytes = file.readBytes()
+        val header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+        assertEquals(WavFileWriter.HEADER_SIZE + 400, bytes.size)
+        assertEquals("RIFF", String(bytes, 0, 4, Charsets.US_ASCII))
+        assertEquals(36 + 400, header.getInt(4))
+        assertEquals(16_000, header.getInt(24))
+        assertEquals(400, header.getInt(40))
+        file.delete()
+    }
+}
@@ -0,0 +1,136 @@
+package com.health.companion.ml.voice
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeout
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.ResponseBody
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+
+class SentenceSpeechQueueTest {
+
+    private val server = MockWebServer()
+    private val client = OkHttpClient()
+
+    @Before
+    fun setUp() {
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    /** Локальный стенд TTS: «аудио» — это текст предложения, «медленные» отвечают с задержкой */
+    private fun ttsServer(slow: Set<String> = emptySet(), broken: Set<String> = emptySet()) =
+        object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val text = request.body.readUtf8()
+                return when (text) {
+                    in broken -> MockResponse().setResponseCode(500)
+                    in slow -> MockResponse().setBody(text).setHeadersDelay(300, TimeUnit.MILLISECONDS)
+                    else -> MockResponse().setBody(text)
+                }
+            }
+        }
+
+    private suspend fun synthesize(text: String): ResponseBody = withContext(Dispatchers.IO) {
+        val request = Request.Builder()
+            .url(server.url("/voice/synthesize"))
+            .post(text.toRequestBody("text/plain".toMediaType()))
+            .build()
+        val response = client.newCall(request).execute()
+        if (!response.isSuccessful) {
+            response.close()
+            throw IOException("TTS failed: ${response.code}")
+        }
+        response.body!!
+    }
+
+    @Test
+    fun `queue should play sentences in order and prefetch the next one`() = runBlocking {
+        // Arrange
+        server.dispatcher = ttsServer(slow = setOf("Первое."))
+        val played = mutableListOf<String>()
+        val requestsWhilePlaying = mutableListOf<Int>()
+        val queue = SentenceSpeechQueue(
+            scope = this,
+            synthesize = ::synthesize,
+            play = { body ->
+                delay(100)
+                requestsWhilePlaying += server.requestCount
+                played += withContext(Dispatchers.IO) { body.string() }
+            }
+        )
+
+        // Act
+        listOf("Первое.", "Второе.", "Третье.").forEach(queue::enqueue)
+        queue.finish()
+        withTimeout(5_000) { queue.awaitDone() }
+
+        // Assert: пока играло первое, запрос второго уже ушёл
+        assertEquals(listOf("Первое.", "Второе.", "Третье."), played)
+        assertTrue(requestsWhilePlaying.first() >= 2)
+        assertFalse(queue.isSpeaking.value)
+    }
+
+    @Test
+    fun `queue should skip sentence when synthesis fails`() = runBlocking {
+        // Arrange
+        server.dispatcher = ttsServer(broken = setOf("Сломанное."))
+        val played = mutableListOf<String>()
+        val queue = SentenceSpeechQueue(this, ::synthesize) { body ->
+            played += withContext(Dispatchers.IO) { body.string() }
+        }
+
+        // Act
+        listOf("Раз.", "Сломанное.", "Два.").forEach(queue::enqueue)
+        queue.finish()
+        withTimeout(5_000) { queue.awaitDone() }
+
+        // Assert
+        assertEquals(listOf("Раз.", "Два."), played)
+    }
+
+    @Test
+    fun `cancel should stop playback and drop queued sentences`() = runBlocking {
+        // Arrange
+        server.dispatcher = ttsServer()
+        val played = mutableListOf<String>()
+        val queue = SentenceSpeechQueue(this, ::synthesize) { body ->
+            played += withContext(Dispatchers.IO) { body.string() }
+            awaitCancellation()
+        }
+        listOf("Раз.", "Два.", "Три.").forEach(queue::enqueue)
+        withTimeout(5_000) { queue.isSpeaking.first { it } }
+
+        // Act
+        queue.cancel()
+        queue.enqueue("Четыре.")
+        withTimeout(5_000) { queue.awaitDone() }
+
+        // Assert
+        assertEquals(listOf("Раз."), played)
+        assertFalse(queue.isSpeaking.value)
+        assertTrue(server.requestCount <= 2)
+    }
+}
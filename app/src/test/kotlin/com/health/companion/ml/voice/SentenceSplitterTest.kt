@@ -0,0 +1,65 @@
+package com.health.companion.ml.voice
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SentenceSplitterTest {
+
+    @Test
+    fun `append should emit sentence once whitespace follows the terminator`() {
+        // Arrange
+        val splitter = SentenceSplitter()
+
+        // Act
+        val first = splitter.append("Сегодня хорошая погода для прогулки.")
+        val second = splitter.append(" Возьмите")
+        val rest = splitter.flush()
+
+        // Assert
+        assertTrue(first.isEmpty())
+        assertEquals(listOf("Сегодня хорошая погода для прогулки."), second)
+        assertEquals("Возьмите", rest)
+    }
+
+    @Test
+    fun `append should merge short sentences and ignore decimal points`() {
+        // Arrange
+        val splitter = SentenceSplitter()
+
+        // Act
+        val sentences = "Да. Температура 36.6 — это норма! Пейте воду. ".chunked(3)
+            .flatMap { splitter.append(it) }
+
+        // Assert
+        assertEquals(listOf("Да. Температура 36.6 — это норма!"), sentences)
+        assertEquals("Пейте воду.", splitter.flush())
+    }
+
+    @Test
+    fun `append should split long text without punctuation at a word boundary`() {
+        // Arrange
+        val splitter = SentenceSplitter()
+        val text = "слово ".repeat(60)
+
+        // Act
+        val sentences = splitter.append(text)
+
+        // Assert
+        assertEquals(1, sentences.size)
+        assertTrue(sentences.first().length <= SentenceSplitter.MAX_SENTENCE_LENGTH)
+        assertTrue(sentences.first().endsWith("слово"))
+    }
+
+    @Test
+    fun `cleanForSpeech should strip markdown and flush should skip empty tail`() {
+        // Arrange
+        val splitter = SentenceSplitter()
+        splitter.append("**  **\n")
+
+        // Act & Assert
+        assertEquals("Важно: пейте воду", SentenceSplitter.cleanForSpeech("**Важно:**  пейте `воду`"))
+        assertNull(splitter.flush())
+    }
+}
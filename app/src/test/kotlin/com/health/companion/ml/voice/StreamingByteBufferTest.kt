@@ -0,0 +1,81 @@
+package com.health.companion.ml.voice
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.IOException
+import kotlin.concurrent.thread
+
+class StreamingByteBufferTest {
+
+    @Test
+    fun `readAt should block until writer appends bytes`() {
+        // Arrange
+        val buffer = StreamingByteBuffer(initialCapacity = 4)
+        val target = ByteArray(8)
+        var read = 0
+
+        // Act
+        val reader = thread { read = buffer.readAt(0, target, 0, 8) }
+        Thread.sleep(50)
+        buffer.append(byteArrayOf(1, 2, 3))
+        reader.join(1_000)
+
+        // Assert
+        assertEquals(3, read)
+        assertArrayEquals(byteArrayOf(1, 2, 3), target.copyOf(3))
+    }
+
+    @Test
+    fun `readAt should return end of stream after complete`() {
+        // Arrange
+        val buffer = StreamingByteBuffer(initialCapacity = 2)
+        buffer.append(ByteArray(5) { it.toByte() })
+        buffer.complete()
+        val target = ByteArray(10)
+
+        // Act & Assert
+        assertEquals(2, buffer.readAt(3, target, 0, 10))
+        assertEquals(-1, buffer.readAt(5, target, 0, 10))
+        assertEquals(5L, buffer.totalSize)
+    }
+
+    @Test
+    fun `awaitBuffered should wait for jitter buffer or time out`() {
+        // Arrange
+        val buffer = StreamingByteBuffer()
+        buffer.append(ByteArray(100))
+
+        // Act & Assert
+        assertFalse(buffer.awaitBuffered(minBytes = 200, timeoutMs = 20))
+        buffer.append(ByteArray(100))
+        assertTrue(buffer.awaitBuffered(minBytes = 200, timeoutMs = 20))
+        assertEquals(-1L, buffer.totalSize)
+    }
+
+    @Test
+    fun `readAt should surface stream failure and close should unblock`() {
+        // Arrange
+        val failed = StreamingByteBuffer()
+        failed.fail(IOException("reset"))
+        val closed = StreamingByteBuffer()
+        var read = 0
+
+        // Act
+        val reader = thread { read = closed.readAt(0, ByteArray(4), 0, 4) }
+        closed.close()
+        reader.join(1_000)
+
+        // Assert
+        assertEquals(-1, read)
+        try {
+            failed.readAt(0, ByteArray(4), 0, 4)
+            fail("Expected IOException")
+        } catch (e: IOException) {
+            assertEquals("reset", e.message)
+        }
+    }
+}
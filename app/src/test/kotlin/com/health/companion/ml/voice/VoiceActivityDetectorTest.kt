@@ -0,0 +1,95 @@
+package com.health.companion.ml.voice
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.PI
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+class VoiceActivityDetectorTest {
+
+    private val frameMs = 40
+    private val frameSize = 16_000 * frameMs / 1000
+
+    private fun silence() = ShortArray(frameSize)
+
+    private fun tone(frequency: Double = 300.0, amplitude: Double = 8_000.0) = ShortArray(frameSize) { i ->
+        (amplitude * sin(2 * PI * frequency * i / 16_000)).toInt().toShort()
+    }
+
+    @Test
+    fun `FrameStats should measure rms and zero crossings`() {
+        // Act
+        val stats = FrameStats.of(tone())
+
+        // Assert
+        assertEquals(8_000 / sqrt(2.0), stats.rms, 50.0)
+        assertEquals(2 * 300.0 / 16_000, stats.zeroCrossingRate, 0.005)
+        assertEquals(0.0, FrameStats.of(silence()).rms, 0.0)
+    }
+
+    @Test
+    fun `SpeechGate should trim silence and auto-stop after trailing silence`() {
+        // Arrange
+        val gate = SpeechGate(VadConfig(), frameMs)
+        val input = List(20) { silence() } + List(25) { tone() } + List(40) { silence() }
+
+        // Act
+        val emitted = mutableListOf<ShortArray>()
+        var stopIndex = -1
+        input.forEachIndexed { index, frame ->
+            val result = gate.offer(frame)
+            emitted += result.frames
+            if (result.stop && stopIndex < 0) stopIndex = index
+        }
+
+        // Assert: 240 мс пре-ролла + речь + 320 мс хвоста
+        assertTrue(gate.hasSpeech)
+        assertEquals(6 + 25 + 8, emitted.size)
+        assertEquals(20 + 25 + 30 - 1, stopIndex)
+        assertTrue(gate.offer(tone()).frames.isEmpty())
+    }
+
+    @Test
+    fun `SpeechGate should keep pauses inside a phrase`() {
+        // Arrange
+        val gate = SpeechGate(VadConfig(), frameMs)
+        val input = List(5) { tone() } + List(10) { silence() } + List(5) { tone() }
+
+        // Act
+        val emitted = input.flatMap { gate.offer(it).frames } + gate.flush()
+
+        // Assert
+        assertEquals(20, emitted.size)
+    }
+
+    @Test
+    fun `SpeechGate should stop without output when nobody speaks`() {
+        // Arrange
+        val gate = SpeechGate(VadConfig(noSpeechTimeoutMs = 400), frameMs)
+
+        // Act
+        val results = List(10) { gate.offer(silence()) }
+
+        // Assert
+        assertFalse(gate.hasSpeech)
+        assertTrue(results.all { it.frames.isEmpty() })
+        assertTrue(results.last().stop)
+        assertTrue(gate.flush().isEmpty())
+    }
+
+    @Test
+    fun `SpeechGate should ignore short clicks`() {
+        // Arrange
+        val gate = SpeechGate(VadConfig(), frameMs)
+
+        // Act
+        val emitted = (List(2) { tone() } + List(10) { silence() }).flatMap { gate.offer(it).frames }
+
+        // Assert
+        assertFalse(gate.hasSpeech)
+        assertTrue(emitted.isEmpty())
+    }
+}
@@ -0,0 +1,59 @@
+package com.health.companion.presentation.screens.chat
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MarkdownTableTest {
+
+    @Test
+    fun `estimateColumnWidthsDp should ignore rows beyond sample`() {
+        // Arrange
+        val headers = listOf("Показатель", "Значение")
+        val rows = listOf(listOf("Глюкоза", "5.1")) + List(30) { listOf("A", "1") } +
+            listOf(listOf("Очень длинное название показателя", "1"))
+
+        // Act
+        val widths = estimateColumnWidthsDp(headers, rows, sampleRows = 20)
+
+        // Assert
+        assertEquals(listOf(110, 98), widths)
+    }
+
+    @Test
+    fun `estimateColumnWidthsDp should clamp widths`() {
+        // Arrange
+        val headers = listOf("", "Комментарий врача к результату")
+
+        // Act
+        val widths = estimateColumnWidthsDp(headers, emptyList())
+
+        // Assert
+        assertEquals(listOf(50, 120), widths)
+    }
+
+    @Test
+    fun `visibleColumnRange should cover viewport with one column overscan`() {
+        // Arrange
+        val widths = IntArray(7) { 100 }
+        val starts = IntArray(7) { it * 100 }
+
+        // Act
+        val range = visibleColumnRange(starts, widths, scrollPx = 250, viewportPx = 200)
+
+        // Assert
+        assertEquals(1..5, range)
+    }
+
+    @Test
+    fun `visibleColumnRange should handle edges and empty tables`() {
+        // Arrange
+        val widths = IntArray(3) { 100 }
+        val starts = intArrayOf(0, 100, 200)
+
+        // Act & Assert
+        assertEquals(0..1, visibleColumnRange(starts, widths, scrollPx = 0, viewportPx = 50))
+        assertEquals(1..2, visibleColumnRange(starts, widths, scrollPx = 250, viewportPx = 50))
+        assertTrue(visibleColumnRange(IntArray(0), IntArray(0), scrollPx = 0, viewportPx = 100).isEmpty())
+    }
+}
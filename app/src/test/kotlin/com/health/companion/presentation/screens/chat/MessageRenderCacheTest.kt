@@ -0,0 +1,59 @@
+package com.health.companion.presentation.screens.chat
+
+import com.health.companion.data.remote.api.MessageDTO
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MessageRenderCacheTest {
+
+    private val cache = MessageRenderCache(maxSize = 2)
+
+    @Test
+    fun `render should reuse model for unchanged message`() {
+        // Arrange
+        val message = MessageDTO(id = "m1", content = "## Заголовок\n- пункт", role = "assistant")
+
+        // Act
+        val first = cache.render(listOf(message)).getValue("m1")
+        val second = cache.render(listOf(message)).getValue("m1")
+
+        // Assert
+        assertSame(first, second)
+        assertTrue(first.blocks.first() is MarkdownBlock.Heading)
+        assertTrue(first.blocks.last() is MarkdownBlock.ListItem)
+    }
+
+    @Test
+    fun `render should rebuild model when content changes`() {
+        // Arrange
+        val original = MessageDTO(id = "m1", content = "Привет", role = "assistant")
+        val edited = original.copy(content = "Привет, **мир**")
+
+        // Act
+        val first = cache.get(original)
+        val second = cache.get(edited)
+
+        // Assert
+        assertNotSame(first, second)
+        assertTrue(second.matches(edited))
+        assertFalse(first.matches(edited))
+    }
+
+    @Test
+    fun `render should skip streaming message and format user text`() {
+        // Arrange
+        val user = MessageDTO(id = "u1", content = "* один\n* два", role = "user")
+        val streaming = MessageDTO(id = "s1", content = "…", role = "assistant", agentName = "streaming")
+
+        // Act
+        val models = cache.render(listOf(user, streaming))
+
+        // Assert
+        assertEquals(setOf("u1"), models.keys)
+        assertEquals("• один\n• два", models.getValue("u1").plainText)
+    }
+}
@@ -0,0 +1,49 @@
+package com.health.companion.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.abs
+
+class BlurHashTest {
+
+    @Test
+    fun `decodePixels should decode reference hash`() {
+        // Act
+        val pixels = BlurHash.decodePixels("LEHV6nWB2yk8pyo0adR*.7kCMdnj", 32, 32)
+
+        // Assert
+        assertNotNull(pixels)
+        assertEquals(32 * 32, pixels!!.size)
+        assertTrue(pixels.all { (it ushr 24) == 0xFF })
+    }
+
+    @Test
+    fun `decodePixels should reject malformed hash`() {
+        // Act & Assert
+        assertNull(BlurHash.decodePixels("LEHV6n", 32, 32))
+        assertNull(BlurHash.decodePixels("LEHV6nWB2yk8pyo0adR*.7kCMdn!", 32, 32))
+    }
+
+    @Test
+    fun `encodePixels should round-trip solid color`() {
+        // Arrange
+        val color = 0xFF3366CC.toInt()
+        val pixels = IntArray(16 * 16) { color }
+
+        // Act
+        val hash = BlurHash.encodePixels(pixels, 16, 16, componentsX = 4, componentsY = 3)
+        val decoded = BlurHash.decodePixels(hash, 8, 8)
+
+        // Assert
+        assertEquals(4 + 2 * 4 * 3, hash.length)
+        assertNotNull(decoded)
+        decoded!!.forEach { pixel ->
+            assertTrue(abs(((pixel shr 16) and 0xFF) - 0x33) <= 2)
+            assertTrue(abs(((pixel shr 8) and 0xFF) - 0x66) <= 2)
+            assertTrue(abs((pixel and 0xFF) - 0xCC) <= 2)
+        }
+    }
+}
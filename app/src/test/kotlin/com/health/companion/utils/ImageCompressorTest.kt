@@ -0,0 +1,73 @@
+package com.health.companion.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ImageCompressorTest {
+
+    @Test
+    fun `targetDimensions should fit byte budget and keep aspect ratio`() {
+        // Arrange: 48 МП, бюджет ~1.5 МП при 0.5 байта на пиксель
+        val budget = 750_000
+
+        // Act
+        val (width, height) = ImageCompressor.targetDimensions(8000, 6000, budget)
+
+        // Assert
+        assertTrue(width * height * 0.5 <= budget)
+        assertTrue(width * height * 0.5 > budget * 0.95)
+        assertEquals(8000.0 / 6000, width.toDouble() / height, 0.01)
+    }
+
+    @Test
+    fun `targetDimensions should cap long side and never upscale`() {
+        // Act
+        val large = ImageCompressor.targetDimensions(12_000, 3_000, 100 * 1024 * 1024)
+        val small = ImageCompressor.targetDimensions(800, 600, 9 * 1024 * 1024)
+
+        // Assert
+        assertEquals(ImageCompressor.MAX_DIMENSION, large.first)
+        assertEquals(768, large.second)
+        assertEquals(800 to 600, small)
+    }
+
+    @Test
+    fun `sampleSize should be largest power of two not below target`() {
+        // Act & Assert
+        assertEquals(2, ImageCompressor.sampleSize(8000, 6000, 3072, 2304))
+        assertEquals(4, ImageCompressor.sampleSize(8000, 6000, 2000, 1500))
+        assertEquals(1, ImageCompressor.sampleSize(3000, 2000, 2500, 1600))
+    }
+
+    @Test
+    fun `searchQuality should find highest fitting quality in few probes`() {
+        // Arrange
+        val probes = mutableListOf<Int>()
+
+        // Act
+        val quality = ImageCompressor.searchQuality { probes += it; it <= 77 }
+
+        // Assert
+        assertEquals(77, quality)
+        assertTrue("probes: $probes", probes.size <= 5)
+    }
+
+    @Test
+    fun `searchQuality should fall back to minimum when nothing fits`() {
+        // Act
+        val quality = ImageCompressor.searchQuality { false }
+
+        // Assert
+        assertEquals(ImageCompressor.MIN_QUALITY, quality)
+    }
+
+    @Test
+    fun `shrinkFactor should scale pixel count below budget`() {
+        // Act
+        val shrink = ImageCompressor.shrinkFactor(actualBytes = 12_000_000, maxBytes = 9_000_000)
+
+        // Assert: пиксели (и байты) уменьшаются с запасом
+        assertTrue(shrink * shrink * 12_000_000 < 9_000_000)
+    }
+}
@@ -0,0 +1,35 @@
+package com.health.companion.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class MediaDownloadManagerTest {
+
+    @Test
+    fun `sniffMimeType should detect image signatures`() {
+        // Arrange
+        val png = byteArrayOf(0x89.toByte(), 0x50, 0x4E, 0x47, 0x0D, 0x0A)
+        val jpeg = byteArrayOf(0xFF.toByte(), 0xD8.toByte(), 0xFF.toByte())
+        val webp = "RIFF\u0000\u0000\u0000\u0000WEBP".toByteArray(Charsets.US_ASCII)
+
+        // Act & Assert
+        assertEquals("image/png", MediaDownloadManager.sniffMimeType(png))
+        assertEquals("image/jpeg", MediaDownloadManager.sniffMimeType(jpeg))
+        assertEquals("image/webp", MediaDownloadManager.sniffMimeType(webp))
+    }
+
+    @Test
+    fun `sniffMimeType should fall back to png for short or unknown header`() {
+        // Act & Assert
+        assertEquals("image/png", MediaDownloadManager.sniffMimeType(byteArrayOf()))
+        assertEquals("image/png", MediaDownloadManager.sniffMimeType("RIFF".toByteArray()))
+    }
+
+    @Test
+    fun `extensionFor should match mime type`() {
+        // Act & Assert
+        assertEquals("jpg", MediaDownloadManager.extensionFor("image/jpeg"))
+        assertEquals("webp", MediaDownloadManager.extensionFor("image/webp"))
+        assertEquals("png", MediaDownloadManager.extensionFor("image/png"))
+    }
+}
@@ -0,0 +1,95 @@
+package com.health.companion.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class RingLogTest {
+
+    @get:Rule
+    val tmp = TemporaryFolder()
+
+    private var now = 1_000L
+
+    private fun ring(file: File = File(tmp.root, "test.ring"), slotSize: Int = 64, slotCount: Int = 4) =
+        RingLog(file, slotSize, slotCount) { now }
+
+    @Test
+    fun `records should return entries in order and drop oldest after wraparound`() {
+        // Arrange
+        val ring = ring()
+
+        // Act
+        (1..6).forEach { now += 10; ring.append("event $it") }
+
+        // Assert
+        val records = ring.records().toList()
+        assertEquals(listOf("event 3", "event 4", "event 5", "event 6"), records.map { it.message })
+        assertEquals(listOf(2L, 3L, 4L, 5L), records.map { it.sequence })
+        assertEquals(1_060L, records.last().timestampMs)
+        assertEquals("event 6", ring.latest()?.message)
+    }
+
+    @Test
+    fun `append should truncate long message at utf-8 character boundary`() {
+        // Arrange: 18 байт заголовка слота + 11 байт текста
+        val ring = ring(slotSize = 29)
+
+        // Act: каждая кириллическая буква — 2 байта
+        ring.append("давление высокое")
+
+        // Assert
+        assertEquals("давле", ring.latest()?.message)
+    }
+
+    @Test
+    fun `reopened log should keep records and continue numbering`() {
+        // Arrange
+        val file = File(tmp.root, "persist.ring")
+        ring(file).apply {
+            append("first")
+            append("second")
+        }
+
+        // Act
+        val reopened = ring(file)
+        reopened.append("third")
+
+        // Assert
+        val records = reopened.records().toList()
+        assertEquals(listOf("first", "second", "third"), records.map { it.message })
+        assertEquals(2L, records.last().sequence)
+    }
+
+    @Test
+    fun `reopening with another geometry should start from empty log`() {
+        // Arrange
+        val file = File(tmp.root, "resized.ring")
+        ring(file).append("old")
+
+        // Act
+        val resized = ring(file, slotCount = 8)
+
+        // Assert
+        assertTrue(resized.records().none())
+    }
+
+    @Test
+    fun `clear should remove all records`() {
+        // Arrange
+        val ring = ring()
+        ring.append("a")
+        ring.append("b")
+
+        // Act
+        ring.clear()
+
+        // Assert
+        assertTrue(ring.records().none())
+        assertNull(ring.latest())
+    }
+}
@@ -0,0 +1,49 @@
+package com.health.companion.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ThumbnailPrefetcherTest {
+
+    @Test
+    fun `prefetchWindow should look ahead below viewport when idle`() {
+        // Act
+        val window = ThumbnailPrefetcher.prefetchWindow(
+            firstVisible = 0, lastVisible = 5, itemCount = 100,
+            velocity = 0f, lookAhead = 4, maxLookAhead = 20
+        )
+
+        // Assert
+        assertEquals(6..9, window)
+    }
+
+    @Test
+    fun `prefetchWindow should widen with velocity and respect max`() {
+        // Act
+        val fast = ThumbnailPrefetcher.prefetchWindow(10, 15, 100, velocity = 20f, lookAhead = 4, maxLookAhead = 20)
+        val fling = ThumbnailPrefetcher.prefetchWindow(10, 15, 100, velocity = 200f, lookAhead = 4, maxLookAhead = 20)
+
+        // Assert
+        assertEquals(16..29, fast)
+        assertEquals(16..35, fling)
+    }
+
+    @Test
+    fun `prefetchWindow should look above viewport when scrolling up and clamp to list`() {
+        // Act
+        val up = ThumbnailPrefetcher.prefetchWindow(3, 8, 100, velocity = -10f, lookAhead = 4, maxLookAhead = 20)
+        val atEnd = ThumbnailPrefetcher.prefetchWindow(95, 99, 100, velocity = 0f, lookAhead = 4, maxLookAhead = 20)
+
+        // Assert
+        assertEquals(0 until 3, up)
+        assertTrue(atEnd.isEmpty())
+    }
+
+    @Test
+    fun `bucket should round up to the nearest cached size`() {
+        assertEquals(128, ThumbnailSize.bucket(121))
+        assertEquals(128, ThumbnailSize.bucket(128))
+        assertEquals(512, ThumbnailSize.bucket(2000))
+    }
+}